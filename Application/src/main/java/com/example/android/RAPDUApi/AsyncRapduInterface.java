@@ -0,0 +1,34 @@
+package com.example.android.RAPDUApi;
+
+import android.content.Context;
+
+import com.example.android.cardreader.ApduSession;
+import com.example.android.cardreader.AsyncRapduImplement;
+import com.example.android.cardreader.ResponseApdu;
+
+/**
+ * Non-blocking variant of {@link RapduInterface}. Every call returns straight away with a
+ * {@link RapduFuture} that fails with a {@link java.util.concurrent.TimeoutException} if the
+ * card has not answered within {@code timeoutMillis} of the call. A timeout closes the session,
+ * so a phone pulled away too early does not keep the reader waiting, and calls still queued on
+ * that session fail right away.
+ */
+public interface AsyncRapduInterface {
+    class Factory {
+        public static AsyncRapduInterface create(Context context) {
+            return new AsyncRapduImplement(RapduInterface.Factory.create(context));
+        }
+    }
+
+    RapduFuture<ResponseApdu> callPunchStatusData(ApduSession session, long timeoutMillis);
+
+    RapduFuture<ResponseApdu> callStaffID(ApduSession session, long timeoutMillis);
+
+    /**
+     * Starts both reads at once and combines them. If either fails the other one is cancelled.
+     *
+     * @return Future for a new array with the punch status response at index 0 and the staff ID
+     * response at index 1
+     */
+    RapduFuture<ResponseApdu[]> callPunchStatusAndStaffID(ApduSession session, long timeoutMillis);
+}
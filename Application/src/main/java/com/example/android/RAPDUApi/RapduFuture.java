@@ -0,0 +1,258 @@
+package com.example.android.RAPDUApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronous card call. It is completed exactly once, either with a value, an
+ * error or by cancellation, and can be waited on, observed through callbacks or composed with
+ * other futures.
+ * <p>
+ * Callbacks run on the thread that completes the future, or right away on the registering
+ * thread if it is already done, so they should be short.
+ */
+public class RapduFuture<T> implements Future<T> {
+
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onFailure(Throwable error);
+    }
+
+    public interface Transform<A, B> {
+        B apply(A value) throws Exception;
+    }
+
+    public interface Combiner<A, B, R> {
+        R apply(A first, B second) throws Exception;
+    }
+
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    // All fields below are guarded by this.
+    private int mState = PENDING;
+    private T mResult;
+    private Throwable mError;
+    private List<Callback<? super T>> mCallbacks = new ArrayList<>();
+
+    public static <T> RapduFuture<T> succeeded(T result) {
+        RapduFuture<T> future = new RapduFuture<>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * @return false if the future was already done
+     */
+    public boolean complete(T result) {
+        return finish(SUCCEEDED, result, null);
+    }
+
+    /**
+     * @return false if the future was already done
+     */
+    public boolean fail(Throwable error) {
+        return finish(FAILED, null, error);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(CANCELLED, null, new CancellationException());
+    }
+
+    private boolean finish(int state, T result, Throwable error) {
+        List<Callback<? super T>> callbacks;
+        synchronized (this) {
+            if (mState != PENDING) {
+                return false;
+            }
+            mState = state;
+            mResult = result;
+            mError = error;
+            callbacks = mCallbacks;
+            mCallbacks = null;
+        }
+        mDone.countDown();
+        for (Callback<? super T> callback : callbacks) {
+            notify(callback, state, result, error);
+        }
+        return true;
+    }
+
+    private static <T> void notify(Callback<? super T> callback, int state, T result, Throwable error) {
+        if (state == SUCCEEDED) {
+            callback.onSuccess(result);
+        } else {
+            callback.onFailure(error);
+        }
+    }
+
+    public void addCallback(Callback<? super T> callback) {
+        int state;
+        T result;
+        Throwable error;
+        synchronized (this) {
+            if (mState == PENDING) {
+                mCallbacks.add(callback);
+                return;
+            }
+            state = mState;
+            result = mResult;
+            error = mError;
+        }
+        notify(callback, state, result, error);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != PENDING;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        mDone.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mDone.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private synchronized T report() throws ExecutionException {
+        if (mState == SUCCEEDED) {
+            return mResult;
+        }
+        if (mState == CANCELLED) {
+            throw (CancellationException) mError;
+        }
+        throw new ExecutionException(mError);
+    }
+
+    /**
+     * Fails this future with a {@link TimeoutException} if it is not done within the deadline.
+     *
+     * @return this future
+     */
+    public RapduFuture<T> withDeadline(final long timeout, final TimeUnit unit,
+                                       ScheduledExecutorService scheduler) {
+        final ScheduledFuture<?> timer = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fail(new TimeoutException("No answer within " + unit.toMillis(timeout) + " ms"));
+            }
+        }, timeout, unit);
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                timer.cancel(false);
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                timer.cancel(false);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Returns a future for {@code transform} applied to the result of this one. Failures are
+     * passed through; cancelling the returned future cancels this one.
+     */
+    public <R> RapduFuture<R> map(final Transform<? super T, ? extends R> transform) {
+        final RapduFuture<R> mapped = new RapduFuture<>();
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                try {
+                    mapped.complete(transform.apply(result));
+                } catch (Exception e) {
+                    mapped.fail(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                mapped.fail(error);
+            }
+        });
+        cancelWith(mapped, this);
+        return mapped;
+    }
+
+    /**
+     * Returns a future that succeeds once both {@code first} and {@code second} have, with the
+     * value built by {@code combiner}. If either fails the result fails right away and the other
+     * one is cancelled.
+     */
+    public static <A, B, R> RapduFuture<R> combine(final RapduFuture<A> first,
+                                                   final RapduFuture<B> second,
+                                                   final Combiner<? super A, ? super B, ? extends R> combiner) {
+        final RapduFuture<R> combined = new RapduFuture<>();
+        Callback<Object> onEither = new Callback<Object>() {
+            @Override
+            public void onSuccess(Object ignored) {
+                if (!first.isDone() || !second.isDone()) {
+                    return;
+                }
+                try {
+                    combined.complete(combiner.apply(first.get(), second.get()));
+                } catch (ExecutionException e) {
+                    combined.fail(e.getCause());
+                } catch (Exception e) {
+                    combined.fail(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                if (combined.fail(error)) {
+                    first.cancel(false);
+                    second.cancel(false);
+                }
+            }
+        };
+        first.addCallback(onEither);
+        second.addCallback(onEither);
+        cancelWith(combined, first);
+        cancelWith(combined, second);
+        return combined;
+    }
+
+    private static void cancelWith(final RapduFuture<?> dependent, final RapduFuture<?> source) {
+        dependent.addCallback(new Callback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                if (dependent.isCancelled()) {
+                    source.cancel(false);
+                }
+            }
+        });
+    }
+}
@@ -2,9 +2,11 @@ package com.example.android.RAPDUApi;
 
 import android.content.Context;
 
+import com.example.android.cardreader.ApduSession;
 import com.example.android.cardreader.RapduImplement;
+import com.example.android.cardreader.ResponseApdu;
 
-import java.util.ArrayList;
+import java.io.IOException;
 
 public interface RapduInterface {
     class Factory {
@@ -13,7 +15,22 @@ public interface RapduInterface {
         }
     }
 
-    ArrayList<byte[]> callPunchStatusData();
+    /**
+     * Reads the punch status. Each call returns its own result, nothing is shared between
+     * calls, so several sessions may be served at the same time.
+     */
+    ResponseApdu callPunchStatusData(ApduSession session) throws IOException;
 
-    ArrayList<byte[]> callStaffID();
+    /**
+     * Reads the staff ID, see {@link #callPunchStatusData(ApduSession)}.
+     */
+    ResponseApdu callStaffID(ApduSession session) throws IOException;
+
+    /**
+     * Reads the punch status and the staff ID in one batch over {@code session}.
+     *
+     * @return New array with the punch status response at index 0 and the staff ID response at
+     * index 1
+     */
+    ResponseApdu[] callPunchStatusAndStaffID(ApduSession session) throws IOException;
 }
@@ -19,6 +19,8 @@ package com.example.android.Utils;
 
 import android.support.annotation.NonNull;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 
@@ -32,22 +34,30 @@ final class AndroidBase64 {
     // --------------------------------------------------------
     // shared code
     // --------------------------------------------------------
-    private static abstract class Coder {
+    /* package */ static abstract class Coder {
         byte[] output;
         int op;
 
         /**
          * Encode/decode another block of input data. this.output is provided by
-         * the caller, and must be big enough to hold all the coded data. On
-         * exit, this.opwill be set to the length of the coded data.
+         * the caller, and must be big enough to hold all the coded data from
+         * this.op on. On exit, this.op will be set just past the coded data.
          *
+         * @param finish true if this is the final call to process for this
+         *               input; false if more input may follow.
          * @return true if the input so far is good; false if some error has
          * been detected in the input stream..
          */
-        abstract boolean process(@NonNull byte[] input, int offset, int len);
+        abstract boolean process(@NonNull byte[] input, int offset, int len, boolean finish);
+
+        /**
+         * @return the maximum number of bytes a call to process() could
+         * produce for the given number of input bytes.
+         */
+        abstract int maxOutputSize(int len);
     }
 
-    private static class Decoder extends Coder {
+    /* package */ static class Decoder extends Coder {
         /**
          * Lookup table for turning bytes into their position in the Base64
          * alphabet.
@@ -94,13 +104,22 @@ final class AndroidBase64 {
         private int value;
         final private int[] alphabet;
 
-        private Decoder(int flags, byte[] output) {
+        /* package */ Decoder(int flags, byte[] output) {
             this.output = output;
             alphabet = ((flags & URL_SAFE) == 0) ? DECODE : DECODE_WEBSAFE;
             state = 0;
             value = 0;
         }
 
+        /**
+         * @return an overestimate for the number of bytes len bytes could
+         * decode to.
+         */
+        @Override
+        int maxOutputSize(int len) {
+            return len * 3 / 4 + 10;
+        }
+
         /**
          * Decode another block of input data.
          *
@@ -108,7 +127,7 @@ final class AndroidBase64 {
          * base-64 data has been detected in the input stream.
          */
         @Override
-        boolean process(@NonNull byte[] input, int offset, int len) {
+        boolean process(@NonNull byte[] input, int offset, int len, boolean finish) {
             if (this.state == 6)
                 return false;
             int p = offset;
@@ -120,7 +139,7 @@ final class AndroidBase64 {
             // the member variable is final.)
             int state = this.state;
             int value = this.value;
-            int op = 0;
+            int op = this.op;
             final byte[] output = this.output;
             final int[] alphabet = this.alphabet;
             while (p < len) {
@@ -226,6 +245,14 @@ final class AndroidBase64 {
                         break;
                 }
             }
+            if (!finish) {
+                // We're out of input, but a future call could provide
+                // more.
+                this.state = state;
+                this.value = value;
+                this.op = op;
+                return true;
+            }
             // Done reading input. Now figure out where we are left in
             // the state machine and finish up.
             switch (state) {
@@ -263,7 +290,7 @@ final class AndroidBase64 {
         }
     }
 
-    private static class Encoder extends Coder {
+    /* package */ static class Encoder extends Coder {
         /**
          * Emit a new line every this many output tuples. Corresponds to a
          * 76-character line length (the maximum allowable according to
@@ -294,7 +321,7 @@ final class AndroidBase64 {
         final private boolean do_cr;
         final private byte[] alphabet;
 
-        private Encoder(int flags, byte[] output) {
+        /* package */ Encoder(int flags, byte[] output) {
             this.output = output;
             do_padding = (flags & NO_PADDING) == 0;
             do_newline = (flags & NO_WRAP) == 0;
@@ -305,12 +332,21 @@ final class AndroidBase64 {
             count = do_newline ? LINE_GROUPS : -1;
         }
 
+        /**
+         * @return an overestimate for the number of bytes len bytes could
+         * encode to.
+         */
+        @Override
+        int maxOutputSize(int len) {
+            return len * 8 / 5 + 10;
+        }
+
         @Override
-        boolean process(@NonNull byte[] input, int offset, int len) {
+        boolean process(@NonNull byte[] input, int offset, int len, boolean finish) {
             // Using local variables makes the encoder about 9% faster.
             final byte[] alphabet = this.alphabet;
             final byte[] output = this.output;
-            int op = 0;
+            int op = this.op;
             int count = this.count;
             int p = offset;
             len += offset;
@@ -373,41 +409,52 @@ final class AndroidBase64 {
             // consume any bytes in tail before any bytes
             // remaining in input; there should be at most two bytes
             // total.
-            if (p - tailLen == len - 1) {
-                int t = 0;
-                v = ((tailLen > 0 ? tail[t++] : input[p]) & 0xff) << 4;
-                tailLen -= t;
-                output[op++] = alphabet[(v >> 6) & 0x3f];
-                output[op++] = alphabet[v & 0x3f];
-                if (do_padding) {
-                    output[op++] = '=';
-                    output[op++] = '=';
-                }
-                if (do_newline) {
+            if (finish) {
+                if (p - tailLen == len - 1) {
+                    int t = 0;
+                    v = ((tailLen > 0 ? tail[t++] : input[p]) & 0xff) << 4;
+                    tailLen -= t;
+                    output[op++] = alphabet[(v >> 6) & 0x3f];
+                    output[op++] = alphabet[v & 0x3f];
+                    if (do_padding) {
+                        output[op++] = '=';
+                        output[op++] = '=';
+                    }
+                    if (do_newline) {
+                        if (do_cr)
+                            output[op++] = '\r';
+                        output[op++] = '\n';
+                    }
+                } else if (p - tailLen == len - 2) {
+                    int t = 0;
+                    v = (((tailLen > 1 ? tail[t++] : input[p++]) & 0xff) << 10)
+                            | (((tailLen > 0 ? tail[t++] : input[p]) & 0xff) << 2);
+                    tailLen -= t;
+                    output[op++] = alphabet[(v >> 12) & 0x3f];
+                    output[op++] = alphabet[(v >> 6) & 0x3f];
+                    output[op++] = alphabet[v & 0x3f];
+                    if (do_padding) {
+                        output[op++] = '=';
+                    }
+                    if (do_newline) {
+                        if (do_cr)
+                            output[op++] = '\r';
+                        output[op++] = '\n';
+                    }
+                } else if (do_newline && op > this.op && count != LINE_GROUPS) {
                     if (do_cr)
                         output[op++] = '\r';
                     output[op++] = '\n';
                 }
-            } else if (p - tailLen == len - 2) {
-                int t = 0;
-                v = (((tailLen > 1 ? tail[t++] : input[p++]) & 0xff) << 10)
-                        | (((tailLen > 0 ? tail[t++] : input[p]) & 0xff) << 2);
-                tailLen -= t;
-                output[op++] = alphabet[(v >> 12) & 0x3f];
-                output[op++] = alphabet[(v >> 6) & 0x3f];
-                output[op++] = alphabet[v & 0x3f];
-                if (do_padding) {
-                    output[op++] = '=';
+            } else {
+                // Save the leftovers in tail to be consumed on the next
+                // call to process.
+                if (p == len - 1) {
+                    tail[tailLen++] = input[p];
+                } else if (p == len - 2) {
+                    tail[tailLen++] = input[p];
+                    tail[tailLen++] = input[p + 1];
                 }
-                if (do_newline) {
-                    if (do_cr)
-                        output[op++] = '\r';
-                    output[op++] = '\n';
-                }
-            } else if (do_newline && op > 0 && count != LINE_GROUPS) {
-                if (do_cr)
-                    output[op++] = '\r';
-                output[op++] = '\n';
             }
 
             this.op = op;
@@ -485,7 +532,7 @@ final class AndroidBase64 {
         // Allocate space for the most data the input could represent.
         // (It could contain less if it contains whitespace, etc.)
         Decoder decoder = new Decoder(flags, new byte[len * 3 / 4]);
-        if (!decoder.process(input, offset, len)) {
+        if (!decoder.process(input, offset, len, true)) {
             throw new IllegalArgumentException("bad base-64");
         }
         // Maybe we got lucky and allocated exactly enough output space.
@@ -548,10 +595,18 @@ final class AndroidBase64 {
     @NonNull
     private static byte[] encode(@NonNull byte[] input, int offset, int len, int flags) {
         Encoder encoder = new Encoder(flags, null);
-        // Compute the exact length of the array we will produce.
+        encoder.output = new byte[encodedLength(len, flags)];
+        encoder.process(input, offset, len, true);
+        return encoder.output;
+    }
+
+    /**
+     * Compute the exact number of bytes {@code len} bytes of input encode to.
+     */
+    /* package */ static int encodedLength(int len, int flags) {
         int output_len = len / 3 * 4;
         // Account for the tail of the data and the padding bytes, if any.
-        if (encoder.do_padding) {
+        if ((flags & NO_PADDING) == 0) {
             if (len % 3 > 0) {
                 output_len += 4;
             }
@@ -568,12 +623,100 @@ final class AndroidBase64 {
             }
         }
         // Account for the newlines, if any.
-        if (encoder.do_newline && len > 0) {
-            output_len += (((len - 1) / (3 * Encoder.LINE_GROUPS)) + 1) * (encoder.do_cr ? 2 : 1);
+        if ((flags & NO_WRAP) == 0 && len > 0) {
+            output_len += (((len - 1) / (3 * Encoder.LINE_GROUPS)) + 1) * ((flags & CRLF) != 0 ? 2 : 1);
         }
-        encoder.output = new byte[output_len];
-        encoder.process(input, offset, len);
-        return encoder.output;
+        return output_len;
+    }
+
+    // --------------------------------------------------------
+    // ByteBuffers
+    // --------------------------------------------------------
+
+    /**
+     * Bytes of input copied at a time when a buffer has no accessible array.
+     */
+    private static final int CHUNK = 3 * 1024;
+
+    /**
+     * Base64-encode the remaining bytes of src into dst, advancing both.
+     * Nothing is allocated when both buffers are backed by accessible arrays.
+     *
+     * @param flags controls certain features of the encoded output. Passing
+     *              {@code DEFAULT} results in output that adheres to RFC 2045.
+     * @return the number of bytes written to dst
+     * @throws BufferOverflowException if dst has too little room, in which
+     *                                 case neither buffer is changed
+     */
+    /* package */ static int encode(@NonNull ByteBuffer src, @NonNull ByteBuffer dst, int flags) {
+        int len = src.remaining();
+        int outLen = encodedLength(len, flags);
+        if (dst.remaining() < outLen) {
+            throw new BufferOverflowException();
+        }
+        process(new Encoder(flags, null), src, dst);
+        return outLen;
+    }
+
+    /**
+     * Decode the remaining Base64-encoded bytes of src into dst, advancing
+     * both. Nothing is allocated when both buffers are backed by accessible
+     * arrays.
+     *
+     * @param flags controls certain features of the decoded output. Pass
+     *              {@code DEFAULT} to decode standard Base64.
+     * @return the number of bytes written to dst
+     * @throws BufferOverflowException  if dst has room for fewer than 3/4 of
+     *                                  the remaining bytes of src, not
+     *                                  counting trailing padding and line
+     *                                  breaks, in which case neither buffer
+     *                                  is changed
+     * @throws IllegalArgumentException if the input contains incorrect
+     *                                  padding; dst may then hold part of the
+     *                                  output
+     */
+    /* package */ static int decode(@NonNull ByteBuffer src, @NonNull ByteBuffer dst, int flags) {
+        // Trailing '=' and whitespace decode to nothing.
+        int[] alphabet = (flags & URL_SAFE) == 0 ? Decoder.DECODE : Decoder.DECODE_WEBSAFE;
+        int end = src.limit();
+        while (end > src.position() && alphabet[src.get(end - 1) & 0xff] < 0) {
+            end--;
+        }
+        if (dst.remaining() < (end - src.position()) * 3 / 4) {
+            throw new BufferOverflowException();
+        }
+        int start = dst.position();
+        if (!process(new Decoder(flags, null), src, dst)) {
+            throw new IllegalArgumentException("bad base-64");
+        }
+        return dst.position() - start;
+    }
+
+    private static boolean process(Coder coder, ByteBuffer src, ByteBuffer dst) {
+        if (src.hasArray() && dst.hasArray()) {
+            // Code straight from one backing array into the other.
+            coder.output = dst.array();
+            coder.op = dst.arrayOffset() + dst.position();
+            int start = coder.op;
+            if (!coder.process(src.array(), src.arrayOffset() + src.position(), src.remaining(), true)) {
+                return false;
+            }
+            src.position(src.limit());
+            dst.position(dst.position() + coder.op - start);
+            return true;
+        }
+        byte[] input = new byte[Math.min(src.remaining(), CHUNK)];
+        coder.output = new byte[coder.maxOutputSize(input.length)];
+        do {
+            int len = Math.min(input.length, src.remaining());
+            src.get(input, 0, len);
+            coder.op = 0;
+            if (!coder.process(input, 0, len, !src.hasRemaining())) {
+                return false;
+            }
+            dst.put(coder.output, 0, coder.op);
+        } while (src.hasRemaining());
+        return true;
     }
 
     // --------------------------------------------------------
@@ -0,0 +1,138 @@
+package com.example.android.Utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that does Base64 decoding on the data read through it. Ported from
+ * {@code android.util.Base64InputStream}.
+ * <p>
+ * Input is read and coded through two fixed buffers allocated with the stream.
+ */
+public class Base64InputStream extends FilterInputStream {
+    private static final byte[] EMPTY = new byte[0];
+    private static final int BUFFER_SIZE = 2048;
+
+    private final AndroidBase64.Coder coder;
+
+    private boolean eof;
+    private byte[] inputBuffer;
+    private int outputStart;
+    private int outputEnd;
+
+    /**
+     * An InputStream that performs Base64 decoding on the data that is read from the wrapped
+     * stream, as {@link Utils#base64Decode(String)} does.
+     *
+     * @param in the InputStream to read the source data from
+     */
+    public Base64InputStream(@NonNull InputStream in) {
+        this(in, AndroidBase64.DEFAULT, false);
+    }
+
+    /**
+     * Performs Base64 encoding or decoding on the data read from the wrapped InputStream.
+     *
+     * @param in     the InputStream to read the source data from
+     * @param flags  bit flags for controlling the decoder; see the constants in
+     *               {@link AndroidBase64}
+     * @param encode true to encode, false to decode
+     */
+    /* package */ Base64InputStream(@NonNull InputStream in, int flags, boolean encode) {
+        super(in);
+        eof = false;
+        inputBuffer = new byte[BUFFER_SIZE];
+        if (encode) {
+            coder = new AndroidBase64.Encoder(flags, null);
+        } else {
+            coder = new AndroidBase64.Decoder(flags, null);
+        }
+        coder.output = new byte[coder.maxOutputSize(BUFFER_SIZE)];
+        outputStart = 0;
+        outputEnd = 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reset() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+        inputBuffer = null;
+    }
+
+    @Override
+    public int available() {
+        return outputEnd - outputStart;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        refill();
+        if (outputStart >= outputEnd) {
+            return 0;
+        }
+        long bytes = Math.min(n, outputEnd - outputStart);
+        outputStart += bytes;
+        return bytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        refill();
+        if (outputStart >= outputEnd) {
+            return -1;
+        }
+        return coder.output[outputStart++] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+        refill();
+        if (outputStart >= outputEnd) {
+            return -1;
+        }
+        int bytes = Math.min(len, outputEnd - outputStart);
+        System.arraycopy(coder.output, outputStart, b, off, bytes);
+        outputStart += bytes;
+        return bytes;
+    }
+
+    /**
+     * Reads and codes input until there is output to hand out or the input is exhausted. A
+     * short read can code to nothing, e.g. when it ends inside a 4-character group.
+     */
+    private void refill() throws IOException {
+        while (outputStart >= outputEnd && !eof) {
+            int bytesRead = in.read(inputBuffer);
+            boolean success;
+            coder.op = 0;
+            if (bytesRead == -1) {
+                eof = true;
+                success = coder.process(EMPTY, 0, 0, true);
+            } else {
+                success = coder.process(inputBuffer, 0, bytesRead, false);
+            }
+            if (!success) {
+                throw new IOException("bad base-64");
+            }
+            outputEnd = coder.op;
+            outputStart = 0;
+        }
+    }
+}
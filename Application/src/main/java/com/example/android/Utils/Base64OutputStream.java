@@ -0,0 +1,136 @@
+package com.example.android.Utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream that does Base64 encoding on the data written to it, writing the resulting
+ * data to another OutputStream. Ported from {@code android.util.Base64OutputStream}.
+ * <p>
+ * The coded output goes through one buffer that is reused for every write, so a stream can be
+ * kept open for a whole batch of records.
+ */
+public class Base64OutputStream extends FilterOutputStream {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final AndroidBase64.Coder coder;
+    private final int flags;
+
+    private byte[] buffer = null;
+    private int bpos = 0;
+
+    /**
+     * Performs Base64 encoding on the data written to the stream, writing the encoded data to
+     * another OutputStream on one line, as {@link Utils#base64Encode(byte[])} does.
+     *
+     * @param out the OutputStream to write the encoded data to
+     */
+    public Base64OutputStream(@NonNull OutputStream out) {
+        this(out, AndroidBase64.NO_WRAP, true);
+    }
+
+    /**
+     * Performs Base64 encoding or decoding on the data written to the stream, writing the
+     * encoded/decoded data to another OutputStream.
+     *
+     * @param out    the OutputStream to write the encoded data to
+     * @param flags  bit flags for controlling the encoder; see the constants in
+     *               {@link AndroidBase64}
+     * @param encode true to encode, false to decode
+     */
+    /* package */ Base64OutputStream(@NonNull OutputStream out, int flags, boolean encode) {
+        super(out);
+        this.flags = flags;
+        if (encode) {
+            coder = new AndroidBase64.Encoder(flags, null);
+        } else {
+            coder = new AndroidBase64.Decoder(flags, null);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        // To avoid invoking the encoder/decoder routines for single bytes, we buffer up calls
+        // to write(int) in an internal byte array to transform them into writes of decently-
+        // sized arrays.
+        if (buffer == null) {
+            buffer = new byte[1024];
+        }
+        if (bpos >= buffer.length) {
+            // internal buffer full; write it out.
+            internalWrite(buffer, 0, bpos, false);
+            bpos = 0;
+        }
+        buffer[bpos++] = (byte) b;
+    }
+
+    /**
+     * Flush any buffered data from calls to write(int). Needed before doing a write(byte[],
+     * int, int) or a close().
+     */
+    private void flushBuffer() throws IOException {
+        if (bpos > 0) {
+            internalWrite(buffer, 0, bpos, false);
+            bpos = 0;
+        }
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        if (len <= 0) {
+            return;
+        }
+        flushBuffer();
+        internalWrite(b, off, len, false);
+    }
+
+    /**
+     * Writes out the encoded tail, then closes the underlying stream unless
+     * {@link AndroidBase64#NO_CLOSE} was given.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException thrown = null;
+        try {
+            flushBuffer();
+            internalWrite(EMPTY, 0, 0, true);
+        } catch (IOException e) {
+            thrown = e;
+        }
+        try {
+            if ((flags & AndroidBase64.NO_CLOSE) == 0) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (thrown == null) {
+                thrown = e;
+            }
+        }
+        if (thrown != null) {
+            throw thrown;
+        }
+    }
+
+    /**
+     * Write the given bytes to the encoder/decoder.
+     *
+     * @param finish true if this is the last batch of input, to cause encoder/decoder state
+     *               to be finalized.
+     */
+    private void internalWrite(byte[] b, int off, int len, boolean finish) throws IOException {
+        int max = coder.maxOutputSize(len);
+        if (coder.output == null || coder.output.length < max) {
+            coder.output = new byte[max];
+        }
+        coder.op = 0;
+        if (!coder.process(b, off, len, finish)) {
+            throw new IOException("bad base-64");
+        }
+        out.write(coder.output, 0, coder.op);
+    }
+}
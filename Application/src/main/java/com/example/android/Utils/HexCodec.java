@@ -0,0 +1,129 @@
+package com.example.android.Utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Upper case hex encoding and decoding through precomputed nibble tables.
+ * <p>
+ * The array based methods write into buffers supplied by the caller, so tag IDs and APDUs can be
+ * converted without creating a String per byte the way {@code String.format("%02X")} does.
+ */
+public final class HexCodec {
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    // First and second hex digit of every byte value.
+    private static final char[] HIGH = new char[256];
+    private static final char[] LOW = new char[256];
+    // Value of every ASCII hex digit, -1 for anything else.
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            HIGH[i] = DIGITS[i >>> 4];
+            LOW[i] = DIGITS[i & 0x0f];
+        }
+        for (int i = 0; i < VALUES.length; i++) {
+            VALUES[i] = -1;
+        }
+        for (int i = 0; i < 10; i++) {
+            VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            VALUES['A' + i] = (byte) (10 + i);
+            VALUES['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    /**
+     * @return Value of the hex digit {@code c}, or -1 if it is not one
+     */
+    public static int digit(char c) {
+        return c < VALUES.length ? VALUES[c] : -1;
+    }
+
+    /**
+     * Writes two hex digits per byte of {@code src[srcOffset, srcOffset + length)} into
+     * {@code dst}.
+     *
+     * @return Number of chars written
+     */
+    public static int encode(@NonNull byte[] src, int srcOffset, int length,
+                             @NonNull char[] dst, int dstOffset) {
+        int d = dstOffset;
+        for (int i = srcOffset, end = srcOffset + length; i < end; i++) {
+            int v = src[i] & 0xff;
+            dst[d++] = HIGH[v];
+            dst[d++] = LOW[v];
+        }
+        return d - dstOffset;
+    }
+
+    @NonNull
+    public static String encode(@NonNull byte[] src) {
+        return encode(src, 0, src.length);
+    }
+
+    @NonNull
+    public static String encode(@NonNull byte[] src, int offset, int length) {
+        char[] chars = new char[length * 2];
+        encode(src, offset, length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Appends the hex digits to {@code out} without building an intermediate String.
+     */
+    public static void encode(@NonNull byte[] src, int offset, int length, @NonNull StringBuilder out) {
+        out.ensureCapacity(out.length() + length * 2);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int v = src[i] & 0xff;
+            out.append(HIGH[v]).append(LOW[v]);
+        }
+    }
+
+    /**
+     * Streams the hex digits to {@code out}, for example a Writer.
+     */
+    public static void encode(@NonNull byte[] src, int offset, int length, @NonNull Appendable out)
+            throws IOException {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int v = src[i] & 0xff;
+            out.append(HIGH[v]).append(LOW[v]);
+        }
+    }
+
+    /**
+     * Decodes {@code length} hex digits of {@code src} starting at {@code srcOffset} into
+     * {@code dst}. Upper and lower case digits are accepted.
+     *
+     * @return Number of bytes written
+     * @throws IllegalArgumentException If {@code length} is odd or a char is not a hex digit
+     */
+    public static int decode(@NonNull CharSequence src, int srcOffset, int length,
+                             @NonNull byte[] dst, int dstOffset) {
+        if ((length & 1) != 0) {
+            throw new IllegalArgumentException("Odd number of hex digits: " + length);
+        }
+        int d = dstOffset;
+        for (int i = srcOffset, end = srcOffset + length; i < end; i += 2) {
+            int hi = digit(src.charAt(i));
+            int lo = digit(src.charAt(i + 1));
+            if ((hi | lo) < 0) {
+                throw new IllegalArgumentException("Not a hex digit at " + (hi < 0 ? i : i + 1));
+            }
+            dst[d++] = (byte) ((hi << 4) | lo);
+        }
+        return d - dstOffset;
+    }
+
+    @NonNull
+    public static byte[] decode(@NonNull CharSequence src) {
+        byte[] bytes = new byte[src.length() / 2];
+        decode(src, 0, src.length(), bytes, 0);
+        return bytes;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.android.Utils;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Cursor over BER-TLV data (ISO 7816-4 / X.690), walked in place.
+ * <p>
+ * The reader never copies: every TLV is described by its tag and the offset and length of its
+ * value in the original array. {@link #next()} moves to the following TLV on the same level,
+ * and {@link #enter(TlvReader)} points another reader at the contents of a constructed TLV, so
+ * a nested structure can be walked with a few reusable readers and no allocation at all.
+ * <p>
+ * Tags of up to three bytes and definite lengths of up to three bytes are supported. Zero bytes
+ * between TLVs are skipped as padding. Anything else that is not well formed throws
+ * {@link IllegalArgumentException}.
+ */
+public final class TlvReader {
+    private byte[] mData;
+    private int mPosition;
+    private int mEnd;
+
+    private int mTag;
+    private int mTlvOffset;
+    private int mValueOffset;
+    private int mValueLength;
+
+    public TlvReader() {
+        mData = new byte[0];
+    }
+
+    public TlvReader(@NonNull byte[] data) {
+        reset(data, 0, data.length);
+    }
+
+    public TlvReader(@NonNull byte[] data, int offset, int length) {
+        reset(data, offset, length);
+    }
+
+    /**
+     * Points this reader at {@code data[offset, offset + length)}, before its first TLV.
+     */
+    public TlvReader reset(@NonNull byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length
+                    + ", array " + data.length);
+        }
+        mData = data;
+        mPosition = offset;
+        mEnd = offset + length;
+        mTag = 0;
+        mTlvOffset = offset;
+        mValueOffset = offset;
+        mValueLength = 0;
+        return this;
+    }
+
+    /**
+     * Moves to the next TLV on this level.
+     *
+     * @return false if there are no more
+     */
+    public boolean next() {
+        byte[] data = mData;
+        int p = mPosition;
+        while (p < mEnd && data[p] == 0) {
+            p++;
+        }
+        if (p == mEnd) {
+            mPosition = p;
+            return false;
+        }
+        mTlvOffset = p;
+        int tag = data[p++] & 0xFF;
+        if ((tag & 0x1F) == 0x1F) {
+            // Multi-byte tag: more bytes follow while bit 8 is set.
+            int bytes = 1;
+            int b;
+            do {
+                check(p < mEnd, "tag");
+                b = data[p++] & 0xFF;
+                tag = (tag << 8) | b;
+                check(++bytes <= 3, "tag");
+            } while ((b & 0x80) != 0);
+        }
+        check(p < mEnd, "length");
+        int length = data[p++] & 0xFF;
+        if (length > 0x7F) {
+            int bytes = length & 0x7F;
+            check(bytes >= 1 && bytes <= 3 && p + bytes <= mEnd, "length");
+            length = 0;
+            for (int i = 0; i < bytes; i++) {
+                length = (length << 8) | (data[p++] & 0xFF);
+            }
+        }
+        check(length <= mEnd - p, "value");
+        mTag = tag;
+        mValueOffset = p;
+        mValueLength = length;
+        mPosition = p + length;
+        return true;
+    }
+
+    private void check(boolean ok, String part) {
+        if (!ok) {
+            throw new IllegalArgumentException("Malformed TLV " + part + " at offset " + mTlvOffset);
+        }
+    }
+
+    /**
+     * Moves forward to the next TLV with the given tag on this level.
+     *
+     * @return false if there is none
+     */
+    public boolean find(int tag) {
+        while (next()) {
+            if (mTag == tag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Points {@code child} at the value of the current TLV.
+     *
+     * @return {@code child}
+     */
+    public TlvReader enter(@NonNull TlvReader child) {
+        return child.reset(mData, mValueOffset, mValueLength);
+    }
+
+    /**
+     * Tag of the current TLV, with all its bytes, e.g. 0x5F20.
+     */
+    public int tag() {
+        return mTag;
+    }
+
+    public boolean isConstructed() {
+        int first = mTag > 0xFFFF ? mTag >>> 16 : mTag > 0xFF ? mTag >>> 8 : mTag;
+        return (first & 0x20) != 0;
+    }
+
+    /**
+     * The array being read.
+     */
+    public byte[] array() {
+        return mData;
+    }
+
+    public int valueOffset() {
+        return mValueOffset;
+    }
+
+    public int valueLength() {
+        return mValueLength;
+    }
+
+    /**
+     * Offset of the first tag byte of the current TLV.
+     */
+    public int tlvOffset() {
+        return mTlvOffset;
+    }
+
+    /**
+     * Length of the current TLV including tag and length bytes.
+     */
+    public int tlvLength() {
+        return mValueOffset + mValueLength - mTlvOffset;
+    }
+
+    /**
+     * Value of the current TLV read as an unsigned big endian number of up to 8 bytes.
+     */
+    public long valueAsLong() {
+        if (mValueLength > 8) {
+            throw new IllegalStateException("Value of " + mValueLength + " bytes is not a number");
+        }
+        long value = 0;
+        for (int i = mValueOffset, end = mValueOffset + mValueLength; i < end; i++) {
+            value = (value << 8) | (mData[i] & 0xFF);
+        }
+        return value;
+    }
+}
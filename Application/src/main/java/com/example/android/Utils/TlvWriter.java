@@ -0,0 +1,173 @@
+package com.example.android.Utils;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Writes BER-TLV data straight into a caller's buffer, e.g. the data field of a command APDU
+ * being built, see {@code CommandApduBuilder.beginData(TlvWriter)}.
+ * <p>
+ * Constructed TLVs are opened with {@link #begin(int)} and closed with {@link #end()}; their
+ * length is filled in when they are closed, moving the contents up if it needs more than one
+ * byte. Up to {@link #MAX_DEPTH} TLVs can be open at once. Writing past the limit throws
+ * {@link IllegalStateException}.
+ */
+public final class TlvWriter {
+    public static final int MAX_DEPTH = 8;
+
+    private byte[] mBuffer;
+    private int mStart;
+    private int mPosition;
+    private int mLimit;
+    // Offsets of the length byte reserved for each open constructed TLV.
+    private final int[] mOpen = new int[MAX_DEPTH];
+    private int mDepth;
+
+    public TlvWriter() {
+        mBuffer = new byte[0];
+    }
+
+    public TlvWriter(@NonNull byte[] buffer) {
+        reset(buffer, 0, buffer.length);
+    }
+
+    /**
+     * Starts writing at {@code buffer[offset]}, never writing at or beyond {@code limit}.
+     */
+    public TlvWriter reset(@NonNull byte[] buffer, int offset, int limit) {
+        if (offset < 0 || limit < offset || limit > buffer.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", limit " + limit
+                    + ", array " + buffer.length);
+        }
+        mBuffer = buffer;
+        mStart = offset;
+        mPosition = offset;
+        mLimit = limit;
+        mDepth = 0;
+        return this;
+    }
+
+    /**
+     * Writes a primitive TLV holding {@code value[offset, offset + length)}.
+     */
+    public TlvWriter primitive(int tag, @NonNull byte[] value, int offset, int length) {
+        writeTag(tag);
+        writeLength(length);
+        ensure(length);
+        System.arraycopy(value, offset, mBuffer, mPosition, length);
+        mPosition += length;
+        return this;
+    }
+
+    /**
+     * Writes a primitive TLV holding {@code value} as an unsigned big endian number in as few
+     * bytes as it needs (at least one).
+     */
+    public TlvWriter primitive(int tag, long value) {
+        int bytes = 1;
+        while (bytes < 8 && (value >>> (8 * bytes)) != 0) {
+            bytes++;
+        }
+        writeTag(tag);
+        writeLength(bytes);
+        ensure(bytes);
+        for (int i = bytes - 1; i >= 0; i--) {
+            mBuffer[mPosition++] = (byte) (value >>> (8 * i));
+        }
+        return this;
+    }
+
+    /**
+     * Opens a constructed TLV; everything written until the matching {@link #end()} becomes its
+     * value.
+     */
+    public TlvWriter begin(int tag) {
+        if (mDepth == MAX_DEPTH) {
+            throw new IllegalStateException("More than " + MAX_DEPTH + " nested TLVs");
+        }
+        writeTag(tag);
+        ensure(1);
+        mOpen[mDepth++] = mPosition++;
+        return this;
+    }
+
+    /**
+     * Closes the TLV opened last and fills in its length.
+     */
+    public TlvWriter end() {
+        if (mDepth == 0) {
+            throw new IllegalStateException("No open TLV");
+        }
+        int lengthOffset = mOpen[--mDepth];
+        int length = mPosition - lengthOffset - 1;
+        int extra = lengthBytes(length) - 1;
+        if (extra > 0) {
+            ensure(extra);
+            System.arraycopy(mBuffer, lengthOffset + 1, mBuffer, lengthOffset + 1 + extra, length);
+            mPosition += extra;
+        }
+        putLength(lengthOffset, length);
+        return this;
+    }
+
+    /**
+     * Offset just past the last byte written.
+     */
+    public int position() {
+        return mPosition;
+    }
+
+    /**
+     * Number of bytes written since the last {@link #reset(byte[], int, int)}.
+     */
+    public int length() {
+        return mPosition - mStart;
+    }
+
+    public byte[] array() {
+        return mBuffer;
+    }
+
+    private void writeTag(int tag) {
+        if (tag > 0xFFFF) {
+            ensure(3);
+            mBuffer[mPosition++] = (byte) (tag >>> 16);
+            mBuffer[mPosition++] = (byte) (tag >>> 8);
+        } else if (tag > 0xFF) {
+            ensure(2);
+            mBuffer[mPosition++] = (byte) (tag >>> 8);
+        } else {
+            ensure(1);
+        }
+        mBuffer[mPosition++] = (byte) tag;
+    }
+
+    private void writeLength(int length) {
+        int bytes = lengthBytes(length);
+        ensure(bytes);
+        putLength(mPosition, length);
+        mPosition += bytes;
+    }
+
+    private static int lengthBytes(int length) {
+        return length < 0x80 ? 1 : length <= 0xFF ? 2 : length <= 0xFFFF ? 3 : 4;
+    }
+
+    private void putLength(int offset, int length) {
+        int bytes = lengthBytes(length);
+        if (bytes == 1) {
+            mBuffer[offset] = (byte) length;
+            return;
+        }
+        mBuffer[offset] = (byte) (0x80 | (bytes - 1));
+        for (int i = 1; i < bytes; i++) {
+            mBuffer[offset + i] = (byte) (length >>> (8 * (bytes - 1 - i)));
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (mPosition + bytes > mLimit) {
+            throw new IllegalStateException("TLV exceeds buffer limit of " + (mLimit - mStart)
+                    + " bytes");
+        }
+    }
+}
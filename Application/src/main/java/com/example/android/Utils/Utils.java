@@ -41,6 +41,33 @@ public final class Utils {
         return AndroidBase64.encodeToString(data, AndroidBase64.NO_WRAP);
     }
 
+    /**
+     * Decodes the remaining bytes of {@code src} into {@code dst} like {@link #base64Decode(String)},
+     * without allocating when both buffers are backed by arrays.
+     *
+     * @return Number of bytes written to {@code dst}
+     */
+    public static int base64Decode(@NonNull ByteBuffer src, @NonNull ByteBuffer dst) {
+        return AndroidBase64.decode(src, dst, AndroidBase64.DEFAULT);
+    }
+
+    /**
+     * Encodes the remaining bytes of {@code src} into {@code dst} like {@link #base64Encode(byte[])},
+     * without allocating when both buffers are backed by arrays.
+     *
+     * @return Number of bytes written to {@code dst}
+     */
+    public static int base64Encode(@NonNull ByteBuffer src, @NonNull ByteBuffer dst) {
+        return AndroidBase64.encode(src, dst, AndroidBase64.NO_WRAP);
+    }
+
+    /**
+     * Length of {@code length} bytes once encoded by {@link #base64Encode(byte[])}.
+     */
+    public static int base64EncodedLength(int length) {
+        return AndroidBase64.encodedLength(length, AndroidBase64.NO_WRAP);
+    }
+
 //    @Nullable
 //    public static String base64EncodeForUAF(@Nullable byte[] data) {
 //        if (data == null)
@@ -56,15 +83,10 @@ public final class Utils {
 
     @NonNull
     public static String byte2hex(@Nullable byte[] b, int start, int end) {
-        StringBuilder sb = new StringBuilder((end - start) * 2);
-        if (b != null) {
-            for (int n = start; n < end; n++) {
-                sb.append(String.format("%02X", b[n]));
-            }
-        } else {
-            sb.append("");
+        if (b == null) {
+            return "";
         }
-        return sb.toString();
+        return HexCodec.encode(b, start, end - start);
     }
 
     @NonNull
@@ -74,8 +96,9 @@ public final class Utils {
 
     @NonNull
     public static String byte2hexForLog(@Nullable byte[] b, int start, int end) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(byte2hex(b, start, end));
+        StringBuilder sb = new StringBuilder((end - start) * 2 + 8);
+        if (b != null)
+            HexCodec.encode(b, start, end - start, sb);
         if (b == null)
             sb.append("(null)");
         else
@@ -157,21 +180,21 @@ public final class Utils {
         if (text == null)
             return new byte[0];
 
-        int length = (text.length() / 2) + (text.length() % 2 == 1 ? 1 : 0);
-        byte[] ret = new byte[length];
-
-        if (text.length() % 2 == 1) // error?
-        {
-            text = "0" + text;
-        }
+        int odd = text.length() % 2;
+        byte[] ret = new byte[(text.length() / 2) + odd];
 
-        for (int i = 0; i < text.length(); i += 2) {
-            try {
-                ret[i / 2] = (byte) (Integer.parseInt(text.substring(i, i + 2), 16) & 0xff);
-            } catch (NumberFormatException e) {
-                e.printStackTrace();
-                return null;
+        try {
+            if (odd == 1) // error? read as if padded with a leading "0"
+            {
+                int digit = HexCodec.digit(text.charAt(0));
+                if (digit < 0)
+                    throw new IllegalArgumentException("Not a hex digit at 0");
+                ret[0] = (byte) digit;
             }
+            HexCodec.decode(text, odd, text.length() - odd, ret, odd);
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
         }
         return ret;
     }
@@ -195,12 +218,6 @@ public final class Utils {
 
     //below is sample making
     public static byte[] HexStringToByteArray(String s) {
-        int len = s.length();
-        byte[] data = new byte[len / 2];
-        for (int i = 0; i < len; i += 2) {
-            data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4)
-                    + Character.digit(s.charAt(i+1), 16));
-        }
-        return data;
+        return HexCodec.decode(s);
     }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.example.android.Utils;
+
+import android.support.annotation.NonNull;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length integers as in protobuf: seven bits per byte, least significant group first,
+ * with the high bit set on every byte but the last. Small values take one byte, a full long ten.
+ * Signed values are zigzag encoded first, so small negative numbers stay short too.
+ */
+public final class Varint {
+    public static final int MAX_LENGTH = 10;
+
+    private Varint() {
+    }
+
+    /**
+     * Number of bytes {@link #putUnsigned(ByteBuffer, long)} writes for {@code value}.
+     */
+    public static int length(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Writes {@code value} as an unsigned varint.
+     *
+     * @throws BufferOverflowException If it does not fit, with the position unchanged
+     */
+    public static void putUnsigned(@NonNull ByteBuffer buffer, long value) {
+        if (buffer.remaining() < MAX_LENGTH && buffer.remaining() < length(value)) {
+            throw new BufferOverflowException();
+        }
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static void putSigned(@NonNull ByteBuffer buffer, long value) {
+        putUnsigned(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes {@code value} as an unsigned varint at {@code offset}.
+     *
+     * @return Offset just after it
+     * @throws ArrayIndexOutOfBoundsException If it does not fit
+     */
+    public static int putUnsigned(@NonNull byte[] buffer, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @throws BufferUnderflowException If the buffer ends in the middle of it
+     * @throws IllegalArgumentException If it is longer than {@link #MAX_LENGTH} bytes
+     */
+    public static long getUnsigned(@NonNull ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than " + MAX_LENGTH + " bytes");
+    }
+
+    public static long getSigned(@NonNull ByteBuffer buffer) {
+        long value = getUnsigned(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads an unsigned varint that must fit an int, e.g. a length.
+     *
+     * @throws IllegalArgumentException If it does not
+     */
+    public static int getUnsignedInt(@NonNull ByteBuffer buffer) {
+        long value = getUnsigned(buffer);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Varint " + value + " out of int range");
+        }
+        return (int) value;
+    }
+}
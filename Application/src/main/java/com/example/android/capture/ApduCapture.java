@@ -0,0 +1,341 @@
+package com.example.android.capture;
+
+import com.example.android.Utils.Varint;
+import com.example.android.cardreader.CardTransport;
+import com.example.android.common.logger.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every frame a tap exchanges with the tag, with its timing and outcome, to a capture
+ * file that {@link CapturedTap#readAll(java.io.InputStream)} reads back and
+ * {@link ReplayTransport} plays again.
+ * <p>
+ * Records are appended to one of two buffers allocated up front; a full buffer is written to the
+ * file on a background thread while the other one fills up, so the tap path never waits for the
+ * disk. If both are full, records are dropped and counted, see {@link #getDroppedCount()}.
+ * <p>
+ * The file starts with the magic "APDC", a version byte and the wall clock time of the capture
+ * start in milliseconds. Each record then is: type (1 byte), tap ID, time since the capture
+ * started, duration, status, and two length prefixed byte strings, all but the type as varints
+ * (the time zigzag encoded). What the fields hold depends on the type:
+ * <ul>
+ * <li>{@link #TAP_START}: duration is the transport's max transceive length, status 1 if it
+ * supports extended length, the first string the tag ID</li>
+ * <li>{@link #CONNECT}: status {@link #STATUS_OK} or {@link #STATUS_IO_ERROR}, the first string
+ * the error message</li>
+ * <li>{@link #FRAME}: the command, then the response, or the error message if status is
+ * {@link #STATUS_IO_ERROR}</li>
+ * <li>{@link #TAP_END}: status is the {@code TapPipeline} RESULT_ of the tap</li>
+ * </ul>
+ */
+public class ApduCapture implements Closeable {
+    private static final String TAG = "ApduCapture";
+    static final int MAGIC = 0x41504443;
+    static final int VERSION = 1;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    // Idle writer thread is let go after this long.
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    // Record types.
+    static final int TAP_START = 1;
+    static final int CONNECT = 2;
+    static final int FRAME = 3;
+    static final int TAP_END = 4;
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_IO_ERROR = 1;
+    private static final byte[] NONE = new byte[0];
+
+    private final FileOutputStream mOutput;
+    private final FileChannel mChannel;
+    private final ThreadPoolExecutor mWriter;
+    private final long mOriginNanos = System.nanoTime();
+
+    // Guarded by this.
+    private ByteBuffer mBuffer;
+    private ByteBuffer mSpare;
+    private long mDropped;
+    private boolean mClosed;
+    // Set by the writer thread when the file could not be written.
+    private volatile IOException mWriteError;
+
+    public ApduCapture(File file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param file       Overwritten if it exists
+     * @param bufferSize Size of each of the two buffers; a record larger than this is dropped
+     */
+    public ApduCapture(File file, int bufferSize) throws IOException {
+        if (bufferSize < 64) {
+            throw new IllegalArgumentException("Buffer size " + bufferSize + " < 64");
+        }
+        mBuffer = ByteBuffer.allocate(bufferSize);
+        mSpare = ByteBuffer.allocate(bufferSize);
+        mOutput = new FileOutputStream(file);
+        mChannel = mOutput.getChannel();
+        mWriter = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "ApduCapture");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        mWriter.allowCoreThreadTimeOut(true);
+        mBuffer.putInt(MAGIC).put((byte) VERSION).putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Starts capturing a tap.
+     *
+     * @param tap       ID of the tap, unique within the capture
+     * @param tagId     ID the tag reported
+     * @param transport Link to the tag
+     * @return Transport to use for the tap instead of {@code transport}, which records every
+     * connect and frame
+     */
+    public CardTransport beginTap(long tap, byte[] tagId, CardTransport transport) {
+        append(TAP_START, tap, System.nanoTime(), transport.getMaxTransceiveLength(),
+                transport.isExtendedLengthApduSupported() ? 1 : 0, tagId, NONE, 0);
+        return new CapturingTransport(this, tap, transport);
+    }
+
+    /**
+     * @param result The {@code TapPipeline} RESULT_ the tap ended with
+     */
+    public void endTap(long tap, int result) {
+        append(TAP_END, tap, System.nanoTime(), 0, result, NONE, NONE, 0);
+    }
+
+    void connect(long tap, long startNanos, long endNanos, IOException error) {
+        append(CONNECT, tap, startNanos, endNanos - startNanos,
+                error == null ? STATUS_OK : STATUS_IO_ERROR, message(error), NONE, 0);
+    }
+
+    void frame(long tap, long startNanos, long endNanos, byte[] command, byte[] response,
+               IOException error) {
+        byte[] second = error != null ? message(error) : response != null ? response : NONE;
+        append(FRAME, tap, startNanos, endNanos - startNanos,
+                error == null ? STATUS_OK : STATUS_IO_ERROR, command, second, 0);
+    }
+
+    private static byte[] message(IOException error) {
+        if (error == null) {
+            return NONE;
+        }
+        String message = error.getMessage();
+        return (message != null ? message : error.getClass().getName()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private synchronized void append(int type, long tap, long nanos, long duration, int status,
+                                     byte[] first, byte[] second, int attempt) {
+        if (mClosed) {
+            return;
+        }
+        int mark = mBuffer.position();
+        try {
+            mBuffer.put((byte) type);
+            Varint.putUnsigned(mBuffer, tap);
+            Varint.putSigned(mBuffer, nanos - mOriginNanos);
+            Varint.putUnsigned(mBuffer, Math.max(0, duration));
+            Varint.putUnsigned(mBuffer, status);
+            Varint.putUnsigned(mBuffer, first.length);
+            mBuffer.put(first);
+            Varint.putUnsigned(mBuffer, second.length);
+            mBuffer.put(second);
+        } catch (BufferOverflowException e) {
+            mBuffer.position(mark);
+            if (attempt == 0 && mark > 0 && swap()) {
+                append(type, tap, nanos, duration, status, first, second, 1);
+            } else {
+                mDropped++;
+            }
+        }
+    }
+
+    /**
+     * Hands the current buffer to the writer thread and switches to the spare one, if the writer
+     * is done with it.
+     */
+    private boolean swap() {
+        final ByteBuffer full;
+        synchronized (this) {
+            if (mSpare == null) {
+                return false;
+            }
+            full = mBuffer;
+            mBuffer = mSpare;
+            mSpare = null;
+        }
+        full.flip();
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(full);
+            }
+        });
+        return true;
+    }
+
+    private void write(ByteBuffer full) {
+        try {
+            while (full.hasRemaining()) {
+                mChannel.write(full);
+            }
+        } catch (IOException e) {
+            if (mWriteError == null) {
+                Log.e(TAG, "Capture could not be written", e);
+            }
+            mWriteError = e;
+        } finally {
+            full.clear();
+            synchronized (this) {
+                mSpare = full;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Number of records dropped because both buffers were full.
+     */
+    public synchronized long getDroppedCount() {
+        return mDropped;
+    }
+
+    /**
+     * Writes out everything recorded so far and waits for it to reach the file.
+     *
+     * @throws IOException If the file could not be written, now or earlier
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            // Wait for the writer to hand back the spare, then write out the current buffer.
+            while (mSpare == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while flushing");
+                }
+            }
+            swap();
+        }
+        // The writer runs one task at a time, so once this one ran the buffer is written.
+        Future<?> written = mWriter.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        try {
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        IOException error = mWriteError;
+        if (error != null) {
+            throw error;
+        }
+        mChannel.force(false);
+    }
+
+    /**
+     * Flushes and closes the file. Taps still running are not recorded any further.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                mClosed = true;
+            }
+            mWriter.shutdown();
+            mOutput.close();
+        }
+    }
+
+    /**
+     * Passes everything on to the real transport and records connects and frames.
+     */
+    private static final class CapturingTransport implements CardTransport {
+        private final ApduCapture mCapture;
+        private final long mTap;
+        private final CardTransport mTransport;
+
+        CapturingTransport(ApduCapture capture, long tap, CardTransport transport) {
+            mCapture = capture;
+            mTap = tap;
+            mTransport = transport;
+        }
+
+        @Override
+        public void connect() throws IOException {
+            long start = System.nanoTime();
+            try {
+                mTransport.connect();
+            } catch (IOException e) {
+                mCapture.connect(mTap, start, System.nanoTime(), e);
+                throw e;
+            }
+            mCapture.connect(mTap, start, System.nanoTime(), null);
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mTransport.isConnected();
+        }
+
+        @Override
+        public byte[] transceive(byte[] command) throws IOException {
+            long start = System.nanoTime();
+            byte[] response;
+            try {
+                response = mTransport.transceive(command);
+            } catch (IOException e) {
+                mCapture.frame(mTap, start, System.nanoTime(), command, null, e);
+                throw e;
+            }
+            mCapture.frame(mTap, start, System.nanoTime(), command, response, null);
+            return response;
+        }
+
+        @Override
+        public int getMaxTransceiveLength() {
+            return mTransport.getMaxTransceiveLength();
+        }
+
+        @Override
+        public boolean isExtendedLengthApduSupported() {
+            return mTransport.isExtendedLengthApduSupported();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mTransport.close();
+        }
+    }
+}
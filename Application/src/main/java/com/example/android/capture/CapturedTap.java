@@ -0,0 +1,215 @@
+package com.example.android.capture;
+
+import com.example.android.Utils.Varint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One tap read back from an {@link ApduCapture} file: the tag, how the reader's link to it
+ * behaved, every frame in order and the outcome. Times are nanoseconds since the capture started.
+ */
+public final class CapturedTap {
+    private final long mId;
+    private final byte[] mTagId;
+    private final long mStartNanos;
+    private final int mMaxTransceiveLength;
+    private final boolean mExtendedLengthSupported;
+    private final List<Frame> mFrames = new ArrayList<>();
+    private Frame mConnect;
+    private long mEndNanos = -1;
+    private int mResult = -1;
+
+    CapturedTap(long id, byte[] tagId, long startNanos, int maxTransceiveLength,
+                boolean extendedLengthSupported) {
+        mId = id;
+        mTagId = tagId;
+        mStartNanos = startNanos;
+        mMaxTransceiveLength = maxTransceiveLength;
+        mExtendedLengthSupported = extendedLengthSupported;
+    }
+
+    /**
+     * Reads all taps of a capture, in the order they started. A record cut off at the end of the
+     * file, e.g. because the app died while writing it, ends the capture.
+     *
+     * @throws IOException If the stream is not a capture
+     */
+    public static List<CapturedTap> readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        for (int n = in.read(chunk); n != -1; n = in.read(chunk)) {
+            bytes.write(chunk, 0, n);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        if (buffer.remaining() < 13 || buffer.getInt() != ApduCapture.MAGIC) {
+            throw new IOException("Not an APDU capture");
+        }
+        int version = buffer.get();
+        if (version != ApduCapture.VERSION) {
+            throw new IOException("Unsupported capture version " + version);
+        }
+        buffer.getLong();
+        Map<Long, CapturedTap> taps = new LinkedHashMap<>();
+        try {
+            while (buffer.hasRemaining()) {
+                int type = buffer.get();
+                long id = Varint.getUnsigned(buffer);
+                long nanos = Varint.getSigned(buffer);
+                long duration = Varint.getUnsigned(buffer);
+                int status = Varint.getUnsignedInt(buffer);
+                byte[] first = bytes(buffer);
+                byte[] second = bytes(buffer);
+                CapturedTap tap = taps.get(id);
+                if (type == ApduCapture.TAP_START) {
+                    taps.put(id, new CapturedTap(id, first, nanos, (int) duration, status == 1));
+                } else if (tap == null) {
+                    // Its start was dropped or came before the capture; nothing to attach it to.
+                    continue;
+                } else if (type == ApduCapture.CONNECT) {
+                    tap.mConnect = new Frame(nanos, duration, status, null, null,
+                            status == ApduCapture.STATUS_OK ? null : new String(first, StandardCharsets.UTF_8));
+                } else if (type == ApduCapture.FRAME) {
+                    boolean ok = status == ApduCapture.STATUS_OK;
+                    tap.mFrames.add(new Frame(nanos, duration, status, first, ok ? second : null,
+                            ok ? null : new String(second, StandardCharsets.UTF_8)));
+                } else if (type == ApduCapture.TAP_END) {
+                    tap.mEndNanos = nanos;
+                    tap.mResult = status;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // Truncated last record.
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt capture at byte " + buffer.position(), e);
+        }
+        return new ArrayList<>(taps.values());
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[Varint.getUnsignedInt(buffer)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * ID of the tap within the capture.
+     */
+    public long getId() {
+        return mId;
+    }
+
+    public byte[] getTagId() {
+        return mTagId;
+    }
+
+    /**
+     * When the tag was discovered.
+     */
+    public long getStartNanos() {
+        return mStartNanos;
+    }
+
+    /**
+     * When the reader was done with the tap, -1 if the capture ended first.
+     */
+    public long getEndNanos() {
+        return mEndNanos;
+    }
+
+    /**
+     * The {@code TapPipeline} RESULT_ of the tap, -1 if the capture ended first.
+     */
+    public int getResult() {
+        return mResult;
+    }
+
+    public int getMaxTransceiveLength() {
+        return mMaxTransceiveLength;
+    }
+
+    public boolean isExtendedLengthApduSupported() {
+        return mExtendedLengthSupported;
+    }
+
+    /**
+     * The connect, null if the link was already up or it was not recorded.
+     */
+    public Frame getConnect() {
+        return mConnect;
+    }
+
+    public List<Frame> getFrames() {
+        return Collections.unmodifiableList(mFrames);
+    }
+
+    /**
+     * One exchange with the tag, or the connect.
+     */
+    public static final class Frame {
+        private final long mStartNanos;
+        private final long mDurationNanos;
+        private final int mStatus;
+        private final byte[] mCommand;
+        private final byte[] mResponse;
+        private final String mError;
+
+        Frame(long startNanos, long durationNanos, int status, byte[] command, byte[] response,
+              String error) {
+            mStartNanos = startNanos;
+            mDurationNanos = durationNanos;
+            mStatus = status;
+            mCommand = command;
+            mResponse = response;
+            mError = error;
+        }
+
+        public long getStartNanos() {
+            return mStartNanos;
+        }
+
+        /**
+         * How long the tag took to answer (or the connect took).
+         */
+        public long getDurationNanos() {
+            return mDurationNanos;
+        }
+
+        /**
+         * {@link ApduCapture#STATUS_OK} or {@link ApduCapture#STATUS_IO_ERROR}.
+         */
+        public int getStatus() {
+            return mStatus;
+        }
+
+        /**
+         * Command as sent, null for the connect.
+         */
+        public byte[] getCommand() {
+            return mCommand;
+        }
+
+        /**
+         * Response as received, null if there was an error instead.
+         */
+        public byte[] getResponse() {
+            return mResponse;
+        }
+
+        /**
+         * Message of the IOException, null if there was none.
+         */
+        public String getError() {
+            return mError;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.android.capture;
+
+import com.example.android.RAPDUApi.AsyncRapduInterface;
+import com.example.android.cardreader.ReaderConfig;
+import com.example.android.cardreader.TapPipeline;
+import com.example.android.metrics.LatencyHistogram;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds the taps of a capture through a {@link TapPipeline} again, each with a
+ * {@link ReplayTransport}, and compares how long they take and how they end with the capture.
+ * <p>
+ * Taps arrive with the gaps they had in the capture and tags answer as slowly as they did, both
+ * divided by the speedup, so a latency problem seen in the field can be reproduced, and checked
+ * against a fix, on a plain JVM. The repeat window is divided by the speedup as well, so taps of
+ * the same staff are repeats in the replay exactly when they were in the capture; back to back,
+ * none are.
+ */
+public class Replay {
+    private final List<CapturedTap> mTaps;
+    private final double mSpeedup;
+
+    /**
+     * @param speedup 1 for the original timing, e.g. 10 for ten times faster,
+     *                {@link Double#POSITIVE_INFINITY} to run the taps back to back
+     */
+    public Replay(List<CapturedTap> taps, double speedup) {
+        if (!(speedup > 0)) {
+            throw new IllegalArgumentException("Speedup " + speedup + " <= 0");
+        }
+        mTaps = taps;
+        mSpeedup = speedup;
+    }
+
+    /**
+     * Plays every tap on the calling thread, like the NFC thread would.
+     *
+     * @param pipeline Gives the dispatcher and metrics the taps go to; the taps themselves run
+     *                 through a pipeline of the replay's own, so its repeat window is left alone
+     */
+    public Report run(TapPipeline pipeline, AsyncRapduInterface rapdu, ReaderConfig config)
+            throws InterruptedException {
+        TapPipeline replay = new TapPipeline(pipeline.getDispatcher(), pipeline.getMetrics());
+        config = config.buildUpon()
+                .repeatWindowMillis(Math.round(config.getRepeatWindowMillis() / mSpeedup))
+                .build();
+        int[] results = new int[mTaps.size()];
+        int mismatched = 0;
+        int diverged = 0;
+        LatencyHistogram captured = new LatencyHistogram();
+        LatencyHistogram replayed = new LatencyHistogram();
+        long startNanos = System.nanoTime();
+        long firstTapNanos = mTaps.isEmpty() ? 0 : mTaps.get(0).getStartNanos();
+        for (int i = 0; i < mTaps.size(); i++) {
+            CapturedTap tap = mTaps.get(i);
+            long arrivalNanos = startNanos + (long) ((tap.getStartNanos() - firstTapNanos) / mSpeedup);
+            for (long wait = arrivalNanos - System.nanoTime(); wait > 0;
+                 wait = arrivalNanos - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            ReplayTransport transport = new ReplayTransport(tap, mSpeedup);
+            long tapStartNanos = System.nanoTime();
+            results[i] = replay.process(rapdu, config, tap.getTagId(), transport);
+            replayed.recordSince(tapStartNanos);
+            if (tap.getEndNanos() >= 0) {
+                captured.record(tap.getEndNanos() - tap.getStartNanos());
+            }
+            if (results[i] != tap.getResult()) {
+                mismatched++;
+            }
+            if (transport.getDivergedFrame() >= 0) {
+                diverged++;
+            }
+        }
+        return new Report(results, mismatched, diverged, captured.snapshot(), replayed.snapshot());
+    }
+
+    /**
+     * Outcome of a {@link #run}.
+     */
+    public static final class Report {
+        private final int[] mResults;
+        private final int mMismatched;
+        private final int mDiverged;
+        private final LatencyHistogram.Snapshot mCaptured;
+        private final LatencyHistogram.Snapshot mReplayed;
+
+        Report(int[] results, int mismatched, int diverged, LatencyHistogram.Snapshot captured,
+               LatencyHistogram.Snapshot replayed) {
+            mResults = results;
+            mMismatched = mismatched;
+            mDiverged = diverged;
+            mCaptured = captured;
+            mReplayed = replayed;
+        }
+
+        /**
+         * The {@link TapPipeline} RESULT_ the replay of tap {@code index} ended with.
+         */
+        public int getResult(int index) {
+            return mResults[index];
+        }
+
+        /**
+         * Number of taps that ended differently than in the capture.
+         */
+        public int getMismatchCount() {
+            return mMismatched;
+        }
+
+        /**
+         * Number of taps that sent a command the capture did not have.
+         */
+        public int getDivergedCount() {
+            return mDiverged;
+        }
+
+        /**
+         * Time from tag discovered until the reader was done with it, in the capture.
+         */
+        public LatencyHistogram.Snapshot getCapturedTapTime() {
+            return mCaptured;
+        }
+
+        /**
+         * The same for the replay, at the replay's speed.
+         */
+        public LatencyHistogram.Snapshot getReplayedTapTime() {
+            return mReplayed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d taps, %d ended differently, %d diverged; "
+                            + "captured %s; replayed %s", mResults.length, mMismatched, mDiverged,
+                    mCaptured, mReplayed);
+        }
+    }
+}
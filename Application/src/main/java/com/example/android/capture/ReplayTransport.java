@@ -0,0 +1,141 @@
+package com.example.android.capture;
+
+import com.example.android.cardreader.CardTransport;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link CardTransport} that plays the tag of a {@link CapturedTap}: every command gets the
+ * response that was captured for it, after the time the tag took then divided by the speedup,
+ * and errors such as a lost tag happen again at the same frame.
+ * <p>
+ * The reader has to send the commands it sent back then. When it sends something else, e.g.
+ * after a change to the command building, the replay has diverged: that command and every one
+ * after it fail with an IOException, and {@link #getDivergedFrame()} tells where.
+ */
+public class ReplayTransport implements CardTransport {
+    private final CapturedTap mTap;
+    private final List<CapturedTap.Frame> mFrames;
+    private final double mSpeedup;
+
+    private volatile boolean mConnected;
+    private volatile Thread mWaiter;
+    private int mNext;
+    private int mDivergedFrame = -1;
+
+    /**
+     * @param speedup 1 for the original timing, e.g. 10 for ten times faster,
+     *                {@link Double#POSITIVE_INFINITY} for no delays at all
+     */
+    public ReplayTransport(CapturedTap tap, double speedup) {
+        if (!(speedup > 0)) {
+            throw new IllegalArgumentException("Speedup " + speedup + " <= 0");
+        }
+        mTap = tap;
+        mFrames = tap.getFrames();
+        mSpeedup = speedup;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        CapturedTap.Frame connect = mTap.getConnect();
+        mConnected = true;
+        if (connect != null) {
+            delay(connect.getDurationNanos());
+            if (connect.getError() != null) {
+                mConnected = false;
+                throw new IOException(connect.getError());
+            }
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    @Override
+    public byte[] transceive(byte[] command) throws IOException {
+        if (!mConnected) {
+            throw new IOException("Tag was lost.");
+        }
+        if (mDivergedFrame >= 0) {
+            throw new IOException("Replay diverged at frame " + mDivergedFrame);
+        }
+        if (mNext == mFrames.size()) {
+            // The tag was gone after the last captured frame.
+            mConnected = false;
+            throw new IOException("Tag was lost.");
+        }
+        CapturedTap.Frame frame = mFrames.get(mNext);
+        if (!Arrays.equals(command, frame.getCommand())) {
+            mDivergedFrame = mNext;
+            throw new IOException("Replay diverged at frame " + mNext);
+        }
+        mNext++;
+        delay(frame.getDurationNanos());
+        if (frame.getError() != null) {
+            mConnected = false;
+            throw new IOException(frame.getError());
+        }
+        return frame.getResponse().clone();
+    }
+
+    private void delay(long capturedNanos) throws IOException {
+        long nanos = (long) (capturedNanos / mSpeedup);
+        if (nanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + nanos;
+        mWaiter = Thread.currentThread();
+        try {
+            for (long left = nanos; left > 0 && mConnected; left = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(this, left);
+            }
+        } finally {
+            mWaiter = null;
+        }
+        if (!mConnected) {
+            throw new IOException("Tag was lost.");
+        }
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return mTap.getMaxTransceiveLength();
+    }
+
+    @Override
+    public boolean isExtendedLengthApduSupported() {
+        return mTap.isExtendedLengthApduSupported();
+    }
+
+    /**
+     * Takes the tag away; a transceive that is waiting for its answer fails.
+     */
+    @Override
+    public void close() {
+        mConnected = false;
+        Thread waiter = mWaiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Index of the first frame the reader sent a different command for, -1 if none.
+     */
+    public int getDivergedFrame() {
+        return mDivergedFrame;
+    }
+
+    /**
+     * Number of captured frames played so far.
+     */
+    public int getReplayedCount() {
+        return mNext;
+    }
+}
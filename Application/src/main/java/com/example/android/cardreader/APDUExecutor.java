@@ -1,32 +1,185 @@
 package com.example.android.cardreader;
 
-import android.nfc.tech.IsoDep;
-
-import com.example.android.Utils.Utils;
 import com.example.android.common.logger.Log;
+import com.example.android.metrics.ReaderMetrics;
+import com.example.android.metrics.StripedCounter;
+import com.example.android.trace.Tracer;
 
 import java.io.IOException;
 
-import static com.example.android.cardreader.LoyaltyCardReader.BuildSelectApdu;
-
+/**
+ * Sends command APDUs over the transport of a single tag. One instance exists per tag, so taps
+ * on different tags never contend for a lock here.
+ * <p>
+ * {@link #exchange(byte[])} hides how many frames a command and its answer take: commands
+ * that do not fit one frame are split with command chaining, and "61xx" (more data) answers are
+ * followed up with GET RESPONSE until the card is done. Extended length is used when the tag
+ * supports it, so large transfers take as few round trips as possible.
+ */
 public class APDUExecutor {
     private static final String TAG = "APDUExecutor";
-    private static IsoDep isoDep;
-    APDUExecutor(IsoDep isoDep){
-        APDUExecutor.isoDep = isoDep;
+    private static final int INS_GET_RESPONSE = 0xC0;
+    // SW1 values: more data available, and wrong Le with the right one in SW2.
+    private static final int SW1_MORE_DATA = 0x61;
+    private static final int SW1_WRONG_LE = 0x6C;
+    private static final int CLA_CHAINING = 0x10;
+    private static final int MAX_SHORT_DATA = 255;
+    private static final int MAX_EXTENDED_LE = 65536;
+    // Bounds the answer of a card that never stops saying "61xx": as many GET RESPONSEs as the
+    // largest extended answer takes in short frames.
+    private static final int MAX_GET_RESPONSES = MAX_EXTENDED_LE / 256;
+    private final CardTransport transport;
+    private final ReaderMetrics metrics;
+    // Counts the frames of the command being exchanged, under its AID.
+    private StripedCounter transceives;
+
+    APDUExecutor(CardTransport transport, ReaderMetrics metrics) {
+        this.transport = transport;
+        this.metrics = metrics;
+        this.transceives = metrics.transceives(new byte[0]);
     }
 
-    static synchronized void apdu(String aid, ApduCallback apduCallback) {
-        byte[] command = BuildSelectApdu(aid);
-        byte[] result = new byte[0];
+    byte[] transceive(byte[] command) throws IOException {
         // Send command to remote device
-        Log.i(TAG, "Sending: " + Utils.byte2hexForLog(command));
+        Log.i(TAG, "Sending: %s (%d)", command, command.length);
+        transceives.increment();
+        Tracer.begin(Tracer.TRANSCEIVE);
         try {
-           result = isoDep.transceive(command);
-            apduCallback.onDone(result);
-        } catch (IOException e) {
-            apduCallback.onError(e);
-            e.printStackTrace();
+            return transport.transceive(command);
+        } finally {
+            Tracer.end();
+        }
+    }
+
+    /**
+     * Sends one logical command and collects its complete answer.
+     *
+     * @param command Short or extended length command APDU
+     * @return Response with the whole payload and the final status word
+     */
+    ResponseApdu exchange(byte[] command) throws IOException {
+        transceives = metrics.transceives(command);
+        ResponseApdu result = collect(command, send(command));
+        metrics.statusWord(result.statusWord());
+        return result;
+    }
+
+    private ResponseApdu collect(byte[] command, byte[] response) throws IOException {
+        if (sw1(response) != SW1_MORE_DATA) {
+            // Answer fit in one frame, hand it on as is.
+            return APDUTranslator.rapduResp(response);
+        }
+        ChainBuffer buffer = ChainBuffer.obtain();
+        try {
+            int cla = command[0] & ~CLA_CHAINING & 0xFF;
+            int frames = 0;
+            while (sw1(response) == SW1_MORE_DATA) {
+                buffer.append(response, 0, response.length - 2);
+                if (++frames > MAX_GET_RESPONSES || buffer.length() > MAX_EXTENDED_LE) {
+                    throw new IOException("Card still has more data after " + buffer.length()
+                            + " bytes in " + frames + " frames");
+                }
+                response = transceive(getResponse(cla, response[response.length - 1] & 0xFF));
+            }
+            buffer.append(response, 0, response.length);
+            Log.d(TAG, "Chained response of %d bytes", buffer.length());
+            return APDUTranslator.rapduResp(buffer.toByteArray());
+        } finally {
+            buffer.recycle();
+        }
+    }
+
+    private static int sw1(byte[] response) {
+        return response != null && response.length >= 2 ? response[response.length - 2] & 0xFF : -1;
+    }
+
+    /**
+     * Sends a command, chaining it if it does not fit one frame, and retries once with the Le
+     * the card asks for on "6Cxx".
+     */
+    private byte[] send(byte[] command) throws IOException {
+        byte[] response;
+        if (command.length <= transport.getMaxTransceiveLength()
+                && (!isExtended(command) || transport.isExtendedLengthApduSupported())) {
+            response = transceive(command);
+        } else {
+            response = sendChained(command);
+        }
+        if (response != null && response.length == 2 && sw1(response) == SW1_WRONG_LE
+                && command.length == 5) {
+            byte[] retry = command.clone();
+            retry[4] = response[1];
+            response = transceive(retry);
+        }
+        return response;
+    }
+
+    private static boolean isExtended(byte[] command) {
+        return command.length > 5 && command[4] == 0;
+    }
+
+    /**
+     * Splits the data of {@code command} over as few short APDUs as the transport allows, with
+     * the chaining bit set on all but the last one.
+     */
+    private byte[] sendChained(byte[] command) throws IOException {
+        int dataOffset;
+        int dataLength;
+        boolean hasLe;
+        if (command.length <= 5) {
+            return transceive(command);
+        } else if (isExtended(command)) {
+            if (command.length == 7) {
+                // Extended Le only: no data to split, ask for a short answer and use 61xx.
+                return transceive(new byte[]{command[0], command[1], command[2], command[3], 0});
+            }
+            dataOffset = 7;
+            dataLength = ((command[5] & 0xFF) << 8) | (command[6] & 0xFF);
+            hasLe = command.length > dataOffset + dataLength;
+        } else {
+            dataOffset = 5;
+            dataLength = command[4] & 0xFF;
+            hasLe = command.length > dataOffset + dataLength;
+        }
+        int chunk = Math.min(MAX_SHORT_DATA, transport.getMaxTransceiveLength() - 6);
+        if (chunk <= 0) {
+            throw new IOException("Frames of " + transport.getMaxTransceiveLength()
+                    + " bytes cannot carry a chained command");
+        }
+        int cla = command[0] & 0xFF;
+        byte[] response = null;
+        for (int sent = 0; sent < dataLength; sent += chunk) {
+            int length = Math.min(chunk, dataLength - sent);
+            boolean last = sent + length == dataLength;
+            byte[] frame = new byte[5 + length + (last && hasLe ? 1 : 0)];
+            frame[0] = (byte) (last ? cla : cla | CLA_CHAINING);
+            frame[1] = command[1];
+            frame[2] = command[2];
+            frame[3] = command[3];
+            frame[4] = (byte) length;
+            System.arraycopy(command, dataOffset + sent, frame, 5, length);
+            // A trailing Le of 0 asks for up to 256 bytes, the rest follows with 61xx.
+            response = transceive(frame);
+            if (!last && (response.length != 2 || (((response[0] & 0xFF) << 8) | (response[1] & 0xFF))
+                    != ResponseApdu.SW_OK)) {
+                Log.w(TAG, "Chained command refused after %d bytes", sent + length);
+                return response;
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Builds GET RESPONSE for {@code available} more bytes (0 meaning 256 or more). Asks for as
+     * much as one frame can carry when the tag supports extended length.
+     */
+    private byte[] getResponse(int cla, int available) {
+        int max = transport.getMaxTransceiveLength() - 2;
+        if (available == 0 && transport.isExtendedLengthApduSupported() && max > 256) {
+            int le = Math.min(MAX_EXTENDED_LE, max);
+            return new byte[]{(byte) cla, (byte) INS_GET_RESPONSE, 0, 0, 0,
+                    (byte) (le >> 8), (byte) le};
         }
+        return new byte[]{(byte) cla, (byte) INS_GET_RESPONSE, 0, 0, (byte) available};
     }
 }
@@ -1,34 +1,27 @@
 package com.example.android.cardreader;
 
-import com.example.android.Utils.Utils;
-import com.example.android.common.logger.Log;
-
-import java.util.ArrayList;
-import java.util.Arrays;
+import com.example.android.trace.Tracer;
 
 public class APDUTranslator {
     final static String TAG = "APDUTranslator";
-    private static ArrayList<byte[]> feedbackDataSet = new ArrayList<>();
 
-    protected synchronized static ArrayList<byte[]> rapduResp(byte[] rapdu) {
-        byte[] state;
-        byte[] payload;
-        feedbackDataSet.clear();
-        Log.d(TAG, "hsuj result: " + Utils.byte2hex(rapdu));
-        // If AID is successfully selected, 0x9000 is returned as the status word (last 2
-        // bytes of the result) by convention. Everything before the status word is
-        // optional payload, which is used here to hold the account number.
-        int resultLength = rapdu.length;
-        if (resultLength <= 0) {
-            return feedbackDataSet;
-        }
-        state = new byte[]{rapdu[resultLength - 2], rapdu[resultLength - 1]};
-        payload = Arrays.copyOf(rapdu, resultLength - 2);
-        feedbackDataSet.add(state);
-        if(payload != null){
-            feedbackDataSet.add(payload);
+    /**
+     * Splits a response APDU into status word and payload.
+     * <p>
+     * If AID is successfully selected, 0x9000 is returned as the status word (last 2
+     * bytes of the result) by convention. Everything before the status word is
+     * optional payload, which is used here to hold the account number.
+     *
+     * @param rapdu Response APDU as received from the tag, not copied
+     * @return View of the response, safe to keep and share between threads
+     */
+    protected static ResponseApdu rapduResp(byte[] rapdu) {
+        Tracer.begin(Tracer.RAPDU_RESP);
+        try {
+            return new ResponseApdu(rapdu);
+        } finally {
+            Tracer.end();
         }
-        return feedbackDataSet;
     }
 
 
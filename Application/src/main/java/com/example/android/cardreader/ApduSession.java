@@ -0,0 +1,104 @@
+package com.example.android.cardreader;
+
+import com.example.android.common.logger.Log;
+import com.example.android.metrics.ReaderMetrics;
+import com.example.android.trace.Tracer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * One conversation with one tag. A session is created for every tap and owns the connected
+ * {@link CardTransport}, so several tags can be served at the same time without a global lock.
+ *
+ * <p>ISO-DEP is half duplex, so the commands of a batch still go out one after the other, but
+ * they share a single connect and are handed back together once the tag has answered all of
+ * them.
+ */
+public class ApduSession implements Closeable {
+    private static final String TAG = "ApduSession";
+
+    private final CardTransport mTransport;
+    private final APDUExecutor mExecutor;
+    private final ReaderMetrics mMetrics;
+    // Only one batch talks to the tag at a time, even if several threads share the session.
+    private final Object mLock = new Object();
+    private volatile boolean mClosed;
+
+    public ApduSession(CardTransport transport) {
+        this(transport, ReaderMetrics.getDefault());
+    }
+
+    /**
+     * @param metrics Where connects, commands, status words and I/O errors are counted
+     */
+    public ApduSession(CardTransport transport, ReaderMetrics metrics) {
+        mTransport = transport;
+        mMetrics = metrics;
+        mExecutor = new APDUExecutor(transport, metrics);
+    }
+
+    /**
+     * Connects the underlying transport if that has not happened yet.
+     */
+    public void open() throws IOException {
+        if (!mTransport.isConnected()) {
+            mMetrics.connect();
+            Tracer.begin(Tracer.CONNECT);
+            try {
+                mTransport.connect();
+            } catch (IOException e) {
+                mMetrics.ioException();
+                throw e;
+            } finally {
+                Tracer.end();
+            }
+        }
+    }
+
+    public boolean isOpen() {
+        return !mClosed && mTransport.isConnected();
+    }
+
+    /**
+     * Sends a batch of command APDUs over this session. Once the tag is lost the session is
+     * closed, and later batches fail straight away instead of waiting for the tag again.
+     *
+     * @param commands Command APDUs, sent in order; they may be longer than one frame
+     * @return One complete response per command, in the same order, see
+     * {@link APDUExecutor#exchange(byte[])}
+     * @throws IOException If the tag is lost before every command has been answered
+     */
+    public ResponseApdu[] exchange(byte[]... commands) throws IOException {
+        synchronized (mLock) {
+            if (mClosed) {
+                throw new IOException("Session closed");
+            }
+            ResponseApdu[] responses = new ResponseApdu[commands.length];
+            try {
+                for (int i = 0; i < commands.length; i++) {
+                    responses[i] = mExecutor.exchange(commands[i]);
+                }
+            } catch (IOException e) {
+                mMetrics.ioException();
+                close();
+                throw e;
+            }
+            return responses;
+        }
+    }
+
+    /**
+     * Closes the transport. May be called from any thread, also while a batch is waiting on
+     * the tag, which makes that batch fail.
+     */
+    @Override
+    public void close() {
+        mClosed = true;
+        try {
+            mTransport.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing transport", e);
+        }
+    }
+}
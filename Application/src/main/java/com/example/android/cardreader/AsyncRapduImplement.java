@@ -0,0 +1,127 @@
+package com.example.android.cardreader;
+
+import com.example.android.RAPDUApi.AsyncRapduInterface;
+import com.example.android.RAPDUApi.RapduFuture;
+import com.example.android.RAPDUApi.RapduInterface;
+import com.example.android.common.logger.Log;
+import com.example.android.trace.Tracer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the blocking {@link RapduInterface} calls on background threads. Calls on the same
+ * {@link ApduSession} still reach the tag one after the other, the session takes care of that.
+ */
+public class AsyncRapduImplement implements AsyncRapduInterface {
+    private static final String TAG = "AsyncRapduImplement";
+    // Idle threads are let go after this long, so a quiet reader holds no threads.
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final RapduInterface mRapdu;
+    private final ThreadPoolExecutor mIoExecutor;
+    private final ScheduledThreadPoolExecutor mTimer;
+
+    public AsyncRapduImplement(RapduInterface rapdu) {
+        mRapdu = rapdu;
+        // A thread blocked on one tag must never hold up another, so the pool grows as needed.
+        mIoExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new DaemonThreadFactory("RapduIo-"));
+        mTimer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("RapduTimer-"));
+        mTimer.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        mTimer.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public RapduFuture<ResponseApdu> callPunchStatusData(final ApduSession session, long timeoutMillis) {
+        return submit(session, timeoutMillis, new Callable<ResponseApdu>() {
+            @Override
+            public ResponseApdu call() throws Exception {
+                return mRapdu.callPunchStatusData(session);
+            }
+        });
+    }
+
+    @Override
+    public RapduFuture<ResponseApdu> callStaffID(final ApduSession session, long timeoutMillis) {
+        return submit(session, timeoutMillis, new Callable<ResponseApdu>() {
+            @Override
+            public ResponseApdu call() throws Exception {
+                return mRapdu.callStaffID(session);
+            }
+        });
+    }
+
+    @Override
+    public RapduFuture<ResponseApdu[]> callPunchStatusAndStaffID(ApduSession session, long timeoutMillis) {
+        return RapduFuture.combine(callPunchStatusData(session, timeoutMillis),
+                callStaffID(session, timeoutMillis),
+                new RapduFuture.Combiner<ResponseApdu, ResponseApdu, ResponseApdu[]>() {
+                    @Override
+                    public ResponseApdu[] apply(ResponseApdu punchStatus, ResponseApdu staffId) {
+                        return new ResponseApdu[]{punchStatus, staffId};
+                    }
+                });
+    }
+
+    private <T> RapduFuture<T> submit(final ApduSession session, final long timeoutMillis,
+                                      final Callable<T> call) {
+        final RapduFuture<T> future = new RapduFuture<>();
+        future.withDeadline(timeoutMillis, TimeUnit.MILLISECONDS, mTimer);
+        future.addCallback(new RapduFuture.Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                if (error instanceof TimeoutException) {
+                    Log.w(TAG, "No answer within %d ms, closing session", timeoutMillis);
+                    // Aborts the transceive that is still waiting on the tag.
+                    session.close();
+                }
+            }
+        });
+        final long traceId = Tracer.currentTap();
+        mIoExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Cancelled or timed out before it got its turn.
+                if (future.isDone()) {
+                    return;
+                }
+                long previous = Tracer.setCurrentTap(traceId);
+                try {
+                    future.complete(call.call());
+                } catch (Exception e) {
+                    future.fail(e);
+                } finally {
+                    Tracer.setCurrentTap(previous);
+                }
+            }
+        });
+        return future;
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String mPrefix;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, mPrefix + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
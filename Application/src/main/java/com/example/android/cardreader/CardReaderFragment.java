@@ -26,6 +26,7 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.example.android.common.logger.Log;
+import com.example.android.trace.Tracer;
 
 /**
  * Generic UI for sample discovery.
@@ -69,6 +70,12 @@ public class CardReaderFragment extends Fragment implements LoyaltyCardReader.Ac
         return v;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mLoyaltyCardReader.shutdown();
+    }
+
     @Override
     public void onPause() {
         super.onPause();
@@ -103,11 +110,14 @@ public class CardReaderFragment extends Fragment implements LoyaltyCardReader.Ac
     public void onAccountReceived(final String receiveData, int type) {
         // This callback is run on a background thread, but updates to UI elements must be performed
         // on the UI thread.
-        Log.d(TAG, "receive data to show: " + receiveData);
+        Log.d(TAG, "receive data to show: %s", receiveData);
+        final long traceId = Tracer.currentTap();
+        final long postedNanos = System.nanoTime();
         if (type == 0) {
             getActivity().runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
+                    traceHop(traceId, postedNanos);
                     mAccountField.setText(receiveData);
                 }
             });
@@ -115,9 +125,19 @@ public class CardReaderFragment extends Fragment implements LoyaltyCardReader.Ac
             getActivity().runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
+                    traceHop(traceId, postedNanos);
                     mTestData.setText(receiveData);
                 }
             });
         }
     }
+
+    /**
+     * Records the wait of a UI update for the UI thread as a span of the tap it shows.
+     */
+    private static void traceHop(long traceId, long postedNanos) {
+        long previous = Tracer.setCurrentTap(traceId);
+        Tracer.record(Tracer.UI_HOP, postedNanos, System.nanoTime());
+        Tracer.setCurrentTap(previous);
+    }
 }
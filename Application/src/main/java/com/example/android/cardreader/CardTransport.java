@@ -0,0 +1,35 @@
+package com.example.android.cardreader;
+
+import java.io.IOException;
+
+/**
+ * Byte-level link to one card (or phone running HCE). On a device this is backed by
+ * {@link android.nfc.tech.IsoDep}, see {@link IsoDepTransport}; other implementations let the
+ * APDU engine run on a plain JVM without NFC hardware.
+ */
+public interface CardTransport {
+
+    void connect() throws IOException;
+
+    boolean isConnected();
+
+    /**
+     * Sends one command APDU and blocks until the response APDU is received.
+     *
+     * @param command Command APDU, must not be modified by the transport
+     * @return Response APDU including the trailing status word
+     */
+    byte[] transceive(byte[] command) throws IOException;
+
+    /**
+     * Longest command or response, in bytes, that fits in one {@link #transceive(byte[])}.
+     */
+    int getMaxTransceiveLength();
+
+    /**
+     * Whether extended length APDUs (up to 65535 bytes of data) may be sent.
+     */
+    boolean isExtendedLengthApduSupported();
+
+    void close() throws IOException;
+}
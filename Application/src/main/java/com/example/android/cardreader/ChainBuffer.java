@@ -0,0 +1,53 @@
+package com.example.android.cardreader;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Growable byte buffer the parts of a chained response are collected in. Buffers are recycled
+ * through a small pool, so a large response only allocates its final array.
+ */
+final class ChainBuffer {
+    private static final int POOL_SIZE = 4;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Larger buffers are left to the GC instead of being pooled.
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+    private static final ArrayBlockingQueue<ChainBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private byte[] mData = new byte[INITIAL_CAPACITY];
+    private int mLength;
+
+    private ChainBuffer() {
+    }
+
+    static ChainBuffer obtain() {
+        ChainBuffer buffer = POOL.poll();
+        return buffer != null ? buffer : new ChainBuffer();
+    }
+
+    void append(byte[] src, int offset, int length) {
+        if (mLength + length > mData.length) {
+            mData = Arrays.copyOf(mData, Math.max(mData.length * 2, mLength + length));
+        }
+        System.arraycopy(src, offset, mData, mLength, length);
+        mLength += length;
+    }
+
+    int length() {
+        return mLength;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(mData, mLength);
+    }
+
+    /**
+     * Returns the buffer to the pool. It must not be used afterwards.
+     */
+    void recycle() {
+        mLength = 0;
+        if (mData.length <= MAX_POOLED_CAPACITY) {
+            POOL.offer(this);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.android.cardreader;
+
+import com.example.android.Utils.HexCodec;
+import com.example.android.Utils.TlvWriter;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes command APDUs straight into a reusable buffer. See ISO 7816-4.
+ * <p>
+ * Format: [CLASS | INSTRUCTION | PARAMETER 1 | PARAMETER 2 | LENGTH | DATA | LE]
+ * <p>
+ * The SELECT commands for the AIDs this reader knows about are built once when the class is
+ * loaded, so the tap path does not have to build (or allocate) anything.
+ */
+public final class CommandApduBuilder {
+    // Largest short APDU: header, Lc, 255 data bytes and Le.
+    public static final int MAX_SHORT_APDU_LENGTH = 4 + 1 + 255 + 1;
+    // Le is optional; pass this to leave it out.
+    public static final int NO_LE = -1;
+
+    public static final int CLA_ISO = 0x00;
+    public static final int INS_SELECT = 0xA4;
+    // Select by DF name, as used for AIDs.
+    public static final int P1_SELECT_BY_NAME = 0x04;
+    // Non-standard P1 the staff ID service answers to.
+    public static final int P1_SELECT_TEST = 0x05;
+
+    public static final String PUNCH_STATUS_AID = "E000000000";
+    public static final String STAFF_ID_AID = "F111111111";
+    public static final String LOYALTY_CARD_AID = "F222222222";
+
+    private static final Map<String, byte[]> SELECT_CACHE;
+
+    static {
+        Map<String, byte[]> cache = new HashMap<>();
+        cache.put(PUNCH_STATUS_AID, buildSelect(P1_SELECT_BY_NAME, PUNCH_STATUS_AID));
+        cache.put(STAFF_ID_AID, buildSelect(P1_SELECT_TEST, STAFF_ID_AID));
+        cache.put(LOYALTY_CARD_AID, buildSelect(P1_SELECT_BY_NAME, LOYALTY_CARD_AID));
+        SELECT_CACHE = Collections.unmodifiableMap(cache);
+    }
+
+    private final byte[] mBuffer;
+    private int mLength;
+    // Offset of the Lc byte while BER-TLV data is being written, -1 otherwise.
+    private int mLcOffset = -1;
+
+    public CommandApduBuilder() {
+        this(MAX_SHORT_APDU_LENGTH);
+    }
+
+    public CommandApduBuilder(int capacity) {
+        mBuffer = new byte[capacity];
+    }
+
+    /**
+     * Returns the prebuilt SELECT command for one of the known AIDs.
+     * <p>
+     * The array is shared by every caller and must be treated as read-only.
+     *
+     * @param aid Application ID as hex string
+     * @return Shared SELECT command, or null if {@code aid} is not one of the known AIDs
+     */
+    public static byte[] cachedSelect(String aid) {
+        return SELECT_CACHE.get(aid);
+    }
+
+    /**
+     * Build APDU for SELECT AID command. Known AIDs are copied from the cache, any other AID is
+     * selected by DF name.
+     *
+     * @param aid Application ID (AID) to select, as hex string
+     * @return New array holding the SELECT AID command
+     */
+    public static byte[] select(String aid) {
+        byte[] cached = SELECT_CACHE.get(aid);
+        if (cached != null) {
+            return cached.clone();
+        }
+        return buildSelect(P1_SELECT_BY_NAME, aid);
+    }
+
+    private static byte[] buildSelect(int p1, String aid) {
+        CommandApduBuilder builder = new CommandApduBuilder(5 + aid.length() / 2);
+        builder.header(CLA_ISO, INS_SELECT, p1, 0x00).hexData(aid);
+        return builder.toByteArray();
+    }
+
+    /**
+     * Writes a complete command APDU into {@code dst}.
+     *
+     * @return Number of bytes written
+     */
+    public static int write(byte[] dst, int offset, int cla, int ins, int p1, int p2,
+                            byte[] data, int dataOffset, int dataLength, int le) {
+        int pos = offset;
+        dst[pos++] = (byte) cla;
+        dst[pos++] = (byte) ins;
+        dst[pos++] = (byte) p1;
+        dst[pos++] = (byte) p2;
+        if (dataLength > 0) {
+            dst[pos++] = (byte) dataLength;
+            System.arraycopy(data, dataOffset, dst, pos, dataLength);
+            pos += dataLength;
+        }
+        if (le != NO_LE) {
+            dst[pos++] = (byte) le;
+        }
+        return pos - offset;
+    }
+
+    /**
+     * Writes a complete command APDU at the position of {@code dst} and advances it.
+     *
+     * @return Number of bytes written
+     */
+    public static int write(ByteBuffer dst, int cla, int ins, int p1, int p2,
+                            byte[] data, int dataOffset, int dataLength, int le) {
+        int start = dst.position();
+        dst.put((byte) cla).put((byte) ins).put((byte) p1).put((byte) p2);
+        if (dataLength > 0) {
+            dst.put((byte) dataLength).put(data, dataOffset, dataLength);
+        }
+        if (le != NO_LE) {
+            dst.put((byte) le);
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * Starts a new command in the reusable buffer, dropping whatever was built before.
+     */
+    public CommandApduBuilder header(int cla, int ins, int p1, int p2) {
+        mBuffer[0] = (byte) cla;
+        mBuffer[1] = (byte) ins;
+        mBuffer[2] = (byte) p1;
+        mBuffer[3] = (byte) p2;
+        mLength = 4;
+        return this;
+    }
+
+    /**
+     * Appends Lc and the command data.
+     */
+    public CommandApduBuilder data(byte[] data, int offset, int length) {
+        checkCapacity(1 + length);
+        mBuffer[mLength++] = (byte) length;
+        System.arraycopy(data, offset, mBuffer, mLength, length);
+        mLength += length;
+        return this;
+    }
+
+    /**
+     * Appends Lc and the command data given as hex digits, without going through a String
+     * or intermediate array.
+     */
+    public CommandApduBuilder hexData(CharSequence hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd number of hex digits: " + hex);
+        }
+        int length = hex.length() / 2;
+        checkCapacity(1 + length);
+        mBuffer[mLength++] = (byte) length;
+        for (int i = 0; i < length; i++) {
+            int hi = HexCodec.digit(hex.charAt(2 * i));
+            int lo = HexCodec.digit(hex.charAt(2 * i + 1));
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("Not a hex string: " + hex);
+            }
+            mBuffer[mLength++] = (byte) ((hi << 4) | lo);
+        }
+        return this;
+    }
+
+    /**
+     * Appends Lc and points {@code writer} at the data field, so BER-TLV data is written
+     * straight into this buffer. Finish with {@link #endData(TlvWriter)}.
+     *
+     * @return {@code writer}
+     */
+    public TlvWriter beginData(TlvWriter writer) {
+        checkCapacity(1);
+        mLcOffset = mLength++;
+        // Leave room for Le.
+        return writer.reset(mBuffer, mLength, Math.min(mBuffer.length - 1, mLength + 255));
+    }
+
+    /**
+     * Takes over the data written since {@link #beginData(TlvWriter)} and fills in Lc.
+     */
+    public CommandApduBuilder endData(TlvWriter writer) {
+        if (mLcOffset < 0 || writer.array() != mBuffer) {
+            throw new IllegalStateException("beginData was not called with this writer");
+        }
+        mBuffer[mLcOffset] = (byte) writer.length();
+        mLength = writer.position();
+        mLcOffset = -1;
+        return this;
+    }
+
+    /**
+     * Appends the expected response length.
+     */
+    public CommandApduBuilder le(int le) {
+        checkCapacity(1);
+        mBuffer[mLength++] = (byte) le;
+        return this;
+    }
+
+    /**
+     * Returns the internal buffer; only the first {@link #length()} bytes are valid.
+     */
+    public byte[] buffer() {
+        return mBuffer;
+    }
+
+    public int length() {
+        return mLength;
+    }
+
+    /**
+     * Copies the command into {@code dst} at its current position.
+     */
+    public void writeTo(ByteBuffer dst) {
+        dst.put(mBuffer, 0, mLength);
+    }
+
+    public byte[] toByteArray() {
+        byte[] apdu = new byte[mLength];
+        System.arraycopy(mBuffer, 0, apdu, 0, mLength);
+        return apdu;
+    }
+
+    private void checkCapacity(int extra) {
+        if (mLength + extra > mBuffer.length) {
+            throw new IllegalStateException("APDU exceeds buffer of " + mBuffer.length + " bytes");
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.android.cardreader;
+
+import android.nfc.tech.IsoDep;
+
+import java.io.IOException;
+
+/**
+ * {@link CardTransport} over the ISO-DEP (ISO 14443-4) connection of a discovered tag.
+ */
+public class IsoDepTransport implements CardTransport {
+    private final IsoDep mIsoDep;
+
+    public IsoDepTransport(IsoDep isoDep) {
+        mIsoDep = isoDep;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        mIsoDep.connect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mIsoDep.isConnected();
+    }
+
+    @Override
+    public byte[] transceive(byte[] command) throws IOException {
+        return mIsoDep.transceive(command);
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return mIsoDep.getMaxTransceiveLength();
+    }
+
+    @Override
+    public boolean isExtendedLengthApduSupported() {
+        return mIsoDep.isExtendedLengthApduSupported();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIsoDep.close();
+    }
+}
@@ -17,22 +17,31 @@ package com.example.android.cardreader;
 
 import android.app.Service;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.nfc.NfcAdapter;
 import android.nfc.Tag;
 import android.nfc.tech.IsoDep;
 import android.os.Vibrator;
-import android.preference.PreferenceManager;
 
-import com.example.android.RAPDUApi.RapduInterface;
+import com.example.android.RAPDUApi.AsyncRapduInterface;
 import com.example.android.Utils.Utils;
+import com.example.android.capture.ApduCapture;
 import com.example.android.common.logger.Log;
+import com.example.android.journal.PunchJournal;
+import com.example.android.metrics.ReaderMetrics;
+import com.example.android.roster.StaffRoster;
+import com.example.android.sync.PunchUploader;
+import com.example.android.trace.Tracer;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.ref.WeakReference;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.concurrent.Semaphore;
 
 /**
@@ -46,15 +55,15 @@ public class LoyaltyCardReader implements NfcAdapter.ReaderCallback {
     private static final String SAMPLE_LOYALTY_CARD_AID = "F222222222"; //F222222222
     private static final String SAMPLE_TEST_AID_2 = "F111111111";
     private static final String SAMPLE_TEST_AID = "E000000000"; //E000000000
-    // ISO-DEP command HEADER for selecting an AID.
-    // Format: [Class | Instruction | Parameter 1 | Parameter 2]
-    private static final String SELECT_APDU_HEADER = "00A40400";
-    private static final String UPDATE_APDU_HEADER = "00B40400";
-    private static final String TEST_APDU_HEADER = "00A40500";
-    // "OK" status word sent in response to SELECT AID command (0x9000)
-    private static final byte[] SELECT_OK_SW = {(byte) 0x90, (byte) 0x00};
-    private static final String TASK_KEY = "TaskTest";
-    private static RapduInterface mRapduInterface;
+    private static AsyncRapduInterface mRapduInterface;
+    private static ReaderSettings mSettings;
+    // Kept for the whole process: the journal every successful punch is appended to, the
+    // uploader sending it to the server set in the config, if any, and the known staff, null
+    // until loaded; taps are not checked against it before that.
+    private static final PunchRecorder mRecorder = new PunchRecorder();
+    // Records the frames of every tap while the config asks for it, null otherwise.
+    private static volatile ApduCapture mCapture;
+    private static File mCaptureDir;
 
     ///APDU format example///
     /*
@@ -71,7 +80,33 @@ public class LoyaltyCardReader implements NfcAdapter.ReaderCallback {
     // foreground mode before it becomes invalid (e.g. during onPause() or onStop()).
     private WeakReference<AccountCallback> mAccountCallback;
     private Semaphore semaphore = new Semaphore(1);
-    private static SharedPreferences sprf;
+    // Decodes and reports taps off the NFC thread.
+    private final PunchRecorder.Callback mRecorded = new PunchRecorder.Callback() {
+        @Override
+        public void onPunch(Tap tap, String staffName) {
+            displayResult(tap.getPunchStatus(), 0);
+            if (staffName == null) {
+                displayResult(tap.getStaffId(), 1);
+            } else {
+                mAccountCallback.get().onAccountReceived(tap.getStaffId()
+                        .payloadAsString(StandardCharsets.UTF_8) + " " + staffName, 1);
+            }
+        }
+
+        @Override
+        public void onUnknownStaff(Tap tap) {
+            displayResult(tap.getPunchStatus(), 0);
+            mAccountCallback.get().onAccountReceived("Unknown staff ID", 1);
+        }
+    };
+    private final TapDispatcher mDispatcher = new TapDispatcher(new TapDispatcher.Handler() {
+        @Override
+        public void onTap(Tap tap) {
+            mRecorder.record(tap, config(), mRecorded);
+        }
+    });
+    // Everything up to the dispatcher runs on the NFC thread.
+    private final TapPipeline mPipeline = new TapPipeline(mDispatcher);
     static Vibrator mVibrator;
 
     public interface AccountCallback {
@@ -87,9 +122,131 @@ public class LoyaltyCardReader implements NfcAdapter.ReaderCallback {
     }
 
     static void setTestRAPDU(Context context) {
-        mRapduInterface = RapduInterface.Factory.create(context);
+        mRapduInterface = AsyncRapduInterface.Factory.create(context);
+    }
+
+    static void setSettings(Context context) {
+        mSettings = ReaderSettings.getInstance(context);
+    }
+
+    /**
+     * Replaces what {@link #setTestRAPDU(Context)} and {@link #setSettings(Context)} set up, so
+     * the reader can run without a Context, e.g. against a simulated card.
+     */
+    public static void setRapdu(AsyncRapduInterface rapdu, ReaderSettings settings) {
+        mRapduInterface = rapdu;
+        mSettings = settings;
+    }
+
+    private static ReaderConfig config() {
+        ReaderSettings settings = mSettings;
+        return settings == null ? ReaderConfig.DEFAULT : settings.get();
+    }
+
+    static synchronized void openJournal(Context context) {
+        if (mRecorder.getJournal() != null) {
+            return;
+        }
+        try {
+            mRecorder.setJournal(new PunchJournal(new File(context.getFilesDir(), "punches")));
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot open punch journal", e);
+        }
+    }
+
+    /**
+     * Starts uploading the journal to the config's upload URL, if it has one. Call after
+     * {@link #openJournal(Context)}; a URL set later takes effect on the next start.
+     */
+    static synchronized void startUpload(Context context) {
+        String url = config().getUploadUrl();
+        PunchJournal journal = mRecorder.getJournal();
+        if (mRecorder.getUploader() != null || journal == null || url == null) {
+            return;
+        }
+        try {
+            mRecorder.setUploader(new PunchUploader.Builder(journal, new URL(url),
+                    new File(context.getFilesDir(), "punches/upload.state")).build());
+        } catch (MalformedURLException e) {
+            Log.e(TAG, "Bad upload URL " + url, e);
+        }
+    }
+
+    /**
+     * Records every tap to a new capture file in the "captures" dir of the app's files dir
+     * while the config has capture enabled, and closes the file when it is turned off. Call
+     * after {@link #setSettings(Context)}.
+     */
+    static synchronized void watchCapture(Context context) {
+        ReaderSettings settings = mSettings;
+        if (mCaptureDir != null || settings == null) {
+            return;
+        }
+        mCaptureDir = new File(context.getFilesDir(), "captures");
+        settings.addListener(new ReaderSettings.Listener() {
+            @Override
+            public void onConfigChanged(ReaderConfig config) {
+                applyCapture(config);
+            }
+        });
+        applyCapture(settings.get());
+    }
+
+    private static synchronized void applyCapture(ReaderConfig config) {
+        ApduCapture capture = mCapture;
+        if (config.isCaptureEnabled() == (capture != null)) {
+            return;
+        }
+        if (capture != null) {
+            // Taps still holding it are let through unrecorded.
+            mCapture = null;
+            try {
+                capture.close();
+                Log.i(TAG, "Capture closed, %d records dropped", capture.getDroppedCount());
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot finish capture", e);
+            }
+            return;
+        }
+        File file = new File(mCaptureDir, "capture-" + System.currentTimeMillis() + ".apdc");
+        if (!mCaptureDir.isDirectory() && !mCaptureDir.mkdirs()) {
+            Log.e(TAG, "Cannot create %s", mCaptureDir);
+            return;
+        }
+        try {
+            mCapture = new ApduCapture(file);
+            Log.i(TAG, "Capturing taps to %s", file);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot open capture " + file, e);
+        }
     }
 
+    /**
+     * Loads the staff roster from roster.csv in the app's files dir on a background thread, see
+     * {@link StaffRoster#load(Reader)}. Without that file every staff ID is accepted.
+     */
+    static void loadRoster(Context context) {
+        final File file = new File(context.getFilesDir(), "roster.csv");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+                    try {
+                        StaffRoster roster = StaffRoster.load(in);
+                        mRecorder.setRoster(roster);
+                        Log.i(TAG, "Loaded %d staff", roster.size());
+                    } finally {
+                        in.close();
+                    }
+                } catch (FileNotFoundException e) {
+                    Log.i(TAG, "No staff roster, accepting every staff ID");
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot load staff roster", e);
+                }
+            }
+        }, "RosterLoader").start();
+    }
 
     /**
      * Callback when a new tag is discovered by the system.
@@ -100,76 +257,87 @@ public class LoyaltyCardReader implements NfcAdapter.ReaderCallback {
      */
     @Override
     public void onTagDiscovered(Tag tag) {
-        Log.i(TAG, "New tag discovered: " + Arrays.toString(tag.getTechList()));
-        Log.i(TAG, "tag id: " + Utils.byte2hex(tag.getId()));
+        Log.i(TAG, "New tag discovered: %s", (Object) tag.getTechList());
+        Log.i(TAG, "tag id: %s", tag.getId());
         // Android's Host-based Card Emulation (HCE) feature implements the ISO-DEP (ISO 14443-4)
         // protocol.
         //
         // In order to communicate with a device using HCE, the discovered tag should be processed
         // using the IsoDep class.
         IsoDep isoDep = IsoDep.get(tag);
-        if (isoDep != null) {
-            new APDUExecutor(isoDep);
-            try {
-                // Connect to the remote NFC device
-                isoDep.connect();
-                if (!isoDep.isConnected()) {
-                    Log.w(TAG, "isoDep not connected");
-                    return;
-                }
-                int task = sprf.getInt("TaskTest", -1);
-                Log.d(TAG, "task: " + task);
-//                switch (task) {
-//                    case 0:
-//                        callPunchStatusData();
-//                        break;
-//                    case 1:
-//                    //    callStaffID();
-//                        break;
-//                    default:
-////                        callPunchStatusData();
-////                        callStaffID();
-//                        break;
-//                }
-//                if (task == 0) {
-//
-//                } else if(task == 1){
-//                    Log.d(TAG,"XDDDDD");
-//
-//                }
-
-                ArrayList<byte[]> punchList = mRapduInterface.callPunchStatusData();
-                displayResult(punchList.get(0), punchList.get(1), 0);
-                ArrayList<byte[]> idList = mRapduInterface.callStaffID();
-                displayResult(idList.get(0), idList.get(1), 1);
-            } catch (IOException e) {
-                Log.e(TAG, "Error communicating with card: " + e.toString());
-            }
-        } else {
+        if (isoDep == null) {
             Log.w(TAG, "ISODep not instance");
+            return;
         }
+        onCardDiscovered(tag.getId(), new IsoDepTransport(isoDep));
     }
 
-    static void getTask(boolean isReset, int task, Context c) {
-        if (!isReset) {
-            sprf = PreferenceManager.getDefaultSharedPreferences(c);
-            sprf.edit().putInt(TASK_KEY, task).apply();
-        } else {
-            sprf.edit().clear().apply();
+    /**
+     * Everything {@link #onTagDiscovered(Tag)} does once it has a transport to the tag. Called
+     * directly with a simulated card to run the reader without NFC hardware.
+     *
+     * @return One of the {@link TapPipeline} RESULT_ constants
+     */
+    public int onCardDiscovered(byte[] tagId, CardTransport transport) {
+        mPipeline.setCapture(mCapture);
+        int result;
+        try {
+            result = mPipeline.process(mRapduInterface, config(), tagId, transport);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return TapPipeline.RESULT_FAILED;
         }
+        switch (result) {
+            case TapPipeline.RESULT_BUSY:
+                mAccountCallback.get().onAccountReceived("Busy, please tap again", 1);
+                break;
+            case TapPipeline.RESULT_TIMED_OUT:
+                mAccountCallback.get().onAccountReceived("Hold still and tap again", 1);
+                break;
+            case TapPipeline.RESULT_REPEAT:
+                mAccountCallback.get().onAccountReceived("Already punched", 1);
+                break;
+            default:
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Counters and step timings of the taps read so far, shared by all readers of the process.
+     */
+    public ReaderMetrics getMetrics() {
+        return mPipeline.getMetrics();
+    }
+
+    /**
+     * Stops the worker threads once the taps already read have been reported.
+     */
+    public void shutdown() {
+        mDispatcher.shutdown();
     }
 
 
-    private synchronized void displayResult(byte[] rapduState, byte[] payload, int type) {
-        if (Arrays.equals(SELECT_OK_SW, rapduState)) {
+    private synchronized void displayResult(ResponseApdu response, int type) {
+        Tracer.begin(Tracer.DISPLAY_RESULT);
+        try {
+            showResult(response, type);
+        } finally {
+            Tracer.end();
+        }
+    }
+
+    private void showResult(ResponseApdu response, int type) {
+        String payloadData = response.payloadAsString(StandardCharsets.UTF_8);
+        if (response.isOk()) {
             // The remote NFC device will immediately respond with its stored account number
-            String payloadData = new String(payload, StandardCharsets.UTF_8);
-            Log.i(TAG, "Received: " + payloadData);
+            Log.i(TAG, "Received: %s", payloadData);
             // Inform CardReaderFragment of received account number
             mAccountCallback.get().onAccountReceived(payloadData, type);
         } else {
-            Log.d(TAG, "not 0x9000 result: 0x" + Utils.byte2hex(rapduState));
-            mAccountCallback.get().onAccountReceived("0x" + Utils.byte2hex(rapduState) + " -- " + new String(payload, StandardCharsets.UTF_8), type);
+            String statusWord = Utils.byte2hex(response.statusWordBytes());
+            Log.d(TAG, "not 0x9000 result: 0x%s", statusWord);
+            mAccountCallback.get().onAccountReceived("0x" + statusWord + " -- " + payloadData, type);
         }
     }
 
@@ -201,15 +369,7 @@ public class LoyaltyCardReader implements NfcAdapter.ReaderCallback {
      * @return APDU for SELECT AID command
      */
     public static byte[] BuildSelectApdu(String aid) {
-        // Format: [CLASS | INSTRUCTION | PARAMETER 1 | PARAMETER 2 | LENGTH | DATA]
-        byte[] apdu = new byte[0];
-        Log.d(TAG, "BuildSelectApdu: " + aid);
-        if (aid.contains(SAMPLE_TEST_AID)) {
-            apdu = Utils.textToByteArray(SELECT_APDU_HEADER + String.format("%02X", aid.length() / 2) + aid);
-        } else if (aid.contains(SAMPLE_TEST_AID_2)) {
-            apdu = Utils.textToByteArray(TEST_APDU_HEADER + String.format("%02X", aid.length() / 2) + aid);
-        }
-        return apdu;
+        return CommandApduBuilder.select(aid);
     }
 
 }
@@ -33,6 +33,7 @@ import android.widget.ViewAnimator;
 import com.example.android.RAPDUApi.RapduInterface;
 import com.example.android.cardreader.UI.UIView;
 import com.example.android.common.activities.SampleActivityBase;
+import com.example.android.common.logger.AsyncLogNode;
 import com.example.android.common.logger.Log;
 import com.example.android.common.logger.LogFragment;
 import com.example.android.common.logger.LogWrapper;
@@ -55,6 +56,8 @@ public class MainActivity extends SampleActivityBase {
     private UIView uiView;
     ProgressDialog progressDialog;
     RapduInterface XD;
+    // Head of the logging chain, decouples callers from the nodes behind it.
+    private AsyncLogNode mAsyncLogNode;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -62,7 +65,12 @@ public class MainActivity extends SampleActivityBase {
         setContentView(R.layout.activity_main);
 //        uiView = new UIView(MainActivity.this);
         LoyaltyCardReader.setVibrate(MainActivity.this);
+        LoyaltyCardReader.setSettings(MainActivity.this);
         LoyaltyCardReader.setTestRAPDU(MainActivity.this);
+        LoyaltyCardReader.openJournal(MainActivity.this);
+        LoyaltyCardReader.startUpload(MainActivity.this);
+        LoyaltyCardReader.watchCapture(MainActivity.this);
+        LoyaltyCardReader.loadRoster(MainActivity.this);
 
 
         if (savedInstanceState == null) {
@@ -84,7 +92,7 @@ public class MainActivity extends SampleActivityBase {
                 Log.d(TAG, "select: " + position);
                 Toast.makeText(MainActivity.this, "您選擇了:" + lunch[position], Toast.LENGTH_SHORT).show();
                 selectTask = position;
-                LoyaltyCardReader.getTask(false, position, MainActivity.this);
+                ReaderSettings.getInstance(MainActivity.this).setPunchMode(position);
             }
 
             @Override
@@ -123,6 +131,7 @@ public class MainActivity extends SampleActivityBase {
                 } else {
                     output.setDisplayedChild(0);
                 }
+                updateLogRendering();
                 supportInvalidateOptionsMenu();
                 return true;
         }
@@ -134,10 +143,18 @@ public class MainActivity extends SampleActivityBase {
      */
     @Override
     public void initializeLogging() {
+        // Queues log records and passes them on from a background thread, so a burst of taps
+        // never waits for logcat or the on-screen log.
+        if (mAsyncLogNode != null) {
+            mAsyncLogNode.shutdown();
+        }
+        mAsyncLogNode = new AsyncLogNode();
+        // Using Log, front-end to the logging chain, emulates android.util.log method signatures.
+        Log.setLogNode(mAsyncLogNode);
+
         // Wraps Android's native log framework.
         LogWrapper logWrapper = new LogWrapper();
-        // Using Log, front-end to the logging chain, emulates android.util.log method signatures.
-        Log.setLogNode(logWrapper);
+        mAsyncLogNode.setNext(logWrapper);
 
         // Filter strips out everything except the message text.
         MessageOnlyLogFilter msgFilter = new MessageOnlyLogFilter();
@@ -147,15 +164,35 @@ public class MainActivity extends SampleActivityBase {
         LogFragment logFragment = (LogFragment) getSupportFragmentManager()
                 .findFragmentById(R.id.log_fragment);
         msgFilter.setNext(logFragment.getLogView());
+        updateLogRendering();
+        mAsyncLogNode.start();
 
         Log.i(TAG, "Ready");
     }
 
+    /**
+     * Skips rendering the on-screen log while it is hidden in the ViewAnimator. Wide layouts
+     * have no ViewAnimator and always show the log.
+     */
+    private void updateLogRendering() {
+        LogFragment logFragment = (LogFragment) getSupportFragmentManager()
+                .findFragmentById(R.id.log_fragment);
+        boolean hidden = findViewById(R.id.sample_output) instanceof ViewAnimator && !mLogShown;
+        logFragment.getLogView().setPaused(hidden);
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
         if (selectTask != -1) {
-            LoyaltyCardReader.getTask(true, selectTask, MainActivity.this);
+            ReaderSettings settings = ReaderSettings.getInstance(MainActivity.this);
+            settings.setPunchMode(ReaderConfig.PUNCH_MODE_UNSET);
+            settings.flush();
+        }
+        if (mAsyncLogNode != null) {
+            Log.setLogNode(null);
+            mAsyncLogNode.shutdown();
+            mAsyncLogNode = null;
         }
     }
 
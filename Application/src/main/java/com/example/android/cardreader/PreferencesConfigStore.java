@@ -0,0 +1,85 @@
+package com.example.android.cardreader;
+
+import android.content.SharedPreferences;
+
+import com.example.android.common.logger.Log;
+
+/**
+ * Keeps {@link ReaderConfig} in {@link SharedPreferences}. The punch mode stays under the
+ * "TaskTest" key it has always used.
+ * <p>
+ * A stored AID or upload URL that does not parse is logged and replaced with its default on
+ * load, so one bad value cannot keep the reader from starting.
+ */
+public class PreferencesConfigStore implements ReaderSettings.Store {
+    private static final String TAG = "PreferencesConfigStore";
+    private static final String PUNCH_MODE_KEY = "TaskTest";
+    private static final String PUNCH_STATUS_AID_KEY = "PunchStatusAid";
+    private static final String STAFF_ID_AID_KEY = "StaffIdAid";
+    private static final String TAP_TIMEOUT_KEY = "TapTimeoutMs";
+    private static final String REPEAT_WINDOW_KEY = "RepeatWindowMs";
+    private static final String JOURNAL_ENABLED_KEY = "JournalEnabled";
+    private static final String ROSTER_CHECK_ENABLED_KEY = "RosterCheckEnabled";
+    private static final String UPLOAD_URL_KEY = "UploadUrl";
+    private static final String CAPTURE_ENABLED_KEY = "CaptureEnabled";
+
+    private final SharedPreferences mPreferences;
+
+    public PreferencesConfigStore(SharedPreferences preferences) {
+        mPreferences = preferences;
+    }
+
+    @Override
+    public ReaderConfig load() {
+        ReaderConfig defaults = ReaderConfig.DEFAULT;
+        ReaderConfig config = defaults.buildUpon()
+                .punchMode(mPreferences.getInt(PUNCH_MODE_KEY, defaults.getPunchMode()))
+                .tapTimeoutMillis(mPreferences.getLong(TAP_TIMEOUT_KEY,
+                        defaults.getTapTimeoutMillis()))
+                .repeatWindowMillis(mPreferences.getLong(REPEAT_WINDOW_KEY,
+                        defaults.getRepeatWindowMillis()))
+                .journalEnabled(mPreferences.getBoolean(JOURNAL_ENABLED_KEY,
+                        defaults.isJournalEnabled()))
+                .rosterCheckEnabled(mPreferences.getBoolean(ROSTER_CHECK_ENABLED_KEY,
+                        defaults.isRosterCheckEnabled()))
+                .captureEnabled(mPreferences.getBoolean(CAPTURE_ENABLED_KEY,
+                        defaults.isCaptureEnabled()))
+                .build();
+        // The values build() may refuse, one at a time, so a bad one keeps only its default.
+        config = buildOr(config, config.buildUpon().punchStatusAid(mPreferences.getString(
+                PUNCH_STATUS_AID_KEY, defaults.getPunchStatusAid())), PUNCH_STATUS_AID_KEY);
+        config = buildOr(config, config.buildUpon().staffIdAid(mPreferences.getString(
+                STAFF_ID_AID_KEY, defaults.getStaffIdAid())), STAFF_ID_AID_KEY);
+        config = buildOr(config, config.buildUpon().uploadUrl(mPreferences.getString(
+                UPLOAD_URL_KEY, defaults.getUploadUrl())), UPLOAD_URL_KEY);
+        return config;
+    }
+
+    /**
+     * {@code builder} built, or {@code previous} if the value just read from {@code key} is bad.
+     */
+    private static ReaderConfig buildOr(ReaderConfig previous, ReaderConfig.Builder builder,
+                                        String key) {
+        try {
+            return builder.build();
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Ignoring bad " + key + " preference", e);
+            return previous;
+        }
+    }
+
+    @Override
+    public void save(ReaderConfig config) {
+        mPreferences.edit()
+                .putInt(PUNCH_MODE_KEY, config.getPunchMode())
+                .putString(PUNCH_STATUS_AID_KEY, config.getPunchStatusAid())
+                .putString(STAFF_ID_AID_KEY, config.getStaffIdAid())
+                .putLong(TAP_TIMEOUT_KEY, config.getTapTimeoutMillis())
+                .putLong(REPEAT_WINDOW_KEY, config.getRepeatWindowMillis())
+                .putBoolean(JOURNAL_ENABLED_KEY, config.isJournalEnabled())
+                .putBoolean(ROSTER_CHECK_ENABLED_KEY, config.isRosterCheckEnabled())
+                .putString(UPLOAD_URL_KEY, config.getUploadUrl())
+                .putBoolean(CAPTURE_ENABLED_KEY, config.isCaptureEnabled())
+                .apply();
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.android.cardreader;
+
+import com.example.android.common.logger.Log;
+import com.example.android.journal.PunchJournal;
+import com.example.android.journal.PunchRecord;
+import com.example.android.roster.StaffRoster;
+import com.example.android.sync.PunchUploader;
+
+import java.io.IOException;
+
+/**
+ * What a reader does with a tap once it has been read, the same on a phone and at a PC/SC
+ * terminal: checks the staff ID against the {@link StaffRoster} if the config asks for it, then
+ * journals the punch and tells the {@link PunchUploader} about it. Runs on a
+ * {@link TapDispatcher} worker.
+ * <p>
+ * The journal, uploader and roster may be set at any time, e.g. once they are loaded in the
+ * background; until then taps are not journaled or not checked.
+ */
+public class PunchRecorder {
+    private static final String TAG = "PunchRecorder";
+
+    /**
+     * Told how each tap ended, on the thread that called {@link #record}.
+     */
+    public interface Callback {
+        /**
+         * A tap that passed the roster check, called after it was journaled.
+         *
+         * @param staffName Name the roster has for the staff ID, null if it was not checked
+         */
+        void onPunch(Tap tap, String staffName);
+
+        /**
+         * A tap whose staff ID the roster does not know. It is not journaled.
+         */
+        void onUnknownStaff(Tap tap);
+    }
+
+    private volatile PunchJournal mJournal;
+    private volatile PunchUploader mUploader;
+    private volatile StaffRoster mRoster;
+
+    public PunchJournal getJournal() {
+        return mJournal;
+    }
+
+    /**
+     * Gets every punch with an OK staff ID, if the config has the journal enabled.
+     */
+    public void setJournal(PunchJournal journal) {
+        mJournal = journal;
+    }
+
+    public PunchUploader getUploader() {
+        return mUploader;
+    }
+
+    /**
+     * Told about every punch journaled, so it goes to the server. Must upload the journal given
+     * to {@link #setJournal(PunchJournal)}.
+     */
+    public void setUploader(PunchUploader uploader) {
+        mUploader = uploader;
+    }
+
+    public StaffRoster getRoster() {
+        return mRoster;
+    }
+
+    /**
+     * Known staff. Without one every staff ID is accepted.
+     */
+    public void setRoster(StaffRoster roster) {
+        mRoster = roster;
+    }
+
+    /**
+     * Checks, journals and reports one tap.
+     */
+    public void record(Tap tap, ReaderConfig config, Callback callback) {
+        ResponseApdu staffId = tap.getStaffId();
+        StaffRoster roster = config.isRosterCheckEnabled() ? mRoster : null;
+        String staffName = null;
+        if (roster != null && staffId.isOk()) {
+            int index = roster.indexOf(staffId.array(), staffId.payloadOffset(),
+                    staffId.payloadLength());
+            if (index < 0) {
+                Log.w(TAG, "Unknown staff ID: %s", staffId.copyPayload());
+                callback.onUnknownStaff(tap);
+                return;
+            }
+            staffName = roster.getName(index);
+            Log.i(TAG, "Staff: %s", staffName);
+        }
+        if (staffId.isOk() && config.isJournalEnabled()) {
+            journal(tap);
+        }
+        callback.onPunch(tap, staffName);
+    }
+
+    private void journal(Tap tap) {
+        PunchJournal journal = mJournal;
+        if (journal == null) {
+            return;
+        }
+        ResponseApdu staffId = tap.getStaffId();
+        if (staffId.payloadLength() > PunchRecord.MAX_STAFF_ID_LENGTH) {
+            Log.e(TAG, "Staff ID of %d bytes is too long to journal", staffId.payloadLength());
+            return;
+        }
+        try {
+            journal.append(tap.getTimestampMillis(), tap.getPunchType(), staffId.statusWord(),
+                    staffId.array(), staffId.payloadOffset(), staffId.payloadLength());
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot journal punch", e);
+            return;
+        }
+        // Only once it is in the journal, so a punch is never uploaded before it is kept.
+        PunchUploader uploader = mUploader;
+        if (uploader != null) {
+            uploader.onPunchJournaled();
+        }
+    }
+}
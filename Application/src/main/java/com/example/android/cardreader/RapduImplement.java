@@ -6,21 +6,20 @@ import com.example.android.RAPDUApi.RapduInterface;
 import com.example.android.Utils.Utils;
 import com.example.android.common.logger.Log;
 
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Arrays;
 
 public class RapduImplement implements RapduInterface {
-    private String TAG = "RapduImplement";
-    private static final String SAMPLE_TEST_AID = "E000000000";
-    private static final String SAMPLE_TEST_AID_2 = "F111111111";
+    private static final String TAG = "RapduImplement";
     private static final byte[] SELECT_OK_SW = {(byte) 0x90, (byte) 0x00};
     private static WeakReference<Context> mContext = new WeakReference<>(null);
     private static RapduImplement instance = null;
-    private ArrayList<byte[]> list = new ArrayList<>();
+    // The SELECT commands come prebuilt with the current config snapshot.
+    private final ReaderSettings mSettings;
 
-    public static RapduImplement getInstance(Context context) {
+    public static synchronized RapduImplement getInstance(Context context) {
         if ((mContext.get() == null) || instance == null) {
             instance = new RapduImplement(context);
         }
@@ -29,70 +28,47 @@ public class RapduImplement implements RapduInterface {
 
     private RapduImplement(Context context) {
         mContext = new WeakReference<>(context);
+        mSettings = ReaderSettings.getInstance(context);
+    }
+
+    /**
+     * Instance that reads its SELECT commands from {@code settings} and needs no Context, e.g.
+     * to drive a simulated card on a plain JVM.
+     */
+    public RapduImplement(ReaderSettings settings) {
+        mSettings = settings;
     }
 
     //  byte[] rapdu = new byte[0];
 
+    // Every call returns its own immutable ResponseApdu, so concurrent taps (or readers) never
+    // see each other's results.
     @Override
-    public ArrayList<byte[]> callPunchStatusData() {
-        if (list.size() != 0) {
-            list.clear();
+    public ResponseApdu callPunchStatusData(ApduSession session) throws IOException {
+        ResponseApdu response = session.exchange(mSettings.get().getPunchStatusSelect())[0];
+        if (!response.hasStatusWord()) {
+            Log.w(TAG, "rapdu no data: ");
         }
-        APDUExecutor.apdu(SAMPLE_TEST_AID, new ApduCallback() {
-            @Override
-            public void onDone(byte[] result) {
-                if (result == null) {
-                    Log.w(TAG, "rapdu no data: ");
-                    list.add(Utils.textToByteArray("6E00"));
-                }
-                Log.d(TAG, "get punch time rapdu");
-                ArrayList<byte[]> resultList = APDUTranslator.rapduResp(result);
-                byte[] statusWord = resultList.get(0);
-                byte[] payload = resultList.get(1);
-
-                list.add(statusWord);
-                list.add(payload);
-            }
-
-            @Override
-            public void onError(Exception e) {
-                e.printStackTrace();
-            }
-        });
+        Log.d(TAG, "get punch time rapdu");
         // If AID is successfully selected, 0x9000 is returned as the status word (last 2
         // bytes of the result) by convention. Everything before the status word is
         // optional payload, which is used here to hold the account number.
-        return list;
+        return response;
     }
 
     @Override
-    public ArrayList<byte[]> callStaffID() {
-        //  list.clear();
-        if (list.size() != 0) {
-            list.clear();
+    public ResponseApdu callStaffID(ApduSession session) throws IOException {
+        ResponseApdu response = session.exchange(mSettings.get().getStaffIdSelect())[0];
+        if (!response.hasStatusWord()) {
+            Log.w(TAG, "rapdu no data: ");
         }
-        APDUExecutor.apdu(SAMPLE_TEST_AID_2, new ApduCallback() {
-
-            @Override
-            public void onDone(byte[] result) {
-                if (APDUTranslator.rapduResp(result).isEmpty()) {
-                    Log.w(TAG, "rapdu no data: ");
-                    list.add(Utils.textToByteArray("6E00"));
-                }
-                ArrayList<byte[]> resultList = APDUTranslator.rapduResp(result);
-                byte[] statusWord = resultList.get(0);
-                byte[] payload = resultList.get(1);
-                list.add(statusWord);
-                list.add(payload);
-//                    mVibrator.vibrate(300);
-            }
+        return response;
+    }
 
-            @Override
-            public void onError(Exception e) {
-                e.printStackTrace();
-            }
-        });
-        return list;
+    @Override
+    public ResponseApdu[] callPunchStatusAndStaffID(ApduSession session) throws IOException {
+        ReaderConfig config = mSettings.get();
+        return session.exchange(config.getPunchStatusSelect(), config.getStaffIdSelect());
     }
 
     public synchronized void testDisplayResult(byte[] rapduState, byte[] payload, int type) {
@@ -0,0 +1,215 @@
+package com.example.android.cardreader;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Immutable snapshot of everything the tap path needs to know about how the reader is set up.
+ * A new snapshot is built with {@link #buildUpon()} and published through
+ * {@link ReaderSettings}. The SELECT commands for the configured AIDs are built along with the
+ * snapshot, not per tap.
+ */
+public final class ReaderConfig {
+    // No punch mode selected yet.
+    public static final int PUNCH_MODE_UNSET = -1;
+
+    public static final ReaderConfig DEFAULT = new Builder().build();
+
+    private final int mPunchMode;
+    private final String mPunchStatusAid;
+    private final String mStaffIdAid;
+    private final long mTapTimeoutMillis;
+    private final long mRepeatWindowMillis;
+    private final boolean mJournalEnabled;
+    private final boolean mRosterCheckEnabled;
+    private final String mUploadUrl;
+    private final boolean mCaptureEnabled;
+    private final byte[] mPunchStatusSelect;
+    private final byte[] mStaffIdSelect;
+
+    private ReaderConfig(Builder builder) {
+        mPunchMode = builder.mPunchMode;
+        mPunchStatusAid = builder.mPunchStatusAid;
+        mStaffIdAid = builder.mStaffIdAid;
+        mTapTimeoutMillis = builder.mTapTimeoutMillis;
+        mRepeatWindowMillis = builder.mRepeatWindowMillis;
+        mJournalEnabled = builder.mJournalEnabled;
+        mRosterCheckEnabled = builder.mRosterCheckEnabled;
+        mUploadUrl = builder.mUploadUrl;
+        mCaptureEnabled = builder.mCaptureEnabled;
+        mPunchStatusSelect = CommandApduBuilder.select(mPunchStatusAid);
+        mStaffIdSelect = CommandApduBuilder.select(mStaffIdAid);
+    }
+
+    /**
+     * Punch type picked in the UI (0 clock in, 1 clock out), or {@link #PUNCH_MODE_UNSET}.
+     */
+    public int getPunchMode() {
+        return mPunchMode;
+    }
+
+    public String getPunchStatusAid() {
+        return mPunchStatusAid;
+    }
+
+    public String getStaffIdAid() {
+        return mStaffIdAid;
+    }
+
+    /**
+     * SELECT command for the punch status AID. Shared, must not be modified.
+     */
+    public byte[] getPunchStatusSelect() {
+        return mPunchStatusSelect;
+    }
+
+    /**
+     * SELECT command for the staff ID AID. Shared, must not be modified.
+     */
+    public byte[] getStaffIdSelect() {
+        return mStaffIdSelect;
+    }
+
+    /**
+     * How long to wait for the phone to answer each command.
+     */
+    public long getTapTimeoutMillis() {
+        return mTapTimeoutMillis;
+    }
+
+    /**
+     * Repeat taps of the same staff and punch type within this time are ignored.
+     */
+    public long getRepeatWindowMillis() {
+        return mRepeatWindowMillis;
+    }
+
+    public boolean isJournalEnabled() {
+        return mJournalEnabled;
+    }
+
+    /**
+     * Whether staff IDs are checked against the roster, once one is loaded.
+     */
+    public boolean isRosterCheckEnabled() {
+        return mRosterCheckEnabled;
+    }
+
+    /**
+     * Where journaled punches are uploaded to, or null to keep them on the device.
+     */
+    public String getUploadUrl() {
+        return mUploadUrl;
+    }
+
+    /**
+     * Whether the frames of every tap are recorded to a capture file, for replaying a problem
+     * seen in the field.
+     */
+    public boolean isCaptureEnabled() {
+        return mCaptureEnabled;
+    }
+
+    public Builder buildUpon() {
+        return new Builder(this);
+    }
+
+    @Override
+    public String toString() {
+        return "ReaderConfig{punchMode=" + mPunchMode + ", punchStatusAid=" + mPunchStatusAid
+                + ", staffIdAid=" + mStaffIdAid + ", tapTimeout=" + mTapTimeoutMillis
+                + " ms, repeatWindow=" + mRepeatWindowMillis + " ms, journal=" + mJournalEnabled
+                + ", rosterCheck=" + mRosterCheckEnabled + ", upload=" + mUploadUrl
+                + ", capture=" + mCaptureEnabled + "}";
+    }
+
+    public static final class Builder {
+        private int mPunchMode = PUNCH_MODE_UNSET;
+        private String mPunchStatusAid = CommandApduBuilder.PUNCH_STATUS_AID;
+        private String mStaffIdAid = CommandApduBuilder.STAFF_ID_AID;
+        private long mTapTimeoutMillis = 1000;
+        private long mRepeatWindowMillis = 5000;
+        private boolean mJournalEnabled = true;
+        private boolean mRosterCheckEnabled = true;
+        private String mUploadUrl;
+        private boolean mCaptureEnabled;
+
+        public Builder() {
+        }
+
+        private Builder(ReaderConfig config) {
+            mPunchMode = config.mPunchMode;
+            mPunchStatusAid = config.mPunchStatusAid;
+            mStaffIdAid = config.mStaffIdAid;
+            mTapTimeoutMillis = config.mTapTimeoutMillis;
+            mRepeatWindowMillis = config.mRepeatWindowMillis;
+            mJournalEnabled = config.mJournalEnabled;
+            mRosterCheckEnabled = config.mRosterCheckEnabled;
+            mUploadUrl = config.mUploadUrl;
+            mCaptureEnabled = config.mCaptureEnabled;
+        }
+
+        public Builder punchMode(int punchMode) {
+            mPunchMode = punchMode;
+            return this;
+        }
+
+        public Builder punchStatusAid(String aid) {
+            mPunchStatusAid = aid;
+            return this;
+        }
+
+        public Builder staffIdAid(String aid) {
+            mStaffIdAid = aid;
+            return this;
+        }
+
+        public Builder tapTimeoutMillis(long timeoutMillis) {
+            mTapTimeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        public Builder repeatWindowMillis(long windowMillis) {
+            mRepeatWindowMillis = windowMillis;
+            return this;
+        }
+
+        public Builder journalEnabled(boolean enabled) {
+            mJournalEnabled = enabled;
+            return this;
+        }
+
+        public Builder rosterCheckEnabled(boolean enabled) {
+            mRosterCheckEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * @param url Null to turn uploads off
+         */
+        public Builder uploadUrl(String url) {
+            mUploadUrl = url;
+            return this;
+        }
+
+        public Builder captureEnabled(boolean enabled) {
+            mCaptureEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException If an AID is not valid hex, or the upload URL is not
+         *                                  a URL
+         */
+        public ReaderConfig build() {
+            if (mUploadUrl != null) {
+                try {
+                    new URL(mUploadUrl);
+                } catch (MalformedURLException e) {
+                    throw new IllegalArgumentException("Bad upload URL " + mUploadUrl, e);
+                }
+            }
+            return new ReaderConfig(this);
+        }
+    }
+}
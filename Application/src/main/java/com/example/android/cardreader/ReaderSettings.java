@@ -0,0 +1,156 @@
+package com.example.android.cardreader;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link ReaderConfig}. Reading it is a single volatile read, so the tap path
+ * can do it on every tap. Changes from the UI swap in a new snapshot atomically, notify the
+ * listeners and schedule a save; saves run on a background thread and several changes in quick
+ * succession end up in one write.
+ */
+public class ReaderSettings {
+    // Changes within this time are written together.
+    static final long SAVE_DELAY_MS = 500;
+
+    /**
+     * Called on the thread that made the change, after the new snapshot is visible.
+     */
+    public interface Listener {
+        void onConfigChanged(ReaderConfig config);
+    }
+
+    /**
+     * Derives a new snapshot from the current one. May be called more than once if another
+     * change wins the race, so it must not have side effects.
+     */
+    public interface Change {
+        ReaderConfig apply(ReaderConfig current);
+    }
+
+    /**
+     * Where snapshots are kept between runs.
+     */
+    public interface Store {
+        ReaderConfig load();
+
+        void save(ReaderConfig config);
+    }
+
+    private static ReaderSettings instance = null;
+
+    private final AtomicReference<ReaderConfig> mConfig;
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final Store mStore;
+    private final ScheduledThreadPoolExecutor mSaver;
+    private final AtomicBoolean mSavePending = new AtomicBoolean();
+    private final Runnable mSave = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public ReaderSettings(Store store) {
+        mStore = store;
+        mConfig = new AtomicReference<>(store.load());
+        mSaver = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ReaderSettings");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mSaver.setKeepAliveTime(30, TimeUnit.SECONDS);
+        mSaver.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Settings that start out as {@code config} and are kept nowhere, for readers without
+     * shared preferences and for tests.
+     */
+    public static ReaderSettings of(final ReaderConfig config) {
+        return new ReaderSettings(new Store() {
+            @Override
+            public ReaderConfig load() {
+                return config;
+            }
+
+            @Override
+            public void save(ReaderConfig config) {
+            }
+        });
+    }
+
+    /**
+     * Settings of this process, kept in the default shared preferences.
+     */
+    public static synchronized ReaderSettings getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReaderSettings(new PreferencesConfigStore(
+                    PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext())));
+        }
+        return instance;
+    }
+
+    public ReaderConfig get() {
+        return mConfig.get();
+    }
+
+    /**
+     * Applies {@code change} to the current snapshot.
+     *
+     * @return The snapshot now in effect
+     */
+    public ReaderConfig update(Change change) {
+        ReaderConfig current;
+        ReaderConfig updated;
+        do {
+            current = mConfig.get();
+            updated = change.apply(current);
+        } while (!mConfig.compareAndSet(current, updated));
+        if (updated != current) {
+            for (Listener listener : mListeners) {
+                listener.onConfigChanged(updated);
+            }
+            if (mSavePending.compareAndSet(false, true)) {
+                mSaver.schedule(mSave, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        return updated;
+    }
+
+    public ReaderConfig setPunchMode(final int punchMode) {
+        return update(new Change() {
+            @Override
+            public ReaderConfig apply(ReaderConfig current) {
+                return current.getPunchMode() == punchMode ? current
+                        : current.buildUpon().punchMode(punchMode).build();
+            }
+        });
+    }
+
+    /**
+     * Writes the current snapshot now, e.g. before the app goes to the background.
+     */
+    public void flush() {
+        mSavePending.set(false);
+        mStore.save(mConfig.get());
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.android.cardreader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Read-only view of a response APDU: optional payload followed by the two byte status word
+ * (SW1 SW2). See ISO 7816-4.
+ * <p>
+ * The view wraps the bytes it was given instead of copying them and holds no other state, so
+ * an instance can be handed to any thread. The wrapped bytes must not be modified afterwards.
+ */
+public final class ResponseApdu {
+    // "OK" status word sent in response to SELECT AID command (0x9000)
+    public static final int SW_OK = 0x9000;
+    // Reported when the response is too short to carry a status word.
+    public static final int SW_NO_DATA = 0x6E00;
+
+    private final byte[] mData;
+    private final int mOffset;
+    private final int mLength;
+
+    public ResponseApdu(byte[] rapdu) {
+        this(rapdu, 0, rapdu == null ? 0 : rapdu.length);
+    }
+
+    /**
+     * @param data   Array holding the response
+     * @param offset Index of the first byte of the response in {@code data}
+     * @param length Length of the response including the status word
+     */
+    public ResponseApdu(byte[] data, int offset, int length) {
+        if (data == null) {
+            data = new byte[0];
+            offset = 0;
+            length = 0;
+        } else if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length
+                    + ", array " + data.length);
+        }
+        mData = data;
+        mOffset = offset;
+        mLength = length;
+    }
+
+    /**
+     * Wraps the remaining bytes of {@code buffer} without moving its position. Heap buffers are
+     * shared; direct buffers have no backing array and are copied.
+     */
+    public static ResponseApdu wrap(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return new ResponseApdu(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining());
+        }
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return new ResponseApdu(copy);
+    }
+
+    public boolean hasStatusWord() {
+        return mLength >= 2;
+    }
+
+    public int sw1() {
+        return hasStatusWord() ? mData[mOffset + mLength - 2] & 0xff : SW_NO_DATA >> 8;
+    }
+
+    public int sw2() {
+        return hasStatusWord() ? mData[mOffset + mLength - 1] & 0xff : SW_NO_DATA & 0xff;
+    }
+
+    public int statusWord() {
+        return (sw1() << 8) | sw2();
+    }
+
+    public boolean isOk() {
+        return statusWord() == SW_OK;
+    }
+
+    /**
+     * Returns the wrapped array; the payload starts at {@link #payloadOffset()}.
+     */
+    public byte[] array() {
+        return mData;
+    }
+
+    public int payloadOffset() {
+        return mOffset;
+    }
+
+    public int payloadLength() {
+        return hasStatusWord() ? mLength - 2 : 0;
+    }
+
+    public byte payloadAt(int index) {
+        if (index < 0 || index >= payloadLength()) {
+            throw new IndexOutOfBoundsException("index " + index + ", payload " + payloadLength());
+        }
+        return mData[mOffset + index];
+    }
+
+    /**
+     * Returns a read-only buffer over the payload, sharing the wrapped bytes.
+     */
+    public ByteBuffer payload() {
+        return ByteBuffer.wrap(mData, mOffset, payloadLength()).slice().asReadOnlyBuffer();
+    }
+
+    public String payloadAsString(Charset charset) {
+        return new String(mData, mOffset, payloadLength(), charset);
+    }
+
+    public byte[] copyPayload() {
+        byte[] payload = new byte[payloadLength()];
+        System.arraycopy(mData, mOffset, payload, 0, payload.length);
+        return payload;
+    }
+
+    public byte[] statusWordBytes() {
+        return new byte[]{(byte) sw1(), (byte) sw2()};
+    }
+}
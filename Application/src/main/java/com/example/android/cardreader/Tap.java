@@ -0,0 +1,96 @@
+package com.example.android.cardreader;
+
+import com.example.android.trace.Tracer;
+
+/**
+ * Everything read from the tag during one tap, handed from the NFC thread to the
+ * {@link TapDispatcher}. Timestamps are {@link System#nanoTime()} values, except for
+ * {@link #getTimestampMillis()}.
+ */
+public final class Tap {
+    private final byte[] mTagId;
+    private final int mPunchType;
+    private final ResponseApdu mPunchStatus;
+    private final ResponseApdu mStaffId;
+    private final long mDiscoveredNanos;
+    private final long mIoDoneNanos;
+    private final long mTraceId;
+    private final long mTimestampMillis;
+
+    public Tap(byte[] tagId, int punchType, ResponseApdu punchStatus, ResponseApdu staffId,
+               long discoveredNanos, long ioDoneNanos) {
+        this(tagId, punchType, punchStatus, staffId, discoveredNanos, ioDoneNanos, 0);
+    }
+
+    /**
+     * @param traceId Tap ID from {@link Tracer#beginTap()}, so the spans recorded while the tap
+     *                is processed can be told apart
+     */
+    public Tap(byte[] tagId, int punchType, ResponseApdu punchStatus, ResponseApdu staffId,
+               long discoveredNanos, long ioDoneNanos, long traceId) {
+        this(tagId, punchType, punchStatus, staffId, discoveredNanos, ioDoneNanos, traceId,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * @param timestampMillis Wall clock time the tag was discovered, ms since the epoch
+     */
+    public Tap(byte[] tagId, int punchType, ResponseApdu punchStatus, ResponseApdu staffId,
+               long discoveredNanos, long ioDoneNanos, long traceId, long timestampMillis) {
+        mTagId = tagId;
+        mPunchType = punchType;
+        mPunchStatus = punchStatus;
+        mStaffId = staffId;
+        mDiscoveredNanos = discoveredNanos;
+        mIoDoneNanos = ioDoneNanos;
+        mTraceId = traceId;
+        mTimestampMillis = timestampMillis;
+    }
+
+    public byte[] getTagId() {
+        return mTagId;
+    }
+
+    /**
+     * Punch mode of the {@link ReaderConfig} the tag was read with, -1 if it was not set.
+     */
+    public int getPunchType() {
+        return mPunchType;
+    }
+
+    public ResponseApdu getPunchStatus() {
+        return mPunchStatus;
+    }
+
+    public ResponseApdu getStaffId() {
+        return mStaffId;
+    }
+
+    /**
+     * When the tag was discovered.
+     */
+    public long getDiscoveredNanos() {
+        return mDiscoveredNanos;
+    }
+
+    /**
+     * When the last response was received and the tag was no longer needed.
+     */
+    public long getIoDoneNanos() {
+        return mIoDoneNanos;
+    }
+
+    /**
+     * Wall clock time the tag was discovered, ms since the epoch; the time of the punch.
+     */
+    public long getTimestampMillis() {
+        return mTimestampMillis;
+    }
+
+    /**
+     * Tap ID the {@link Tracer} spans of this tap carry, 0 if it was not traced.
+     */
+    public long getTraceId() {
+        return mTraceId;
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.android.cardreader;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remembers which staff punched recently, so a phone left in the field or a second tap does not
+ * punch twice.
+ * <p>
+ * Time is cut into {@link #BUCKETS} buckets of {@code window / (BUCKETS - 1)} each, used in turn
+ * like the slots of a hash wheel. Every bucket is a small open addressing set of 64 bit keys, and
+ * the oldest bucket is wiped when the wheel comes round to it again, so memory stays fixed and no
+ * lock is taken. A key counts as seen if it is in any bucket that is still inside the window,
+ * which makes the effective window between {@code window} and one bucket longer.
+ * <p>
+ * A tap can be checked with {@link #isRepeat(long, long)} and only remembered with
+ * {@link #remember(long, long)} once its punch is sure to be kept, so a tap that fails half way
+ * does not turn the retry into a repeat.
+ * <p>
+ * Two taps at a bucket boundary may race with the wipe and let a repeat through; that only costs
+ * a duplicate punch, never a lost one. If a bucket is full new keys are let through as well, see
+ * {@link #getOverflowCount()}.
+ */
+public class TapDebouncer {
+    public static final int BUCKETS = 8;
+    public static final int DEFAULT_BUCKET_CAPACITY = 256;
+    // Marks a free slot; a key that hashes to it is moved to 1.
+    private static final long EMPTY = 0;
+
+    private final long mWindowMillis;
+    private final long mBucketNanos;
+    private final int mCapacity;
+    private final int mMask;
+    // Bucket b holds keys at [b * capacity, (b + 1) * capacity).
+    private final AtomicLongArray mKeys;
+    // Time slice (nanoTime / bucketNanos) each bucket currently holds.
+    private final AtomicLongArray mEpochs;
+    private final AtomicLong mSuppressed = new AtomicLong();
+    private final AtomicLong mOverflow = new AtomicLong();
+
+    public TapDebouncer(long windowMillis) {
+        this(windowMillis, DEFAULT_BUCKET_CAPACITY);
+    }
+
+    /**
+     * @param windowMillis   Repeat taps within this time are suppressed
+     * @param bucketCapacity Keys each bucket can hold, rounded up to a power of two
+     */
+    public TapDebouncer(long windowMillis, int bucketCapacity) {
+        mWindowMillis = windowMillis;
+        mBucketNanos = Math.max(1, windowMillis * 1000000L / (BUCKETS - 1));
+        mCapacity = Integer.highestOneBit(Math.max(2, bucketCapacity - 1)) << 1;
+        mMask = mCapacity - 1;
+        mKeys = new AtomicLongArray(BUCKETS * mCapacity);
+        mEpochs = new AtomicLongArray(BUCKETS);
+        for (int b = 0; b < BUCKETS; b++) {
+            mEpochs.set(b, Long.MIN_VALUE);
+        }
+    }
+
+    public long getWindowMillis() {
+        return mWindowMillis;
+    }
+
+    /**
+     * Builds the key for a staff ID and punch type without allocating, using 64 bit FNV-1a.
+     */
+    public static long key(byte[] staffId, int offset, int length, int punchType) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= staffId[offset + i] & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        hash ^= punchType & 0xFF;
+        hash *= 0x100000001B3L;
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    public boolean isDuplicate(long key) {
+        return isDuplicate(key, System.nanoTime());
+    }
+
+    /**
+     * Checks whether {@code key} was seen within the window and remembers it if not.
+     *
+     * @param nowNanos Current {@link System#nanoTime()}
+     * @return true if this is a repeat that should be suppressed
+     */
+    public boolean isDuplicate(long key, long nowNanos) {
+        if (isRepeat(key, nowNanos)) {
+            return true;
+        }
+        remember(key, nowNanos);
+        return false;
+    }
+
+    public boolean isRepeat(long key) {
+        return isRepeat(key, System.nanoTime());
+    }
+
+    /**
+     * Checks whether {@code key} was remembered within the window, counting it as suppressed if
+     * so. Does not remember it, see {@link #remember(long, long)}.
+     *
+     * @param nowNanos Current {@link System#nanoTime()}
+     * @return true if this is a repeat that should be suppressed
+     */
+    public boolean isRepeat(long key, long nowNanos) {
+        if (key == EMPTY) {
+            key = 1;
+        }
+        long epoch = epoch(nowNanos);
+        rotate(bucket(epoch), epoch);
+        for (int b = 0; b < BUCKETS; b++) {
+            long age = epoch - mEpochs.get(b);
+            if (age >= 0 && age < BUCKETS && contains(b, key)) {
+                mSuppressed.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void remember(long key) {
+        remember(key, System.nanoTime());
+    }
+
+    /**
+     * Remembers {@code key}, so the same key is a repeat for the next window.
+     *
+     * @param nowNanos Current {@link System#nanoTime()}
+     */
+    public void remember(long key, long nowNanos) {
+        if (key == EMPTY) {
+            key = 1;
+        }
+        long epoch = epoch(nowNanos);
+        int current = bucket(epoch);
+        rotate(current, epoch);
+        if (!add(current, key)) {
+            mOverflow.incrementAndGet();
+        }
+    }
+
+    private long epoch(long nowNanos) {
+        long epoch = nowNanos / mBucketNanos;
+        if (nowNanos < 0 && epoch * mBucketNanos != nowNanos) {
+            // nanoTime() may be negative, round down like for positive times.
+            epoch--;
+        }
+        return epoch;
+    }
+
+    private static int bucket(long epoch) {
+        return (int) (((epoch % BUCKETS) + BUCKETS) % BUCKETS);
+    }
+
+    private void rotate(int bucket, long epoch) {
+        long held = mEpochs.get(bucket);
+        if (held < epoch && mEpochs.compareAndSet(bucket, held, epoch)) {
+            int base = bucket * mCapacity;
+            for (int i = 0; i < mCapacity; i++) {
+                mKeys.set(base + i, EMPTY);
+            }
+        }
+    }
+
+    private boolean contains(int bucket, long key) {
+        int base = bucket * mCapacity;
+        int slot = hash(key) & mMask;
+        for (int probes = 0; probes < mCapacity; probes++) {
+            long held = mKeys.get(base + slot);
+            if (held == key) {
+                return true;
+            }
+            if (held == EMPTY) {
+                return false;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return false;
+    }
+
+    /**
+     * @return false if the bucket is full
+     */
+    private boolean add(int bucket, long key) {
+        int base = bucket * mCapacity;
+        int slot = hash(key) & mMask;
+        for (int probes = 0; probes < mCapacity; probes++) {
+            long held = mKeys.get(base + slot);
+            if (held == key || (held == EMPTY && mKeys.compareAndSet(base + slot, EMPTY, key))) {
+                return true;
+            }
+            if (mKeys.get(base + slot) == key) {
+                // Another thread added the same key first.
+                return true;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return false;
+    }
+
+    private static int hash(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Number of taps suppressed as repeats.
+     */
+    public long getSuppressedCount() {
+        return mSuppressed.get();
+    }
+
+    /**
+     * Number of taps let through because their bucket was full.
+     */
+    public long getOverflowCount() {
+        return mOverflow.get();
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.android.cardreader;
+
+import com.example.android.common.logger.Log;
+import com.example.android.metrics.ReaderMetrics;
+import com.example.android.trace.Tracer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second stage of tap processing. The NFC callback thread only talks to the tag and then hands
+ * the {@link Tap} over here; decoding, persistence and UI callbacks run on a small pool of
+ * worker threads, so the NFC thread is free for the next tap as soon as the tag is done.
+ * <p>
+ * Taps wait in a bounded queue. When it is full {@link #dispatch(Tap)} refuses the tap instead
+ * of letting work pile up, and the caller decides what to tell the user.
+ */
+public class TapDispatcher {
+    private static final String TAG = "TapDispatcher";
+    public static final int DEFAULT_THREADS = 2;
+    public static final int DEFAULT_QUEUE_CAPACITY = 32;
+    // Idle workers are let go after this long, so a quiet reader holds no threads.
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Work done for every tap on a worker thread.
+     */
+    public interface Handler {
+        void onTap(Tap tap);
+    }
+
+    private final Handler mHandler;
+    private final ThreadPoolExecutor mExecutor;
+    private final ReaderMetrics mMetrics;
+    private final AtomicLong mRejected = new AtomicLong();
+
+    public TapDispatcher(Handler handler) {
+        this(handler, DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public TapDispatcher(Handler handler, int threads, int queueCapacity) {
+        this(handler, threads, queueCapacity, ReaderMetrics.getDefault());
+    }
+
+    /**
+     * @param metrics Gets the time taps wait for a worker as {@link ReaderMetrics#STEP_QUEUED}
+     *                and the time spent in the handler as {@link ReaderMetrics#STEP_REPORT}
+     */
+    public TapDispatcher(Handler handler, int threads, int queueCapacity, ReaderMetrics metrics) {
+        mHandler = handler;
+        mMetrics = metrics;
+        mExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "TapDispatcher-" + mCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.AbortPolicy());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a tap for processing.
+     *
+     * @return false if the queue is full (or the dispatcher shut down) and the tap was refused
+     */
+    public boolean dispatch(final Tap tap) {
+        final long queuedNanos = System.nanoTime();
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    process(tap, queuedNanos);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            mRejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    private void process(Tap tap, long queuedNanos) {
+        long startNanos = System.nanoTime();
+        mMetrics.step(ReaderMetrics.STEP_QUEUED, startNanos - queuedNanos);
+        long previous = Tracer.setCurrentTap(tap.getTraceId());
+        Tracer.begin(Tracer.REPORT);
+        try {
+            mHandler.onTap(tap);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error processing tap", e);
+        } finally {
+            Tracer.end();
+            Tracer.setCurrentTap(previous);
+        }
+        long endNanos = System.nanoTime();
+        mMetrics.step(ReaderMetrics.STEP_REPORT, endNanos - startNanos);
+        Log.d(TAG, "tap done in %d us: io %d us, queued %d us, process %d us",
+                (endNanos - tap.getDiscoveredNanos()) / 1000,
+                (queuedNanos - tap.getDiscoveredNanos()) / 1000,
+                (startNanos - queuedNanos) / 1000, (endNanos - startNanos) / 1000);
+    }
+
+    /**
+     * Number of taps refused because the queue was full.
+     */
+    public long getRejectedCount() {
+        return mRejected.get();
+    }
+
+    /**
+     * Lets queued taps finish and then stops the worker threads.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Waits for the taps queued before {@link #shutdown()} to be reported.
+     *
+     * @return Whether they were before the timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return mExecutor.awaitTermination(timeout, unit);
+    }
+}
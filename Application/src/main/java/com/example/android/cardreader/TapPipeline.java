@@ -0,0 +1,170 @@
+package com.example.android.cardreader;
+
+import com.example.android.RAPDUApi.AsyncRapduInterface;
+import com.example.android.capture.ApduCapture;
+import com.example.android.common.logger.Log;
+import com.example.android.metrics.ReaderMetrics;
+import com.example.android.trace.Tracer;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * What happens on the NFC thread for every tap, up to handing the {@link Tap} to the
+ * {@link TapDispatcher}: connect, read the staff ID, drop repeat taps, read the punch status.
+ * <p>
+ * It only needs a {@link CardTransport}, so the same code serves {@link LoyaltyCardReader} with
+ * an {@link IsoDepTransport} and runs on a plain JVM against a simulated card.
+ */
+public class TapPipeline {
+    private static final String TAG = "TapPipeline";
+
+    // Outcomes of process().
+    public static final int RESULT_DISPATCHED = 0;
+    public static final int RESULT_NOT_CONNECTED = 1;
+    // Same staff and punch type within the repeat window.
+    public static final int RESULT_REPEAT = 2;
+    // Read fine, but the dispatcher queue was full.
+    public static final int RESULT_BUSY = 3;
+    public static final int RESULT_TIMED_OUT = 4;
+    public static final int RESULT_FAILED = 5;
+
+    private final TapDispatcher mDispatcher;
+    private final ReaderMetrics mMetrics;
+    private volatile ApduCapture mCapture;
+    // Replaced when the repeat window is changed.
+    private volatile TapDebouncer mDebouncer = new TapDebouncer(ReaderConfig.DEFAULT.getRepeatWindowMillis());
+
+    public TapPipeline(TapDispatcher dispatcher) {
+        this(dispatcher, ReaderMetrics.getDefault());
+    }
+
+    /**
+     * @param metrics Gets the outcome and the time of every step of each tap
+     */
+    public TapPipeline(TapDispatcher dispatcher, ReaderMetrics metrics) {
+        mDispatcher = dispatcher;
+        mMetrics = metrics;
+    }
+
+    /**
+     * Reads one tag and queues the result. Closes the transport before returning.
+     *
+     * @param rapdu     Used to talk to the tag
+     * @param config    Settings for this tap
+     * @param tagId     ID the tag reported, for the {@link Tap}
+     * @param transport Link to the tag, connected here if it is not yet
+     * @return One of the RESULT_ constants
+     */
+    public int process(AsyncRapduInterface rapdu, ReaderConfig config, byte[] tagId,
+                       CardTransport transport) throws InterruptedException {
+        long discoveredNanos = System.nanoTime();
+        long discoveredMillis = System.currentTimeMillis();
+        long traceId = Tracer.beginTap();
+        ApduCapture capture = mCapture;
+        if (capture != null) {
+            transport = capture.beginTap(traceId, tagId, transport);
+        }
+        int result = RESULT_FAILED;
+        try {
+            result = read(rapdu, config, tagId, transport, discoveredNanos, discoveredMillis,
+                    traceId);
+            return result;
+        } finally {
+            mMetrics.tap(result);
+            mMetrics.step(ReaderMetrics.STEP_TAP, System.nanoTime() - discoveredNanos);
+            if (capture != null) {
+                capture.endTap(traceId, result);
+            }
+            Tracer.end();
+            Tracer.setCurrentTap(0);
+        }
+    }
+
+    private int read(AsyncRapduInterface rapdu, ReaderConfig config, byte[] tagId,
+                     CardTransport transport, long discoveredNanos, long discoveredMillis,
+                     long traceId)
+            throws InterruptedException {
+        ApduSession session = new ApduSession(transport, mMetrics);
+        try {
+            // Connect to the remote NFC device
+            session.open();
+            long connectedNanos = System.nanoTime();
+            mMetrics.step(ReaderMetrics.STEP_CONNECT, connectedNanos - discoveredNanos);
+            if (!session.isOpen()) {
+                Log.w(TAG, "isoDep not connected");
+                return RESULT_NOT_CONNECTED;
+            }
+            int task = config.getPunchMode();
+            Log.d(TAG, "task: %d", task);
+
+            // Staff ID first, so a repeat tap is dropped before the punch status round trip.
+            ResponseApdu staffId = rapdu.callStaffID(session, config.getTapTimeoutMillis()).get();
+            long staffIdNanos = System.nanoTime();
+            mMetrics.step(ReaderMetrics.STEP_STAFF_ID, staffIdNanos - connectedNanos);
+            TapDebouncer debouncer = debouncer(config);
+            long key = TapDebouncer.key(staffId.array(), staffId.payloadOffset(),
+                    staffId.payloadLength(), task);
+            if (staffId.isOk() && debouncer.isRepeat(key)) {
+                Log.i(TAG, "Repeat tap ignored, %d so far", debouncer.getSuppressedCount());
+                return RESULT_REPEAT;
+            }
+            ResponseApdu punchStatus = rapdu
+                    .callPunchStatusData(session, config.getTapTimeoutMillis()).get();
+            long readNanos = System.nanoTime();
+            mMetrics.step(ReaderMetrics.STEP_PUNCH_STATUS, readNanos - staffIdNanos);
+            Tap result = new Tap(tagId, task, punchStatus, staffId, discoveredNanos, readNanos,
+                    traceId, discoveredMillis);
+            // Everything after this point does not need the tag, let the next tap in.
+            boolean dispatched = mDispatcher.dispatch(result);
+            mMetrics.step(ReaderMetrics.STEP_DISPATCH, System.nanoTime() - readNanos);
+            if (!dispatched) {
+                Log.w(TAG, "Tap queue full, %d taps refused so far", mDispatcher.getRejectedCount());
+                return RESULT_BUSY;
+            }
+            // Only now, so a tap that timed out or was refused can be retried right away.
+            if (staffId.isOk()) {
+                debouncer.remember(key);
+            }
+            return RESULT_DISPATCHED;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                Log.w(TAG, "Tag timed out: %s", e.getCause().getMessage());
+                return RESULT_TIMED_OUT;
+            }
+            Log.e(TAG, "Error communicating with card", e.getCause());
+            return RESULT_FAILED;
+        } catch (IOException e) {
+            Log.e(TAG, "Error communicating with card", e);
+            return RESULT_FAILED;
+        } finally {
+            session.close();
+        }
+    }
+
+    private TapDebouncer debouncer(ReaderConfig config) {
+        TapDebouncer debouncer = mDebouncer;
+        if (debouncer.getWindowMillis() != config.getRepeatWindowMillis()) {
+            debouncer = new TapDebouncer(config.getRepeatWindowMillis());
+            mDebouncer = debouncer;
+        }
+        return debouncer;
+    }
+
+    public TapDispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    public ReaderMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Records the frames of every tap from now on to {@code capture}, or stops recording if it
+     * is null. The caller closes the capture.
+     */
+    public void setCapture(ApduCapture capture) {
+        mCapture = capture;
+    }
+}
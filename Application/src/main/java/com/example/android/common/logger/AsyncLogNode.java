@@ -0,0 +1,241 @@
+package com.example.android.common.logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link LogNode} that hands records to the rest of the chain on a background thread, so the
+ * thread that logs (e.g. the NFC callback) never waits for logcat or the on-screen LogView.
+ * <p>
+ * Records go into a fixed size ring buffer that any number of threads may write to and that a
+ * single consumer thread drains. When the buffer fills up past its high water mark, only one in
+ * {@code sampleEvery} records below {@link Log#WARN} is kept; when it is completely full, new
+ * records are dropped. Both cases are counted, see {@link #getDroppedCount()} and
+ * {@link #getSampledOutCount()}. {@link LogMessage}s are built on the consumer thread, after
+ * sampling, so dropped records never pay for their message.
+ */
+public class AsyncLogNode implements LogNode {
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_SAMPLE_EVERY = 8;
+    // How long the consumer sleeps when there is nothing to do, unless woken up earlier.
+    private static final long IDLE_PARK_NANOS = 50000000L;
+
+    private final int mCapacity;
+    private final int mMask;
+    private final int mHighWater;
+    private final int mSampleEvery;
+
+    // Slot i is free for the producer claiming position p when mSequences[i] == p, and holds a
+    // record for the consumer at position p when mSequences[i] == p + 1.
+    private final AtomicLongArray mSequences;
+    private final int[] mPriorities;
+    private final String[] mTags;
+    private final Object[] mMessages;
+    private final Throwable[] mThrowables;
+
+    private final AtomicLong mTail = new AtomicLong();
+    private volatile long mHead;
+
+    private final AtomicLong mSampleCounter = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mSampledOut = new AtomicLong();
+
+    private volatile LogNode mNext;
+    private volatile boolean mRunning;
+    private volatile boolean mConsumerParked;
+    private volatile Thread mConsumer;
+
+    public AsyncLogNode() {
+        this(DEFAULT_CAPACITY, DEFAULT_SAMPLE_EVERY);
+    }
+
+    /**
+     * @param capacity    Number of records the buffer holds, rounded up to a power of two
+     * @param sampleEvery Under pressure, keep one in this many low priority records
+     */
+    public AsyncLogNode(int capacity, int sampleEvery) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mCapacity = size;
+        mMask = size - 1;
+        mHighWater = size - size / 4;
+        mSampleEvery = Math.max(1, sampleEvery);
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+        mPriorities = new int[size];
+        mTags = new String[size];
+        mMessages = new Object[size];
+        mThrowables = new Throwable[size];
+    }
+
+    /**
+     * Returns the next LogNode in the chain.
+     */
+    public LogNode getNext() {
+        return mNext;
+    }
+
+    /**
+     * Sets the LogNode the consumer thread hands records to.
+     */
+    public void setNext(LogNode node) {
+        mNext = node;
+    }
+
+    /**
+     * Starts the consumer thread. Records logged before this are kept until the buffer is full.
+     */
+    public synchronized void start() {
+        if (mConsumer != null) {
+            return;
+        }
+        mRunning = true;
+        mConsumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "AsyncLogNode");
+        mConsumer.setDaemon(true);
+        mConsumer.start();
+    }
+
+    /**
+     * Stops the consumer thread once everything queued so far has been delivered.
+     */
+    public synchronized void shutdown() {
+        mRunning = false;
+        if (mConsumer != null) {
+            LockSupport.unpark(mConsumer);
+            try {
+                mConsumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mConsumer = null;
+        }
+    }
+
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        offer(priority, tag, msg, tr);
+    }
+
+    /**
+     * Queues a record whose message is only built if the record is delivered.
+     */
+    public void println(int priority, String tag, LogMessage msg, Throwable tr) {
+        offer(priority, tag, msg, tr);
+    }
+
+    /**
+     * Number of records dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    /**
+     * Number of low priority records skipped by sampling while the buffer was filling up.
+     */
+    public long getSampledOutCount() {
+        return mSampledOut.get();
+    }
+
+    /**
+     * Number of records waiting to be delivered.
+     */
+    public int getBacklog() {
+        return (int) (mTail.get() - mHead);
+    }
+
+    private boolean offer(int priority, String tag, Object msg, Throwable tr) {
+        if (priority < Log.WARN && getBacklog() >= mHighWater
+                && mSampleCounter.getAndIncrement() % mSampleEvery != 0) {
+            mSampledOut.incrementAndGet();
+            return false;
+        }
+        long pos = mTail.get();
+        int index;
+        for (;;) {
+            index = (int) pos & mMask;
+            long dif = mSequences.get(index) - pos;
+            if (dif == 0) {
+                if (mTail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = mTail.get();
+            } else if (dif < 0) {
+                // The consumer has not freed this slot yet: the buffer is full.
+                mDropped.incrementAndGet();
+                return false;
+            } else {
+                pos = mTail.get();
+            }
+        }
+        mPriorities[index] = priority;
+        mTags[index] = tag;
+        mMessages[index] = msg;
+        mThrowables[index] = tr;
+        mSequences.set(index, pos + 1);
+        if (mConsumerParked) {
+            Thread consumer = mConsumer;
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+        }
+        return true;
+    }
+
+    private void consume() {
+        for (;;) {
+            if (deliverNext()) {
+                continue;
+            }
+            if (!mRunning) {
+                return;
+            }
+            mConsumerParked = true;
+            if (getBacklog() == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            mConsumerParked = false;
+        }
+    }
+
+    /**
+     * Delivers the oldest queued record, if it has been completely written.
+     *
+     * @return false if there was nothing to deliver
+     */
+    private boolean deliverNext() {
+        long pos = mHead;
+        int index = (int) pos & mMask;
+        if (mSequences.get(index) != pos + 1) {
+            return false;
+        }
+        int priority = mPriorities[index];
+        String tag = mTags[index];
+        Object msg = mMessages[index];
+        Throwable tr = mThrowables[index];
+        mTags[index] = null;
+        mMessages[index] = null;
+        mThrowables[index] = null;
+        mSequences.set(index, pos + mCapacity);
+        mHead = pos + 1;
+
+        LogNode next = mNext;
+        if (next != null) {
+            try {
+                String text = msg instanceof LogMessage ? ((LogMessage) msg).get() : (String) msg;
+                next.println(priority, tag, text, tr);
+            } catch (RuntimeException e) {
+                // A broken message or node must not take the logging thread down with it.
+                e.printStackTrace();
+            }
+        }
+        return true;
+    }
+}
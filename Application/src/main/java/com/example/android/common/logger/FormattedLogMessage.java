@@ -0,0 +1,47 @@
+package com.example.android.common.logger;
+
+import com.example.android.Utils.HexCodec;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * {@link LogMessage} built from a {@link String#format} pattern and its arguments. Formatting is
+ * left to whoever calls {@link #get()}, so arguments must not change after they were logged.
+ * <p>
+ * {@code byte[]} arguments are printed as hex and other arrays through {@link Arrays#toString},
+ * which saves callers from converting them up front.
+ */
+class FormattedLogMessage implements LogMessage {
+    private final String mFormat;
+    private final Object[] mArgs;
+
+    FormattedLogMessage(String format, Object[] args) {
+        mFormat = format;
+        mArgs = args;
+    }
+
+    @Override
+    public String get() {
+        if (mArgs == null || mArgs.length == 0) {
+            return mFormat;
+        }
+        Object[] args = new Object[mArgs.length];
+        for (int i = 0; i < args.length; i++) {
+            Object arg = mArgs[i];
+            if (arg instanceof byte[]) {
+                byte[] bytes = (byte[]) arg;
+                arg = HexCodec.encode(bytes, 0, bytes.length);
+            } else if (arg instanceof Object[]) {
+                arg = Arrays.toString((Object[]) arg);
+            }
+            args[i] = arg;
+        }
+        return String.format(Locale.US, mFormat, args);
+    }
+
+    @Override
+    public String toString() {
+        return get();
+    }
+}
@@ -36,6 +36,8 @@ public class Log {
 
     // Stores the beginning of the LogNode topology.
     private static LogNode mLogNode;
+    // Records below this priority are discarded before their message is built.
+    private static volatile int mMinPriority = VERBOSE;
 
     /**
      * Returns the next LogNode in the linked list.
@@ -51,6 +53,21 @@ public class Log {
         mLogNode = node;
     }
 
+    /**
+     * Sets the lowest priority that is passed on to the LogNode.
+     */
+    public static void setMinPriority(int priority) {
+        mMinPriority = priority;
+    }
+
+    /**
+     * Returns whether a record of this priority would reach the LogNode. Use it to skip building
+     * expensive messages that nobody is going to see.
+     */
+    public static boolean isLoggable(int priority) {
+        return mLogNode != null && priority >= mMinPriority;
+    }
+
     /**
      * Instructs the LogNode to print the log data provided. Other LogNodes can
      * be chained to the end of the LogNode as desired.
@@ -62,8 +79,47 @@ public class Log {
      *           to extract and print useful information.
      */
     public static void println(int priority, String tag, String msg, Throwable tr) {
-        if (mLogNode != null) {
-            mLogNode.println(priority, tag, msg, tr);
+        LogNode node = mLogNode;
+        if (node != null && priority >= mMinPriority) {
+            node.println(priority, tag, msg, tr);
+        }
+    }
+
+    /**
+     * Instructs the LogNode to print the log data provided, building the message only if it is
+     * needed. An {@link AsyncLogNode} at the head of the chain defers that to its own thread.
+     *
+     * @param priority Log level of the data being logged. Verbose, Error, etc.
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg Builds the actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    public static void println(int priority, String tag, LogMessage msg, Throwable tr) {
+        LogNode node = mLogNode;
+        if (node == null || priority < mMinPriority) {
+            return;
+        }
+        if (node instanceof AsyncLogNode) {
+            ((AsyncLogNode) node).println(priority, tag, msg, tr);
+        } else {
+            node.println(priority, tag, msg.get(), tr);
+        }
+    }
+
+    /**
+     * Prints a message built from a {@link String#format} pattern, formatting it only if it is
+     * needed. {@code byte[]} arguments are printed as hex.
+     *
+     * @param priority Log level of the data being logged. Verbose, Error, etc.
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param format Format string of the message.
+     * @param args Arguments referenced by the format string. They are formatted later and
+     *             possibly on another thread, so they must not be modified afterwards.
+     */
+    public static void printf(int priority, String tag, String format, Object... args) {
+        if (isLoggable(priority)) {
+            println(priority, tag, new FormattedLogMessage(format, args), null);
         }
     }
 
@@ -98,7 +154,18 @@ public class Log {
      * @param msg The actual message to be logged.
      */
     public static void v(String tag, String msg) {
-        v(tag, msg, null);
+        v(tag, msg, (Throwable) null);
+    }
+
+    /**
+     * Prints a formatted message at VERBOSE priority, formatting it only if it is needed.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param format Format string of the message, see {@link #printf}.
+     * @param args Arguments referenced by the format string.
+     */
+    public static void v(String tag, String format, Object... args) {
+        printf(VERBOSE, tag, format, args);
     }
 
 
@@ -121,7 +188,18 @@ public class Log {
      * @param msg The actual message to be logged.
      */
     public static void d(String tag, String msg) {
-        d(tag, msg, null);
+        d(tag, msg, (Throwable) null);
+    }
+
+    /**
+     * Prints a formatted message at DEBUG priority, formatting it only if it is needed.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param format Format string of the message, see {@link #printf}.
+     * @param args Arguments referenced by the format string.
+     */
+    public static void d(String tag, String format, Object... args) {
+        printf(DEBUG, tag, format, args);
     }
 
     /**
@@ -143,7 +221,18 @@ public class Log {
      * @param msg The actual message to be logged.
      */
     public static void i(String tag, String msg) {
-        i(tag, msg, null);
+        i(tag, msg, (Throwable) null);
+    }
+
+    /**
+     * Prints a formatted message at INFO priority, formatting it only if it is needed.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param format Format string of the message, see {@link #printf}.
+     * @param args Arguments referenced by the format string.
+     */
+    public static void i(String tag, String format, Object... args) {
+        printf(INFO, tag, format, args);
     }
 
     /**
@@ -165,7 +254,18 @@ public class Log {
      * @param msg The actual message to be logged.
      */
     public static void w(String tag, String msg) {
-        w(tag, msg, null);
+        w(tag, msg, (Throwable) null);
+    }
+
+    /**
+     * Prints a formatted message at WARN priority, formatting it only if it is needed.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param format Format string of the message, see {@link #printf}.
+     * @param args Arguments referenced by the format string.
+     */
+    public static void w(String tag, String format, Object... args) {
+        printf(WARN, tag, format, args);
     }
 
     /**
@@ -198,7 +298,18 @@ public class Log {
      * @param msg The actual message to be logged.
      */
     public static void e(String tag, String msg) {
-        e(tag, msg, null);
+        e(tag, msg, (Throwable) null);
+    }
+
+    /**
+     * Prints a formatted message at ERROR priority, formatting it only if it is needed.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param format Format string of the message, see {@link #printf}.
+     * @param args Arguments referenced by the format string.
+     */
+    public static void e(String tag, String format, Object... args) {
+        printf(ERROR, tag, format, args);
     }
 
     /**
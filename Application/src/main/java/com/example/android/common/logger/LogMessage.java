@@ -0,0 +1,14 @@
+package com.example.android.common.logger;
+
+/**
+ * A log message that is only turned into text when a {@link LogNode} actually needs it. Hand
+ * one of these to {@link Log} instead of concatenating the message up front when building it is
+ * expensive, e.g. hex dumps of APDUs.
+ */
+public interface LogMessage {
+
+    /**
+     * Builds the message text. May be called on a different thread than the one that logged it.
+     */
+    String get();
+}
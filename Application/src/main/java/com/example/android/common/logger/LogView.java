@@ -15,15 +15,46 @@
  */
 package com.example.android.common.logger;
 
-import android.app.Activity;
 import android.content.Context;
+import android.text.Editable;
 import android.util.*;
 import android.widget.TextView;
 
+import java.util.ArrayList;
+
 /** Simple TextView which is used to output log data received through the LogNode interface.
+ *
+ * <p>Lines logged from any thread are collected and shown in a single UI update, and only the
+ * most recent {@link #SCROLLBACK_LINES} lines are kept, so the view neither re-lays out for every
+ * line nor grows without bound over a long shift. While paused (e.g. when the log panel is
+ * hidden) lines are still collected but nothing is rendered.</p>
 */
 public class LogView extends TextView implements LogNode {
 
+    // Number of lines kept on screen; older lines are dropped.
+    public static final int SCROLLBACK_LINES = 500;
+
+    // Lines waiting for the next UI update, guarded by mLock.
+    private final Object mLock = new Object();
+    private ArrayList<String> mPending = new ArrayList<>();
+    private ArrayList<String> mRendering = new ArrayList<>();
+    private boolean mRenderPosted;
+
+    // Ring of the lines currently shown, only touched on the UI thread.
+    private final String[] mLines = new String[SCROLLBACK_LINES];
+    private int mFirstLine;
+    private int mLineCount;
+    private final StringBuilder mRenderBuilder = new StringBuilder();
+    private boolean mPaused;
+    private boolean mNeedsRebuild;
+
+    private final Runnable mRender = new Runnable() {
+        @Override
+        public void run() {
+            render();
+        }
+    };
+
     public LogView(Context context) {
         super(context);
     }
@@ -90,15 +121,8 @@ public class LogView extends TextView implements LogNode {
         appendIfNotNull(outputBuilder, msg, delimiter);
         appendIfNotNull(outputBuilder, exceptionStr, delimiter);
 
-        // In case this was originally called from an AsyncTask or some other off-UI thread,
-        // make sure the update occurs within the UI thread.
-        ((Activity) getContext()).runOnUiThread( (new Thread(new Runnable() {
-            @Override
-            public void run() {
-                // Display the text we just generated within the LogView.
-                appendToLog(outputBuilder.toString());
-            }
-        })));
+        // Display the text we just generated within the LogView.
+        appendToLog(outputBuilder.toString());
 
         if (mNext != null) {
             mNext.println(priority, tag, msg, tr);
@@ -136,9 +160,89 @@ public class LogView extends TextView implements LogNode {
     // The next LogNode in the chain.
     LogNode mNext;
 
-    /** Outputs the string as a new line of log data in the LogView. */
+    /** Outputs the string as a new line of log data in the LogView. Can be called from any
+     * thread; the line shows up with the next UI update.
+     */
     public void appendToLog(String s) {
-        append("\n" + s);
+        synchronized (mLock) {
+            mPending.add(s);
+            if (mRenderPosted) {
+                // Already scheduled, the line goes out with that update.
+                return;
+            }
+            mRenderPosted = true;
+        }
+        // In case this was originally called from an AsyncTask or some other off-UI thread,
+        // make sure the update occurs within the UI thread.
+        post(mRender);
+    }
+
+    /**
+     * Stops or resumes rendering. Must be called on the UI thread.
+     */
+    public void setPaused(boolean paused) {
+        mPaused = paused;
+        if (!paused && mNeedsRebuild) {
+            rebuild();
+        }
+    }
+
+    public boolean isPaused() {
+        return mPaused;
+    }
+
+    private void render() {
+        ArrayList<String> batch;
+        synchronized (mLock) {
+            batch = mPending;
+            mPending = mRendering;
+            mRendering = batch;
+            mRenderPosted = false;
+        }
+
+        // Every line is shown as "\n" + line, so dropping one removes length + 1 chars.
+        int evictedChars = 0;
+        mRenderBuilder.setLength(0);
+        for (int i = 0; i < batch.size(); i++) {
+            String line = batch.get(i);
+            if (mLineCount == SCROLLBACK_LINES) {
+                evictedChars += mLines[mFirstLine].length() + 1;
+                mLines[mFirstLine] = line;
+                mFirstLine = (mFirstLine + 1) % SCROLLBACK_LINES;
+            } else {
+                mLines[(mFirstLine + mLineCount) % SCROLLBACK_LINES] = line;
+                mLineCount++;
+            }
+            mRenderBuilder.append('\n').append(line);
+        }
+        boolean overflowed = batch.size() >= SCROLLBACK_LINES;
+        batch.clear();
+
+        if (mPaused || mNeedsRebuild || overflowed) {
+            mNeedsRebuild = true;
+            if (!mPaused) {
+                rebuild();
+            }
+            return;
+        }
+        Editable text = getEditableText();
+        if (evictedChars > 0) {
+            if (text == null || evictedChars > text.length()) {
+                rebuild();
+                return;
+            }
+            text.delete(0, evictedChars);
+        }
+        append(mRenderBuilder);
+    }
+
+    private void rebuild() {
+        mRenderBuilder.setLength(0);
+        for (int i = 0; i < mLineCount; i++) {
+            mRenderBuilder.append('\n').append(mLines[(mFirstLine + i) % SCROLLBACK_LINES]);
+        }
+        setText(mRenderBuilder, BufferType.EDITABLE);
+        mNeedsRebuild = false;
     }
 
 
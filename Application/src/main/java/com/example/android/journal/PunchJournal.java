@@ -0,0 +1,359 @@
+package com.example.android.journal;
+
+import com.example.android.common.logger.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Append-only journal of punches, so a punch is kept even if the app is killed or the device
+ * is offline.
+ * <p>
+ * Records of {@link PunchRecord#SIZE} bytes are written into memory-mapped segment files of a
+ * fixed size. An append is a plain memory write: once it returns, the record lives in the page
+ * cache and survives the process dying. Getting it onto storage, which is what protects against
+ * power loss, is left to a background thread that forces all records appended since the last
+ * commit in one go ({@code commitEvery} records or {@code commitIntervalMillis} after the first
+ * uncommitted one, whichever comes first), so no tap ever waits for storage.
+ * <p>
+ * Each record carries a checksum that is written last. When the journal is opened again the
+ * last segment is scanned up to the first slot without a valid checksum, which drops a record
+ * that was only partly written.
+ */
+public class PunchJournal implements Closeable {
+    private static final String TAG = "PunchJournal";
+    public static final int DEFAULT_SEGMENT_RECORDS = 4096;
+    public static final int DEFAULT_COMMIT_EVERY = 64;
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 200;
+
+    private static final String SEGMENT_PREFIX = "punch-";
+    private static final String SEGMENT_SUFFIX = ".jnl";
+
+    private final File mDir;
+    private final int mSegmentRecords;
+    private final int mCommitEvery;
+    private final long mCommitIntervalMillis;
+
+    // All fields below are guarded by mLock.
+    private final Object mLock = new Object();
+    private MappedByteBuffer mSegment;
+    private long mSegmentIndex;
+    private int mPosition;
+    private long mFirstSegmentIndex;
+    private int mUncommitted;
+    // Full segments that still have to be forced by the next commit.
+    private final List<MappedByteBuffer> mRolled = new ArrayList<>();
+    private boolean mClosed;
+
+    private final Thread mCommitter;
+
+    public PunchJournal(File dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_RECORDS, DEFAULT_COMMIT_EVERY, DEFAULT_COMMIT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param dir                  Directory holding the segment files, created if missing
+     * @param segmentRecords       Number of records per segment file
+     * @param commitEvery          Commit as soon as this many records are uncommitted
+     * @param commitIntervalMillis Longest time a record stays uncommitted
+     */
+    public PunchJournal(File dir, int segmentRecords, int commitEvery, long commitIntervalMillis)
+            throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        mDir = dir;
+        mSegmentRecords = segmentRecords;
+        mCommitEvery = Math.max(1, commitEvery);
+        mCommitIntervalMillis = commitIntervalMillis;
+        recover();
+        mCommitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                commitLoop();
+            }
+        }, "PunchJournal");
+        mCommitter.setDaemon(true);
+        mCommitter.start();
+    }
+
+    private void recover() throws IOException {
+        long[] segments = listSegments();
+        if (segments.length == 0) {
+            mFirstSegmentIndex = 0;
+            mSegmentIndex = 0;
+            mSegment = map(0);
+            mPosition = 0;
+            return;
+        }
+        mFirstSegmentIndex = segments[0];
+        mSegmentIndex = segments[segments.length - 1];
+        mSegment = map(mSegmentIndex);
+        int position = 0;
+        while (position < mSegmentRecords && isValid(mSegment, position * PunchRecord.SIZE)) {
+            position++;
+        }
+        mPosition = position;
+    }
+
+    /**
+     * Appends a punch. Only the memory of the current segment is written, the record is
+     * committed to storage later by the background thread.
+     *
+     * @param staffId Array holding the staff ID
+     * @throws IllegalArgumentException If the staff ID is longer than
+     *                                  {@link PunchRecord#MAX_STAFF_ID_LENGTH} bytes
+     * @throws IOException              If a new segment file could not be created
+     */
+    public void append(long timestampMillis, int punchType, int statusWord,
+                       byte[] staffId, int offset, int length) throws IOException {
+        if (length < 0 || length > PunchRecord.MAX_STAFF_ID_LENGTH) {
+            // Cutting it short would keep the punch under someone else's ID.
+            throw new IllegalArgumentException("Staff ID of " + length + " bytes, at most "
+                    + PunchRecord.MAX_STAFF_ID_LENGTH + " are kept");
+        }
+        synchronized (mLock) {
+            if (mClosed) {
+                throw new IOException("Journal closed");
+            }
+            if (mPosition == mSegmentRecords) {
+                roll();
+            }
+            MappedByteBuffer segment = mSegment;
+            int base = mPosition * PunchRecord.SIZE;
+            segment.put(base + PunchRecord.PUNCH_TYPE, (byte) punchType);
+            segment.put(base + PunchRecord.STAFF_ID_LENGTH, (byte) length);
+            segment.putShort(base + PunchRecord.STATUS_WORD, (short) statusWord);
+            segment.putLong(base + PunchRecord.TIMESTAMP, timestampMillis);
+            for (int i = 0; i < PunchRecord.MAX_STAFF_ID_LENGTH; i++) {
+                segment.put(base + PunchRecord.STAFF_ID + i, i < length ? staffId[offset + i] : 0);
+            }
+            // Written last, so a record cut short by a crash is not taken for a complete one.
+            segment.putInt(base + PunchRecord.CHECKSUM, checksum(segment, base));
+            mPosition++;
+            if (++mUncommitted == 1 || mUncommitted >= mCommitEvery) {
+                mLock.notify();
+            }
+        }
+    }
+
+    private void roll() throws IOException {
+        mRolled.add(mSegment);
+        mSegment = map(mSegmentIndex + 1);
+        mSegmentIndex++;
+        mPosition = 0;
+    }
+
+    /**
+     * Forces every record appended so far to storage. Normally the background thread does
+     * this; call it when the records must be safe right now.
+     */
+    public void commit() {
+        List<MappedByteBuffer> toForce;
+        synchronized (mLock) {
+            toForce = takeUncommitted();
+        }
+        force(toForce);
+    }
+
+    private List<MappedByteBuffer> takeUncommitted() {
+        List<MappedByteBuffer> toForce = new ArrayList<>(mRolled);
+        toForce.add(mSegment);
+        mRolled.clear();
+        mUncommitted = 0;
+        return toForce;
+    }
+
+    private static void force(List<MappedByteBuffer> segments) {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    private void commitLoop() {
+        for (;;) {
+            List<MappedByteBuffer> toForce;
+            synchronized (mLock) {
+                try {
+                    while (!mClosed && mUncommitted == 0) {
+                        mLock.wait();
+                    }
+                    // Give other appends a chance to join this commit.
+                    long deadline = System.nanoTime() + mCommitIntervalMillis * 1000000L;
+                    long left = mCommitIntervalMillis;
+                    while (!mClosed && mUncommitted < mCommitEvery && left > 0) {
+                        mLock.wait(left);
+                        left = (deadline - System.nanoTime()) / 1000000L;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (mClosed) {
+                    return;
+                }
+                toForce = takeUncommitted();
+            }
+            try {
+                force(toForce);
+            } catch (RuntimeException e) {
+                // The records are still in the page cache, the next commit tries again.
+                Log.e(TAG, "Cannot commit punches", e);
+            }
+        }
+    }
+
+    /**
+     * Called for every record by {@link #forEach(Visitor)} and {@link #read(long, int, Visitor)}.
+     */
+    public interface Visitor {
+        void onRecord(PunchRecord record);
+    }
+
+    /**
+     * Reads back every record in the journal, oldest first.
+     *
+     * @return Number of records visited
+     */
+    public long forEach(Visitor visitor) throws IOException {
+        return read(0, Integer.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Sequence number the next record appended gets, see {@link PunchRecord#getSequence()}.
+     * Everything before it has been appended.
+     */
+    public long getEndSequence() {
+        synchronized (mLock) {
+            return mSegmentIndex * mSegmentRecords + mPosition;
+        }
+    }
+
+    /**
+     * Reads back the records from sequence number {@code from} on, oldest first, up to
+     * {@code max} of them. Slots without a valid record are skipped. Only records appended before
+     * the call are visited; this is what an upload drains the journal with.
+     *
+     * @param from Sequence number of the first record, see {@link PunchRecord#getSequence()}
+     * @return Number of records visited; 0 when there are none from {@code from} on
+     */
+    public int read(long from, int max, Visitor visitor) throws IOException {
+        long first;
+        long last;
+        int lastPosition;
+        MappedByteBuffer current;
+        synchronized (mLock) {
+            first = mFirstSegmentIndex;
+            last = mSegmentIndex;
+            lastPosition = mPosition;
+            current = mSegment;
+        }
+        int count = 0;
+        long index = Math.max(first, from / mSegmentRecords);
+        int start = index == from / mSegmentRecords ? (int) (from % mSegmentRecords) : 0;
+        for (; index <= last && count < max; index++, start = 0) {
+            MappedByteBuffer segment = index == last ? current : map(index);
+            int records = index == last ? lastPosition : mSegmentRecords;
+            for (int i = start; i < records && count < max; i++) {
+                int base = i * PunchRecord.SIZE;
+                if (!isValid(segment, base)) {
+                    continue;
+                }
+                int length = segment.get(base + PunchRecord.STAFF_ID_LENGTH);
+                byte[] staffId = new byte[length];
+                for (int j = 0; j < length; j++) {
+                    staffId[j] = segment.get(base + PunchRecord.STAFF_ID + j);
+                }
+                long sequence = index * mSegmentRecords + i;
+                visitor.onRecord(new PunchRecord(sequence,
+                        segment.getLong(base + PunchRecord.TIMESTAMP),
+                        segment.get(base + PunchRecord.PUNCH_TYPE),
+                        segment.getShort(base + PunchRecord.STATUS_WORD) & 0xFFFF, staffId));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stops the background thread and commits what is left. Appends fail after this.
+     */
+    @Override
+    public void close() {
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mLock.notify();
+        }
+        try {
+            mCommitter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        commit();
+    }
+
+    private MappedByteBuffer map(long index) throws IOException {
+        File file = new File(mDir, String.format(Locale.US, "%s%08d%s", SEGMENT_PREFIX, index,
+                SEGMENT_SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long size = (long) mSegmentRecords * PunchRecord.SIZE;
+            if (raf.length() != size) {
+                raf.setLength(size);
+            }
+            // The mapping stays valid after the file is closed.
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private long[] listSegments() {
+        String[] names = mDir.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (names == null) {
+            return new long[0];
+        }
+        long[] indexes = new long[names.length];
+        for (int i = 0; i < names.length; i++) {
+            indexes[i] = Long.parseLong(names[i].substring(SEGMENT_PREFIX.length(),
+                    names[i].length() - SEGMENT_SUFFIX.length()));
+        }
+        Arrays.sort(indexes);
+        return indexes;
+    }
+
+    private static boolean isValid(MappedByteBuffer segment, int base) {
+        int stored = segment.getInt(base + PunchRecord.CHECKSUM);
+        return stored != 0 && stored == checksum(segment, base)
+                && segment.get(base + PunchRecord.STAFF_ID_LENGTH) >= 0
+                && segment.get(base + PunchRecord.STAFF_ID_LENGTH) <= PunchRecord.MAX_STAFF_ID_LENGTH;
+    }
+
+    /**
+     * FNV-1a over bytes 4..31 of the record, never 0.
+     */
+    private static int checksum(MappedByteBuffer segment, int base) {
+        int hash = 0x811C9DC5;
+        for (int i = PunchRecord.PUNCH_TYPE; i < PunchRecord.SIZE; i++) {
+            hash ^= segment.get(base + i) & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.android.journal;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One punch read back from a {@link PunchJournal}, or out of an uploaded batch.
+ * <p>
+ * On disk every record takes {@link #SIZE} bytes, all fields big endian:
+ * <pre>
+ *  0  int    checksum of bytes 4..31, never 0; 0 marks an unused slot
+ *  4  byte   punch type (the reader's punch mode, -1 if unset)
+ *  5  byte   staff ID length, 0..16
+ *  6  short  status word of the staff ID response
+ *  8  long   wall clock time of the punch, ms since the epoch
+ * 16  16     staff ID bytes; {@link PunchJournal#append} refuses longer IDs
+ * </pre>
+ */
+public final class PunchRecord {
+    public static final int SIZE = 32;
+    public static final int MAX_STAFF_ID_LENGTH = 16;
+
+    static final int CHECKSUM = 0;
+    static final int PUNCH_TYPE = 4;
+    static final int STAFF_ID_LENGTH = 5;
+    static final int STATUS_WORD = 6;
+    static final int TIMESTAMP = 8;
+    static final int STAFF_ID = 16;
+
+    private final long mSequence;
+    private final long mTimestampMillis;
+    private final int mPunchType;
+    private final int mStatusWord;
+    private final byte[] mStaffId;
+
+    /**
+     * @param staffId Kept, not copied
+     */
+    public PunchRecord(long sequence, long timestampMillis, int punchType, int statusWord,
+                       byte[] staffId) {
+        mSequence = sequence;
+        mTimestampMillis = timestampMillis;
+        mPunchType = punchType;
+        mStatusWord = statusWord;
+        mStaffId = staffId;
+    }
+
+    /**
+     * Place of the record in its journal, counting every slot since the first segment was
+     * created, so it never changes and never comes back for another record.
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public long getTimestampMillis() {
+        return mTimestampMillis;
+    }
+
+    public int getPunchType() {
+        return mPunchType;
+    }
+
+    public int getStatusWord() {
+        return mStatusWord;
+    }
+
+    /**
+     * @return Copy of the staff ID bytes as stored
+     */
+    public byte[] getStaffId() {
+        return mStaffId.clone();
+    }
+
+    public String getStaffIdString() {
+        return new String(mStaffId, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "PunchRecord{seq=" + mSequence + ", time=" + mTimestampMillis + ", type="
+                + mPunchType + ", staff=" + getStaffIdString() + ", sw="
+                + Integer.toHexString(mStatusWord) + "}";
+    }
+}
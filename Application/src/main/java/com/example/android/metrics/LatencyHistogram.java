@@ -0,0 +1,189 @@
+package com.example.android.metrics;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets, laid out like an HdrHistogram:
+ * values are exact below {@link #SUB_BUCKETS} ns, and above that every power of two is split
+ * into {@code SUB_BUCKETS / 2} buckets, so any recorded value is off by less than 1/64 (1.6%).
+ * Values above {@link #MAX_TRACKABLE_NANOS} are counted in the top bucket.
+ * <p>
+ * {@link #record(long)} is lock-free and allocation-free, so it can sit on the tap path;
+ * {@link #snapshot()} copies the counts without stopping writers, and the copy may be off by
+ * the records that came in while it was being taken.
+ */
+public class LatencyHistogram {
+    public static final int SUB_BUCKETS = 128;
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int HALF = SUB_BUCKETS / 2;
+    public static final long MAX_TRACKABLE_NANOS = TimeUnit.HOURS.toNanos(1);
+    private static final int LENGTH = index(MAX_TRACKABLE_NANOS) + 1;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(LENGTH);
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * Largest value that lands in the bucket at {@code index}.
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long sub = index - shift * HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        mCounts.incrementAndGet(Math.min(index(nanos), LENGTH - 1));
+        mTotalNanos.addAndGet(nanos);
+        long max = mMaxNanos.get();
+        while (nanos > max && !mMaxNanos.compareAndSet(max, nanos)) {
+            max = mMaxNanos.get();
+        }
+    }
+
+    /**
+     * Records the time since {@code startNanos}, a {@link System#nanoTime()} value.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[LENGTH];
+        long count = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            counts[i] = mCounts.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, mTotalNanos.get(), mMaxNanos.get());
+    }
+
+    /**
+     * Clears all counts. Records that race with it may be kept or lost.
+     */
+    public void reset() {
+        for (int i = 0; i < LENGTH; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalNanos.set(0);
+        mMaxNanos.set(0);
+    }
+
+    /**
+     * Point-in-time copy of a {@link LatencyHistogram}.
+     */
+    public static final class Snapshot {
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mTotalNanos;
+        private final long mMaxNanos;
+
+        Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            mCounts = counts;
+            mCount = count;
+            mTotalNanos = totalNanos;
+            mMaxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        public long getTotalNanos() {
+            return mTotalNanos;
+        }
+
+        public long getMeanNanos() {
+            return mCount == 0 ? 0 : mTotalNanos / mCount;
+        }
+
+        /**
+         * Smallest bucket value that at least {@code percentile} percent of the records are at
+         * or below, e.g. 99.9 for p999. Never more than the largest value recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen >= rank) {
+                    return valueAt(i);
+                }
+            }
+            return mMaxNanos;
+        }
+
+        private long valueAt(int index) {
+            // The top bucket also holds everything above MAX_TRACKABLE_NANOS.
+            return index == mCounts.length - 1 ? mMaxNanos
+                    : Math.min(highestEquivalentValue(index), mMaxNanos);
+        }
+
+        /**
+         * Adds the counts of {@code other}, e.g. to sum the histograms of several readers.
+         */
+        public Snapshot plus(Snapshot other) {
+            long[] counts = mCounts.clone();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.mCounts[i];
+            }
+            return new Snapshot(counts, mCount + other.mCount, mTotalNanos + other.mTotalNanos,
+                    Math.max(mMaxNanos, other.mMaxNanos));
+        }
+
+        /**
+         * Writes the percentile distribution in the text layout of HdrHistogram's
+         * {@code outputPercentileDistribution}, which its plotting tools read, with values in
+         * {@code unit}.
+         */
+        public void writePercentileDistribution(Appendable out, TimeUnit unit) throws IOException {
+            double scale = unit.toNanos(1);
+            out.append(String.format(Locale.US, "%12s %14s %10s %14s%n%n",
+                    "Value", "Percentile", "TotalCount", "1/(1-Percentile)"));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                if (mCounts[i] == 0) {
+                    continue;
+                }
+                seen += mCounts[i];
+                double fraction = (double) seen / mCount;
+                String inverse = seen == mCount ? "" : String.format(Locale.US, "%14.2f",
+                        1 / (1 - fraction));
+                out.append(String.format(Locale.US, "%12.3f %2.12f %10d %s%n",
+                        valueAt(i) / scale, fraction, seen, inverse));
+            }
+            out.append(String.format(Locale.US,
+                    "#[Mean    = %12.3f, Max     = %12.3f]%n#[Total count    = %12d]%n",
+                    getMeanNanos() / scale, mMaxNanos / scale, mCount));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "count %d, p50 %d us, p99 %d us, p999 %d us, max %d us",
+                    mCount, getValueAtPercentile(50) / 1000, getValueAtPercentile(99) / 1000,
+                    getValueAtPercentile(99.9) / 1000, mMaxNanos / 1000);
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.example.android.metrics;
+
+import com.example.android.Utils.HexCodec;
+import com.example.android.cardreader.TapPipeline;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters and timings of what the reader does with each tag: taps by outcome, connects,
+ * commands sent per AID, status words other than "9000", I/O errors, and the time spent in
+ * each step of a tap.
+ * <p>
+ * Recording is lock-free and allocates nothing once an AID or status word has been seen, so
+ * the metrics stay on in production. {@link #snapshot()} reads everything without stopping the
+ * tap path; a snapshot taken during a tap may count part of it.
+ */
+public class ReaderMetrics {
+    // Steps of a tap on the NFC thread, see TapPipeline, and on a TapDispatcher worker.
+    public static final int STEP_CONNECT = 0;
+    public static final int STEP_STAFF_ID = 1;
+    public static final int STEP_PUNCH_STATUS = 2;
+    public static final int STEP_DISPATCH = 3;
+    // From tag discovered until the tag is done with, whatever the outcome.
+    public static final int STEP_TAP = 4;
+    // Decoding, journal and callbacks of a tap on a TapDispatcher worker.
+    public static final int STEP_REPORT = 5;
+    // Waiting in the TapDispatcher queue for a worker.
+    public static final int STEP_QUEUED = 6;
+    private static final int STEPS = 7;
+    private static final String[] STEP_NAMES = {
+            "connect", "staff_id", "punch_status", "dispatch", "tap", "report", "queued"};
+
+    // Key of the commands that are not a SELECT by AID, and of AIDs and status words past the
+    // limits below.
+    public static final String OTHER = "other";
+    public static final int OTHER_STATUS_WORD = -1;
+    // Bounds the tables against a card that answers every SELECT with a different AID or code.
+    private static final int MAX_AIDS = 16;
+    private static final int MAX_STATUS_WORDS = 32;
+    private static final int SW_OK = 0x9000;
+    private static final int INS_SELECT = 0xA4;
+
+    private static final ReaderMetrics DEFAULT = new ReaderMetrics();
+
+    private final StripedCounter[] mTaps = newCounters(TapPipeline.RESULT_FAILED + 1);
+    private final StripedCounter mConnects = new StripedCounter();
+    private final StripedCounter mIoExceptions = new StripedCounter();
+    private final StripedCounter mOtherTransceives = new StripedCounter();
+    private final StripedCounter mOtherStatusWords = new StripedCounter();
+    private final LatencyHistogram[] mSteps = new LatencyHistogram[STEPS];
+    // Copy on write, so readers never lock; only a new AID or status word takes the lock.
+    private volatile AidCounter[] mAids = new AidCounter[0];
+    private volatile StatusWordCounter[] mStatusWords = new StatusWordCounter[0];
+
+    public ReaderMetrics() {
+        for (int i = 0; i < STEPS; i++) {
+            mSteps[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * The instance the reader records to unless it is given another one.
+     */
+    public static ReaderMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    private static StripedCounter[] newCounters(int count) {
+        StripedCounter[] counters = new StripedCounter[count];
+        for (int i = 0; i < count; i++) {
+            counters[i] = new StripedCounter();
+        }
+        return counters;
+    }
+
+    /**
+     * @param result One of the {@link TapPipeline} RESULT_ constants
+     */
+    public void tap(int result) {
+        mTaps[result].increment();
+    }
+
+    public void connect() {
+        mConnects.increment();
+    }
+
+    public void ioException() {
+        mIoExceptions.increment();
+    }
+
+    /**
+     * Records the time a step took.
+     *
+     * @param step One of the STEP_ constants
+     */
+    public void step(int step, long nanos) {
+        mSteps[step].record(nanos);
+    }
+
+    /**
+     * Counts a status word, unless it is "9000".
+     */
+    public void statusWord(int statusWord) {
+        if (statusWord == SW_OK) {
+            return;
+        }
+        StatusWordCounter[] counters = mStatusWords;
+        for (StatusWordCounter counter : counters) {
+            if (counter.mStatusWord == statusWord) {
+                counter.mCount.increment();
+                return;
+            }
+        }
+        addStatusWord(statusWord).increment();
+    }
+
+    private synchronized StripedCounter addStatusWord(int statusWord) {
+        StatusWordCounter[] counters = mStatusWords;
+        for (StatusWordCounter counter : counters) {
+            if (counter.mStatusWord == statusWord) {
+                return counter.mCount;
+            }
+        }
+        if (counters.length >= MAX_STATUS_WORDS) {
+            return mOtherStatusWords;
+        }
+        StatusWordCounter[] grown = new StatusWordCounter[counters.length + 1];
+        System.arraycopy(counters, 0, grown, 0, counters.length);
+        grown[counters.length] = new StatusWordCounter(statusWord);
+        mStatusWords = grown;
+        return grown[counters.length].mCount;
+    }
+
+    /**
+     * Returns the counter for the frames sent on behalf of {@code command}: the one of its AID
+     * if it is a SELECT by AID, {@link #OTHER} otherwise. Look it up once per command and
+     * increment it for every frame, GET RESPONSE and chained parts included.
+     */
+    public StripedCounter transceives(byte[] command) {
+        if (command.length < 5 || (command[1] & 0xFF) != INS_SELECT) {
+            return mOtherTransceives;
+        }
+        int length = command[4] & 0xFF;
+        if (length == 0 || command.length < 5 + length) {
+            return mOtherTransceives;
+        }
+        AidCounter[] counters = mAids;
+        for (AidCounter counter : counters) {
+            if (counter.matches(command, 5, length)) {
+                return counter.mCount;
+            }
+        }
+        return addAid(command, 5, length);
+    }
+
+    private synchronized StripedCounter addAid(byte[] command, int offset, int length) {
+        AidCounter[] counters = mAids;
+        for (AidCounter counter : counters) {
+            if (counter.matches(command, offset, length)) {
+                return counter.mCount;
+            }
+        }
+        if (counters.length >= MAX_AIDS) {
+            return mOtherTransceives;
+        }
+        AidCounter[] grown = new AidCounter[counters.length + 1];
+        System.arraycopy(counters, 0, grown, 0, counters.length);
+        byte[] aid = new byte[length];
+        System.arraycopy(command, offset, aid, 0, length);
+        grown[counters.length] = new AidCounter(aid);
+        mAids = grown;
+        return grown[counters.length].mCount;
+    }
+
+    public Snapshot snapshot() {
+        long[] taps = new long[mTaps.length];
+        for (int i = 0; i < taps.length; i++) {
+            taps[i] = mTaps[i].sum();
+        }
+        Map<String, Long> transceives = new LinkedHashMap<>();
+        for (AidCounter counter : mAids) {
+            transceives.put(HexCodec.encode(counter.mAid), counter.mCount.sum());
+        }
+        transceives.put(OTHER, mOtherTransceives.sum());
+        Map<Integer, Long> statusWords = new LinkedHashMap<>();
+        for (StatusWordCounter counter : mStatusWords) {
+            statusWords.put(counter.mStatusWord, counter.mCount.sum());
+        }
+        long other = mOtherStatusWords.sum();
+        if (other > 0) {
+            statusWords.put(OTHER_STATUS_WORD, other);
+        }
+        LatencyHistogram.Snapshot[] steps = new LatencyHistogram.Snapshot[STEPS];
+        for (int i = 0; i < STEPS; i++) {
+            steps[i] = mSteps[i].snapshot();
+        }
+        return new Snapshot(taps, mConnects.sum(), mIoExceptions.sum(), transceives, statusWords,
+                steps);
+    }
+
+    /**
+     * Sets everything back to zero, e.g. after a snapshot has been shipped. AIDs and status words
+     * seen so far keep their counters.
+     */
+    public void reset() {
+        for (StripedCounter counter : mTaps) {
+            counter.reset();
+        }
+        mConnects.reset();
+        mIoExceptions.reset();
+        mOtherTransceives.reset();
+        mOtherStatusWords.reset();
+        for (AidCounter counter : mAids) {
+            counter.mCount.reset();
+        }
+        for (StatusWordCounter counter : mStatusWords) {
+            counter.mCount.reset();
+        }
+        for (LatencyHistogram step : mSteps) {
+            step.reset();
+        }
+    }
+
+    private static final class AidCounter {
+        final byte[] mAid;
+        final StripedCounter mCount = new StripedCounter();
+
+        AidCounter(byte[] aid) {
+            mAid = aid;
+        }
+
+        boolean matches(byte[] data, int offset, int length) {
+            if (mAid.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (mAid[i] != data[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class StatusWordCounter {
+        final int mStatusWord;
+        final StripedCounter mCount = new StripedCounter();
+
+        StatusWordCounter(int statusWord) {
+            mStatusWord = statusWord;
+        }
+    }
+
+    /**
+     * Point-in-time copy of a {@link ReaderMetrics}.
+     */
+    public static final class Snapshot {
+        private final long[] mTaps;
+        private final long mConnects;
+        private final long mIoExceptions;
+        private final Map<String, Long> mTransceives;
+        private final Map<Integer, Long> mStatusWords;
+        private final LatencyHistogram.Snapshot[] mSteps;
+
+        Snapshot(long[] taps, long connects, long ioExceptions, Map<String, Long> transceives,
+                 Map<Integer, Long> statusWords, LatencyHistogram.Snapshot[] steps) {
+            mTaps = taps;
+            mConnects = connects;
+            mIoExceptions = ioExceptions;
+            mTransceives = Collections.unmodifiableMap(transceives);
+            mStatusWords = Collections.unmodifiableMap(statusWords);
+            mSteps = steps;
+        }
+
+        /**
+         * Number of taps, whatever their outcome.
+         */
+        public long getTaps() {
+            long taps = 0;
+            for (long count : mTaps) {
+                taps += count;
+            }
+            return taps;
+        }
+
+        /**
+         * @param result One of the {@link TapPipeline} RESULT_ constants
+         */
+        public long getTaps(int result) {
+            return mTaps[result];
+        }
+
+        public long getConnects() {
+            return mConnects;
+        }
+
+        public long getIoExceptions() {
+            return mIoExceptions;
+        }
+
+        /**
+         * Frames sent per AID in hex, and for everything else under {@link #OTHER}.
+         */
+        public Map<String, Long> getTransceives() {
+            return mTransceives;
+        }
+
+        /**
+         * Count of every status word other than "9000" that ended a command, with
+         * {@link #OTHER_STATUS_WORD} for the codes past the first few dozen.
+         */
+        public Map<Integer, Long> getStatusWords() {
+            return mStatusWords;
+        }
+
+        /**
+         * @param step One of the STEP_ constants
+         */
+        public LatencyHistogram.Snapshot getStepTime(int step) {
+            return mSteps[step];
+        }
+
+        /**
+         * Writes one {@code name{label} value} line per metric, in the text format Prometheus
+         * scrapes; times are in seconds.
+         */
+        public void writeTo(Appendable out) throws IOException {
+            String[] results = {"dispatched", "not_connected", "repeat", "busy", "timed_out",
+                    "failed"};
+            for (int i = 0; i < mTaps.length; i++) {
+                line(out, "reader_taps_total{result=\"" + results[i] + "\"}", mTaps[i]);
+            }
+            line(out, "reader_connects_total", mConnects);
+            line(out, "reader_io_exceptions_total", mIoExceptions);
+            for (Map.Entry<String, Long> entry : mTransceives.entrySet()) {
+                line(out, "reader_transceives_total{aid=\"" + entry.getKey() + "\"}",
+                        entry.getValue());
+            }
+            for (Map.Entry<Integer, Long> entry : mStatusWords.entrySet()) {
+                String code = entry.getKey() == OTHER_STATUS_WORD ? OTHER
+                        : String.format(Locale.US, "%04X", entry.getKey());
+                line(out, "reader_status_words_total{sw=\"" + code + "\"}", entry.getValue());
+            }
+            double scale = TimeUnit.SECONDS.toNanos(1);
+            for (int i = 0; i < STEPS; i++) {
+                LatencyHistogram.Snapshot step = mSteps[i];
+                String labels = "{step=\"" + STEP_NAMES[i] + "\"";
+                for (double quantile : new double[]{0.5, 0.99, 0.999}) {
+                    out.append(String.format(Locale.US, "reader_step_seconds%s,quantile=\"%s\"} %.9f%n",
+                            labels, quantile, step.getValueAtPercentile(quantile * 100) / scale));
+                }
+                out.append(String.format(Locale.US, "reader_step_seconds_sum%s} %.9f%n", labels,
+                        step.getTotalNanos() / scale));
+                line(out, "reader_step_seconds_count" + labels + "}", step.getCount());
+            }
+        }
+
+        private static void line(Appendable out, String name, long value) throws IOException {
+            out.append(name).append(' ').append(Long.toString(value)).append('\n');
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("taps ").append(getTaps()).append(" (").append(mTaps[TapPipeline.RESULT_DISPATCHED])
+                    .append(" ok), connects ").append(mConnects)
+                    .append(", io errors ").append(mIoExceptions)
+                    .append(", transceives ").append(mTransceives)
+                    .append(", status words {");
+            String separator = "";
+            for (Map.Entry<Integer, Long> entry : mStatusWords.entrySet()) {
+                sb.append(separator).append(entry.getKey() == OTHER_STATUS_WORD ? OTHER
+                        : String.format(Locale.US, "%04X", entry.getKey()))
+                        .append('=').append(entry.getValue());
+                separator = ", ";
+            }
+            sb.append('}');
+            for (int i = 0; i < STEPS; i++) {
+                sb.append("\n  ").append(STEP_NAMES[i]).append(": ").append(mSteps[i]);
+            }
+            return sb.toString();
+        }
+    }
+}
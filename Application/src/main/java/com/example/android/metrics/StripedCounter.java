@@ -0,0 +1,65 @@
+package com.example.android.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that many threads can bump at once without fighting over one cache line, in the
+ * spirit of {@code java.util.concurrent.atomic.LongAdder}, which needs API 24.
+ * <p>
+ * The count is spread over a few stripes, each on a cache line of its own; a thread picks its
+ * stripe from its ID and moves to the next one if the first is taken at that moment. Reading
+ * the count adds the stripes up without stopping writers, so it may miss increments that are
+ * in flight.
+ */
+public class StripedCounter {
+    // Longs per stripe, so two stripes never share a 64 byte cache line.
+    private static final int PAD = 8;
+    private static final int MAX_STRIPES = 16;
+    private static final int STRIPES = Math.min(MAX_STRIPES,
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+
+    private final int mMask = STRIPES - 1;
+    private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * PAD);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        int stripe = stripe();
+        int index = stripe * PAD;
+        long value = mCells.get(index);
+        if (!mCells.compareAndSet(index, value, value + delta)) {
+            // Another thread got there first; take the next stripe rather than spin on this one.
+            mCells.getAndAdd(((stripe + 1) & mMask) * PAD, delta);
+        }
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mMask;
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += mCells.get(i * PAD);
+        }
+        return sum;
+    }
+
+    /**
+     * Sets the count back to zero. Increments that race with it may be kept or lost.
+     */
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            mCells.set(i * PAD, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.android.roster;
+
+/**
+ * Packs the staff ID sent by a card into a single {@code long}, so looking it up needs no
+ * String. Two different IDs never get the same value:
+ * <ul>
+ * <li>IDs of 1 to 17 decimal digits keep their value in bits 0..56 and their digit count in
+ * bits 57..61, so "0042" and "42" stay apart. These values are positive.</li>
+ * <li>Any other ID of up to 7 bytes keeps its bytes in bits 0..55 and its length in bits
+ * 56..62, with bit 63 set. These values are negative.</li>
+ * </ul>
+ * Longer IDs cannot be packed and give {@link #NO_ID}.
+ */
+public final class StaffIds {
+    public static final long NO_ID = -1L;
+    private static final int MAX_DIGITS = 17;
+    private static final int MAX_BYTES = 7;
+
+    private StaffIds() {
+    }
+
+    public static long encode(byte[] id, int offset, int length) {
+        if (length <= 0) {
+            return NO_ID;
+        }
+        if (length <= MAX_DIGITS) {
+            long value = 0;
+            int i = 0;
+            for (; i < length; i++) {
+                int digit = id[offset + i] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+            }
+            if (i == length) {
+                return ((long) length << 57) | value;
+            }
+        }
+        if (length <= MAX_BYTES) {
+            long value = Long.MIN_VALUE | ((long) length << 56);
+            for (int i = 0; i < length; i++) {
+                value |= (id[offset + i] & 0xFFL) << (8 * (length - 1 - i));
+            }
+            return value;
+        }
+        return NO_ID;
+    }
+
+    public static long encode(CharSequence id) {
+        int length = id.length();
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+            if (c > 0x7F) {
+                // Only ASCII IDs are packed, see the class comment.
+                return NO_ID;
+            }
+            bytes[i] = (byte) c;
+        }
+        return encode(bytes, 0, length);
+    }
+}
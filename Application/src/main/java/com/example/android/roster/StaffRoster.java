@@ -0,0 +1,154 @@
+package com.example.android.roster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Immutable set of known staff, keyed by the packed IDs of {@link StaffIds}.
+ * <p>
+ * The index is an open addressing hash table with linear probing held in two primitive arrays,
+ * keys and the position of each entry, kept at most half full. A lookup allocates nothing and
+ * usually touches a single slot, so it is safe to do on every tap. Use {@link Builder} or
+ * {@link #load(Reader)} to create one.
+ */
+public final class StaffRoster {
+    private static final long EMPTY = StaffIds.NO_ID;
+
+    private final long[] mKeys;
+    private final int[] mSlots;
+    private final int mMask;
+    private final String[] mNames;
+
+    private StaffRoster(long[] ids, String[] names, int size) {
+        int capacity = Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+        mKeys = new long[capacity];
+        mSlots = new int[capacity];
+        mMask = capacity - 1;
+        Arrays.fill(mKeys, EMPTY);
+        mNames = Arrays.copyOf(names, size);
+        for (int i = 0; i < size; i++) {
+            int slot = hash(ids[i]) & mMask;
+            while (mKeys[slot] != EMPTY && mKeys[slot] != ids[i]) {
+                slot = (slot + 1) & mMask;
+            }
+            // A repeated ID keeps its last name.
+            mKeys[slot] = ids[i];
+            mSlots[slot] = i;
+        }
+    }
+
+    private static int hash(long key) {
+        // Finalizer of MurmurHash3, spreads consecutive IDs over the whole table.
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * @param staffId Packed ID, see {@link StaffIds}
+     * @return Position of the entry, for {@link #getName(int)}, or -1 if the ID is unknown
+     */
+    public int indexOf(long staffId) {
+        if (staffId == EMPTY) {
+            return -1;
+        }
+        int slot = hash(staffId) & mMask;
+        long key;
+        while ((key = mKeys[slot]) != EMPTY) {
+            if (key == staffId) {
+                return mSlots[slot];
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Looks up the staff ID held in {@code id}, e.g. the payload of a response APDU.
+     */
+    public int indexOf(byte[] id, int offset, int length) {
+        return indexOf(StaffIds.encode(id, offset, length));
+    }
+
+    public String getName(int index) {
+        return mNames[index];
+    }
+
+    public int size() {
+        return mNames.length;
+    }
+
+    /**
+     * Bytes taken by the hash index itself, not counting the names.
+     */
+    public long getIndexBytes() {
+        // Array header plus elements for the key and slot arrays.
+        return 16 + 8L * mKeys.length + 16 + 4L * mSlots.length;
+    }
+
+    /**
+     * Reads a roster with one {@code id,name} line per staff member. Empty lines and lines
+     * starting with '#' are skipped.
+     *
+     * @throws IOException If reading fails or a line holds no valid ID
+     */
+    public static StaffRoster load(Reader in) throws IOException {
+        Builder builder = new Builder();
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            int comma = line.indexOf(',');
+            String id = comma < 0 ? line : line.substring(0, comma);
+            String name = comma < 0 ? "" : line.substring(comma + 1).trim();
+            long packed = StaffIds.encode(id.trim());
+            if (packed == StaffIds.NO_ID) {
+                throw new IOException("Invalid staff ID on line " + lineNumber + ": " + id);
+            }
+            builder.add(packed, name);
+        }
+        return builder.build();
+    }
+
+    public static final class Builder {
+        private long[] mIds = new long[64];
+        private String[] mNames = new String[64];
+        private int mSize;
+
+        /**
+         * @throws IllegalArgumentException If {@code staffId} cannot be packed, see
+         *                                  {@link StaffIds}
+         */
+        public Builder add(String staffId, String name) {
+            long packed = StaffIds.encode(staffId);
+            if (packed == StaffIds.NO_ID) {
+                throw new IllegalArgumentException("Invalid staff ID: " + staffId);
+            }
+            return add(packed, name);
+        }
+
+        public Builder add(long staffId, String name) {
+            if (mSize == mIds.length) {
+                mIds = Arrays.copyOf(mIds, mSize * 2);
+                mNames = Arrays.copyOf(mNames, mSize * 2);
+            }
+            mIds[mSize] = staffId;
+            mNames[mSize] = name;
+            mSize++;
+            return this;
+        }
+
+        public StaffRoster build() {
+            return new StaffRoster(mIds, mNames, mSize);
+        }
+    }
+}
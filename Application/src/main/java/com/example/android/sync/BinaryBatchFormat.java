@@ -0,0 +1,411 @@
+package com.example.android.sync;
+
+import com.example.android.Utils.Varint;
+import com.example.android.journal.PunchRecord;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Punch batches in a compact binary form, the body {@link PunchUploader} posts; a few bytes per
+ * punch where {@link JsonBatchFormat} takes a hundred.
+ * <p>
+ * A batch starts with the magic "PBAT", a version byte ({@link #VERSION}) and the source ID as
+ * a big endian long. Then come the punches, each led by a header byte:
+ * <pre>
+ * bits 0-1  punch type: 0 and 1 as is, 2 for -1 (unset), 3 for any other, written out after it
+ * bit  2    staff ID not seen before in this batch: written out, else its dictionary index
+ * bit  3    status word other than 9000, written out
+ * bit  4    sequence number other than the previous one plus one, gap written out
+ * bits 5-6  0
+ * bit  7    0; the byte 0x80 ends the batch
+ * </pre>
+ * followed by those of the fields that are there, in this order: the punch type (zigzag
+ * varint), the staff ID (its index as a varint, or its length as a byte and its bytes), the
+ * status word (2 bytes, big endian), the sequence gap (zigzag varint) and, always, the time
+ * since the previous punch in milliseconds (zigzag varint, since the clock may be set back).
+ * The first punch counts from sequence -1 and time 0. Staff IDs get dictionary indexes in the
+ * order they first appear, so every batch decodes on its own.
+ * <p>
+ * {@link Encoder} and {@link Decoder} keep their buffers and dictionary between batches and
+ * allocate nothing per punch once those have grown to size.
+ */
+public final class BinaryBatchFormat {
+    public static final String CONTENT_TYPE = "application/x-punch-batch";
+    public static final int MAGIC = 0x50424154;
+    public static final int VERSION = 1;
+    public static final int MAX_STAFF_ID_LENGTH = 255;
+
+    private static final int HEADER_SIZE = 13;
+    private static final int TYPE_MASK = 0x03;
+    private static final int TYPE_UNSET = 2;
+    private static final int TYPE_OTHER = 3;
+    private static final int NEW_STAFF_ID = 0x04;
+    private static final int STATUS_WORD = 0x08;
+    private static final int SEQUENCE_GAP = 0x10;
+    private static final int RESERVED = 0x60;
+    private static final int END = 0x80;
+    private static final int DEFAULT_STATUS_WORD = 0x9000;
+    // Header byte, type, staff ID, status word, sequence gap and time.
+    private static final int MAX_PUNCH_SIZE = 1 + Varint.MAX_LENGTH + 1 + MAX_STAFF_ID_LENGTH + 2
+            + Varint.MAX_LENGTH * 2;
+
+    private BinaryBatchFormat() {
+    }
+
+    public interface Visitor {
+        /**
+         * @param staffId Holds the staff ID at {@code offset}; only valid during the call
+         */
+        void onPunch(long sequence, long timestampMillis, int punchType, int statusWord,
+                     byte[] staffId, int offset, int length);
+    }
+
+    /**
+     * Writes batches into a buffer it keeps: {@link #begin(long)}, {@link #add} for every punch,
+     * {@link #finish()}, then {@link #writeTo(OutputStream)} or {@link #getBuffer()}. Not thread
+     * safe.
+     */
+    public static final class Encoder {
+        private byte[] mBuffer = new byte[256];
+        private int mLength;
+        private boolean mOpen;
+        private long mPreviousSequence;
+        private long mPreviousTime;
+        private int mCount;
+
+        // The dictionary: staff IDs back to back in mIds, entry i at mIdOffsets[i] with length
+        // mIdLengths[i], indexed by an open addressing table of entry + 1, at most half full.
+        private byte[] mIds = new byte[256];
+        private int mIdsLength;
+        private int[] mIdOffsets = new int[32];
+        private int[] mIdLengths = new int[32];
+        private int mEntries;
+        private int[] mTable = new int[64];
+
+        /**
+         * Starts a new batch, dropping whatever was written before.
+         */
+        public void begin(long source) {
+            mLength = 0;
+            mCount = 0;
+            mPreviousSequence = -1;
+            mPreviousTime = 0;
+            if (mEntries > 0) {
+                Arrays.fill(mTable, 0);
+                mEntries = 0;
+                mIdsLength = 0;
+            }
+            ensure(HEADER_SIZE);
+            putInt(MAGIC);
+            mBuffer[mLength++] = (byte) VERSION;
+            putInt((int) (source >>> 32));
+            putInt((int) source);
+            mOpen = true;
+        }
+
+        public void add(PunchRecord record) {
+            byte[] staffId = record.getStaffId();
+            add(record.getSequence(), record.getTimestampMillis(), record.getPunchType(),
+                    record.getStatusWord(), staffId, 0, staffId.length);
+        }
+
+        public void add(long sequence, long timestampMillis, int punchType, int statusWord,
+                        byte[] staffId, int offset, int length) {
+            if (!mOpen) {
+                throw new IllegalStateException("No batch begun");
+            }
+            if (length > MAX_STAFF_ID_LENGTH) {
+                throw new IllegalArgumentException("Staff ID of " + length + " bytes");
+            }
+            ensure(MAX_PUNCH_SIZE);
+            int header = mLength++;
+            int flags;
+            if (punchType == 0 || punchType == 1) {
+                flags = punchType;
+            } else if (punchType == -1) {
+                flags = TYPE_UNSET;
+            } else {
+                flags = TYPE_OTHER;
+                mLength = putSigned(mBuffer, mLength, punchType);
+            }
+            int entry = lookUp(staffId, offset, length);
+            if (entry >= 0) {
+                mLength = Varint.putUnsigned(mBuffer, mLength, entry);
+            } else {
+                flags |= NEW_STAFF_ID;
+                mBuffer[mLength++] = (byte) length;
+                System.arraycopy(staffId, offset, mBuffer, mLength, length);
+                mLength += length;
+            }
+            if (statusWord != DEFAULT_STATUS_WORD) {
+                flags |= STATUS_WORD;
+                mBuffer[mLength++] = (byte) (statusWord >> 8);
+                mBuffer[mLength++] = (byte) statusWord;
+            }
+            if (sequence != mPreviousSequence + 1) {
+                flags |= SEQUENCE_GAP;
+                mLength = putSigned(mBuffer, mLength, sequence - (mPreviousSequence + 1));
+            }
+            mLength = putSigned(mBuffer, mLength, timestampMillis - mPreviousTime);
+            mBuffer[header] = (byte) flags;
+            mPreviousSequence = sequence;
+            mPreviousTime = timestampMillis;
+            mCount++;
+        }
+
+        /**
+         * Ends the batch.
+         *
+         * @return Its length in bytes
+         */
+        public int finish() {
+            if (!mOpen) {
+                throw new IllegalStateException("No batch begun");
+            }
+            ensure(1);
+            mBuffer[mLength++] = (byte) END;
+            mOpen = false;
+            return mLength;
+        }
+
+        /**
+         * Punches added since {@link #begin(long)}.
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return Holds the batch in its first {@link #getLength()} bytes
+         */
+        public byte[] getBuffer() {
+            return mBuffer;
+        }
+
+        public int getLength() {
+            return mLength;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(mBuffer, 0, mLength);
+        }
+
+        /**
+         * Index of the staff ID in the dictionary, or -1 after adding it.
+         */
+        private int lookUp(byte[] id, int offset, int length) {
+            int mask = mTable.length - 1;
+            int slot = hash(id, offset, length) & mask;
+            int entry;
+            while ((entry = mTable[slot]) != 0) {
+                if (equals(entry - 1, id, offset, length)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (mEntries == mIdOffsets.length) {
+                mIdOffsets = Arrays.copyOf(mIdOffsets, mEntries * 2);
+                mIdLengths = Arrays.copyOf(mIdLengths, mEntries * 2);
+            }
+            if (mIdsLength + length > mIds.length) {
+                mIds = Arrays.copyOf(mIds, Math.max(mIds.length * 2, mIdsLength + length));
+            }
+            System.arraycopy(id, offset, mIds, mIdsLength, length);
+            mIdOffsets[mEntries] = mIdsLength;
+            mIdLengths[mEntries] = length;
+            mIdsLength += length;
+            mTable[slot] = ++mEntries;
+            if (mEntries * 2 > mTable.length) {
+                rehash();
+            }
+            return -1;
+        }
+
+        private boolean equals(int entry, byte[] id, int offset, int length) {
+            if (mIdLengths[entry] != length) {
+                return false;
+            }
+            int start = mIdOffsets[entry];
+            for (int i = 0; i < length; i++) {
+                if (mIds[start + i] != id[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            mTable = new int[mTable.length * 2];
+            int mask = mTable.length - 1;
+            for (int entry = 0; entry < mEntries; entry++) {
+                int slot = hash(mIds, mIdOffsets[entry], mIdLengths[entry]) & mask;
+                while (mTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                mTable[slot] = entry + 1;
+            }
+        }
+
+        private static int hash(byte[] id, int offset, int length) {
+            // FNV-1a, then the high bits folded in, as only the low ones pick the slot.
+            int hash = 0x811C9DC5;
+            for (int i = 0; i < length; i++) {
+                hash ^= id[offset + i] & 0xFF;
+                hash *= 0x01000193;
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        private void ensure(int size) {
+            if (mLength + size > mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mLength + size));
+            }
+        }
+
+        private void putInt(int value) {
+            mBuffer[mLength++] = (byte) (value >>> 24);
+            mBuffer[mLength++] = (byte) (value >>> 16);
+            mBuffer[mLength++] = (byte) (value >>> 8);
+            mBuffer[mLength++] = (byte) value;
+        }
+
+        private static int putSigned(byte[] buffer, int offset, long value) {
+            return Varint.putUnsigned(buffer, offset, (value << 1) ^ (value >> 63));
+        }
+    }
+
+    /**
+     * Reads batches written by {@link Encoder}, keeping its dictionary between them. Not thread
+     * safe.
+     */
+    public static final class Decoder {
+        private long mSource;
+        private byte[] mIds = new byte[256];
+        private int[] mIdOffsets = new int[33];
+        private int mEntries;
+
+        /**
+         * Reads one batch from the position of {@code in} up to and including its end marker,
+         * handing every punch to {@code visitor} as it comes.
+         *
+         * @return Number of punches
+         * @throws IllegalArgumentException If {@code in} does not hold such a batch; punches
+         *                                  before the fault have been visited
+         */
+        public int decode(ByteBuffer in, Visitor visitor) {
+            try {
+                return read(in, visitor);
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException("Batch cut short");
+            }
+        }
+
+        /**
+         * Source ID of the last batch decoded.
+         */
+        public long getSource() {
+            return mSource;
+        }
+
+        private int read(ByteBuffer in, Visitor visitor) {
+            int magic = in.getInt();
+            checkHeader(magic, in.get() & 0xFF);
+            mSource = in.getLong();
+            mEntries = 0;
+            long sequence = -1;
+            long time = 0;
+            int count = 0;
+            int flags;
+            while ((flags = in.get() & 0xFF) != END) {
+                if ((flags & (RESERVED | END)) != 0) {
+                    throw new IllegalArgumentException(String.format("Bad punch header %02x at %d",
+                            flags, in.position() - 1));
+                }
+                int type = flags & TYPE_MASK;
+                int punchType = type == TYPE_OTHER ? (int) Varint.getSigned(in)
+                        : type == TYPE_UNSET ? -1 : type;
+                int entry;
+                if ((flags & NEW_STAFF_ID) != 0) {
+                    entry = addEntry(in);
+                } else {
+                    long index = Varint.getUnsigned(in);
+                    if (index < 0 || index >= mEntries) {
+                        throw new IllegalArgumentException("Staff ID index " + index + " of "
+                                + mEntries);
+                    }
+                    entry = (int) index;
+                }
+                int statusWord = (flags & STATUS_WORD) != 0 ? in.getShort() & 0xFFFF
+                        : DEFAULT_STATUS_WORD;
+                sequence += 1 + ((flags & SEQUENCE_GAP) != 0 ? Varint.getSigned(in) : 0);
+                time += Varint.getSigned(in);
+                int offset = mIdOffsets[entry];
+                visitor.onPunch(sequence, time, punchType, statusWord, mIds, offset,
+                        mIdOffsets[entry + 1] - offset);
+                count++;
+            }
+            return count;
+        }
+
+        private int addEntry(ByteBuffer in) {
+            int length = in.get() & 0xFF;
+            if (mEntries + 1 == mIdOffsets.length) {
+                mIdOffsets = Arrays.copyOf(mIdOffsets, mIdOffsets.length * 2);
+            }
+            int offset = mIdOffsets[mEntries];
+            if (offset + length > mIds.length) {
+                mIds = Arrays.copyOf(mIds, Math.max(mIds.length * 2, offset + length));
+            }
+            in.get(mIds, offset, length);
+            mIdOffsets[mEntries + 1] = offset + length;
+            return mEntries++;
+        }
+    }
+
+    /**
+     * Source ID of the batch at the position of {@code in}, which is left where it was.
+     *
+     * @throws IllegalArgumentException If {@code in} does not hold such a batch
+     */
+    public static long decodeSource(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < HEADER_SIZE) {
+            throw new IllegalArgumentException("Batch cut short");
+        }
+        checkHeader(in.getInt(start), in.get(start + 4) & 0xFF);
+        return in.getLong(start + 5);
+    }
+
+    private static void checkHeader(int magic, int version) {
+        if (magic != MAGIC) {
+            throw new IllegalArgumentException(String.format("Bad magic %08x", magic));
+        }
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported batch version " + version);
+        }
+    }
+
+    /**
+     * Punches of the batch at the position of {@code in}, for the stand-in server and tests.
+     *
+     * @throws IllegalArgumentException If {@code in} does not hold such a batch
+     */
+    public static List<PunchRecord> decode(ByteBuffer in) {
+        final List<PunchRecord> records = new ArrayList<>();
+        new Decoder().decode(in, new Visitor() {
+            @Override
+            public void onPunch(long sequence, long timestampMillis, int punchType,
+                                int statusWord, byte[] staffId, int offset, int length) {
+                records.add(new PunchRecord(sequence, timestampMillis, punchType, statusWord,
+                        Arrays.copyOfRange(staffId, offset, offset + length)));
+            }
+        });
+        return records;
+    }
+}
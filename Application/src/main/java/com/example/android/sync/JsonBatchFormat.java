@@ -0,0 +1,175 @@
+package com.example.android.sync;
+
+import com.example.android.Utils.HexCodec;
+import com.example.android.journal.PunchRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Punch batches as JSON, the body {@link PunchUploader} posts:
+ * <pre>
+ * {"source":"9f3c...","punches":[{"seq":12,"time":1546300800000,"type":0,"sw":36864,"staff":"3030303432"}]}
+ * </pre>
+ * {@code source} names the device the batch comes from, {@code staff} is the staff ID in hex, as
+ * it may hold any bytes.
+ * <p>
+ * {@link #decode(CharSequence)} reads exactly this shape back, not JSON in general; it is for
+ * the stand-in server and tests.
+ */
+public final class JsonBatchFormat {
+    public static final String CONTENT_TYPE = "application/json";
+
+    private JsonBatchFormat() {
+    }
+
+    /**
+     * Appends {@code records} as one batch to {@code out}.
+     */
+    public static void encode(String source, List<PunchRecord> records, StringBuilder out) {
+        out.append("{\"source\":\"").append(source).append("\",\"punches\":[");
+        for (int i = 0; i < records.size(); i++) {
+            PunchRecord record = records.get(i);
+            if (i > 0) {
+                out.append(',');
+            }
+            byte[] staffId = record.getStaffId();
+            out.append("{\"seq\":").append(record.getSequence())
+                    .append(",\"time\":").append(record.getTimestampMillis())
+                    .append(",\"type\":").append(record.getPunchType())
+                    .append(",\"sw\":").append(record.getStatusWord())
+                    .append(",\"staff\":\"");
+            HexCodec.encode(staffId, 0, staffId.length, out);
+            out.append("\"}");
+        }
+        out.append("]}");
+    }
+
+    /**
+     * Source named in a batch written by {@link #encode(String, List, StringBuilder)}.
+     *
+     * @throws IllegalArgumentException If {@code json} is not such a batch
+     */
+    public static String decodeSource(CharSequence json) {
+        Parser parser = new Parser(json);
+        parser.expect('{');
+        parser.key("source");
+        return parser.string();
+    }
+
+    /**
+     * Punches of a batch written by {@link #encode(String, List, StringBuilder)}.
+     *
+     * @throws IllegalArgumentException If {@code json} is not such a batch
+     */
+    public static List<PunchRecord> decode(CharSequence json) {
+        Parser parser = new Parser(json);
+        parser.expect('{');
+        parser.key("source");
+        parser.string();
+        parser.expect(',');
+        parser.key("punches");
+        parser.expect('[');
+        List<PunchRecord> records = new ArrayList<>();
+        if (!parser.skip(']')) {
+            do {
+                parser.expect('{');
+                parser.key("seq");
+                long sequence = parser.number();
+                parser.expect(',');
+                parser.key("time");
+                long time = parser.number();
+                parser.expect(',');
+                parser.key("type");
+                int type = (int) parser.number();
+                parser.expect(',');
+                parser.key("sw");
+                int statusWord = (int) parser.number();
+                parser.expect(',');
+                parser.key("staff");
+                byte[] staffId = HexCodec.decode(parser.string());
+                parser.expect('}');
+                records.add(new PunchRecord(sequence, time, type, statusWord, staffId));
+            } while (parser.skip(','));
+            parser.expect(']');
+        }
+        parser.expect('}');
+        return records;
+    }
+
+    private static final class Parser {
+        private final CharSequence mIn;
+        private int mPosition;
+
+        Parser(CharSequence in) {
+            mIn = in;
+        }
+
+        private char peek() {
+            while (mPosition < mIn.length() && Character.isWhitespace(mIn.charAt(mPosition))) {
+                mPosition++;
+            }
+            if (mPosition == mIn.length()) {
+                throw new IllegalArgumentException("Batch cut short");
+            }
+            return mIn.charAt(mPosition);
+        }
+
+        boolean skip(char c) {
+            if (peek() != c) {
+                return false;
+            }
+            mPosition++;
+            return true;
+        }
+
+        void expect(char c) {
+            if (!skip(c)) {
+                throw new IllegalArgumentException("Expected '" + c + "' at " + mPosition);
+            }
+        }
+
+        void key(String name) {
+            int at = mPosition;
+            if (!name.equals(string())) {
+                throw new IllegalArgumentException("Expected \"" + name + "\" at " + at);
+            }
+            expect(':');
+        }
+
+        String string() {
+            expect('"');
+            int end = mPosition;
+            while (end < mIn.length() && mIn.charAt(end) != '"') {
+                if (mIn.charAt(end) == '\\') {
+                    throw new IllegalArgumentException("Escapes not supported at " + end);
+                }
+                end++;
+            }
+            if (end == mIn.length()) {
+                throw new IllegalArgumentException("Unterminated string at " + mPosition);
+            }
+            String value = mIn.subSequence(mPosition, end).toString();
+            mPosition = end + 1;
+            return value;
+        }
+
+        long number() {
+            boolean negative = skip('-');
+            int start = mPosition;
+            long value = 0;
+            while (mPosition < mIn.length()) {
+                int digit = mIn.charAt(mPosition) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                mPosition++;
+            }
+            if (mPosition == start) {
+                throw new IllegalArgumentException("Expected a number at " + start);
+            }
+            return negative ? -value : value;
+        }
+    }
+}
@@ -0,0 +1,606 @@
+package com.example.android.sync;
+
+import com.example.android.common.logger.Log;
+import com.example.android.journal.PunchJournal;
+import com.example.android.journal.PunchRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sends the punches of a {@link PunchJournal} to a server, in gzipped {@link BinaryBatchFormat}
+ * batches POSTed to one URL.
+ * <p>
+ * A batch goes out once {@code batchSize} punches are waiting, or {@code batchDelayMillis} after
+ * the first of them was reported through {@link #onPunchJournaled()}, whichever comes first,
+ * and whatever else is waiting by then follows right after it.
+ * That call only bumps a counter and, now and then, queues the upload, so the tap path never
+ * waits on the network. Everything else runs on one background thread.
+ * <p>
+ * Punches are read back from the journal, so none are lost while the device is offline or the
+ * app is killed. How far the server has acknowledged is kept in a small state file next to the
+ * journal, along with the batch in flight: each batch carries an {@code Idempotency-Key} made of
+ * the device's source ID and the sequence numbers it covers, and a batch that was sent but not
+ * acknowledged is sent again as the very same batch, with the same key, after a restart. Failed
+ * uploads are retried with exponential backoff and jitter, holding the position, whatever the
+ * reason: an expired credential or a wrong URL is fixed on the server side and must not cost the
+ * backlog. Only a batch the server turns down as malformed or too large (400, 413, 422) is
+ * logged and skipped, since sending it again cannot help; it is still in the journal.
+ * <p>
+ * Connections are pooled by {@link HttpURLConnection}'s keep-alive: every response is read to the
+ * end and closed, not disconnected, so the next batch reuses the socket.
+ */
+public class PunchUploader implements Closeable {
+    private static final String TAG = "PunchUploader";
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final long DEFAULT_BATCH_DELAY_MILLIS = 30000;
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final int STATE_VERSION = 1;
+    // Checksum, version, generation, source, acknowledged and in flight, see saveState().
+    private static final int STATE_SLOT_SIZE = 40;
+
+    private final PunchJournal mJournal;
+    private final URL mUrl;
+    private final File mStateFile;
+    private final int mBatchSize;
+    private final long mBatchDelayMillis;
+    private final long mInitialBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final ScheduledThreadPoolExecutor mExecutor;
+
+    // Punches reported since the last upload started.
+    private final AtomicInteger mWaiting = new AtomicInteger();
+    // An upload is queued to run right away.
+    private final AtomicBoolean mUploadQueued = new AtomicBoolean();
+    // An upload is scheduled for when the oldest waiting punch is batchDelayMillis old.
+    private final AtomicBoolean mTimerSet = new AtomicBoolean();
+    private volatile boolean mClosed;
+
+    // All fields below are only touched on the background thread.
+    private RandomAccessFile mState;
+    private final ByteBuffer mStateSlot = ByteBuffer.allocate(STATE_SLOT_SIZE);
+    private long mStateGeneration;
+    private long mSourceId;
+    private String mSource;
+    // Everything before this sequence number has been acknowledged.
+    private long mAcknowledged;
+    // End of the batch in flight, or mAcknowledged if there is none.
+    private long mInFlightEnd;
+    private int mAttempts;
+    private boolean mRetryPending;
+    private final List<PunchRecord> mBatch = new ArrayList<>();
+    private final BinaryBatchFormat.Encoder mEncoder = new BinaryBatchFormat.Encoder();
+    private final ByteArrayOutputStream mBody = new ByteArrayOutputStream();
+    private final byte[] mDrain = new byte[4096];
+    private final Random mRandom = new Random();
+
+    // Guarded by itself; notified whenever mUploaded moves.
+    private final Object mUploadedLock = new Object();
+    private volatile long mUploaded;
+    private final AtomicLong mPunches = new AtomicLong();
+    private final AtomicLong mBatches = new AtomicLong();
+    private final AtomicLong mRetries = new AtomicLong();
+    private final AtomicLong mRejected = new AtomicLong();
+
+    private final Runnable mUploadNow = new Runnable() {
+        @Override
+        public void run() {
+            mUploadQueued.set(false);
+            upload();
+        }
+    };
+    private final Runnable mUploadLater = new Runnable() {
+        @Override
+        public void run() {
+            mTimerSet.set(false);
+            upload();
+        }
+    };
+    private final Runnable mRetry = new Runnable() {
+        @Override
+        public void run() {
+            mRetryPending = false;
+            upload();
+        }
+    };
+
+    private PunchUploader(Builder builder) {
+        mJournal = builder.mJournal;
+        mUrl = builder.mUrl;
+        mStateFile = builder.mStateFile;
+        mBatchSize = builder.mBatchSize;
+        mBatchDelayMillis = builder.mBatchDelayMillis;
+        mInitialBackoffMillis = builder.mInitialBackoffMillis;
+        mMaxBackoffMillis = builder.mMaxBackoffMillis;
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        mExecutor.allowCoreThreadTimeOut(true);
+        mExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadState();
+                // Whatever was in flight when the app stopped, or journaled since, is batched
+                // like new punches.
+                long waiting = mJournal.getEndSequence() - mAcknowledged;
+                if (mInFlightEnd != mAcknowledged || waiting >= mBatchSize) {
+                    upload();
+                } else if (waiting > 0 && mTimerSet.compareAndSet(false, true)) {
+                    submit(mUploadLater, mBatchDelayMillis);
+                }
+            }
+        });
+    }
+
+    /**
+     * Tells the uploader a punch was appended to the journal. Called on the tap path; it never
+     * blocks.
+     */
+    public void onPunchJournaled() {
+        if (mWaiting.incrementAndGet() >= mBatchSize) {
+            if (mUploadQueued.compareAndSet(false, true)) {
+                submit(mUploadNow, 0);
+            }
+        } else if (mTimerSet.compareAndSet(false, true)) {
+            submit(mUploadLater, mBatchDelayMillis);
+        }
+    }
+
+    /**
+     * Uploads everything journaled so far without waiting for a batch to fill up, unless a
+     * retry is pending. Does not block.
+     */
+    public void requestUpload() {
+        if (mUploadQueued.compareAndSet(false, true)) {
+            submit(mUploadNow, 0);
+        }
+    }
+
+    private void submit(Runnable task, long delayMillis) {
+        if (mClosed) {
+            return;
+        }
+        try {
+            mExecutor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed meanwhile; the punches are picked up from the journal next time.
+        }
+    }
+
+    /**
+     * Everything before this sequence number has been taken by the server, or turned down.
+     */
+    public long getUploadedSequence() {
+        return mUploaded;
+    }
+
+    /**
+     * Waits until everything before {@code sequence}, e.g. {@link PunchJournal#getEndSequence()},
+     * has been taken by the server, or turned down.
+     *
+     * @return Whether it was before the timeout
+     */
+    public boolean awaitUploaded(long sequence, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (mUploadedLock) {
+            while (mUploaded < sequence) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) {
+                    return false;
+                }
+                mUploadedLock.wait(left);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Punches the server has taken.
+     */
+    public long getPunchCount() {
+        return mPunches.get();
+    }
+
+    /**
+     * Batches the server has taken.
+     */
+    public long getBatchCount() {
+        return mBatches.get();
+    }
+
+    /**
+     * Uploads that failed and were retried later.
+     */
+    public long getRetryCount() {
+        return mRetries.get();
+    }
+
+    /**
+     * Batches the server turned down for good.
+     */
+    public long getRejectedCount() {
+        return mRejected.get();
+    }
+
+    /**
+     * Drains the journal, one batch after the other, until it is all uploaded or an upload
+     * fails.
+     */
+    private void upload() {
+        if (mClosed || mSource == null || mRetryPending) {
+            return;
+        }
+        mWaiting.set(0);
+        try {
+            while (!mClosed) {
+                if (mInFlightEnd == mAcknowledged) {
+                    if (!nextBatch()) {
+                        return;
+                    }
+                } else {
+                    // Sent before but not acknowledged: the very same batch again.
+                    readBatch(mAcknowledged, mInFlightEnd);
+                }
+                int status = post();
+                if (status / 100 == 2) {
+                    mPunches.addAndGet(mBatch.size());
+                    mBatches.incrementAndGet();
+                } else if (isPoison(status)) {
+                    Log.e(TAG, "Batch %d..%d turned down with HTTP %d, skipped", mAcknowledged,
+                            mInFlightEnd, status);
+                    mRejected.incrementAndGet();
+                } else {
+                    retry("HTTP " + status);
+                    return;
+                }
+                mAttempts = 0;
+                mAcknowledged = mInFlightEnd;
+                saveState();
+                setUploaded(mAcknowledged);
+            }
+        } catch (IOException e) {
+            retry(e.toString());
+        }
+    }
+
+    /**
+     * Whether the server turned the batch itself down, so that sending it again cannot help.
+     */
+    private static boolean isPoison(int status) {
+        return status == 400 || status == 413 || status == 422;
+    }
+
+    /**
+     * Reads up to {@code batchSize} punches past the last acknowledged one and marks them in
+     * flight.
+     *
+     * @return Whether there were any
+     */
+    private boolean nextBatch() throws IOException {
+        mBatch.clear();
+        mJournal.read(mAcknowledged, mBatchSize, new PunchJournal.Visitor() {
+            @Override
+            public void onRecord(PunchRecord record) {
+                mBatch.add(record);
+            }
+        });
+        if (mBatch.isEmpty()) {
+            // Nothing but invalid slots, if anything, up to the end.
+            long end = mJournal.getEndSequence();
+            if (end > mAcknowledged) {
+                mAcknowledged = end;
+                mInFlightEnd = end;
+                saveState();
+                setUploaded(end);
+            }
+            return false;
+        }
+        mInFlightEnd = mBatch.get(mBatch.size() - 1).getSequence() + 1;
+        // Kept before sending, so a batch the server may have taken is never cut differently.
+        saveState();
+        return true;
+    }
+
+    private void readBatch(long from, final long end) throws IOException {
+        mBatch.clear();
+        mJournal.read(from, (int) Math.min(Integer.MAX_VALUE, end - from),
+                new PunchJournal.Visitor() {
+                    @Override
+                    public void onRecord(PunchRecord record) {
+                        if (record.getSequence() < end) {
+                            mBatch.add(record);
+                        }
+                    }
+                });
+    }
+
+    private void retry(String reason) {
+        mRetries.incrementAndGet();
+        long backoff = mInitialBackoffMillis;
+        for (int i = 0; i < mAttempts && backoff < mMaxBackoffMillis; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, mMaxBackoffMillis);
+        mAttempts++;
+        // Half fixed, half random, so readers that lost the network together come back apart.
+        long delay = backoff / 2 + (long) (mRandom.nextDouble() * (backoff - backoff / 2));
+        Log.w(TAG, "Upload of %d..%d failed (%s), attempt %d, retrying in %d ms", mAcknowledged,
+                mInFlightEnd, reason, mAttempts, delay);
+        mRetryPending = true;
+        submit(mRetry, delay);
+    }
+
+    /**
+     * Sends the current batch.
+     *
+     * @return HTTP status
+     */
+    private int post() throws IOException {
+        mEncoder.begin(mSourceId);
+        for (int i = 0; i < mBatch.size(); i++) {
+            mEncoder.add(mBatch.get(i));
+        }
+        mEncoder.finish();
+        mBody.reset();
+        GZIPOutputStream gzip = new GZIPOutputStream(mBody);
+        mEncoder.writeTo(gzip);
+        gzip.close();
+
+        HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        // Not streamed: the body is written out along with the headers, in one segment. Sent
+        // apart, the body waits for the server to acknowledge the headers, which can take as
+        // long as its delayed ACK timer, some 40 ms, per batch.
+        connection.setRequestProperty("Content-Type", BinaryBatchFormat.CONTENT_TYPE);
+        connection.setRequestProperty("Content-Encoding", "gzip");
+        connection.setRequestProperty(IDEMPOTENCY_KEY_HEADER, getIdempotencyKey());
+        OutputStream out = connection.getOutputStream();
+        try {
+            mBody.writeTo(out);
+        } finally {
+            out.close();
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null) {
+            // Read to the end, so the connection goes back to the pool.
+            try {
+                while (in.read(mDrain) != -1) {
+                    // Nothing to keep.
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Key of the batch in flight: the same for every attempt to send it, and different for
+     * every other batch of any device.
+     */
+    private String getIdempotencyKey() {
+        return mSource + "-" + mAcknowledged + "-" + mInFlightEnd;
+    }
+
+    private void setUploaded(long sequence) {
+        synchronized (mUploadedLock) {
+            mUploaded = sequence;
+            mUploadedLock.notifyAll();
+        }
+    }
+
+    private void loadState() {
+        long sourceId = 0;
+        try {
+            mState = new RandomAccessFile(mStateFile, "rw");
+            byte[] bytes = new byte[STATE_SLOT_SIZE * 2];
+            int length = (int) Math.min(mState.length(), bytes.length);
+            mState.readFully(bytes, 0, length);
+            ByteBuffer slots = ByteBuffer.wrap(bytes);
+            int newest = -1;
+            for (int i = 0; i < 2; i++) {
+                int base = i * STATE_SLOT_SIZE;
+                if (isValidSlot(slots, base) && (newest < 0 || slots.getLong(base + 8)
+                        > slots.getLong(newest * STATE_SLOT_SIZE + 8))) {
+                    newest = i;
+                }
+            }
+            if (newest >= 0) {
+                int base = newest * STATE_SLOT_SIZE;
+                mStateGeneration = slots.getLong(base + 8);
+                sourceId = slots.getLong(base + 16);
+                mAcknowledged = slots.getLong(base + 24);
+                mInFlightEnd = slots.getLong(base + 32);
+            } else if (length > 0) {
+                Log.e(TAG, "No valid state in %s, uploading the whole journal again", mStateFile);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot read " + mStateFile + ", uploading the whole journal again", e);
+        }
+        if (sourceId != 0 && mInFlightEnd > mJournal.getEndSequence()) {
+            // The journal was wiped: its sequence numbers start over, so must the keys.
+            Log.w(TAG, "Journal is behind %s, uploading it as a new source", mStateFile);
+            sourceId = 0;
+        }
+        if (sourceId == 0) {
+            do {
+                sourceId = new SecureRandom().nextLong();
+            } while (sourceId == 0);
+            mAcknowledged = 0;
+            mInFlightEnd = 0;
+        }
+        mSource = String.format(Locale.US, "%016x", sourceId);
+        mSourceId = sourceId;
+        setUploaded(mAcknowledged);
+        try {
+            saveState();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot write " + mStateFile, e);
+        }
+    }
+
+    /**
+     * Writes the state over the older of the two slots, so whatever happens to this write the
+     * other one is still there. Like a journal append it lands in the page cache, which survives
+     * the app dying.
+     */
+    private void saveState() throws IOException {
+        if (mState == null) {
+            throw new IOException("Cannot open " + mStateFile);
+        }
+        mStateGeneration++;
+        ByteBuffer slot = mStateSlot;
+        slot.putInt(4, STATE_VERSION);
+        slot.putLong(8, mStateGeneration);
+        slot.putLong(16, mSourceId);
+        slot.putLong(24, mAcknowledged);
+        slot.putLong(32, mInFlightEnd);
+        slot.putInt(0, checksum(slot, 0));
+        mState.seek((mStateGeneration & 1) * STATE_SLOT_SIZE);
+        mState.write(slot.array());
+    }
+
+    private static boolean isValidSlot(ByteBuffer slots, int base) {
+        int stored = slots.getInt(base);
+        return stored != 0 && stored == checksum(slots, base)
+                && slots.getInt(base + 4) == STATE_VERSION;
+    }
+
+    /**
+     * FNV-1a over bytes 4..39 of a slot, never 0, as for journal records.
+     */
+    private static int checksum(ByteBuffer slots, int base) {
+        int hash = 0x811C9DC5;
+        for (int i = 4; i < STATE_SLOT_SIZE; i++) {
+            hash ^= slots.get(base + i) & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Stops uploading, waiting for an upload in progress. Punches not sent yet stay in the
+     * journal for the next uploader.
+     */
+    @Override
+    public void close() {
+        mClosed = true;
+        mExecutor.shutdown();
+        try {
+            if (!mExecutor.awaitTermination(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Upload still running after %d ms", READ_TIMEOUT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (mExecutor.isTerminated() && mState != null) {
+            try {
+                mState.close();
+            } catch (IOException e) {
+                // Nothing is lost, every write went through already.
+            }
+        }
+    }
+
+    public static class Builder {
+        private final PunchJournal mJournal;
+        private final URL mUrl;
+        private final File mStateFile;
+        private int mBatchSize = DEFAULT_BATCH_SIZE;
+        private long mBatchDelayMillis = DEFAULT_BATCH_DELAY_MILLIS;
+        private long mInitialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+        private long mMaxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+        /**
+         * @param url       Where batches are POSTed; use https outside of tests
+         * @param stateFile Where the upload position is kept, one per journal
+         */
+        public Builder(PunchJournal journal, URL url, File stateFile) {
+            mJournal = journal;
+            mUrl = url;
+            mStateFile = stateFile;
+        }
+
+        /**
+         * Most punches in one batch, and how many waiting punches send a batch right away.
+         */
+        public Builder batchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size " + batchSize + " < 1");
+            }
+            mBatchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Longest a punch waits for its batch to fill up.
+         */
+        public Builder batchDelayMillis(long batchDelayMillis) {
+            if (batchDelayMillis < 0) {
+                throw new IllegalArgumentException("Batch delay " + batchDelayMillis + " < 0");
+            }
+            mBatchDelayMillis = batchDelayMillis;
+            return this;
+        }
+
+        /**
+         * Wait after the first failed upload, doubled after every further one up to
+         * {@code maxMillis}. The actual wait is between half of that and all of it.
+         */
+        public Builder backoff(long initialMillis, long maxMillis) {
+            if (initialMillis < 1 || maxMillis < initialMillis) {
+                throw new IllegalArgumentException("Backoff " + initialMillis + " to " + maxMillis);
+            }
+            mInitialBackoffMillis = initialMillis;
+            mMaxBackoffMillis = maxMillis;
+            return this;
+        }
+
+        /**
+         * Builds the uploader and starts sending what the journal holds already.
+         */
+        public PunchUploader build() {
+            return new PunchUploader(this);
+        }
+    }
+}
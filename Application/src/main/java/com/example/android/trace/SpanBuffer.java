@@ -0,0 +1,116 @@
+package com.example.android.trace;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spans of one thread, in a ring that is allocated once and overwrites its oldest span when
+ * full. Only the owning thread writes; {@link #copyTo(Tracer.Span[], int)} may run on any
+ * thread and skips the spans that were overwritten while it was copying.
+ */
+final class SpanBuffer {
+    // Nesting deeper than this is not recorded, but begin and end still pair up.
+    private static final int MAX_DEPTH = 16;
+
+    final long mThreadId;
+    final String mThreadName;
+    private final WeakReference<Thread> mThread;
+    private final int mCapacity;
+    // One slot more than the capacity: the one the writer may be filling during a copy.
+    private final int mSlots;
+    private final String[] mNames;
+    private final long[] mStarts;
+    private final long[] mEnds;
+    private final long[] mTaps;
+    // Number of spans ever written; published after the span itself.
+    private final AtomicLong mWritten = new AtomicLong();
+    // Spans before this one were cleared.
+    private volatile long mClearedAt;
+
+    private final String[] mOpenNames = new String[MAX_DEPTH];
+    private final long[] mOpenStarts = new long[MAX_DEPTH];
+    private int mDepth;
+    long mCurrentTap;
+
+    SpanBuffer(Thread thread, int capacity) {
+        mThreadId = thread.getId();
+        mThreadName = thread.getName();
+        mThread = new WeakReference<>(thread);
+        mCapacity = capacity;
+        mSlots = capacity + 1;
+        mNames = new String[mSlots];
+        mStarts = new long[mSlots];
+        mEnds = new long[mSlots];
+        mTaps = new long[mSlots];
+    }
+
+    boolean isThreadAlive() {
+        Thread thread = mThread.get();
+        return thread != null && thread.isAlive();
+    }
+
+    int capacity() {
+        return mCapacity;
+    }
+
+    void begin(String name, long nanos) {
+        if (mDepth < MAX_DEPTH) {
+            mOpenNames[mDepth] = name;
+            mOpenStarts[mDepth] = nanos;
+        }
+        mDepth++;
+    }
+
+    /**
+     * @return false if there was no span to end
+     */
+    boolean end(long nanos) {
+        if (mDepth == 0) {
+            return false;
+        }
+        mDepth--;
+        if (mDepth < MAX_DEPTH) {
+            add(mOpenNames[mDepth], mOpenStarts[mDepth], nanos, mCurrentTap);
+            mOpenNames[mDepth] = null;
+        }
+        return true;
+    }
+
+    void add(String name, long startNanos, long endNanos, long tap) {
+        long written = mWritten.get();
+        int index = (int) (written % mSlots);
+        mNames[index] = name;
+        mStarts[index] = startNanos;
+        mEnds[index] = endNanos;
+        mTaps[index] = tap;
+        mWritten.lazySet(written + 1);
+    }
+
+    /**
+     * Copies the spans still in the buffer, oldest first, to {@code out} from {@code offset}.
+     *
+     * @return Number of spans copied
+     */
+    int copyTo(Tracer.Span[] out, int offset) {
+        long end = mWritten.get();
+        long start = Math.max(mClearedAt, end - mCapacity);
+        int count = 0;
+        for (long i = start; i < end && offset + count < out.length; i++) {
+            int index = (int) (i % mSlots);
+            out[offset + count++] = new Tracer.Span(mNames[index], mStarts[index], mEnds[index],
+                    mTaps[index], mThreadId);
+        }
+        // The writer may have lapped the copy; drop what it overwrote.
+        long overwritten = mWritten.get() - mCapacity - start;
+        if (overwritten <= 0) {
+            return count;
+        }
+        int keep = (int) Math.max(0, count - overwritten);
+        System.arraycopy(out, offset + count - keep, out, offset, keep);
+        return keep;
+    }
+
+    void clear() {
+        mClearedAt = mWritten.get();
+    }
+}
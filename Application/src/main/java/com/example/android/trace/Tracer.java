@@ -0,0 +1,292 @@
+package com.example.android.trace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records where the time of each tap goes, as spans such as {@link #CONNECT} or
+ * {@link #TRANSCEIVE} tagged with the tap they belong to, so a single slow tap can be taken
+ * apart after the fact. {@link #writeChromeTrace(Appendable)} exports them for
+ * chrome://tracing or ui.perfetto.dev.
+ * <p>
+ * Every thread writes to a ring buffer of its own that is allocated on its first span, so
+ * recording takes no lock and allocates nothing; old spans are overwritten. The tap a thread
+ * works for is carried over to other threads with {@link #currentTap()} and
+ * {@link #setCurrentTap(long)}. On a device, {@link #begin(String)} and {@link #end()} also
+ * open and close {@code android.os.Trace} sections, so spans show up in systrace.
+ */
+public final class Tracer {
+    // Spans of the tap path.
+    public static final String TAP = "tap";
+    public static final String CONNECT = "connect";
+    public static final String TRANSCEIVE = "transceive";
+    public static final String RAPDU_RESP = "rapduResp";
+    public static final String REPORT = "report";
+    public static final String DISPLAY_RESULT = "displayResult";
+    // From runOnUiThread() until the UI thread runs the update.
+    public static final String UI_HOP = "runOnUiThread";
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    // Buffers of threads that have finished are kept until there are this many buffers, so the
+    // spans of pool threads that came and went can still be exported.
+    private static final int MAX_BUFFERS = 32;
+    private static final boolean PLATFORM_TRACE =
+            "Dalvik".equals(System.getProperty("java.vm.name"));
+
+    private static volatile boolean mEnabled = true;
+    private static volatile int mCapacity = DEFAULT_CAPACITY;
+    private static final AtomicLong mTaps = new AtomicLong();
+    private static final CopyOnWriteArrayList<SpanBuffer> mBuffers = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<SpanBuffer> mBuffer = new ThreadLocal<SpanBuffer>() {
+        @Override
+        protected SpanBuffer initialValue() {
+            SpanBuffer buffer = new SpanBuffer(Thread.currentThread(), mCapacity);
+            if (mBuffers.size() >= MAX_BUFFERS) {
+                for (SpanBuffer old : mBuffers) {
+                    if (!old.isThreadAlive()) {
+                        mBuffers.remove(old);
+                    }
+                }
+            }
+            mBuffers.add(buffer);
+            return buffer;
+        }
+    };
+
+    private Tracer() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Sets the number of spans kept per thread, for the threads that start tracing after this.
+     */
+    public static void setCapacity(int spans) {
+        if (spans < 1) {
+            throw new IllegalArgumentException("Capacity " + spans + " < 1");
+        }
+        mCapacity = spans;
+    }
+
+    /**
+     * Starts a new tap on this thread: makes it the current tap and opens its {@link #TAP}
+     * span, to be closed with {@link #end()}.
+     *
+     * @return ID of the tap, to hand on to other threads with the tap's data
+     */
+    public static long beginTap() {
+        long tap = mTaps.incrementAndGet();
+        if (mEnabled) {
+            mBuffer.get().mCurrentTap = tap;
+            begin(TAP);
+        }
+        return tap;
+    }
+
+    /**
+     * Tap the spans of this thread belong to, 0 if none.
+     */
+    public static long currentTap() {
+        return mEnabled ? mBuffer.get().mCurrentTap : 0;
+    }
+
+    /**
+     * Makes {@code tap} the tap the spans of this thread belong to, e.g. on a worker thread that
+     * takes over from the NFC thread.
+     *
+     * @return The tap that was current before, to be put back when the work is done
+     */
+    public static long setCurrentTap(long tap) {
+        if (!mEnabled) {
+            return 0;
+        }
+        SpanBuffer buffer = mBuffer.get();
+        long previous = buffer.mCurrentTap;
+        buffer.mCurrentTap = tap;
+        return previous;
+    }
+
+    /**
+     * Opens a span on this thread. Every begin needs an {@link #end()} on the same thread,
+     * best in a finally block.
+     *
+     * @param name One of the span constants, or another string that is not built per call
+     */
+    public static void begin(String name) {
+        if (!mEnabled) {
+            return;
+        }
+        mBuffer.get().begin(name, System.nanoTime());
+        if (PLATFORM_TRACE) {
+            android.os.Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * Closes the span last opened on this thread.
+     */
+    public static void end() {
+        // Not checking mEnabled, so a span opened before tracing was turned off is still closed.
+        if (mBuffer.get().end(System.nanoTime()) && PLATFORM_TRACE) {
+            android.os.Trace.endSection();
+        }
+    }
+
+    /**
+     * Records a span that was not timed with begin and end, e.g. one that started on another
+     * thread. It belongs to the current tap of this thread.
+     */
+    public static void record(String name, long startNanos, long endNanos) {
+        if (mEnabled) {
+            SpanBuffer buffer = mBuffer.get();
+            buffer.add(name, startNanos, endNanos, buffer.mCurrentTap);
+        }
+    }
+
+    /**
+     * Copies the spans of all threads, ordered by start time. Does not stop threads from
+     * recording.
+     */
+    public static List<Span> getSpans() {
+        List<SpanBuffer> buffers = new ArrayList<>(mBuffers);
+        int capacity = 0;
+        for (SpanBuffer buffer : buffers) {
+            capacity += buffer.capacity();
+        }
+        Span[] spans = new Span[capacity];
+        int count = 0;
+        for (SpanBuffer buffer : buffers) {
+            count += buffer.copyTo(spans, count);
+        }
+        spans = Arrays.copyOf(spans, count);
+        Arrays.sort(spans, new Comparator<Span>() {
+            @Override
+            public int compare(Span a, Span b) {
+                return a.mStartNanos < b.mStartNanos ? -1 : a.mStartNanos == b.mStartNanos ? 0 : 1;
+            }
+        });
+        return Arrays.asList(spans);
+    }
+
+    /**
+     * Spans of one tap, ordered by start time.
+     */
+    public static List<Span> getSpans(long tap) {
+        List<Span> spans = new ArrayList<>();
+        for (Span span : getSpans()) {
+            if (span.mTap == tap) {
+                spans.add(span);
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Forgets the spans recorded so far.
+     */
+    public static void clear() {
+        for (SpanBuffer buffer : mBuffers) {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Writes all spans in the Trace Event format that chrome://tracing and Perfetto read: one
+     * complete event per span with the tap in its args, and the names of the threads.
+     */
+    public static void writeChromeTrace(Appendable out) throws IOException {
+        out.append("{\"traceEvents\":[");
+        String separator = "\n";
+        for (SpanBuffer buffer : new ArrayList<>(mBuffers)) {
+            out.append(separator).append(String.format(Locale.US,
+                    "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":%d,\"args\":{\"name\":\"%s\"}}",
+                    buffer.mThreadId, escape(buffer.mThreadName)));
+            separator = ",\n";
+        }
+        for (Span span : getSpans()) {
+            out.append(separator).append(String.format(Locale.US,
+                    "{\"name\":\"%s\",\"cat\":\"tap\",\"ph\":\"X\",\"ts\":%.3f,\"dur\":%.3f,"
+                            + "\"pid\":1,\"tid\":%d,\"args\":{\"tap\":%d}}",
+                    escape(span.mName), span.mStartNanos / 1000.0,
+                    (span.mEndNanos - span.mStartNanos) / 1000.0, span.mThreadId, span.mTap));
+            separator = ",\n";
+        }
+        out.append("\n],\"displayTimeUnit\":\"ms\"}\n");
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One recorded span. Times are {@link System#nanoTime()} values.
+     */
+    public static final class Span {
+        final String mName;
+        final long mStartNanos;
+        final long mEndNanos;
+        final long mTap;
+        final long mThreadId;
+
+        Span(String name, long startNanos, long endNanos, long tap, long threadId) {
+            mName = name;
+            mStartNanos = startNanos;
+            mEndNanos = endNanos;
+            mTap = tap;
+            mThreadId = threadId;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getStartNanos() {
+            return mStartNanos;
+        }
+
+        public long getEndNanos() {
+            return mEndNanos;
+        }
+
+        public long getDurationNanos() {
+            return mEndNanos - mStartNanos;
+        }
+
+        public long getTap() {
+            return mTap;
+        }
+
+        public long getThreadId() {
+            return mThreadId;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s %d us (tap %d, thread %d)", mName,
+                    getDurationNanos() / 1000, mTap, mThreadId);
+        }
+    }
+}
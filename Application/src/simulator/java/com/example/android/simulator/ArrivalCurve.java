@@ -0,0 +1,67 @@
+package com.example.android.simulator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When people reach the reader, as the gaps between one tap and the next. Curves may keep state
+ * (e.g. the position in a burst), so use one instance per run.
+ */
+public abstract class ArrivalCurve {
+
+    /**
+     * Draws the time from the previous arrival to the next one.
+     *
+     * @return Gap in nanoseconds, never negative
+     */
+    public abstract long nextGapNanos(Random random);
+
+    /**
+     * Independent arrivals at an average of {@code tapsPerSecond}, e.g. 0.5 for 300 people over
+     * ten minutes.
+     */
+    public static ArrivalCurve poisson(final double tapsPerSecond) {
+        if (tapsPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate " + tapsPerSecond + " <= 0");
+        }
+        final double meanNanos = TimeUnit.SECONDS.toNanos(1) / tapsPerSecond;
+        return new ArrivalCurve() {
+            @Override
+            public long nextGapNanos(Random random) {
+                return exponential(random, meanNanos);
+            }
+        };
+    }
+
+    /**
+     * Groups of {@code size} people arriving together, e.g. off a bus or out of a meeting: the
+     * taps of a group are Poisson at {@code tapsPerSecondInBurst}, and groups are {@code pause}
+     * apart on average, also exponentially distributed.
+     */
+    public static ArrivalCurve burst(final int size, double tapsPerSecondInBurst, long pause,
+                                     TimeUnit unit) {
+        if (size < 1 || tapsPerSecondInBurst <= 0) {
+            throw new IllegalArgumentException("Burst of " + size + " at " + tapsPerSecondInBurst
+                    + " taps/s");
+        }
+        final double meanGapNanos = TimeUnit.SECONDS.toNanos(1) / tapsPerSecondInBurst;
+        final double meanPauseNanos = unit.toNanos(pause);
+        return new ArrivalCurve() {
+            private int mLeft;
+
+            @Override
+            public long nextGapNanos(Random random) {
+                if (mLeft == 0) {
+                    mLeft = size - 1;
+                    return exponential(random, meanPauseNanos);
+                }
+                mLeft--;
+                return exponential(random, meanGapNanos);
+            }
+        };
+    }
+
+    private static long exponential(Random random, double meanNanos) {
+        return (long) (-meanNanos * Math.log(1 - random.nextDouble()));
+    }
+}
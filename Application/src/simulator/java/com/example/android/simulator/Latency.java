@@ -0,0 +1,72 @@
+package com.example.android.simulator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long a {@link SimulatedCard} takes to answer a command.
+ */
+public abstract class Latency {
+    private static final Latency NONE = new Latency() {
+        @Override
+        public long nextNanos(Random random) {
+            return 0;
+        }
+    };
+
+    /**
+     * Draws the delay of one answer.
+     *
+     * @return Delay in nanoseconds, never negative
+     */
+    public abstract long nextNanos(Random random);
+
+    public static Latency none() {
+        return NONE;
+    }
+
+    public static Latency fixed(long duration, TimeUnit unit) {
+        final long nanos = unit.toNanos(duration);
+        return new Latency() {
+            @Override
+            public long nextNanos(Random random) {
+                return nanos;
+            }
+        };
+    }
+
+    /**
+     * Evenly spread between {@code min} and {@code max}.
+     */
+    public static Latency uniform(long min, long max, TimeUnit unit) {
+        if (max < min) {
+            throw new IllegalArgumentException("max " + max + " < min " + min);
+        }
+        final long minNanos = unit.toNanos(min);
+        final long spanNanos = unit.toNanos(max) - minNanos;
+        return new Latency() {
+            @Override
+            public long nextNanos(Random random) {
+                return minNanos + (long) (random.nextDouble() * spanNanos);
+            }
+        };
+    }
+
+    /**
+     * Log-normal around {@code median}, the long tailed shape radio round trips usually have.
+     * With {@code sigma} 0.5 one answer in a hundred takes about 3.2 times the median, with 1.0
+     * about 10 times.
+     */
+    public static Latency logNormal(long median, final double sigma, TimeUnit unit) {
+        if (sigma < 0) {
+            throw new IllegalArgumentException("sigma " + sigma + " < 0");
+        }
+        final double medianNanos = unit.toNanos(median);
+        return new Latency() {
+            @Override
+            public long nextNanos(Random random) {
+                return (long) (medianNanos * Math.exp(sigma * random.nextGaussian()));
+            }
+        };
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.android.simulator;
+
+import com.example.android.RAPDUApi.AsyncRapduInterface;
+import com.example.android.cardreader.AsyncRapduImplement;
+import com.example.android.cardreader.CommandApduBuilder;
+import com.example.android.cardreader.LoyaltyCardReader;
+import com.example.android.cardreader.RapduImplement;
+import com.example.android.cardreader.ReaderConfig;
+import com.example.android.cardreader.ReaderSettings;
+import com.example.android.cardreader.ResponseApdu;
+import com.example.android.cardreader.TapPipeline;
+import com.example.android.common.logger.Log;
+import com.example.android.metrics.LatencyHistogram;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a crowd of people tapping a {@link LoyaltyCardReader}, each with a {@link SimulatedCard},
+ * and measures how long each of them waits for their name to come up.
+ * <p>
+ * Taps arrive on an {@link ArrivalCurve} and are fed to the reader one at a time from the
+ * calling thread, like the NFC thread does: whoever arrives while the reader is busy waits. The
+ * latency of a tap is counted from its scheduled arrival, not from when the reader got to it, to
+ * the staff ID callback on {@link LoyaltyCardReader.AccountCallback}, so a slow reader shows up
+ * in the numbers instead of just slowing the arrivals down.
+ * <p>
+ * Each tap uses a different staff ID, the tap's sequence number, so no tap is dropped as a
+ * repeat. A run replaces the reader's RAPDU interface and settings, see
+ * {@link LoyaltyCardReader#setRapdu(AsyncRapduInterface, ReaderSettings)}.
+ */
+public class LoadGenerator implements LoyaltyCardReader.AccountCallback {
+    private static final String TAG = "LoadGenerator";
+    // Callbacks still outstanding after the last tap are given up on after this long.
+    private static final long DRAIN_TIMEOUT_SECONDS = 30;
+
+    private final int mTaps;
+    private final ArrivalCurve mArrivals;
+    private final SimulatedCard.Builder mCards;
+    private final double mSpeedup;
+    private final Random mRandom;
+    private final ReaderConfig mConfig;
+
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+    private final Semaphore mCallbacks = new Semaphore(0);
+    // Scheduled arrival of every tap, indexed by staff ID.
+    private long[] mArrivalNanos;
+    private volatile long mLastCallbackNanos;
+
+    private LoadGenerator(Builder builder) {
+        mTaps = builder.mTaps;
+        mArrivals = builder.mArrivals;
+        mCards = builder.mCards.seed(builder.mSeed);
+        mSpeedup = builder.mSpeedup;
+        mRandom = new Random(builder.mSeed);
+        mConfig = builder.mConfig;
+    }
+
+    /**
+     * Runs all taps and waits for their callbacks. Blocks for as long as the arrivals take,
+     * divided by the speedup.
+     */
+    public Report run() {
+        ReaderSettings settings = ReaderSettings.of(mConfig);
+        LoyaltyCardReader.setRapdu(new AsyncRapduImplement(new RapduImplement(settings)), settings);
+        LoyaltyCardReader reader = new LoyaltyCardReader(this);
+
+        mArrivalNanos = new long[mTaps];
+        int[] results = new int[TapPipeline.RESULT_FAILED + 1];
+        long startNanos = System.nanoTime();
+        long arrivalNanos = startNanos;
+        for (int i = 0; i < mTaps; i++) {
+            arrivalNanos += (long) (mArrivals.nextGapNanos(mRandom) / mSpeedup);
+            mArrivalNanos[i] = arrivalNanos;
+            for (long wait = arrivalNanos - System.nanoTime(); wait > 0;
+                 wait = arrivalNanos - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            byte[] staffId = String.format(Locale.US, "%08d", i).getBytes(StandardCharsets.US_ASCII);
+            SimulatedCard card = mCards.respond(CommandApduBuilder.STAFF_ID_AID, staffId,
+                    ResponseApdu.SW_OK).build();
+            results[reader.onCardDiscovered(new byte[]{(byte) (i >> 24), (byte) (i >> 16),
+                    (byte) (i >> 8), (byte) i}, card)]++;
+        }
+        int dispatched = results[TapPipeline.RESULT_DISPATCHED];
+        try {
+            if (!mCallbacks.tryAcquire(dispatched, DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                Log.w(TAG, "Only %d of %d callbacks arrived", mCallbacks.availablePermits(), dispatched);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reader.shutdown();
+        return new Report(mTaps, results, mLatency.snapshot(),
+                Math.max(mLastCallbackNanos, arrivalNanos) - startNanos,
+                arrivalNanos - startNanos);
+    }
+
+    @Override
+    public void onAccountReceived(String account, int type) {
+        if (type != 1) {
+            return;
+        }
+        int tap;
+        try {
+            tap = Integer.parseInt(account);
+        } catch (NumberFormatException e) {
+            // "Busy", "Hold still" and the like.
+            return;
+        }
+        long now = System.nanoTime();
+        mLatency.record(now - mArrivalNanos[tap]);
+        mLastCallbackNanos = now;
+        mCallbacks.release();
+    }
+
+    /**
+     * Outcome of a {@link #run()}.
+     */
+    public static final class Report {
+        private final int mTaps;
+        private final int[] mResults;
+        private final LatencyHistogram.Snapshot mLatency;
+        private final long mElapsedNanos;
+        private final long mOfferedNanos;
+
+        Report(int taps, int[] results, LatencyHistogram.Snapshot latency, long elapsedNanos,
+               long offeredNanos) {
+            mTaps = taps;
+            mResults = results;
+            mLatency = latency;
+            mElapsedNanos = elapsedNanos;
+            mOfferedNanos = offeredNanos;
+        }
+
+        public int getTaps() {
+            return mTaps;
+        }
+
+        /**
+         * Number of taps that ended with {@code result}, one of the {@link TapPipeline}
+         * RESULT_ constants.
+         */
+        public int getCount(int result) {
+            return mResults[result];
+        }
+
+        /**
+         * Tap-to-callback latency of the taps that got through.
+         */
+        public LatencyHistogram.Snapshot getLatency() {
+            return mLatency;
+        }
+
+        /**
+         * From the first arrival slot to the last callback.
+         */
+        public long getElapsedNanos() {
+            return mElapsedNanos;
+        }
+
+        /**
+         * Callbacks per second of elapsed time.
+         */
+        public double getThroughput() {
+            return mElapsedNanos == 0 ? 0 : mLatency.getCount() * 1e9 / mElapsedNanos;
+        }
+
+        /**
+         * Taps per second the arrival curve asked for.
+         */
+        public double getOfferedRate() {
+            return mOfferedNanos == 0 ? 0 : mTaps * 1e9 / mOfferedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d taps offered at %.1f/s, %.1f/s done: %d ok, "
+                            + "%d repeat, %d busy, %d timed out, %d failed; latency %s",
+                    mTaps, getOfferedRate(), getThroughput(),
+                    mResults[TapPipeline.RESULT_DISPATCHED], mResults[TapPipeline.RESULT_REPEAT],
+                    mResults[TapPipeline.RESULT_BUSY], mResults[TapPipeline.RESULT_TIMED_OUT],
+                    mResults[TapPipeline.RESULT_FAILED] + mResults[TapPipeline.RESULT_NOT_CONNECTED],
+                    mLatency);
+        }
+    }
+
+    public static class Builder {
+        private int mTaps = 300;
+        private ArrivalCurve mArrivals = ArrivalCurve.poisson(0.5);
+        private SimulatedCard.Builder mCards = SimulatedCard.punchCard("IN", "0")
+                .latency(Latency.logNormal(20, 0.5, TimeUnit.MILLISECONDS));
+        private double mSpeedup = 1;
+        private long mSeed = 42;
+        private ReaderConfig mConfig = ReaderConfig.DEFAULT.buildUpon().punchMode(0).build();
+
+        /**
+         * Number of taps, 300 by default.
+         */
+        public Builder taps(int taps) {
+            mTaps = taps;
+            return this;
+        }
+
+        /**
+         * When taps arrive, Poisson at 0.5 taps/s by default: 300 people in ten minutes.
+         */
+        public Builder arrivals(ArrivalCurve arrivals) {
+            mArrivals = arrivals;
+            return this;
+        }
+
+        /**
+         * Cards to tap with. Their staff ID answer is replaced by the tap's sequence number. By
+         * default a phone with a log-normal delay around 20 ms per command.
+         */
+        public Builder cards(SimulatedCard.Builder cards) {
+            mCards = cards;
+            return this;
+        }
+
+        /**
+         * Divides the gaps between arrivals, not the card delays, e.g. 60 to play ten minutes of
+         * arrivals in ten seconds.
+         */
+        public Builder speedup(double speedup) {
+            if (speedup <= 0) {
+                throw new IllegalArgumentException("Speedup " + speedup + " <= 0");
+            }
+            mSpeedup = speedup;
+            return this;
+        }
+
+        /**
+         * Seed for arrivals and card delays, so a run can be repeated.
+         */
+        public Builder seed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        /**
+         * Reader settings for the run; the journal is not opened either way.
+         */
+        public Builder config(ReaderConfig config) {
+            mConfig = config;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            return new LoadGenerator(this);
+        }
+    }
+}
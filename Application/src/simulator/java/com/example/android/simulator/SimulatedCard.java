@@ -0,0 +1,295 @@
+package com.example.android.simulator;
+
+import com.example.android.Utils.HexCodec;
+import com.example.android.cardreader.CardTransport;
+import com.example.android.cardreader.CommandApduBuilder;
+import com.example.android.cardreader.ResponseApdu;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link CardTransport} that plays the card (or HCE phone) itself, so the tap path can run on a
+ * plain JVM without NFC hardware.
+ * <p>
+ * The card answers SELECT for the AIDs it was built with, whatever P1 says, with the configured
+ * payload and status word, and "6A82" (not found) for any other AID. Every answer is delayed by
+ * a {@link Latency}. Answers that do not fit one frame are handed out in parts with "61xx" and
+ * GET RESPONSE, and with {@link Builder#tagLossRate(double)} the tag goes away mid-conversation
+ * like a phone pulled away too early.
+ * <p>
+ * A card is meant for one tap; build a new one from the same {@link Builder} for the next.
+ */
+public class SimulatedCard implements CardTransport {
+    public static final int SW_FILE_NOT_FOUND = 0x6A82;
+    public static final int SW_INS_NOT_SUPPORTED = 0x6D00;
+    public static final int SW_CONDITIONS_NOT_SATISFIED = 0x6985;
+    private static final int INS_GET_RESPONSE = 0xC0;
+
+    private final Applet[] mApplets;
+    private final Latency mLatency;
+    private final double mTagLossRate;
+    private final int mMaxTransceiveLength;
+    private final Random mRandom;
+
+    private volatile boolean mConnected;
+    // Thread waiting out a delay, woken up when the card is closed.
+    private volatile Thread mWaiter;
+    // Rest of a response that is being fetched with GET RESPONSE.
+    private byte[] mPending;
+    private int mPendingOffset;
+    private int mTransceiveCount;
+
+    private SimulatedCard(Builder builder, long seed) {
+        mApplets = builder.mApplets.toArray(new Applet[builder.mApplets.size()]);
+        mLatency = builder.mLatency;
+        mTagLossRate = builder.mTagLossRate;
+        mMaxTransceiveLength = builder.mMaxTransceiveLength;
+        mRandom = new Random(seed);
+    }
+
+    @Override
+    public void connect() {
+        mConnected = true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    @Override
+    public byte[] transceive(byte[] command) throws IOException {
+        if (!mConnected) {
+            throw new IOException("Tag was lost.");
+        }
+        if (command.length > mMaxTransceiveLength) {
+            throw new IOException("Transceive length exceeds supported maximum");
+        }
+        mTransceiveCount++;
+        if (mTagLossRate > 0 && mRandom.nextDouble() < mTagLossRate) {
+            mConnected = false;
+            throw new IOException("Tag was lost.");
+        }
+        Latency latency = mLatency;
+        byte[] response;
+        if (command.length >= 4 && (command[1] & 0xFF) == CommandApduBuilder.INS_SELECT) {
+            Applet applet = find(command);
+            mPending = null;
+            if (applet == null) {
+                response = statusWord(SW_FILE_NOT_FOUND);
+            } else {
+                response = applet.mResponse;
+                if (applet.mLatency != null) {
+                    latency = applet.mLatency;
+                }
+            }
+        } else if (command.length >= 4 && (command[1] & 0xFF) == INS_GET_RESPONSE) {
+            response = mPending != null ? mPending : statusWord(SW_CONDITIONS_NOT_SATISFIED);
+        } else {
+            response = statusWord(SW_INS_NOT_SUPPORTED);
+        }
+        delay(latency.nextNanos(mRandom));
+        return frame(response);
+    }
+
+    /**
+     * Returns as much of {@code response} as fits one frame, keeping the rest for GET RESPONSE.
+     */
+    private byte[] frame(byte[] response) {
+        int offset = response == mPending ? mPendingOffset : 0;
+        int remaining = response.length - offset;
+        if (remaining <= mMaxTransceiveLength) {
+            mPending = null;
+            return offset == 0 ? response : Arrays.copyOfRange(response, offset, response.length);
+        }
+        int chunk = Math.min(256, mMaxTransceiveLength - 2);
+        // SW2 of "61xx" says how much is left, 0 meaning 256 or more.
+        int left = remaining - chunk - 2;
+        byte[] frame = new byte[chunk + 2];
+        System.arraycopy(response, offset, frame, 0, chunk);
+        frame[chunk] = 0x61;
+        frame[chunk + 1] = (byte) (left >= 256 ? 0 : left);
+        mPending = response;
+        mPendingOffset = offset + chunk;
+        return frame;
+    }
+
+    private Applet find(byte[] command) {
+        int length = command.length > 4 ? command[4] & 0xFF : 0;
+        for (Applet applet : mApplets) {
+            byte[] aid = applet.mAid;
+            if (aid.length == length && command.length >= 5 + length
+                    && regionEquals(aid, command, 5)) {
+                return applet;
+            }
+        }
+        return null;
+    }
+
+    private static boolean regionEquals(byte[] aid, byte[] command, int offset) {
+        for (int i = 0; i < aid.length; i++) {
+            if (aid[i] != command[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void delay(long nanos) throws IOException {
+        if (nanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + nanos;
+        mWaiter = Thread.currentThread();
+        try {
+            long left = nanos;
+            while (left > 0 && mConnected) {
+                LockSupport.parkNanos(this, left);
+                left = deadline - System.nanoTime();
+            }
+        } finally {
+            mWaiter = null;
+        }
+        if (!mConnected) {
+            throw new IOException("Tag was lost.");
+        }
+    }
+
+    private static byte[] statusWord(int sw) {
+        return new byte[]{(byte) (sw >> 8), (byte) sw};
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return mMaxTransceiveLength;
+    }
+
+    @Override
+    public boolean isExtendedLengthApduSupported() {
+        return false;
+    }
+
+    /**
+     * Takes the card away; a transceive that is waiting for its answer fails.
+     */
+    @Override
+    public void close() {
+        mConnected = false;
+        Thread waiter = mWaiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Number of commands received, including the ones lost with the tag.
+     */
+    public int getTransceiveCount() {
+        return mTransceiveCount;
+    }
+
+    private static final class Applet {
+        final byte[] mAid;
+        // Payload followed by the status word.
+        final byte[] mResponse;
+        final Latency mLatency;
+
+        Applet(byte[] aid, byte[] response, Latency latency) {
+            mAid = aid;
+            mResponse = response;
+            mLatency = latency;
+        }
+    }
+
+    public static class Builder {
+        private final List<Applet> mApplets = new ArrayList<>();
+        private Latency mLatency = Latency.none();
+        private double mTagLossRate;
+        private int mMaxTransceiveLength = 261;
+        private long mSeed = System.nanoTime();
+
+        /**
+         * Answers SELECT of {@code aid} with {@code payload} and {@code statusWord}, after the
+         * card's {@link #latency(Latency)}. Replaces an earlier answer for the same AID.
+         */
+        public Builder respond(String aid, byte[] payload, int statusWord) {
+            return respond(aid, payload, statusWord, null);
+        }
+
+        /**
+         * Like {@link #respond(String, byte[], int)}, with a latency of its own.
+         */
+        public Builder respond(String aid, byte[] payload, int statusWord, Latency latency) {
+            byte[] aidBytes = HexCodec.decode(aid);
+            for (int i = 0; i < mApplets.size(); i++) {
+                if (Arrays.equals(mApplets.get(i).mAid, aidBytes)) {
+                    mApplets.remove(i);
+                    break;
+                }
+            }
+            byte[] response = Arrays.copyOf(payload, payload.length + 2);
+            response[payload.length] = (byte) (statusWord >> 8);
+            response[payload.length + 1] = (byte) statusWord;
+            mApplets.add(new Applet(aidBytes, response, latency));
+            return this;
+        }
+
+        /**
+         * Delay of every answer without a latency of its own. None by default.
+         */
+        public Builder latency(Latency latency) {
+            mLatency = latency;
+            return this;
+        }
+
+        /**
+         * Chance, between 0 and 1, that the tag is lost on any one command.
+         */
+        public Builder tagLossRate(double rate) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Tag loss rate " + rate + " not in [0, 1]");
+            }
+            mTagLossRate = rate;
+            return this;
+        }
+
+        /**
+         * Largest frame, 261 by default like most phones.
+         */
+        public Builder maxTransceiveLength(int length) {
+            if (length < 3) {
+                throw new IllegalArgumentException("Max transceive length " + length + " < 3");
+            }
+            mMaxTransceiveLength = length;
+            return this;
+        }
+
+        /**
+         * Seed for latencies and tag loss. Each card built after this gets the next seed, so a
+         * series of cards is repeatable.
+         */
+        public Builder seed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        public SimulatedCard build() {
+            return new SimulatedCard(this, mSeed++);
+        }
+    }
+
+    /**
+     * Card that answers the punch status and staff ID SELECTs with "9000", as the HCE app does.
+     */
+    public static Builder punchCard(String punchStatus, String staffId) {
+        return new Builder()
+                .respond(CommandApduBuilder.PUNCH_STATUS_AID, punchStatus.getBytes(StandardCharsets.UTF_8), ResponseApdu.SW_OK)
+                .respond(CommandApduBuilder.STAFF_ID_AID, staffId.getBytes(StandardCharsets.UTF_8), ResponseApdu.SW_OK);
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.android.simulator;
+
+import com.example.android.journal.PunchRecord;
+import com.example.android.sync.BinaryBatchFormat;
+import com.example.android.sync.JsonBatchFormat;
+import com.example.android.sync.PunchUploader;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stand-in for the server {@link PunchUploader} sends batches to, listening on the loopback
+ * interface, so uploads can be tested and benchmarked without a network.
+ * <p>
+ * It speaks just enough HTTP/1.1 for that: POSTs with a Content-Length body, gzipped or not,
+ * over connections kept alive until the client closes them. Batches in
+ * {@link BinaryBatchFormat#CONTENT_TYPE} are read as such, anything else as
+ * {@link JsonBatchFormat}. Every batch is decoded and kept;
+ * a batch whose {@code Idempotency-Key} was seen before is acknowledged again but not kept
+ * twice. Failures can be lined up with {@link #failNext(int, int)} and
+ * {@link #dropNext(int, boolean)}.
+ */
+public class SimulatedPunchServer implements Closeable {
+    private final ServerSocket mServerSocket;
+    private final Thread mAcceptor;
+
+    // All fields below are guarded by this.
+    private final List<Socket> mSockets = new ArrayList<>();
+    private final List<PunchRecord> mPunches = new ArrayList<>();
+    private final Map<String, Integer> mKeys = new HashMap<>();
+    private final Set<String> mSources = new HashSet<>();
+    private int mConnections;
+    private int mRequests;
+    private int mDuplicates;
+    private int mFailures;
+    private int mFailStatus;
+    private int mDrops;
+    private boolean mDropAfterKeeping;
+    private boolean mClosed;
+
+    /**
+     * Starts listening on a free port of the loopback interface.
+     */
+    public SimulatedPunchServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mAcceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "SimulatedPunchServer");
+        mAcceptor.setDaemon(true);
+        mAcceptor.start();
+    }
+
+    /**
+     * Where to POST batches.
+     */
+    public URL getUrl() {
+        try {
+            return new URL("http", "127.0.0.1", mServerSocket.getLocalPort(), "/punches");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Answers the next {@code requests} batches with {@code status} without keeping them.
+     */
+    public synchronized void failNext(int requests, int status) {
+        mFailures = requests;
+        mFailStatus = status;
+    }
+
+    /**
+     * Closes the connection instead of answering the next {@code requests} batches, as a
+     * network that drops out does.
+     *
+     * @param afterKeeping Whether the batches are kept first, so only the answer is lost
+     */
+    public synchronized void dropNext(int requests, boolean afterKeeping) {
+        mDrops = requests;
+        mDropAfterKeeping = afterKeeping;
+    }
+
+    /**
+     * Copy of every punch kept, in the order they came in.
+     */
+    public synchronized List<PunchRecord> getPunches() {
+        return new ArrayList<>(mPunches);
+    }
+
+    public synchronized int getPunchCount() {
+        return mPunches.size();
+    }
+
+    /**
+     * Distinct sources that sent batches.
+     */
+    public synchronized int getSourceCount() {
+        return mSources.size();
+    }
+
+    /**
+     * Batches kept, that is distinct idempotency keys.
+     */
+    public synchronized int getBatchCount() {
+        return mKeys.size();
+    }
+
+    /**
+     * Requests received, whatever came of them.
+     */
+    public synchronized int getRequestCount() {
+        return mRequests;
+    }
+
+    /**
+     * Batches received again under a key that was kept before.
+     */
+    public synchronized int getDuplicateCount() {
+        return mDuplicates;
+    }
+
+    /**
+     * Connections accepted; fewer than the requests when clients keep them alive.
+     */
+    public synchronized int getConnectionCount() {
+        return mConnections;
+    }
+
+    private void accept() {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            synchronized (this) {
+                if (mClosed) {
+                    closeQuietly(socket);
+                    return;
+                }
+                mSockets.add(socket);
+                mConnections++;
+            }
+            try {
+                // Answers are written in one go, there is nothing to coalesce.
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                closeQuietly(socket);
+                continue;
+            }
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            }, "SimulatedPunchServer-" + socket.getPort());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            while (handle(in, out)) {
+                // Next request on the same connection.
+            }
+        } catch (IOException e) {
+            // Client went away.
+        } finally {
+            closeQuietly(socket);
+            synchronized (this) {
+                mSockets.remove(socket);
+            }
+        }
+    }
+
+    /**
+     * Reads and answers one request.
+     *
+     * @return Whether the connection stays open
+     */
+    private boolean handle(InputStream in, OutputStream out) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null) {
+            return false;
+        }
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        if (line == null) {
+            return false;
+        }
+        String length = headers.get("content-length");
+        byte[] body = new byte[length == null ? 0 : Integer.parseInt(length)];
+        for (int read = 0; read < body.length; ) {
+            int n = in.read(body, read, body.length - read);
+            if (n < 0) {
+                throw new EOFException("Body cut short");
+            }
+            read += n;
+        }
+
+        int status;
+        String answer;
+        boolean drop;
+        synchronized (this) {
+            mRequests++;
+            drop = mDrops > 0;
+            if (drop) {
+                mDrops--;
+            }
+            if (drop && !mDropAfterKeeping) {
+                return false;
+            }
+            if (!requestLine.startsWith("POST ")) {
+                status = 405;
+                answer = "{\"error\":\"POST only\"}";
+            } else if (mFailures > 0) {
+                mFailures--;
+                status = mFailStatus;
+                answer = "{\"error\":\"failing on purpose\"}";
+            } else {
+                status = keep(headers, body);
+                answer = status == 200 ? "{\"ok\":true}" : "{\"error\":\"bad batch\"}";
+            }
+        }
+        if (drop) {
+            return false;
+        }
+        // The answer is ASCII, so its length in chars is its length in bytes.
+        String response = "HTTP/1.1 " + status + " " + (status == 200 ? "OK" : "Error") + "\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + answer.length() + "\r\n\r\n" + answer;
+        out.write(response.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return !"close".equalsIgnoreCase(headers.get("connection"));
+    }
+
+    /**
+     * Keeps a batch, with the lock held.
+     *
+     * @return HTTP status
+     */
+    private int keep(Map<String, String> headers, byte[] body) {
+        String key = headers.get(PunchUploader.IDEMPOTENCY_KEY_HEADER.toLowerCase(Locale.US));
+        if (key == null) {
+            return 400;
+        }
+        if (mKeys.containsKey(key)) {
+            mDuplicates++;
+            return 200;
+        }
+        List<PunchRecord> punches;
+        try {
+            byte[] batch = "gzip".equals(headers.get("content-encoding")) ? gunzip(body) : body;
+            String type = headers.get("content-type");
+            if (type != null && type.startsWith(BinaryBatchFormat.CONTENT_TYPE)) {
+                ByteBuffer in = ByteBuffer.wrap(batch);
+                long source = BinaryBatchFormat.decodeSource(in);
+                mSources.add(String.format(Locale.US, "%016x", source));
+                punches = BinaryBatchFormat.decode(in);
+            } else {
+                String json = new String(batch, StandardCharsets.UTF_8);
+                mSources.add(JsonBatchFormat.decodeSource(json));
+                punches = JsonBatchFormat.decode(json);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return 400;
+        }
+        mKeys.put(key, punches.size());
+        mPunches.addAll(punches);
+        return 200;
+    }
+
+    private static byte[] gunzip(byte[] body) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(body));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * One CRLF terminated line of the request head, without the CRLF.
+     *
+     * @return Null at the end of the stream
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    line.setLength(end - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Closed already.
+        }
+    }
+
+    /**
+     * Stops listening and closes every open connection.
+     */
+    @Override
+    public void close() throws IOException {
+        List<Socket> sockets;
+        synchronized (this) {
+            mClosed = true;
+            sockets = new ArrayList<>(mSockets);
+        }
+        mServerSocket.close();
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        try {
+            mAcceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
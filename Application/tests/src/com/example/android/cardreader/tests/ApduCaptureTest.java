@@ -0,0 +1,226 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.RAPDUApi.AsyncRapduInterface;
+import com.example.android.capture.ApduCapture;
+import com.example.android.capture.CapturedTap;
+import com.example.android.capture.Replay;
+import com.example.android.capture.ReplayTransport;
+import com.example.android.cardreader.AsyncRapduImplement;
+import com.example.android.cardreader.CommandApduBuilder;
+import com.example.android.cardreader.RapduImplement;
+import com.example.android.cardreader.ReaderConfig;
+import com.example.android.cardreader.ReaderSettings;
+import com.example.android.cardreader.ResponseApdu;
+import com.example.android.cardreader.Tap;
+import com.example.android.cardreader.TapDispatcher;
+import com.example.android.cardreader.TapPipeline;
+import com.example.android.simulator.Latency;
+import com.example.android.simulator.SimulatedCard;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures taps on {@link SimulatedCard}s with {@link ApduCapture} and plays them back with
+ * {@link Replay}.
+ */
+public class ApduCaptureTest extends TestCase {
+    private static final ReaderConfig CONFIG = ReaderConfig.DEFAULT.buildUpon().punchMode(0).build();
+
+    private final List<TapPipeline> mPipelines = new ArrayList<>();
+    private File mFile;
+    private TapPipeline mPipeline;
+
+    @Override
+    protected void setUp() throws IOException {
+        mFile = File.createTempFile("capture", ".apdc");
+        mPipeline = newPipeline();
+    }
+
+    @Override
+    protected void tearDown() {
+        for (TapPipeline pipeline : mPipelines) {
+            pipeline.getDispatcher().shutdown();
+        }
+        mFile.delete();
+    }
+
+    /**
+     * A pipeline with a dispatcher of its own, shut down after the test.
+     */
+    private TapPipeline newPipeline() {
+        TapPipeline pipeline = new TapPipeline(new TapDispatcher(new TapDispatcher.Handler() {
+            @Override
+            public void onTap(Tap tap) {
+            }
+        }, 1, 64));
+        mPipelines.add(pipeline);
+        return pipeline;
+    }
+
+    private static AsyncRapduInterface rapdu(ReaderConfig config) {
+        return new AsyncRapduImplement(new RapduImplement(ReaderSettings.of(config)));
+    }
+
+    private List<CapturedTap> read() throws IOException {
+        InputStream in = new FileInputStream(mFile);
+        try {
+            return CapturedTap.readAll(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Captures a plain tap, one with a staff ID too long for one frame, and one that loses the tag.
+     */
+    private void captureThreeTaps(Latency latency) throws IOException, InterruptedException {
+        byte[] longId = new byte[300];
+        Arrays.fill(longId, (byte) '5');
+        ApduCapture capture = new ApduCapture(mFile);
+        mPipeline.setCapture(capture);
+        AsyncRapduInterface rapdu = rapdu(CONFIG);
+        assertEquals(TapPipeline.RESULT_DISPATCHED, mPipeline.process(rapdu, CONFIG, new byte[]{1},
+                SimulatedCard.punchCard("IN", "00000001").latency(latency).build()));
+        assertEquals(TapPipeline.RESULT_DISPATCHED, mPipeline.process(rapdu, CONFIG, new byte[]{2},
+                SimulatedCard.punchCard("OUT", "0").latency(latency)
+                        .respond(CommandApduBuilder.STAFF_ID_AID, longId, ResponseApdu.SW_OK).build()));
+        assertEquals(TapPipeline.RESULT_FAILED, mPipeline.process(rapdu, CONFIG, new byte[]{3},
+                SimulatedCard.punchCard("IN", "00000003").latency(latency).tagLossRate(1).build()));
+        mPipeline.setCapture(null);
+        capture.close();
+        assertEquals(0, capture.getDroppedCount());
+    }
+
+    public void testCaptureIsReadBack() throws IOException, InterruptedException {
+        captureThreeTaps(Latency.none());
+
+        List<CapturedTap> taps = read();
+        assertEquals(3, taps.size());
+        CapturedTap plain = taps.get(0);
+        assertTrue(Arrays.equals(new byte[]{1}, plain.getTagId()));
+        assertEquals(TapPipeline.RESULT_DISPATCHED, plain.getResult());
+        assertEquals(261, plain.getMaxTransceiveLength());
+        assertEquals(ApduCapture.STATUS_OK, plain.getConnect().getStatus());
+        assertEquals(2, plain.getFrames().size());
+        CapturedTap.Frame staffId = plain.getFrames().get(0);
+        assertTrue(Arrays.equals(CONFIG.getStaffIdSelect(), staffId.getCommand()));
+        assertEquals("0000000190", new String(staffId.getResponse(), 0, 8, "UTF-8")
+                + Integer.toHexString(staffId.getResponse()[8] & 0xFF));
+        assertTrue(plain.getEndNanos() >= staffId.getStartNanos() + staffId.getDurationNanos());
+
+        // SELECT, GET RESPONSE, then the punch status.
+        assertEquals(3, taps.get(1).getFrames().size());
+        assertEquals(0xC0, taps.get(1).getFrames().get(1).getCommand()[1] & 0xFF);
+
+        CapturedTap lost = taps.get(2);
+        assertEquals(TapPipeline.RESULT_FAILED, lost.getResult());
+        assertEquals(ApduCapture.STATUS_IO_ERROR, lost.getFrames().get(0).getStatus());
+        assertEquals("Tag was lost.", lost.getFrames().get(0).getError());
+        assertNull(lost.getFrames().get(0).getResponse());
+    }
+
+    public void testReplayEndsLikeTheCapture() throws IOException, InterruptedException {
+        captureThreeTaps(Latency.none());
+
+        Replay.Report report = new Replay(read(), Double.POSITIVE_INFINITY)
+                .run(newPipeline(), rapdu(CONFIG), CONFIG);
+        assertEquals(TapPipeline.RESULT_DISPATCHED, report.getResult(0));
+        assertEquals(TapPipeline.RESULT_DISPATCHED, report.getResult(1));
+        assertEquals(TapPipeline.RESULT_FAILED, report.getResult(2));
+        assertEquals(0, report.getMismatchCount());
+        assertEquals(0, report.getDivergedCount());
+        assertEquals(3, report.getReplayedTapTime().getCount());
+    }
+
+    public void testReplayKeepsOrScalesTheTiming() throws IOException, InterruptedException {
+        captureThreeTaps(Latency.fixed(20, TimeUnit.MILLISECONDS));
+        List<CapturedTap> taps = read();
+
+        Replay.Report original = new Replay(taps, 1).run(newPipeline(), rapdu(CONFIG), CONFIG);
+        assertTrue(original.toString(), original.getReplayedTapTime().getValueAtPercentile(50)
+                >= TimeUnit.MILLISECONDS.toNanos(40));
+        Replay.Report faster = new Replay(taps, 10).run(newPipeline(), rapdu(CONFIG), CONFIG);
+        assertTrue(faster.toString(), faster.getReplayedTapTime().getMaxNanos()
+                < original.getReplayedTapTime().getValueAtPercentile(50));
+        assertEquals(0, faster.getMismatchCount());
+    }
+
+    public void testRepeatsStayRepeatsWhenFaster() throws IOException, InterruptedException {
+        ReaderConfig config = CONFIG.buildUpon().repeatWindowMillis(300).build();
+        AsyncRapduInterface rapdu = rapdu(config);
+        ApduCapture capture = new ApduCapture(mFile);
+        mPipeline.setCapture(capture);
+        SimulatedCard.Builder card = SimulatedCard.punchCard("IN", "00000001");
+        assertEquals(TapPipeline.RESULT_DISPATCHED,
+                mPipeline.process(rapdu, config, new byte[]{1}, card.build()));
+        Thread.sleep(100);
+        assertEquals(TapPipeline.RESULT_REPEAT,
+                mPipeline.process(rapdu, config, new byte[]{1}, card.build()));
+        Thread.sleep(500);
+        assertEquals(TapPipeline.RESULT_DISPATCHED,
+                mPipeline.process(rapdu, config, new byte[]{1}, card.build()));
+        mPipeline.setCapture(null);
+        capture.close();
+
+        // Through the same pipeline, which has seen this staff just now.
+        Replay.Report report = new Replay(read(), 10).run(mPipeline, rapdu, config);
+        assertEquals(report.toString(), 0, report.getMismatchCount());
+    }
+
+    public void testChangedCommandDiverges() throws IOException, InterruptedException {
+        captureThreeTaps(Latency.none());
+        CapturedTap tap = read().get(0);
+
+        ReplayTransport transport = new ReplayTransport(tap, Double.POSITIVE_INFINITY);
+        transport.connect();
+        try {
+            transport.transceive(CommandApduBuilder.select("F0010203040506"));
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(0, transport.getDivergedFrame());
+
+        ReaderConfig changed = CONFIG.buildUpon().staffIdAid("F0010203040506").build();
+        Replay.Report report = new Replay(read(), Double.POSITIVE_INFINITY)
+                .run(newPipeline(), rapdu(changed), changed);
+        assertEquals(3, report.getDivergedCount());
+        assertEquals(2, report.getMismatchCount());
+    }
+
+    public void testSmallBuffersStillWriteEverything() throws IOException, InterruptedException {
+        ApduCapture capture = new ApduCapture(mFile, 128);
+        mPipeline.setCapture(capture);
+        AsyncRapduInterface rapdu = rapdu(CONFIG);
+        for (int i = 0; i < 20; i++) {
+            mPipeline.process(rapdu, CONFIG, new byte[]{(byte) i},
+                    SimulatedCard.punchCard("IN", "0000" + (1000 + i)).build());
+        }
+        capture.close();
+
+        List<CapturedTap> taps = read();
+        if (capture.getDroppedCount() == 0) {
+            assertEquals(20, taps.size());
+            for (CapturedTap tap : taps) {
+                assertEquals(2, tap.getFrames().size());
+            }
+        }
+        assertTrue(taps.size() > 0);
+    }
+
+    public void testNotACapture() throws IOException {
+        try {
+            CapturedTap.readAll(new java.io.ByteArrayInputStream(new byte[20]));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.cardreader.ApduSession;
+import com.example.android.cardreader.CardTransport;
+import com.example.android.cardreader.ResponseApdu;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link ApduSession} against an in-memory transport.
+ */
+public class ApduSessionTest extends TestCase {
+
+    /**
+     * Answers every command with a fixed response, the last one again once they run out, and
+     * remembers what it was sent.
+     */
+    private static class FakeTransport implements CardTransport {
+        final List<byte[]> sent = new ArrayList<>();
+        final byte[][] responses;
+        int connects;
+        boolean connected;
+        int maxLength = 261;
+        boolean extended;
+
+        FakeTransport(byte[]... responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public void connect() {
+            connects++;
+            connected = true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public byte[] transceive(byte[] command) throws IOException {
+            if (!connected) {
+                throw new IOException("Tag was lost.");
+            }
+            sent.add(command);
+            return responses[Math.min(sent.size(), responses.length) - 1];
+        }
+
+        @Override
+        public int getMaxTransceiveLength() {
+            return maxLength;
+        }
+
+        @Override
+        public boolean isExtendedLengthApduSupported() {
+            return extended;
+        }
+
+        @Override
+        public void close() {
+            connected = false;
+        }
+    }
+
+    public void testBatchSharesOneConnection() throws IOException {
+        final byte[] punch = {0x01, (byte) 0x90, 0x00};
+        final byte[] staff = {'4', '2', (byte) 0x6A, (byte) 0x82};
+        FakeTransport transport = new FakeTransport(punch, staff);
+        ApduSession session = new ApduSession(transport);
+        session.open();
+        session.open();
+
+        ResponseApdu[] responses = session.exchange(new byte[]{0x00}, new byte[]{0x01});
+
+        assertEquals(1, transport.connects);
+        assertEquals(2, transport.sent.size());
+        assertTrue(responses[0].isOk());
+        assertEquals(1, responses[0].payloadLength());
+        assertEquals(0x6A82, responses[1].statusWord());
+        assertEquals("42", new String(responses[1].copyPayload()));
+    }
+
+    public void testShortResponseHasNoData() throws IOException {
+        ApduSession session = new ApduSession(new FakeTransport(new byte[]{0x01}));
+        session.open();
+
+        ResponseApdu response = session.exchange(new byte[]{0x00})[0];
+
+        assertFalse(response.isOk());
+        assertEquals(ResponseApdu.SW_NO_DATA, response.statusWord());
+        assertEquals(0, response.payloadLength());
+    }
+
+    public void testLostTagFailsBatch() {
+        ApduSession session = new ApduSession(new FakeTransport(new byte[]{(byte) 0x90, 0x00}));
+        try {
+            session.exchange(new byte[]{0x00});
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testLostTagClosesSession() throws IOException {
+        FakeTransport transport = new FakeTransport(new byte[]{(byte) 0x90, 0x00});
+        ApduSession session = new ApduSession(transport);
+        session.open();
+        transport.connected = false;
+        try {
+            session.exchange(new byte[]{0x00});
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+        transport.connected = true;
+
+        assertFalse(session.isOpen());
+        try {
+            session.exchange(new byte[]{0x00});
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+        assertTrue(transport.sent.isEmpty());
+    }
+
+    public void testMoreDataIsFetchedWithGetResponse() throws IOException {
+        FakeTransport transport = new FakeTransport(
+                new byte[]{'a', 'b', 0x61, 0x00},
+                new byte[]{'c', 'd', 0x61, 0x02},
+                new byte[]{'e', 'f', (byte) 0x90, 0x00});
+        ApduSession session = new ApduSession(transport);
+        session.open();
+
+        ResponseApdu response = session.exchange(new byte[]{0x00, (byte) 0xB0, 0x00, 0x00, 0x00})[0];
+
+        assertTrue(response.isOk());
+        assertEquals("abcdef", new String(response.copyPayload()));
+        assertEquals(3, transport.sent.size());
+        byte[] getResponse = transport.sent.get(2);
+        assertEquals((byte) 0xC0, getResponse[1]);
+        assertEquals(0x02, getResponse[4]);
+    }
+
+    public void testEndlessMoreDataFails() throws IOException {
+        FakeTransport transport = new FakeTransport(new byte[]{'a', 0x61, 0x01});
+        ApduSession session = new ApduSession(transport);
+        session.open();
+
+        try {
+            session.exchange(new byte[]{0x00, (byte) 0xB0, 0x00, 0x00, 0x00});
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+        assertTrue(transport.sent.size() + " frames", transport.sent.size() <= 257);
+    }
+
+    public void testTinyFramesRefuseChaining() throws IOException {
+        FakeTransport transport = new FakeTransport(new byte[]{(byte) 0x90, 0x00});
+        transport.maxLength = 6;
+        ApduSession session = new ApduSession(transport);
+        session.open();
+
+        try {
+            session.exchange(new byte[]{0x00, (byte) 0xDA, 0x00, 0x00, 0x02, 1, 2});
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+        assertTrue(transport.sent.isEmpty());
+    }
+
+    public void testLongCommandIsChained() throws IOException {
+        FakeTransport transport = new FakeTransport(
+                new byte[]{(byte) 0x90, 0x00},
+                new byte[]{(byte) 0x90, 0x00},
+                new byte[]{'o', 'k', (byte) 0x90, 0x00});
+        ApduSession session = new ApduSession(transport);
+        session.open();
+        byte[] data = new byte[600];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        // Extended length command: CLA INS P1 P2 00 Lc(2) data Le(2)
+        byte[] command = new byte[7 + data.length + 2];
+        command[1] = (byte) 0xDA;
+        command[5] = (byte) (data.length >> 8);
+        command[6] = (byte) data.length;
+        System.arraycopy(data, 0, command, 7, data.length);
+
+        ResponseApdu response = session.exchange(command)[0];
+
+        assertEquals("ok", new String(response.copyPayload()));
+        assertEquals(3, transport.sent.size());
+        assertEquals(0x10, transport.sent.get(0)[0]);
+        assertEquals((byte) 255, transport.sent.get(0)[4]);
+        assertEquals(0x00, transport.sent.get(2)[0]);
+        assertEquals(600 - 2 * 255, transport.sent.get(2)[4]);
+        assertEquals(5 + 90 + 1, transport.sent.get(2).length);
+        assertEquals((byte) 599, transport.sent.get(2)[5 + 89]);
+    }
+}
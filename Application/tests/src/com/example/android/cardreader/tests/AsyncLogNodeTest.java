@@ -0,0 +1,83 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.common.logger.AsyncLogNode;
+import com.example.android.common.logger.Log;
+import com.example.android.common.logger.LogMessage;
+import com.example.android.common.logger.LogNode;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link AsyncLogNode}.
+ */
+public class AsyncLogNodeTest extends TestCase {
+
+    private static class CollectingNode implements LogNode {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void println(int priority, String tag, String msg, Throwable tr) {
+            messages.add(msg);
+        }
+    }
+
+    public void testDeliversInOrder() {
+        CollectingNode sink = new CollectingNode();
+        AsyncLogNode node = new AsyncLogNode(64, 8);
+        node.setNext(sink);
+        node.start();
+        for (int i = 0; i < 500; i++) {
+            node.println(Log.WARN, "test", "message " + i, null);
+        }
+        node.shutdown();
+
+        long lost = node.getDroppedCount() + node.getSampledOutCount();
+        assertEquals(500, sink.messages.size() + lost);
+        assertEquals("message 0", sink.messages.get(0));
+    }
+
+    public void testDropsWhenFull() {
+        AsyncLogNode node = new AsyncLogNode(4, 8);
+        for (int i = 0; i < 10; i++) {
+            node.println(Log.ERROR, "test", "message", null);
+        }
+
+        assertEquals(4, node.getBacklog());
+        assertEquals(6, node.getDroppedCount());
+        assertEquals(0, node.getSampledOutCount());
+    }
+
+    public void testSamplesLowPriorityUnderPressure() {
+        AsyncLogNode node = new AsyncLogNode(8, 4);
+        for (int i = 0; i < 20; i++) {
+            node.println(Log.DEBUG, "test", "message", null);
+        }
+
+        assertTrue(node.getSampledOutCount() > 0);
+        assertEquals(20, node.getBacklog() + node.getDroppedCount() + node.getSampledOutCount());
+    }
+
+    public void testLazyMessageBuiltOnDelivery() {
+        final int[] built = {0};
+        CollectingNode sink = new CollectingNode();
+        AsyncLogNode node = new AsyncLogNode(8, 8);
+        node.setNext(sink);
+        node.println(Log.INFO, "test", new LogMessage() {
+            @Override
+            public String get() {
+                built[0]++;
+                return "lazy";
+            }
+        }, null);
+
+        assertEquals(0, built[0]);
+        node.start();
+        node.shutdown();
+        assertEquals(1, built[0]);
+        assertEquals("lazy", sink.messages.get(0));
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.Utils.Base64InputStream;
+import com.example.android.Utils.Base64OutputStream;
+import com.example.android.Utils.Utils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for the buffer and stream forms of the Base64 codec, checked against
+ * {@link Utils#base64Encode(byte[])} and {@link Utils#base64Decode(String)}.
+ */
+public class Base64Test extends TestCase {
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    public void testByteBufferMatchesArrays() {
+        for (int length = 0; length < 300; length += 7) {
+            byte[] data = data(length);
+            String expected = Utils.base64Encode(data);
+            assertEquals(expected.length(), Utils.base64EncodedLength(length));
+
+            // Heap buffers at an offset inside their arrays.
+            ByteBuffer src = ByteBuffer.allocate(length + 3);
+            src.position(3);
+            src = src.slice();
+            src.put(data).flip();
+            ByteBuffer dst = ByteBuffer.allocate(expected.length() + 10);
+            dst.position(5);
+            assertEquals(expected.length(), Utils.base64Encode(src, dst));
+            assertFalse(src.hasRemaining());
+            assertEquals(expected, new String(dst.array(), 5, expected.length(),
+                    StandardCharsets.US_ASCII));
+
+            dst.flip().position(5);
+            ByteBuffer decoded = ByteBuffer.allocateDirect(length);
+            assertEquals(length, Utils.base64Decode(dst, decoded));
+            byte[] actual = new byte[length];
+            decoded.flip();
+            decoded.get(actual);
+            assertTrue(Arrays.equals(data, actual));
+        }
+    }
+
+    public void testDirectBuffersSpanChunks() {
+        byte[] data = data(10000);
+        ByteBuffer src = ByteBuffer.allocateDirect(data.length);
+        src.put(data).flip();
+        ByteBuffer dst = ByteBuffer.allocateDirect(Utils.base64EncodedLength(data.length));
+        Utils.base64Encode(src, dst);
+        byte[] encoded = new byte[dst.flip().remaining()];
+        dst.get(encoded);
+        assertEquals(Utils.base64Encode(data), new String(encoded, StandardCharsets.US_ASCII));
+    }
+
+    public void testTooSmallBufferIsLeftAlone() {
+        ByteBuffer src = ByteBuffer.wrap(data(30));
+        ByteBuffer dst = ByteBuffer.allocate(39);
+        try {
+            Utils.base64Encode(src, dst);
+            fail("Expected BufferOverflowException");
+        } catch (BufferOverflowException expected) {
+        }
+        assertEquals(0, src.position());
+        assertEquals(0, dst.position());
+    }
+
+    public void testOutputStreamMatchesArrays() throws IOException {
+        byte[] data = data(5000);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        Base64OutputStream out = new Base64OutputStream(sink);
+        // Mix single bytes and odd sized writes so the encoder has to carry a tail.
+        out.write(data[0]);
+        for (int i = 1; i < data.length; ) {
+            int n = Math.min(1 + i % 11, data.length - i);
+            out.write(data, i, n);
+            i += n;
+        }
+        out.close();
+        assertEquals(Utils.base64Encode(data), sink.toString("US-ASCII"));
+    }
+
+    public void testInputStreamDecodesInSmallReads() throws IOException {
+        final byte[] data = data(5000);
+        final byte[] encoded = Utils.base64Encode(data).getBytes(StandardCharsets.US_ASCII);
+        // Hands out at most 3 bytes per read, less than a 4-character group.
+        InputStream trickle = new ByteArrayInputStream(encoded) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        Base64InputStream in = new Base64InputStream(trickle);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        byte[] buffer = new byte[100];
+        int n;
+        while ((n = in.read(buffer, 0, buffer.length)) != -1) {
+            decoded.write(buffer, 0, n);
+        }
+        in.close();
+        assertTrue(Arrays.equals(data, decoded.toByteArray()));
+    }
+
+    public void testBadInputIsRejected() {
+        try {
+            Utils.base64Decode(ByteBuffer.wrap("QQ=A".getBytes(StandardCharsets.US_ASCII)),
+                    ByteBuffer.allocate(10));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            Base64InputStream in = new Base64InputStream(
+                    new ByteArrayInputStream("QQ=A".getBytes(StandardCharsets.US_ASCII)));
+            while (in.read() != -1) {
+            }
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+}
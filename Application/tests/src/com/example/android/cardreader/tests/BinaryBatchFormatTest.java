@@ -0,0 +1,116 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.journal.PunchRecord;
+import com.example.android.sync.BinaryBatchFormat;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link BinaryBatchFormat}.
+ */
+public class BinaryBatchFormatTest extends TestCase {
+    private static final long SOURCE = 0x9F3C5A17E2B40D68L;
+
+    private final BinaryBatchFormat.Encoder mEncoder = new BinaryBatchFormat.Encoder();
+
+    private ByteBuffer encode(PunchRecord... records) {
+        mEncoder.begin(SOURCE);
+        for (PunchRecord record : records) {
+            mEncoder.add(record);
+        }
+        int length = mEncoder.finish();
+        return ByteBuffer.wrap(Arrays.copyOf(mEncoder.getBuffer(), length));
+    }
+
+    public void testRoundTrip() {
+        ByteBuffer batch = encode(
+                new PunchRecord(7, 1546300800000L, 0, 0x9000, "00000042".getBytes()),
+                new PunchRecord(8, 1546300801000L, -1, 0x6A82, new byte[]{0, (byte) 0xFF}),
+                // A gap in the sequence, a clock set back and a type of its own.
+                new PunchRecord(12, 1546300700000L, 5, 0x9000, "00000042".getBytes()),
+                new PunchRecord(13, 1546300700000L, 1, 0x9000, new byte[0]));
+
+        assertEquals(SOURCE, BinaryBatchFormat.decodeSource(batch));
+        List<PunchRecord> decoded = BinaryBatchFormat.decode(batch);
+        assertFalse(batch.hasRemaining());
+        assertEquals(4, decoded.size());
+        assertEquals(7, decoded.get(0).getSequence());
+        assertEquals(1546300800000L, decoded.get(0).getTimestampMillis());
+        assertEquals(0, decoded.get(0).getPunchType());
+        assertEquals(0x9000, decoded.get(0).getStatusWord());
+        assertEquals("00000042", decoded.get(0).getStaffIdString());
+        assertEquals(-1, decoded.get(1).getPunchType());
+        assertEquals(0x6A82, decoded.get(1).getStatusWord());
+        assertTrue(Arrays.equals(new byte[]{0, (byte) 0xFF}, decoded.get(1).getStaffId()));
+        assertEquals(12, decoded.get(2).getSequence());
+        assertEquals(1546300700000L, decoded.get(2).getTimestampMillis());
+        assertEquals(5, decoded.get(2).getPunchType());
+        assertEquals("00000042", decoded.get(2).getStaffIdString());
+        assertEquals(13, decoded.get(3).getSequence());
+        assertEquals(0, decoded.get(3).getStaffId().length);
+    }
+
+    public void testRepeatedPunchesTakeFewBytes() {
+        PunchRecord[] records = new PunchRecord[100];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new PunchRecord(i, 1546300800000L + i * 5000L, i & 1, 0x9000,
+                    ("0000000" + i % 10).getBytes());
+        }
+        int length = encode(records).remaining();
+
+        // Header byte, dictionary index and a two byte time delta for all but the first ten.
+        assertTrue(length + " bytes", length <= 13 + 10 * 16 + 90 * 4 + 1);
+        assertEquals(100, mEncoder.getCount());
+    }
+
+    public void testEncoderAndDecoderAreReused() {
+        BinaryBatchFormat.Decoder decoder = new BinaryBatchFormat.Decoder();
+        final long[] last = new long[2];
+        BinaryBatchFormat.Visitor visitor = new BinaryBatchFormat.Visitor() {
+            @Override
+            public void onPunch(long sequence, long timestampMillis, int punchType,
+                                int statusWord, byte[] staffId, int offset, int length) {
+                last[0] = sequence;
+                last[1] = Long.parseLong(new String(staffId, offset, length));
+            }
+        };
+        for (int batch = 0; batch < 3; batch++) {
+            PunchRecord[] records = new PunchRecord[200];
+            for (int i = 0; i < records.length; i++) {
+                long sequence = batch * 200 + i;
+                records[i] = new PunchRecord(sequence, sequence, 0, 0x9000,
+                        String.valueOf(sequence * 7 % 150 + batch).getBytes());
+            }
+            assertEquals(200, decoder.decode(encode(records), visitor));
+            assertEquals(SOURCE, decoder.getSource());
+            assertEquals(batch * 200 + 199, last[0]);
+            assertEquals((batch * 200 + 199) * 7 % 150 + batch, last[1]);
+        }
+    }
+
+    public void testOtherVersionIsRefused() {
+        ByteBuffer batch = encode(new PunchRecord(0, 0, 0, 0x9000, new byte[1]));
+        batch.put(4, (byte) (BinaryBatchFormat.VERSION + 1));
+        try {
+            BinaryBatchFormat.decode(batch);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    public void testTruncatedBatchIsRefused() {
+        ByteBuffer batch = encode(new PunchRecord(0, 1546300800000L, 0, 0x9000, new byte[4]));
+        batch.limit(batch.limit() - 2);
+        try {
+            BinaryBatchFormat.decode(batch);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+}
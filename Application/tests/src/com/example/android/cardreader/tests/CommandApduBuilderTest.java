@@ -0,0 +1,53 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.cardreader.CommandApduBuilder;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link CommandApduBuilder}.
+ */
+public class CommandApduBuilderTest extends TestCase {
+
+    public void testCachedSelectMatchesKnownAids() {
+        final byte[] punch = {0x00, (byte) 0xA4, 0x04, 0x00, 0x05,
+                (byte) 0xE0, 0x00, 0x00, 0x00, 0x00};
+        final byte[] staff = {0x00, (byte) 0xA4, 0x05, 0x00, 0x05,
+                (byte) 0xF1, 0x11, 0x11, 0x11, 0x11};
+
+        assertTrue(Arrays.equals(punch, CommandApduBuilder.cachedSelect(CommandApduBuilder.PUNCH_STATUS_AID)));
+        assertTrue(Arrays.equals(staff, CommandApduBuilder.cachedSelect(CommandApduBuilder.STAFF_ID_AID)));
+        assertNull(CommandApduBuilder.cachedSelect("1234"));
+    }
+
+    public void testSelectReturnsCopy() {
+        byte[] select = CommandApduBuilder.select(CommandApduBuilder.PUNCH_STATUS_AID);
+        select[0] = 0x7F;
+
+        assertEquals(0x00, CommandApduBuilder.cachedSelect(CommandApduBuilder.PUNCH_STATUS_AID)[0]);
+    }
+
+    public void testBuilderReusesBuffer() {
+        CommandApduBuilder builder = new CommandApduBuilder();
+        builder.header(0x00, 0xB0, 0x00, 0x00).le(0x10);
+        byte[] buffer = builder.buffer();
+        builder.header(0x00, 0xA4, 0x04, 0x00).data(new byte[]{0x01, 0x02}, 0, 2).le(0x00);
+
+        assertSame(buffer, builder.buffer());
+        assertTrue(Arrays.equals(new byte[]{0x00, (byte) 0xA4, 0x04, 0x00, 0x02, 0x01, 0x02, 0x00},
+                builder.toByteArray()));
+    }
+
+    public void testWriteToByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        int length = CommandApduBuilder.write(buffer, 0x00, 0xA4, 0x04, 0x00,
+                new byte[]{0x12, 0x34}, 0, 2, CommandApduBuilder.NO_LE);
+
+        assertEquals(7, length);
+        assertEquals(7, buffer.position());
+        assertEquals(0x34, buffer.get(6));
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.Utils.HexCodec;
+import com.example.android.Utils.Utils;
+
+import junit.framework.TestCase;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link HexCodec} and the {@link Utils} conversions built on it.
+ */
+public class HexCodecTest extends TestCase {
+    private static final byte[] BYTES = {0x00, 0x01, 0x7F, (byte) 0x80, (byte) 0xAB, (byte) 0xFF};
+
+    public void testRoundTrip() {
+        byte[] all = new byte[256];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = (byte) i;
+        }
+        String hex = HexCodec.encode(all);
+        assertEquals(512, hex.length());
+        assertEquals("000102", hex.substring(0, 6));
+        assertEquals("FDFEFF", hex.substring(506));
+        assertTrue(Arrays.equals(all, HexCodec.decode(hex)));
+        assertEquals("", HexCodec.encode(new byte[0]));
+        assertEquals(0, HexCodec.decode("").length);
+    }
+
+    public void testEitherCaseIsDecoded() {
+        assertTrue(Arrays.equals(BYTES, HexCodec.decode("00017F80ABFF")));
+        assertTrue(Arrays.equals(BYTES, HexCodec.decode("00017f80abff")));
+        assertTrue(Arrays.equals(BYTES, HexCodec.decode("00017F80aBfF")));
+        assertEquals(0xA, HexCodec.digit('a'));
+        assertEquals(0xF, HexCodec.digit('F'));
+        assertEquals(-1, HexCodec.digit('g'));
+        assertEquals(-1, HexCodec.digit('\u0660'));
+    }
+
+    public void testOddLengthIsRefused() {
+        try {
+            HexCodec.decode("ABC");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            Utils.HexStringToByteArray("ABC");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        // Reads odd input as if it had a leading "0", as it always has.
+        assertTrue(Arrays.equals(new byte[]{0x0A, (byte) 0xBC}, Utils.textToByteArray("ABC")));
+    }
+
+    public void testNonHexDigitsAreRefused() {
+        for (String hex : new String[]{"0G", "G0", "0 ", "-1", "1\u0660"}) {
+            try {
+                HexCodec.decode(hex);
+                fail(hex);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+        assertNull(Utils.textToByteArray("0G"));
+        assertNull(Utils.textToByteArray("G"));
+    }
+
+    public void testRangesAndBuffers() {
+        char[] chars = new char[10];
+        Arrays.fill(chars, '.');
+        assertEquals(4, HexCodec.encode(BYTES, 3, 2, chars, 1));
+        assertEquals(".80AB.....", new String(chars));
+
+        byte[] bytes = new byte[4];
+        assertEquals(2, HexCodec.decode("xx7F80yy", 2, 4, bytes, 1));
+        assertTrue(Arrays.equals(new byte[]{0, 0x7F, (byte) 0x80, 0}, bytes));
+
+        assertEquals("7F80AB", HexCodec.encode(BYTES, 2, 3));
+        assertEquals("7F80AB", Utils.byte2hex(BYTES, 2, 5));
+        assertEquals("00017F80ABFF", Utils.byte2hex(BYTES));
+        assertEquals("", Utils.byte2hex(null, 0, 0));
+    }
+
+    public void testAppending() throws Exception {
+        StringBuilder sb = new StringBuilder("sw=");
+        HexCodec.encode(BYTES, 4, 2, sb);
+        assertEquals("sw=ABFF", sb.toString());
+
+        StringWriter writer = new StringWriter();
+        writer.write('[');
+        HexCodec.encode(BYTES, 0, BYTES.length, (Appendable) writer);
+        writer.write(']');
+        assertEquals("[00017F80ABFF]", writer.toString());
+    }
+}
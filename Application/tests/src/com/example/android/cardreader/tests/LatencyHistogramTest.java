@@ -0,0 +1,72 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.metrics.LatencyHistogram;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    public void testPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(100000, snapshot.getCount());
+        assertEquals(100000000, snapshot.getMaxNanos());
+        assertEquals(50000500, snapshot.getMeanNanos());
+        assertNear(50000000, snapshot.getValueAtPercentile(50));
+        assertNear(99000000, snapshot.getValueAtPercentile(99));
+        assertNear(99900000, snapshot.getValueAtPercentile(99.9));
+        assertEquals(100000000, snapshot.getValueAtPercentile(100));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue(expected + " vs " + actual, Math.abs(actual - expected) <= expected / 64);
+    }
+
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(7);
+        histogram.record(-5);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getValueAtPercentile(10));
+        assertEquals(3, snapshot.getValueAtPercentile(50));
+        assertEquals(7, snapshot.getValueAtPercentile(99));
+    }
+
+    public void testHugeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.DAYS.toNanos(2));
+
+        assertEquals(1, histogram.snapshot().getCount());
+        assertEquals(TimeUnit.DAYS.toNanos(2), histogram.snapshot().getValueAtPercentile(50));
+    }
+
+    public void testSnapshotsAddUp() throws IOException {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(1000);
+        b.record(2000);
+        b.record(3000);
+
+        LatencyHistogram.Snapshot sum = a.snapshot().plus(b.snapshot());
+        assertEquals(3, sum.getCount());
+        assertEquals(3000, sum.getMaxNanos());
+        StringBuilder out = new StringBuilder();
+        sum.writePercentileDistribution(out, TimeUnit.MICROSECONDS);
+        assertTrue(out.toString(), out.toString().contains("#[Total count    =            3]"));
+
+        a.reset();
+        assertEquals(0, a.snapshot().getCount());
+    }
+}
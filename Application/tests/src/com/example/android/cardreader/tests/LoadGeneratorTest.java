@@ -0,0 +1,51 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.cardreader.TapPipeline;
+import com.example.android.simulator.ArrivalCurve;
+import com.example.android.simulator.Latency;
+import com.example.android.simulator.LoadGenerator;
+import com.example.android.simulator.SimulatedCard;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs short {@link LoadGenerator} scenarios through the whole reader.
+ */
+public class LoadGeneratorTest extends TestCase {
+
+    public void testShiftChange() {
+        // 300 people in ten minutes, played 300 times faster.
+        LoadGenerator.Report report = new LoadGenerator.Builder()
+                .taps(300)
+                .arrivals(ArrivalCurve.poisson(0.5))
+                .cards(SimulatedCard.punchCard("IN", "0")
+                        .latency(Latency.logNormal(500, 0.5, TimeUnit.MICROSECONDS)))
+                .speedup(300)
+                .build()
+                .run();
+
+        assertEquals(300, report.getCount(TapPipeline.RESULT_DISPATCHED));
+        assertEquals(300, report.getLatency().getCount());
+        // Two commands of at least a few hundred microseconds each.
+        assertTrue(report.toString(), report.getLatency().getValueAtPercentile(50)
+                > TimeUnit.MICROSECONDS.toNanos(300));
+        assertTrue(report.toString(), report.getOfferedRate() > 50);
+    }
+
+    public void testBurstQueuesBehindTheReader() {
+        // Ten people at once, each tap taking about 2 ms: the last waits for the nine before.
+        LoadGenerator.Report report = new LoadGenerator.Builder()
+                .taps(10)
+                .arrivals(ArrivalCurve.burst(10, 1e6, 1, TimeUnit.MILLISECONDS))
+                .cards(SimulatedCard.punchCard("IN", "0")
+                        .latency(Latency.fixed(1, TimeUnit.MILLISECONDS)))
+                .build()
+                .run();
+
+        assertEquals(10, report.getLatency().getCount());
+        assertTrue(report.toString(), report.getLatency().getMaxNanos()
+                > TimeUnit.MILLISECONDS.toNanos(18));
+    }
+}
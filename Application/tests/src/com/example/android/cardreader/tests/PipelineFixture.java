@@ -0,0 +1,55 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.RAPDUApi.AsyncRapduInterface;
+import com.example.android.cardreader.AsyncRapduImplement;
+import com.example.android.cardreader.RapduImplement;
+import com.example.android.cardreader.ReaderConfig;
+import com.example.android.cardreader.ReaderSettings;
+import com.example.android.cardreader.TapDispatcher;
+import com.example.android.cardreader.TapPipeline;
+import com.example.android.metrics.ReaderMetrics;
+import com.example.android.simulator.SimulatedCard;
+
+/**
+ * A {@link TapPipeline} with a dispatcher of its own, for tests that tap {@link SimulatedCard}s
+ * on it. Every tap uses {@link #getConfig()}, punch mode 0 unless a test sets another one.
+ * Create it in {@code setUp()} and {@link #shutdown()} it in {@code tearDown()}.
+ */
+final class PipelineFixture {
+    static final byte[] TAG_ID = {1, 2, 3, 4};
+
+    private final AsyncRapduInterface mRapdu;
+    private final TapPipeline mPipeline;
+    private ReaderConfig mConfig = ReaderConfig.DEFAULT.buildUpon().punchMode(0).build();
+
+    PipelineFixture(TapDispatcher.Handler handler, int threads, int queueCapacity) {
+        this(handler, threads, queueCapacity, ReaderMetrics.getDefault());
+    }
+
+    PipelineFixture(TapDispatcher.Handler handler, int threads, int queueCapacity,
+                    ReaderMetrics metrics) {
+        mRapdu = new AsyncRapduImplement(new RapduImplement(ReaderSettings.of(mConfig)));
+        mPipeline = new TapPipeline(new TapDispatcher(handler, threads, queueCapacity, metrics),
+                metrics);
+    }
+
+    ReaderConfig getConfig() {
+        return mConfig;
+    }
+
+    void setConfig(ReaderConfig config) {
+        mConfig = config;
+    }
+
+    TapPipeline getPipeline() {
+        return mPipeline;
+    }
+
+    int tap(SimulatedCard card) throws InterruptedException {
+        return mPipeline.process(mRapdu, mConfig, TAG_ID, card);
+    }
+
+    void shutdown() {
+        mPipeline.getDispatcher().shutdown();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.android.cardreader.tests;
+
+import android.content.SharedPreferences;
+
+import com.example.android.cardreader.PreferencesConfigStore;
+import com.example.android.cardreader.ReaderConfig;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link PreferencesConfigStore} over preferences held in a map.
+ */
+public class PreferencesConfigStoreTest extends TestCase {
+    private final Map<String, Object> mValues = new HashMap<>();
+
+    /**
+     * Read-only preferences answering the getters from {@link #mValues}, or with their default.
+     */
+    private SharedPreferences preferences() {
+        return (SharedPreferences) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{SharedPreferences.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (!method.getName().startsWith("get") || args == null
+                                || args.length != 2) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        return mValues.containsKey(args[0]) ? mValues.get(args[0]) : args[1];
+                    }
+                });
+    }
+
+    public void testStoredValuesAreLoaded() {
+        mValues.put("TaskTest", 1);
+        mValues.put("StaffIdAid", "F0010203");
+        mValues.put("UploadUrl", "https://example.com/punches");
+        mValues.put("RepeatWindowMs", 2000L);
+
+        ReaderConfig config = new PreferencesConfigStore(preferences()).load();
+
+        assertEquals(1, config.getPunchMode());
+        assertEquals("F0010203", config.getStaffIdAid());
+        assertEquals("https://example.com/punches", config.getUploadUrl());
+        assertEquals(2000, config.getRepeatWindowMillis());
+    }
+
+    public void testBadValuesFallBackToTheirDefaults() {
+        mValues.put("TaskTest", 1);
+        mValues.put("PunchStatusAid", "not hex");
+        mValues.put("StaffIdAid", "F0010203");
+        mValues.put("UploadUrl", "no scheme");
+
+        ReaderConfig config = new PreferencesConfigStore(preferences()).load();
+
+        assertEquals(ReaderConfig.DEFAULT.getPunchStatusAid(), config.getPunchStatusAid());
+        assertNull(config.getUploadUrl());
+        // The good values around them are kept.
+        assertEquals(1, config.getPunchMode());
+        assertEquals("F0010203", config.getStaffIdAid());
+    }
+}
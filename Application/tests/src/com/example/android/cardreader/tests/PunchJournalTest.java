@@ -0,0 +1,135 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.journal.PunchJournal;
+import com.example.android.journal.PunchRecord;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link PunchJournal} in a scratch directory.
+ */
+public class PunchJournalTest extends TestCase {
+    private File mDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        mDir = File.createTempFile("journal", "");
+        assertTrue(mDir.delete());
+    }
+
+    @Override
+    protected void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    private static List<PunchRecord> readAll(PunchJournal journal) throws IOException {
+        final List<PunchRecord> records = new ArrayList<>();
+        journal.forEach(new PunchJournal.Visitor() {
+            @Override
+            public void onRecord(PunchRecord record) {
+                records.add(record);
+            }
+        });
+        return records;
+    }
+
+    public void testRecordsSurviveReopenAcrossSegments() throws IOException {
+        PunchJournal journal = new PunchJournal(mDir, 4, 64, 10);
+        byte[] reply = "xx0042\u0090\u0000".getBytes("ISO-8859-1");
+        for (int i = 0; i < 10; i++) {
+            journal.append(1000 + i, i % 2, 0x9000, reply, 2, 4);
+        }
+        journal.close();
+
+        journal = new PunchJournal(mDir, 4, 64, 10);
+        journal.append(2000, 1, 0x9000, "7".getBytes("UTF-8"), 0, 1);
+        List<PunchRecord> records = readAll(journal);
+        journal.close();
+
+        assertEquals(3, mDir.listFiles().length);
+        assertEquals(11, records.size());
+        assertEquals(1003, records.get(3).getTimestampMillis());
+        assertEquals(1, records.get(3).getPunchType());
+        assertEquals(0x9000, records.get(3).getStatusWord());
+        assertEquals("0042", records.get(3).getStaffIdString());
+        assertEquals("7", records.get(10).getStaffIdString());
+    }
+
+    public void testOverlongStaffIdIsRefused() throws IOException {
+        PunchJournal journal = new PunchJournal(mDir, 4, 64, 10);
+        byte[] staffId = new byte[PunchRecord.MAX_STAFF_ID_LENGTH + 1];
+        try {
+            journal.append(1000, 0, 0x9000, staffId, 0, staffId.length);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        journal.append(1001, 0, 0x9000, staffId, 1, PunchRecord.MAX_STAFF_ID_LENGTH);
+        List<PunchRecord> records = readAll(journal);
+        journal.close();
+
+        assertEquals(1, records.size());
+        assertEquals(1001, records.get(0).getTimestampMillis());
+        assertEquals(PunchRecord.MAX_STAFF_ID_LENGTH, records.get(0).getStaffId().length);
+    }
+
+    public void testTornRecordIsDropped() throws IOException {
+        PunchJournal journal = new PunchJournal(mDir, 16, 64, 10);
+        journal.append(1, 0, 0x9000, new byte[]{'1'}, 0, 1);
+        journal.append(2, 0, 0x9000, new byte[]{'2'}, 0, 1);
+        journal.close();
+
+        // Corrupt the timestamp of the second record, as if the app died while writing it.
+        RandomAccessFile raf = new RandomAccessFile(mDir.listFiles()[0], "rw");
+        raf.seek(PunchRecord.SIZE + 8);
+        raf.writeLong(99);
+        raf.close();
+
+        journal = new PunchJournal(mDir, 16, 64, 10);
+        journal.append(3, 0, 0x9000, new byte[]{'3'}, 0, 1);
+        List<PunchRecord> records = readAll(journal);
+        journal.close();
+
+        assertEquals(2, records.size());
+        assertEquals(1, records.get(0).getTimestampMillis());
+        assertEquals(3, records.get(1).getTimestampMillis());
+    }
+
+    public void testReadFromSequenceAcrossSegments() throws IOException {
+        PunchJournal journal = new PunchJournal(mDir, 4, 64, 10);
+        for (int i = 0; i < 10; i++) {
+            journal.append(1000 + i, 0, 0x9000, new byte[]{(byte) ('0' + i)}, 0, 1);
+        }
+        assertEquals(10, journal.getEndSequence());
+        final List<PunchRecord> records = new ArrayList<>();
+        PunchJournal.Visitor visitor = new PunchJournal.Visitor() {
+            @Override
+            public void onRecord(PunchRecord record) {
+                records.add(record);
+            }
+        };
+        assertEquals(4, journal.read(3, 4, visitor));
+        assertEquals(0, journal.read(10, 4, visitor));
+        assertEquals(1, journal.read(9, 4, visitor));
+        journal.close();
+
+        assertEquals(5, records.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(3 + i, records.get(i).getSequence());
+            assertEquals(1003 + i, records.get(i).getTimestampMillis());
+        }
+        assertEquals("9", records.get(4).getStaffIdString());
+    }
+}
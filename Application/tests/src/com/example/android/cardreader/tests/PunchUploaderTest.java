@@ -0,0 +1,200 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.journal.PunchJournal;
+import com.example.android.journal.PunchRecord;
+import com.example.android.simulator.SimulatedPunchServer;
+import com.example.android.sync.JsonBatchFormat;
+import com.example.android.sync.PunchUploader;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link PunchUploader} against a {@link SimulatedPunchServer}, with a journal in a
+ * scratch directory.
+ */
+public class PunchUploaderTest extends TestCase {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private File mDir;
+    private PunchJournal mJournal;
+    private SimulatedPunchServer mServer;
+
+    @Override
+    protected void setUp() throws IOException {
+        mDir = File.createTempFile("journal", "");
+        assertTrue(mDir.delete());
+        mJournal = new PunchJournal(mDir);
+        mServer = new SimulatedPunchServer();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        mServer.close();
+        mJournal.close();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    private PunchUploader.Builder uploader() {
+        return new PunchUploader.Builder(mJournal, mServer.getUrl(), new File(mDir, "upload.state"))
+                .batchDelayMillis(TimeUnit.SECONDS.toMillis(60))
+                .backoff(10, 20);
+    }
+
+    private void punch(PunchUploader uploader, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            long sequence = mJournal.getEndSequence();
+            byte[] staffId = String.format(Locale.US, "%08d", sequence).getBytes("US-ASCII");
+            mJournal.append(1000 + sequence, (int) (sequence % 2), 0x9000, staffId, 0,
+                    staffId.length);
+            if (uploader != null) {
+                uploader.onPunchJournaled();
+            }
+        }
+    }
+
+    private void awaitUploaded(PunchUploader uploader) throws InterruptedException {
+        assertTrue(uploader.getUploadedSequence() + " uploaded", uploader.awaitUploaded(
+                mJournal.getEndSequence(), TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    public void testJsonRoundTrip() {
+        List<PunchRecord> records = Arrays.asList(
+                new PunchRecord(7, 1546300800000L, 0, 0x9000, "00000042".getBytes()),
+                new PunchRecord(8, 1546300801000L, -1, 0x6A82, new byte[]{0, (byte) 0xFF}));
+        StringBuilder json = new StringBuilder();
+        JsonBatchFormat.encode("abc", records, json);
+
+        assertEquals("abc", JsonBatchFormat.decodeSource(json));
+        List<PunchRecord> decoded = JsonBatchFormat.decode(json);
+        assertEquals(2, decoded.size());
+        assertEquals(8, decoded.get(1).getSequence());
+        assertEquals(1546300801000L, decoded.get(1).getTimestampMillis());
+        assertEquals(-1, decoded.get(1).getPunchType());
+        assertEquals(0x6A82, decoded.get(1).getStatusWord());
+        assertTrue(Arrays.equals(new byte[]{0, (byte) 0xFF}, decoded.get(1).getStaffId()));
+        assertEquals("00000042", decoded.get(0).getStaffIdString());
+    }
+
+    public void testFullBatchesGoOutOverOneConnection() throws Exception {
+        PunchUploader uploader = uploader().batchSize(10).build();
+        punch(uploader, 50);
+        awaitUploaded(uploader);
+        uploader.close();
+
+        assertEquals(50, uploader.getPunchCount());
+        List<PunchRecord> punches = mServer.getPunches();
+        assertEquals(50, punches.size());
+        for (int i = 0; i < punches.size(); i++) {
+            assertEquals(i, punches.get(i).getSequence());
+            assertEquals(String.format(Locale.US, "%08d", i), punches.get(i).getStaffIdString());
+        }
+        assertEquals(mServer.getRequestCount(), mServer.getBatchCount());
+        assertTrue(mServer.getBatchCount() >= 5);
+        // Kept alive between batches.
+        assertTrue(mServer.getConnectionCount() < mServer.getRequestCount());
+    }
+
+    public void testPartialBatchWaitsForTheDelay() throws Exception {
+        PunchUploader uploader = uploader().batchSize(100).batchDelayMillis(200).build();
+        punch(uploader, 3);
+        Thread.sleep(50);
+        assertEquals(0, mServer.getPunchCount());
+        awaitUploaded(uploader);
+        uploader.close();
+
+        assertEquals(3, mServer.getPunchCount());
+        assertEquals(1, mServer.getBatchCount());
+    }
+
+    public void testServerErrorsAreRetriedUnderTheSameKey() throws Exception {
+        mServer.failNext(2, 503);
+        PunchUploader uploader = uploader().batchSize(5).build();
+        punch(uploader, 5);
+        awaitUploaded(uploader);
+        uploader.close();
+
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(2, uploader.getRetryCount());
+        assertEquals(1, mServer.getBatchCount());
+        assertEquals(5, mServer.getPunchCount());
+    }
+
+    public void testUnauthorizedBatchesAreRetried() throws Exception {
+        mServer.failNext(3, 401);
+        PunchUploader uploader = uploader().batchSize(4).build();
+        punch(uploader, 12);
+        awaitUploaded(uploader);
+        uploader.close();
+
+        assertEquals(0, uploader.getRejectedCount());
+        assertEquals(3, uploader.getRetryCount());
+        List<PunchRecord> punches = mServer.getPunches();
+        assertEquals(12, punches.size());
+        for (int i = 0; i < punches.size(); i++) {
+            assertEquals(i, punches.get(i).getSequence());
+        }
+    }
+
+    public void testLostAnswerIsNotKeptTwice() throws Exception {
+        mServer.dropNext(1, true);
+        PunchUploader uploader = uploader().batchSize(5).build();
+        punch(uploader, 5);
+        awaitUploaded(uploader);
+        uploader.close();
+
+        // Sent again by the uploader, or by HttpURLConnection itself on a kept-alive connection.
+        assertEquals(1, mServer.getDuplicateCount());
+        assertEquals(1, mServer.getBatchCount());
+        assertEquals(5, mServer.getPunchCount());
+    }
+
+    public void testBatchInFlightIsResentAfterRestart() throws Exception {
+        // Every attempt, including the one HttpURLConnection may make by itself.
+        mServer.dropNext(Integer.MAX_VALUE, true);
+        PunchUploader uploader = uploader().batchSize(5).backoff(60000, 60000).build();
+        punch(uploader, 5);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (uploader.getRetryCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        uploader.close();
+        mServer.dropNext(0, true);
+        // Not told about these, but the journal has them.
+        punch(null, 3);
+
+        uploader = uploader().batchSize(5).build();
+        awaitUploaded(uploader);
+        uploader.close();
+
+        assertTrue(mServer.getDuplicateCount() >= 1);
+        assertEquals(8, mServer.getPunchCount());
+        assertEquals(2, mServer.getBatchCount());
+        assertEquals(1, mServer.getSourceCount());
+    }
+
+    public void testRejectedBatchIsSkipped() throws Exception {
+        mServer.failNext(1, 400);
+        PunchUploader uploader = uploader().batchSize(4).build();
+        punch(uploader, 8);
+        awaitUploaded(uploader);
+        uploader.close();
+
+        assertEquals(1, uploader.getRejectedCount());
+        assertEquals(0, uploader.getRetryCount());
+        assertEquals(4, mServer.getPunchCount());
+        assertEquals(4, mServer.getPunches().get(0).getSequence());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.RAPDUApi.RapduFuture;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests for {@link RapduFuture}.
+ */
+public class RapduFutureTest extends TestCase {
+
+    private static final RapduFuture.Combiner<String, String, String> CONCAT =
+            new RapduFuture.Combiner<String, String, String>() {
+                @Override
+                public String apply(String first, String second) {
+                    return first + second;
+                }
+            };
+
+    public void testCombineWaitsForBoth() throws Exception {
+        RapduFuture<String> punch = new RapduFuture<>();
+        RapduFuture<String> staff = new RapduFuture<>();
+        RapduFuture<String> both = RapduFuture.combine(punch, staff, CONCAT);
+
+        staff.complete("42");
+        assertFalse(both.isDone());
+        punch.complete("in:");
+
+        assertEquals("in:42", both.get(1, TimeUnit.SECONDS));
+    }
+
+    public void testFailureCancelsOtherCall() throws InterruptedException {
+        RapduFuture<String> punch = new RapduFuture<>();
+        RapduFuture<String> staff = new RapduFuture<>();
+        RapduFuture<String> both = RapduFuture.combine(punch, staff, CONCAT);
+
+        IOException lost = new IOException("Tag was lost.");
+        punch.fail(lost);
+
+        assertTrue(staff.isCancelled());
+        try {
+            both.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertSame(lost, e.getCause());
+        }
+    }
+
+    public void testDeadline() throws InterruptedException {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            RapduFuture<String> future = new RapduFuture<String>()
+                    .withDeadline(10, TimeUnit.MILLISECONDS, timer);
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            } catch (TimeoutException e) {
+                fail("Deadline did not fire");
+            }
+            assertFalse(future.complete("late"));
+        } finally {
+            timer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.cardreader.CommandApduBuilder;
+import com.example.android.cardreader.ResponseApdu;
+import com.example.android.cardreader.Tap;
+import com.example.android.cardreader.TapDispatcher;
+import com.example.android.cardreader.TapPipeline;
+import com.example.android.metrics.ReaderMetrics;
+import com.example.android.metrics.StripedCounter;
+import com.example.android.simulator.SimulatedCard;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests {@link ReaderMetrics} as the tap path fills it in, against {@link SimulatedCard}s.
+ */
+public class ReaderMetricsTest extends TestCase {
+    private final ReaderMetrics mMetrics = new ReaderMetrics();
+    private final CountDownLatch mReported = new CountDownLatch(1);
+    private PipelineFixture mFixture;
+
+    @Override
+    protected void setUp() {
+        mFixture = new PipelineFixture(new TapDispatcher.Handler() {
+            @Override
+            public void onTap(Tap tap) {
+                mReported.countDown();
+            }
+        }, 1, 16, mMetrics);
+    }
+
+    @Override
+    protected void tearDown() {
+        mFixture.shutdown();
+    }
+
+    private int tap(SimulatedCard card) throws InterruptedException {
+        return mFixture.tap(card);
+    }
+
+    public void testTapIsCounted() throws InterruptedException {
+        assertEquals(TapPipeline.RESULT_DISPATCHED, tap(SimulatedCard.punchCard("IN", "00001234").build()));
+        mReported.await();
+        // The report step is recorded just after the handler returns.
+        mFixture.shutdown();
+        Thread.sleep(50);
+
+        ReaderMetrics.Snapshot snapshot = mMetrics.snapshot();
+        assertEquals(1, snapshot.getTaps());
+        assertEquals(1, snapshot.getTaps(TapPipeline.RESULT_DISPATCHED));
+        assertEquals(1, snapshot.getConnects());
+        assertEquals(0, snapshot.getIoExceptions());
+        assertEquals(Long.valueOf(1), snapshot.getTransceives().get(CommandApduBuilder.STAFF_ID_AID));
+        assertEquals(Long.valueOf(1), snapshot.getTransceives().get(CommandApduBuilder.PUNCH_STATUS_AID));
+        assertTrue(snapshot.getStatusWords().isEmpty());
+        for (int step : new int[]{ReaderMetrics.STEP_CONNECT, ReaderMetrics.STEP_STAFF_ID,
+                ReaderMetrics.STEP_PUNCH_STATUS, ReaderMetrics.STEP_DISPATCH, ReaderMetrics.STEP_TAP,
+                ReaderMetrics.STEP_REPORT, ReaderMetrics.STEP_QUEUED}) {
+            assertEquals("step " + step, 1, snapshot.getStepTime(step).getCount());
+        }
+    }
+
+    public void testFramesAreCountedPerAid() throws InterruptedException {
+        byte[] longId = new byte[600];
+        Arrays.fill(longId, (byte) '7');
+        SimulatedCard card = SimulatedCard.punchCard("IN", "0")
+                .respond(CommandApduBuilder.STAFF_ID_AID, longId, ResponseApdu.SW_OK)
+                .build();
+
+        assertEquals(TapPipeline.RESULT_DISPATCHED, tap(card));
+        // SELECT and two GET RESPONSEs for the staff ID, one SELECT for the punch status.
+        assertEquals(Long.valueOf(3), mMetrics.snapshot().getTransceives().get(CommandApduBuilder.STAFF_ID_AID));
+        assertEquals(Long.valueOf(1), mMetrics.snapshot().getTransceives().get(CommandApduBuilder.PUNCH_STATUS_AID));
+        assertEquals(4, card.getTransceiveCount());
+    }
+
+    public void testStatusWordsAreCountedByCode() throws InterruptedException {
+        SimulatedCard card = new SimulatedCard.Builder()
+                .respond(CommandApduBuilder.STAFF_ID_AID, "00001234".getBytes(StandardCharsets.UTF_8), ResponseApdu.SW_OK)
+                .build();
+
+        assertEquals(TapPipeline.RESULT_DISPATCHED, tap(card));
+        tap(new SimulatedCard.Builder().build());
+        ReaderMetrics.Snapshot snapshot = mMetrics.snapshot();
+        // Punch status of the first card, both SELECTs of the second.
+        assertEquals(1, snapshot.getStatusWords().size());
+        assertEquals(Long.valueOf(3), snapshot.getStatusWords().get(SimulatedCard.SW_FILE_NOT_FOUND));
+    }
+
+    public void testLostTagIsCounted() throws InterruptedException {
+        SimulatedCard card = SimulatedCard.punchCard("IN", "00001234").tagLossRate(1).build();
+
+        assertEquals(TapPipeline.RESULT_FAILED, tap(card));
+        ReaderMetrics.Snapshot snapshot = mMetrics.snapshot();
+        assertEquals(1, snapshot.getTaps(TapPipeline.RESULT_FAILED));
+        assertEquals(1, snapshot.getIoExceptions());
+        assertEquals(1, snapshot.getStepTime(ReaderMetrics.STEP_TAP).getCount());
+        assertEquals(0, snapshot.getStepTime(ReaderMetrics.STEP_STAFF_ID).getCount());
+    }
+
+    public void testExport() throws InterruptedException, IOException {
+        tap(new SimulatedCard.Builder().build());
+        StringBuilder out = new StringBuilder();
+        mMetrics.snapshot().writeTo(out);
+
+        String text = out.toString();
+        assertTrue(text, text.contains("reader_taps_total{result=\"dispatched\"} 1\n"));
+        assertTrue(text, text.contains("reader_status_words_total{sw=\"6A82\"} 2\n"));
+        assertTrue(text, text.contains("reader_step_seconds_count{step=\"tap\"} 1\n"));
+
+        mMetrics.reset();
+        assertEquals(0, mMetrics.snapshot().getTaps());
+    }
+
+    public void testStripedCounterKeepsEveryIncrement() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        counter.increment();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400000, counter.sum());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.cardreader.ReaderConfig;
+import com.example.android.cardreader.ReaderSettings;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ReaderSettings} with an in-memory store.
+ */
+public class ReaderSettingsTest extends TestCase {
+
+    private static class MemoryStore implements ReaderSettings.Store {
+        final List<ReaderConfig> saved = new ArrayList<>();
+        final CountDownLatch firstSave = new CountDownLatch(1);
+
+        @Override
+        public ReaderConfig load() {
+            return ReaderConfig.DEFAULT.buildUpon().punchMode(1).build();
+        }
+
+        @Override
+        public synchronized void save(ReaderConfig config) {
+            saved.add(config);
+            firstSave.countDown();
+        }
+    }
+
+    public void testChangesAreSwappedInAndSavedTogether() throws InterruptedException {
+        MemoryStore store = new MemoryStore();
+        ReaderSettings settings = new ReaderSettings(store);
+        final List<ReaderConfig> notified = new ArrayList<>();
+        settings.addListener(new ReaderSettings.Listener() {
+            @Override
+            public void onConfigChanged(ReaderConfig config) {
+                notified.add(config);
+            }
+        });
+        ReaderConfig loaded = settings.get();
+
+        settings.setPunchMode(0);
+        settings.setPunchMode(0);
+        settings.update(new ReaderSettings.Change() {
+            @Override
+            public ReaderConfig apply(ReaderConfig current) {
+                return current.buildUpon().repeatWindowMillis(2000).build();
+            }
+        });
+
+        assertEquals(1, loaded.getPunchMode());
+        assertEquals(0, settings.get().getPunchMode());
+        assertEquals(2000, settings.get().getRepeatWindowMillis());
+        assertEquals(2, notified.size());
+        assertTrue(store.firstSave.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        synchronized (store) {
+            assertEquals(1, store.saved.size());
+            assertSame(settings.get(), store.saved.get(0));
+        }
+    }
+
+    public void testSelectCommandsFollowAids() {
+        ReaderConfig config = ReaderConfig.DEFAULT.buildUpon().punchStatusAid("A0000001").build();
+
+        byte[] select = config.getPunchStatusSelect();
+
+        assertEquals(5 + 4, select.length);
+        assertEquals((byte) 0xA0, select[5]);
+        assertSame(config.getStaffIdSelect(), config.getStaffIdSelect());
+    }
+}
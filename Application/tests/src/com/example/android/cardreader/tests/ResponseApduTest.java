@@ -0,0 +1,55 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.cardreader.ResponseApdu;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for {@link ResponseApdu}.
+ */
+public class ResponseApduTest extends TestCase {
+
+    public void testSplitsStatusWordAndPayload() {
+        final byte[] rapdu = {'a', 'b', 'c', (byte) 0x90, 0x00};
+        ResponseApdu response = new ResponseApdu(rapdu);
+
+        assertEquals(0x90, response.sw1());
+        assertEquals(0x00, response.sw2());
+        assertTrue(response.isOk());
+        assertEquals(3, response.payloadLength());
+        assertEquals("abc", response.payloadAsString(StandardCharsets.UTF_8));
+        assertSame(rapdu, response.array());
+    }
+
+    public void testSliceDoesNotCopy() {
+        final byte[] frame = {0x7F, 0x7F, 'x', 'y', 0x6A, (byte) 0x82, 0x7F};
+        ResponseApdu response = new ResponseApdu(frame, 2, 4);
+
+        assertEquals(0x6A82, response.statusWord());
+        assertEquals(2, response.payloadOffset());
+        assertEquals('y', response.payloadAt(1));
+        assertEquals(2, response.payload().remaining());
+    }
+
+    public void testWrapHeapBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{0x00, 0x01, (byte) 0x90, 0x00});
+        buffer.position(1);
+        ResponseApdu response = ResponseApdu.wrap(buffer);
+
+        assertSame(buffer.array(), response.array());
+        assertEquals(1, buffer.position());
+        assertEquals(1, response.payloadLength());
+        assertTrue(response.isOk());
+    }
+
+    public void testMissingStatusWord() {
+        ResponseApdu response = new ResponseApdu(null);
+
+        assertFalse(response.hasStatusWord());
+        assertEquals(ResponseApdu.SW_NO_DATA, response.statusWord());
+        assertEquals(0, response.copyPayload().length);
+    }
+}
@@ -33,6 +33,7 @@
 */
 package com.example.android.cardreader.tests;
 
+import com.example.android.Utils.Utils;
 import com.example.android.cardreader.*;
 
 import android.test.ActivityInstrumentationTestCase2;
@@ -92,7 +93,7 @@ public class SampleTests extends ActivityInstrumentationTestCase2<MainActivity>
      */
     public void testHexToBinary() {
         final byte[] testData = {(byte) 0xc0, (byte) 0xff, (byte) 0xee};
-        final byte[] output = LoyaltyCardReader.HexStringToByteArray("C0FFEE");
+        final byte[] output = Utils.HexStringToByteArray("C0FFEE");
         for (int i = 0; i < testData.length; i++) {
             assertEquals(testData[i], output[i]);
         }
@@ -103,7 +104,7 @@ public class SampleTests extends ActivityInstrumentationTestCase2<MainActivity>
      */
     public void testBinaryToHex() {
         final byte[] input = {(byte) 0xc0, (byte) 0xff, (byte) 0xee};
-        final String output = LoyaltyCardReader.ByteArrayToHexString(input);
+        final String output = Utils.byte2hex(input);
         assertEquals("C0FFEE", output);
     }
 
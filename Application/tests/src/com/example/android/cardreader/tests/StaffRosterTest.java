@@ -0,0 +1,60 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.roster.StaffIds;
+import com.example.android.roster.StaffRoster;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for {@link StaffRoster} and {@link StaffIds}.
+ */
+public class StaffRosterTest extends TestCase {
+
+    public void testPackedIdsStayApart() {
+        assertTrue(StaffIds.encode("42") != StaffIds.encode("042"));
+        assertTrue(StaffIds.encode("42") != StaffIds.encode("B"));
+        assertTrue(StaffIds.encode("AB12") < 0);
+        assertEquals(StaffIds.NO_ID, StaffIds.encode(""));
+        assertEquals(StaffIds.NO_ID, StaffIds.encode("ABCDEFGH"));
+        assertTrue(StaffIds.encode("12345678901234567") > 0);
+    }
+
+    public void testLookupFromResponseBytes() throws IOException {
+        StaffRoster roster = StaffRoster.load(new StringReader(
+                "# id,name\n0042,Alice\n\nAB12,Bob\n"));
+        byte[] response = "xx0042\u0090\u0000".getBytes(StandardCharsets.ISO_8859_1);
+
+        int index = roster.indexOf(response, 2, 4);
+
+        assertEquals(2, roster.size());
+        assertEquals("Alice", roster.getName(index));
+        assertEquals("Bob", roster.getName(roster.indexOf(StaffIds.encode("AB12"))));
+        assertEquals(-1, roster.indexOf(response, 3, 3));
+    }
+
+    public void testManyEntries() {
+        StaffRoster.Builder builder = new StaffRoster.Builder();
+        for (int i = 0; i < 20000; i++) {
+            builder.add(String.format("%08d", i), "staff " + i);
+        }
+        StaffRoster roster = builder.build();
+
+        for (int i = 0; i < 20000; i += 997) {
+            assertEquals("staff " + i, roster.getName(roster.indexOf(StaffIds.encode(String.format("%08d", i)))));
+        }
+        assertEquals(-1, roster.indexOf(StaffIds.encode("20000000")));
+    }
+
+    public void testInvalidLineIsReported() {
+        try {
+            StaffRoster.load(new StringReader("12,Alice\nTOO-LONG-ID,Bob\n"));
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("line 2"));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.cardreader.TapDebouncer;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link TapDebouncer} with explicit timestamps.
+ */
+public class TapDebouncerTest extends TestCase {
+    private static final long MS = 1000000L;
+
+    private static long key(String staffId, int punchType) {
+        byte[] bytes = staffId.getBytes();
+        return TapDebouncer.key(bytes, 0, bytes.length, punchType);
+    }
+
+    public void testRepeatWithinWindowIsSuppressed() {
+        TapDebouncer debouncer = new TapDebouncer(700);
+        long start = -350 * MS;
+
+        assertFalse(debouncer.isDuplicate(key("42", 0), start));
+        assertTrue(debouncer.isDuplicate(key("42", 0), start + 10 * MS));
+        assertTrue(debouncer.isDuplicate(key("42", 0), start + 690 * MS));
+        assertFalse(debouncer.isDuplicate(key("42", 1), start + 690 * MS));
+        assertFalse(debouncer.isDuplicate(key("43", 0), start + 690 * MS));
+        assertEquals(2, debouncer.getSuppressedCount());
+    }
+
+    public void testKeyExpiresAfterWindow() {
+        TapDebouncer debouncer = new TapDebouncer(700);
+
+        assertFalse(debouncer.isDuplicate(key("42", 0), 0));
+        // At most one bucket (100 ms) past the window.
+        assertFalse(debouncer.isDuplicate(key("42", 0), 800 * MS));
+        assertTrue(debouncer.isDuplicate(key("42", 0), 850 * MS));
+        assertFalse(debouncer.isDuplicate(key("42", 0), 10000 * MS));
+    }
+
+    public void testFullBucketLetsTapsThrough() {
+        TapDebouncer debouncer = new TapDebouncer(700, 4);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(debouncer.isDuplicate(key("staff" + i, 0), 0));
+        }
+        assertEquals(1, debouncer.getOverflowCount());
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.cardreader.CommandApduBuilder;
+import com.example.android.cardreader.ResponseApdu;
+import com.example.android.cardreader.Tap;
+import com.example.android.cardreader.TapDispatcher;
+import com.example.android.cardreader.TapPipeline;
+import com.example.android.simulator.Latency;
+import com.example.android.simulator.SimulatedCard;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the tap path against {@link SimulatedCard}s, without NFC hardware.
+ */
+public class TapPipelineTest extends TestCase {
+    private final LinkedBlockingQueue<Tap> mTaps = new LinkedBlockingQueue<>();
+    private PipelineFixture mFixture;
+
+    @Override
+    protected void setUp() {
+        mFixture = new PipelineFixture(new TapDispatcher.Handler() {
+            @Override
+            public void onTap(Tap tap) {
+                mTaps.add(tap);
+            }
+        }, 2, 4096);
+    }
+
+    @Override
+    protected void tearDown() {
+        mFixture.shutdown();
+    }
+
+    private int tap(SimulatedCard card) throws InterruptedException {
+        return mFixture.tap(card);
+    }
+
+    private void setTapTimeout(long millis) {
+        mFixture.setConfig(mFixture.getConfig().buildUpon().tapTimeoutMillis(millis).build());
+    }
+
+    public void testTapIsDispatched() throws InterruptedException {
+        SimulatedCard card = SimulatedCard.punchCard("IN", "00001234").build();
+
+        assertEquals(TapPipeline.RESULT_DISPATCHED, tap(card));
+        Tap tap = mTaps.poll(5, TimeUnit.SECONDS);
+        assertEquals("00001234", tap.getStaffId().payloadAsString(StandardCharsets.UTF_8));
+        assertEquals("IN", tap.getPunchStatus().payloadAsString(StandardCharsets.UTF_8));
+        assertEquals(0, tap.getPunchType());
+        assertFalse(card.isConnected());
+    }
+
+    public void testTapCarriesDiscoveryTime() throws InterruptedException {
+        SimulatedCard card = SimulatedCard.punchCard("IN", "00001234")
+                .latency(Latency.fixed(100, TimeUnit.MILLISECONDS)).build();
+
+        long before = System.currentTimeMillis();
+        assertEquals(TapPipeline.RESULT_DISPATCHED, tap(card));
+        Tap tap = mTaps.poll(5, TimeUnit.SECONDS);
+        // Stamped when the tag was found, not after the slow reads or on the worker.
+        assertTrue(tap.getTimestampMillis() >= before);
+        assertTrue(tap.getTimestampMillis() < before + 100);
+    }
+
+    public void testRepeatTapIsDropped() throws InterruptedException {
+        SimulatedCard.Builder builder = SimulatedCard.punchCard("IN", "00001234");
+
+        assertEquals(TapPipeline.RESULT_DISPATCHED, tap(builder.build()));
+        SimulatedCard again = builder.build();
+        assertEquals(TapPipeline.RESULT_REPEAT, tap(again));
+        // The punch status was never asked for.
+        assertEquals(1, again.getTransceiveCount());
+    }
+
+    public void testTimedOutTapCanBeRetried() throws InterruptedException {
+        setTapTimeout(50);
+        SimulatedCard slow = SimulatedCard.punchCard("IN", "00001234")
+                .respond(CommandApduBuilder.PUNCH_STATUS_AID, "IN".getBytes(StandardCharsets.UTF_8),
+                        ResponseApdu.SW_OK, Latency.fixed(5, TimeUnit.SECONDS))
+                .build();
+
+        assertEquals(TapPipeline.RESULT_TIMED_OUT, tap(slow));
+        assertEquals(TapPipeline.RESULT_DISPATCHED,
+                tap(SimulatedCard.punchCard("IN", "00001234").build()));
+        assertEquals(TapPipeline.RESULT_REPEAT,
+                tap(SimulatedCard.punchCard("IN", "00001234").build()));
+    }
+
+    public void testRefusedTapCanBeRetried() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Semaphore handled = new Semaphore(0);
+        PipelineFixture fixture = new PipelineFixture(new TapDispatcher.Handler() {
+            @Override
+            public void onTap(Tap tap) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                handled.release();
+            }
+        }, 1, 1);
+        try {
+            // One tap held by the worker, one in the queue, then the queue is full.
+            int dispatched = 0;
+            int result;
+            do {
+                result = fixture.tap(
+                        SimulatedCard.punchCard("IN", String.valueOf(dispatched)).build());
+            } while (result == TapPipeline.RESULT_DISPATCHED && ++dispatched < 10);
+            assertEquals(TapPipeline.RESULT_BUSY, result);
+            release.countDown();
+            assertTrue(handled.tryAcquire(dispatched, 5, TimeUnit.SECONDS));
+
+            assertEquals(TapPipeline.RESULT_DISPATCHED, fixture.tap(
+                    SimulatedCard.punchCard("IN", String.valueOf(dispatched)).build()));
+        } finally {
+            release.countDown();
+            fixture.shutdown();
+        }
+    }
+
+    public void testMissingServiceIsReported() throws InterruptedException {
+        SimulatedCard card = new SimulatedCard.Builder()
+                .respond(CommandApduBuilder.PUNCH_STATUS_AID, new byte[0], ResponseApdu.SW_OK)
+                .build();
+
+        assertEquals(TapPipeline.RESULT_DISPATCHED, tap(card));
+        Tap tap = mTaps.poll(5, TimeUnit.SECONDS);
+        assertEquals(SimulatedCard.SW_FILE_NOT_FOUND, tap.getStaffId().statusWord());
+        assertTrue(tap.getPunchStatus().isOk());
+    }
+
+    public void testSlowCardTimesOut() throws InterruptedException {
+        setTapTimeout(50);
+        SimulatedCard card = SimulatedCard.punchCard("IN", "00001234")
+                .latency(Latency.fixed(5, TimeUnit.SECONDS)).build();
+
+        long start = System.nanoTime();
+        assertEquals(TapPipeline.RESULT_TIMED_OUT, tap(card));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    public void testLostTagFails() throws InterruptedException {
+        SimulatedCard card = SimulatedCard.punchCard("IN", "00001234").tagLossRate(1).build();
+
+        assertEquals(TapPipeline.RESULT_FAILED, tap(card));
+    }
+
+    public void testLongAnswerIsFetchedWithGetResponse() throws InterruptedException {
+        byte[] staffId = new byte[600];
+        Arrays.fill(staffId, (byte) '7');
+        SimulatedCard card = new SimulatedCard.Builder()
+                .respond(CommandApduBuilder.PUNCH_STATUS_AID, new byte[0], ResponseApdu.SW_OK)
+                .respond(CommandApduBuilder.STAFF_ID_AID, staffId, ResponseApdu.SW_OK)
+                .build();
+
+        assertEquals(TapPipeline.RESULT_DISPATCHED, tap(card));
+        Tap tap = mTaps.poll(5, TimeUnit.SECONDS);
+        assertTrue(tap.getStaffId().isOk());
+        assertTrue(Arrays.equals(staffId, tap.getStaffId().copyPayload()));
+        // SELECT, two GET RESPONSE, SELECT.
+        assertEquals(4, card.getTransceiveCount());
+    }
+
+    public void testManyTaps() throws InterruptedException {
+        SimulatedCard.Builder builder = SimulatedCard.punchCard("IN", "0").seed(42)
+                .latency(Latency.uniform(0, 100, TimeUnit.MICROSECONDS));
+        int taps = 2000;
+        for (int i = 0; i < taps; i++) {
+            builder.respond(CommandApduBuilder.STAFF_ID_AID,
+                    String.valueOf(i).getBytes(StandardCharsets.UTF_8), ResponseApdu.SW_OK);
+            assertEquals(TapPipeline.RESULT_DISPATCHED, tap(builder.build()));
+        }
+        for (int i = 0; i < taps; i++) {
+            assertNotNull(mTaps.poll(5, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.Utils.HexCodec;
+import com.example.android.Utils.TlvReader;
+import com.example.android.Utils.TlvWriter;
+import com.example.android.cardreader.CommandApduBuilder;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link TlvReader} and {@link TlvWriter}.
+ */
+public class TlvTest extends TestCase {
+
+    public void testReadNested() {
+        byte[] data = HexCodec.decode("00700B5F20024142A50480012A009F010107");
+        TlvReader outer = new TlvReader(data);
+        TlvReader inner = new TlvReader();
+        TlvReader innermost = new TlvReader();
+
+        assertTrue(outer.next());
+        assertEquals(0x70, outer.tag());
+        assertTrue(outer.isConstructed());
+        outer.enter(inner);
+        assertTrue(inner.next());
+        assertEquals(0x5F20, inner.tag());
+        assertEquals("AB", new String(data, inner.valueOffset(), inner.valueLength()));
+        assertTrue(inner.next());
+        inner.enter(innermost);
+        assertTrue(innermost.find(0x80));
+        assertEquals(0x2A, innermost.valueAsLong());
+        assertFalse(inner.next());
+
+        assertTrue(outer.next());
+        assertEquals(0x9F01, outer.tag());
+        assertFalse(outer.isConstructed());
+        assertEquals(7, outer.valueAsLong());
+        assertFalse(outer.next());
+    }
+
+    public void testWriteRoundTripWithLongLength() {
+        byte[] photoHash = new byte[200];
+        photoHash[199] = 0x55;
+        byte[] buffer = new byte[512];
+        TlvWriter writer = new TlvWriter(buffer);
+
+        writer.begin(0x70).primitive(0x9F01, 12345).begin(0xA5)
+                .primitive(0x82, photoHash, 0, photoHash.length).end().end();
+
+        TlvReader reader = new TlvReader(buffer, 0, writer.length());
+        assertTrue(reader.next());
+        assertEquals(writer.length(), reader.tlvLength());
+        TlvReader child = reader.enter(new TlvReader());
+        assertTrue(child.find(0x9F01));
+        assertEquals(12345, child.valueAsLong());
+        assertTrue(child.next());
+        assertEquals(0xA5, child.tag());
+        TlvReader hash = child.enter(new TlvReader());
+        assertTrue(hash.next());
+        assertEquals(200, hash.valueLength());
+        assertEquals(0x55, buffer[hash.valueOffset() + 199]);
+    }
+
+    public void testWriteIntoCommandApdu() {
+        CommandApduBuilder builder = new CommandApduBuilder();
+        builder.header(0x80, 0xDA, 0x00, 0x00);
+        TlvWriter writer = builder.beginData(new TlvWriter());
+        writer.primitive(0x5F20, new byte[]{'A', 'B'}, 0, 2);
+        builder.endData(writer).le(0);
+
+        assertEquals("80DA0000055F2002414200", HexCodec.encode(builder.toByteArray()));
+    }
+
+    public void testMalformedLengthIsRejected() {
+        TlvReader reader = new TlvReader(HexCodec.decode("5A050102"));
+        try {
+            reader.next();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
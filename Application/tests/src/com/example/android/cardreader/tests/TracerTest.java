@@ -0,0 +1,146 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.cardreader.Tap;
+import com.example.android.cardreader.TapDispatcher;
+import com.example.android.cardreader.TapPipeline;
+import com.example.android.simulator.SimulatedCard;
+import com.example.android.trace.Tracer;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the spans {@link Tracer} records for a tap and its Chrome trace export.
+ */
+public class TracerTest extends TestCase {
+    private final LinkedBlockingQueue<Tap> mTaps = new LinkedBlockingQueue<>();
+    private PipelineFixture mFixture;
+
+    @Override
+    protected void setUp() {
+        Tracer.setEnabled(true);
+        Tracer.clear();
+        mFixture = new PipelineFixture(new TapDispatcher.Handler() {
+            @Override
+            public void onTap(Tap tap) {
+                mTaps.add(tap);
+            }
+        }, 1, 16);
+    }
+
+    @Override
+    protected void tearDown() {
+        mFixture.shutdown();
+        Tracer.setCapacity(Tracer.DEFAULT_CAPACITY);
+    }
+
+    private static List<String> names(List<Tracer.Span> spans) {
+        List<String> names = new ArrayList<>();
+        for (Tracer.Span span : spans) {
+            names.add(span.getName());
+        }
+        return names;
+    }
+
+    public void testSpansOfATap() throws InterruptedException {
+        assertEquals(TapPipeline.RESULT_DISPATCHED,
+                mFixture.tap(SimulatedCard.punchCard("IN", "00001234").build()));
+        Tap tap = mTaps.poll(5, TimeUnit.SECONDS);
+        assertTrue(tap.getTraceId() > 0);
+        mFixture.shutdown();
+        Thread.sleep(50);
+
+        List<Tracer.Span> spans = Tracer.getSpans(tap.getTraceId());
+        List<String> names = names(spans);
+        assertEquals(Tracer.TAP, names.get(0));
+        assertEquals(Tracer.CONNECT, names.get(1));
+        // Staff ID first, then the punch status, each one frame.
+        assertEquals(2, count(names, Tracer.TRANSCEIVE));
+        assertEquals(2, count(names, Tracer.RAPDU_RESP));
+        assertEquals(1, count(names, Tracer.REPORT));
+        Tracer.Span root = spans.get(0);
+        for (Tracer.Span span : spans) {
+            if (!span.getName().equals(Tracer.REPORT)) {
+                assertTrue(span.toString(), span.getStartNanos() >= root.getStartNanos());
+                assertTrue(span.toString(), span.getEndNanos() <= root.getEndNanos());
+            }
+        }
+        // The transceives ran on the RAPDU thread, the report on the dispatcher.
+        assertFalse(spans.get(0).getThreadId() == spans.get(names.indexOf(Tracer.TRANSCEIVE)).getThreadId());
+        assertEquals(0, Tracer.currentTap());
+    }
+
+    private static int count(List<String> names, String name) {
+        int count = 0;
+        for (String n : names) {
+            if (n.equals(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void testOldSpansAreOverwritten() throws InterruptedException {
+        Tracer.setCapacity(4);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Tracer.setCurrentTap(-7);
+                for (int i = 0; i < 10; i++) {
+                    Tracer.record("span" + i, i, i + 1);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertEquals(java.util.Arrays.asList("span6", "span7", "span8", "span9"),
+                names(Tracer.getSpans(-7)));
+    }
+
+    public void testUnbalancedEndIsIgnored() {
+        Tracer.end();
+        Tracer.setCurrentTap(-8);
+        Tracer.begin("outer");
+        Tracer.begin("inner");
+        Tracer.end();
+        Tracer.end();
+        Tracer.end();
+        Tracer.setCurrentTap(0);
+
+        assertEquals(java.util.Arrays.asList("outer", "inner"), names(Tracer.getSpans(-8)));
+    }
+
+    public void testDisabled() {
+        Tracer.setEnabled(false);
+        try {
+            Tracer.setCurrentTap(-9);
+            Tracer.begin("ignored");
+            Tracer.end();
+        } finally {
+            Tracer.setEnabled(true);
+        }
+        assertTrue(Tracer.getSpans(-9).isEmpty());
+    }
+
+    public void testChromeTrace() throws IOException {
+        Tracer.setCurrentTap(-10);
+        Tracer.record("say \"hi\"", 1000, 3500);
+        Tracer.setCurrentTap(0);
+        StringBuilder out = new StringBuilder();
+        Tracer.writeChromeTrace(out);
+
+        String json = out.toString();
+        assertTrue(json, json.startsWith("{\"traceEvents\":["));
+        assertTrue(json, json.contains("\"ph\":\"M\""));
+        assertTrue(json, json.contains("{\"name\":\"say \\\"hi\\\"\",\"cat\":\"tap\",\"ph\":\"X\","
+                + "\"ts\":1.000,\"dur\":2.500,\"pid\":1,\"tid\":" + Thread.currentThread().getId()
+                + ",\"args\":{\"tap\":-10}}"));
+        assertTrue(json, json.endsWith("],\"displayTimeUnit\":\"ms\"}\n"));
+    }
+}
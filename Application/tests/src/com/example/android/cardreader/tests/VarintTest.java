@@ -0,0 +1,82 @@
+package com.example.android.cardreader.tests;
+
+import com.example.android.Utils.HexCodec;
+import com.example.android.Utils.Varint;
+
+import junit.framework.TestCase;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link Varint}.
+ */
+public class VarintTest extends TestCase {
+
+    public void testEncoding() {
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        Varint.putUnsigned(buffer, 1);
+        Varint.putUnsigned(buffer, 300);
+        Varint.putSigned(buffer, -1);
+        Varint.putSigned(buffer, 1);
+        assertEquals("01AC020102", HexCodec.encode(buffer.array(), 0, buffer.position()));
+        assertEquals(2, Varint.length(300));
+        assertEquals(Varint.MAX_LENGTH, Varint.length(-1));
+    }
+
+    public void testRoundTrip() {
+        long[] values = {0, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE,
+                Long.MIN_VALUE, -1, -64, -65};
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 2 * Varint.MAX_LENGTH);
+        for (long value : values) {
+            Varint.putUnsigned(buffer, value);
+            Varint.putSigned(buffer, value);
+        }
+        buffer.flip();
+        for (long value : values) {
+            assertEquals(value, Varint.getUnsigned(buffer));
+            assertEquals(value, Varint.getSigned(buffer));
+        }
+        assertFalse(buffer.hasRemaining());
+
+        byte[] array = new byte[Varint.MAX_LENGTH];
+        assertEquals(3, Varint.putUnsigned(array, 0, 16384));
+        assertEquals(16384, Varint.getUnsignedInt(ByteBuffer.wrap(array)));
+    }
+
+    public void testOverflowLeavesPosition() {
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        buffer.put((byte) 0);
+        try {
+            Varint.putUnsigned(buffer, 1 << 14);
+            fail();
+        } catch (BufferOverflowException expected) {
+        }
+        assertEquals(1, buffer.position());
+        Varint.putUnsigned(buffer, 1 << 13);
+        assertEquals(3, buffer.position());
+    }
+
+    public void testMalformed() {
+        try {
+            Varint.getUnsigned(ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80}));
+            fail();
+        } catch (BufferUnderflowException expected) {
+        }
+        byte[] tooLong = new byte[11];
+        Arrays.fill(tooLong, (byte) 0x80);
+        try {
+            Varint.getUnsigned(ByteBuffer.wrap(tooLong));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            Varint.getUnsignedInt(ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80,
+                    (byte) 0x80, (byte) 0x80, 0x08}));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.cardreader.ApduSession;
+import com.example.android.cardreader.CommandApduBuilder;
+import com.example.android.cardreader.ResponseApdu;
+import com.example.android.common.logger.Log;
+import com.example.android.simulator.SimulatedCard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one SELECT on the reader side, from the command bytes to a parsed
+ * {@link ResponseApdu}, against a {@link SimulatedCard} that answers straight away. Payloads
+ * larger than a frame measure the "61xx" and GET RESPONSE path; {@code rapduResp} is covered by
+ * {@link #exchange()} and on its own by {@link #parseResponse()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ApduBenchmark {
+
+    // A staff ID, a roster entry, and an answer that takes several frames.
+    @Param({"8", "200", "1024"})
+    public int payloadSize;
+
+    private byte[] select;
+    private byte[] response;
+    private ApduSession session;
+
+    @Setup
+    public void setUp() throws IOException {
+        // No LogNode, so the executor's logging costs only the check.
+        Log.setLogNode(null);
+        byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) '0');
+        select = CommandApduBuilder.select(CommandApduBuilder.STAFF_ID_AID);
+        response = Arrays.copyOf(payload, payloadSize + 2);
+        response[payloadSize] = (byte) 0x90;
+        SimulatedCard card = new SimulatedCard.Builder()
+                .respond(CommandApduBuilder.STAFF_ID_AID, payload, ResponseApdu.SW_OK)
+                .seed(42)
+                .build();
+        session = new ApduSession(card);
+        session.open();
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+    }
+
+    @Benchmark
+    public byte[] buildSelect() {
+        return CommandApduBuilder.select(CommandApduBuilder.STAFF_ID_AID);
+    }
+
+    @Benchmark
+    public ResponseApdu[] exchange() throws IOException {
+        return session.exchange(select);
+    }
+
+    /**
+     * What {@code APDUTranslator.rapduResp} and its caller do with an answer that is already in.
+     */
+    @Benchmark
+    public String parseResponse() {
+        ResponseApdu rapdu = new ResponseApdu(response);
+        return rapdu.isOk() ? rapdu.payloadAsString(StandardCharsets.UTF_8) : null;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.Utils.Base64OutputStream;
+import com.example.android.Utils.Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways {@code AndroidBase64} can be driven (whole arrays through {@link Utils},
+ * reused heap and direct {@link ByteBuffer}s, and {@link Base64OutputStream}) with
+ * {@link java.util.Base64}, from a single 32 byte punch record up to a 64 KB upload batch.
+ * <p>
+ * {@code java.util.Base64} only exists on API 26 and up, so on older devices the app has to use
+ * its own codec whatever the outcome; on newer ones, run these numbers on the device before
+ * switching.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Base64Benchmark {
+
+    @Param({"32", "1024", "65536"})
+    public int size;
+
+    private byte[] bytes;
+    private String encoded;
+    private byte[] encodedBytes;
+    private ByteBuffer heapIn;
+    private ByteBuffer heapOut;
+    private ByteBuffer directIn;
+    private ByteBuffer directOut;
+    private byte[] jdkOut;
+    private ByteArrayOutputStream sink;
+    private Base64.Encoder jdkEncoder;
+    private Base64.Decoder jdkDecoder;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        encoded = Utils.base64Encode(bytes);
+        encodedBytes = encoded.getBytes();
+        int encodedLength = Utils.base64EncodedLength(size);
+        heapIn = ByteBuffer.wrap(bytes);
+        heapOut = ByteBuffer.allocate(encodedLength);
+        directIn = ByteBuffer.allocateDirect(size);
+        directIn.put(bytes).flip();
+        directOut = ByteBuffer.allocateDirect(encodedLength);
+        jdkOut = new byte[encodedLength];
+        sink = new ByteArrayOutputStream(encodedLength);
+        jdkEncoder = Base64.getEncoder();
+        jdkDecoder = Base64.getDecoder();
+    }
+
+    @Benchmark
+    public String encodeToString() {
+        return Utils.base64Encode(bytes);
+    }
+
+    @Benchmark
+    public int encodeHeapBuffer() {
+        heapIn.clear();
+        heapOut.clear();
+        return Utils.base64Encode(heapIn, heapOut);
+    }
+
+    @Benchmark
+    public int encodeDirectBuffer() {
+        directIn.clear();
+        directOut.clear();
+        return Utils.base64Encode(directIn, directOut);
+    }
+
+    @Benchmark
+    public int encodeStream() throws IOException {
+        sink.reset();
+        OutputStream out = new Base64OutputStream(sink);
+        out.write(bytes, 0, bytes.length);
+        out.close();
+        return sink.size();
+    }
+
+    @Benchmark
+    public String jdkEncodeToString() {
+        return jdkEncoder.encodeToString(bytes);
+    }
+
+    @Benchmark
+    public int jdkEncodeArray() {
+        return jdkEncoder.encode(bytes, jdkOut);
+    }
+
+    @Benchmark
+    public ByteBuffer jdkEncodeBuffer() {
+        heapIn.clear();
+        return jdkEncoder.encode(heapIn);
+    }
+
+    @Benchmark
+    public byte[] decodeString() {
+        return Utils.base64Decode(encoded);
+    }
+
+    @Benchmark
+    public int decodeHeapBuffer() {
+        heapIn.clear();
+        return Utils.base64Decode(ByteBuffer.wrap(encodedBytes), heapIn);
+    }
+
+    @Benchmark
+    public byte[] jdkDecodeString() {
+        return jdkDecoder.decode(encoded);
+    }
+
+    @Benchmark
+    public int jdkDecodeArray() {
+        return jdkDecoder.decode(encodedBytes, bytes);
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.journal.PunchRecord;
+import com.example.android.sync.BinaryBatchFormat;
+import com.example.android.sync.JsonBatchFormat;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes and decodes one upload batch per operation in {@link JsonBatchFormat} and
+ * {@link BinaryBatchFormat}, each with and without gzip, over a day's worth of punches: a few
+ * hundred staff punching in and out some seconds apart.
+ * <p>
+ * Divide the "bytes" counter by the "events" counter for the bytes per punch that go over the
+ * uplink; "events" alone is the punches encoded or decoded per second. JSON decoding builds a
+ * {@link PunchRecord} per punch, binary decoding streams them to a visitor, as each is meant to
+ * be used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(time = 1)
+@Measurement(time = 1)
+public class BatchFormatBenchmark {
+    private static final int STAFF = 300;
+    private static final long SOURCE = 0x9F3C5A17E2B40D68L;
+
+    @Param({"json", "json-gzip", "binary", "binary-gzip"})
+    public String format;
+
+    @Param({"16", "256"})
+    public int batchSize;
+
+    private boolean binary;
+    private boolean gzip;
+    private final List<PunchRecord> records = new ArrayList<>();
+    private byte[][] staffIds;
+    private final StringBuilder json = new StringBuilder();
+    private final BinaryBatchFormat.Encoder encoder = new BinaryBatchFormat.Encoder();
+    private final BinaryBatchFormat.Decoder decoder = new BinaryBatchFormat.Decoder();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+    private final byte[] buffer = new byte[4096];
+    private byte[] encoded;
+    private long checksum;
+
+    private final BinaryBatchFormat.Visitor visitor = new BinaryBatchFormat.Visitor() {
+        @Override
+        public void onPunch(long sequence, long timestampMillis, int punchType, int statusWord,
+                            byte[] staffId, int offset, int length) {
+            checksum += timestampMillis + staffId[offset + length - 1];
+        }
+    };
+
+    /**
+     * Punches and body bytes per second, next to the batches per second of the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Events {
+        public long events;
+        public long bytes;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        binary = format.startsWith("binary");
+        gzip = format.endsWith("gzip");
+        Random random = new Random(42);
+        int[] punchType = new int[STAFF];
+        long time = 1546329600000L;
+        staffIds = new byte[batchSize][];
+        for (int i = 0; i < batchSize; i++) {
+            int staff = random.nextInt(STAFF);
+            time += random.nextInt(20000);
+            staffIds[i] = String.format(Locale.US, "%08d", 10000 + staff)
+                    .getBytes(StandardCharsets.US_ASCII);
+            records.add(new PunchRecord(i, time, punchType[staff], 0x9000, staffIds[i]));
+            punchType[staff] ^= 1;
+        }
+        int length = encode();
+        if (gzip) {
+            encoded = body.toByteArray();
+        } else if (binary) {
+            encoded = Arrays.copyOf(encoder.getBuffer(), length);
+        } else {
+            encoded = json.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public int encode(Events counter) throws IOException {
+        int length = encode();
+        counter.events += batchSize;
+        counter.bytes += length;
+        return length;
+    }
+
+    private int encode() throws IOException {
+        body.reset();
+        if (binary) {
+            encoder.begin(SOURCE);
+            for (int i = 0; i < batchSize; i++) {
+                PunchRecord record = records.get(i);
+                encoder.add(record.getSequence(), record.getTimestampMillis(),
+                        record.getPunchType(), record.getStatusWord(), staffIds[i], 0,
+                        staffIds[i].length);
+            }
+            encoder.finish();
+            if (!gzip) {
+                return encoder.getLength();
+            }
+            GZIPOutputStream out = new GZIPOutputStream(body);
+            encoder.writeTo(out);
+            out.close();
+        } else {
+            json.setLength(0);
+            JsonBatchFormat.encode(String.format(Locale.US, "%016x", SOURCE), records, json);
+            byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+            if (!gzip) {
+                return bytes.length;
+            }
+            GZIPOutputStream out = new GZIPOutputStream(body);
+            out.write(bytes);
+            out.close();
+        }
+        return body.size();
+    }
+
+    @Benchmark
+    public long decode(Events counter) throws IOException {
+        byte[] bytes = encoded;
+        int length = bytes.length;
+        if (gzip) {
+            inflated.reset();
+            InputStream in = new GZIPInputStream(new ByteArrayInputStream(encoded));
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                inflated.write(buffer, 0, n);
+            }
+            bytes = inflated.toByteArray();
+            length = bytes.length;
+        }
+        int count;
+        if (binary) {
+            count = decoder.decode(ByteBuffer.wrap(bytes, 0, length), visitor);
+        } else {
+            List<PunchRecord> decoded =
+                    JsonBatchFormat.decode(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            count = decoded.size();
+            checksum += decoded.get(count - 1).getTimestampMillis();
+        }
+        counter.events += count;
+        counter.bytes += encoded.length;
+        return checksum;
+    }
+}
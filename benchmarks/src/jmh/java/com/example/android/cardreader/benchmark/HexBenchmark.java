@@ -0,0 +1,120 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.Utils.HexCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link HexCodec} with the String based conversions {@code Utils} used before it, from
+ * a 2 byte status word up to a 4 KB payload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HexBenchmark {
+
+    @Param({"2", "16", "256", "4096"})
+    public int size;
+
+    private byte[] bytes;
+    private String hex;
+    private char[] chars;
+    private byte[] decoded;
+    private StringWriter writer;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        hex = HexCodec.encode(bytes);
+        chars = new char[size * 2];
+        decoded = new byte[size];
+        writer = new StringWriter(size * 2);
+    }
+
+    /**
+     * Copy of the old {@code Utils.byte2hex}.
+     */
+    static String legacyByte2hex(byte[] b, int start, int end) {
+        StringBuilder sb = new StringBuilder((end - start) * 2);
+        for (int n = start; n < end; n++) {
+            sb.append(String.format("%02X", b[n]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Copy of the old {@code Utils.textToByteArray}, without the odd length handling.
+     */
+    static byte[] legacyTextToByteArray(String text) {
+        byte[] ret = new byte[text.length() / 2];
+        for (int i = 0; i < text.length(); i += 2) {
+            ret[i / 2] = (byte) (Integer.parseInt(text.substring(i, i + 2), 16) & 0xff);
+        }
+        return ret;
+    }
+
+    /**
+     * Copy of the old {@code Utils.HexStringToByteArray}.
+     */
+    static byte[] legacyHexStringToByteArray(String s) {
+        int len = s.length();
+        byte[] data = new byte[len / 2];
+        for (int i = 0; i < len; i += 2) {
+            data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4)
+                    + Character.digit(s.charAt(i + 1), 16));
+        }
+        return data;
+    }
+
+    @Benchmark
+    public String encodeLegacyFormat() {
+        return legacyByte2hex(bytes, 0, bytes.length);
+    }
+
+    @Benchmark
+    public String encodeToString() {
+        return HexCodec.encode(bytes);
+    }
+
+    @Benchmark
+    public char[] encodeIntoChars() {
+        HexCodec.encode(bytes, 0, bytes.length, chars, 0);
+        return chars;
+    }
+
+    @Benchmark
+    public StringWriter encodeToAppendable() throws IOException {
+        writer.getBuffer().setLength(0);
+        HexCodec.encode(bytes, 0, bytes.length, writer);
+        return writer;
+    }
+
+    @Benchmark
+    public byte[] decodeLegacyParseInt() {
+        return legacyTextToByteArray(hex);
+    }
+
+    @Benchmark
+    public byte[] decodeLegacyCharacterDigit() {
+        return legacyHexStringToByteArray(hex);
+    }
+
+    @Benchmark
+    public byte[] decodeIntoBytes() {
+        HexCodec.decode(hex, 0, hex.length(), decoded, 0);
+        return decoded;
+    }
+}
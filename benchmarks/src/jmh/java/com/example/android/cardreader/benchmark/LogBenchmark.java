@@ -0,0 +1,104 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.common.logger.AsyncLogNode;
+import com.example.android.common.logger.Log;
+import com.example.android.common.logger.LogNode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a log line costs the thread that logs it, for the chains the app can be set up with:
+ * <ul>
+ * <li>{@code none}: no LogNode, as in a release build</li>
+ * <li>{@code filtered}: a LogNode, but the record is below the minimum priority</li>
+ * <li>{@code direct}: the message is built and handed on in the caller</li>
+ * <li>{@code async}: an {@link AsyncLogNode} in front, so the caller only enqueues</li>
+ * </ul>
+ * The end of the chain only counts, so logcat and the LogView are left out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LogBenchmark {
+    private static final String TAG = "LogBenchmark";
+
+    @Param({"none", "filtered", "direct", "async"})
+    public String chain;
+
+    private final byte[] command = {0x00, (byte) 0xA4, 0x04, 0x00, 0x07,
+            (byte) 0xF0, 0x39, 0x41, 0x48, 0x14, (byte) 0x81, 0x00};
+    private AsyncLogNode asyncNode;
+
+    /**
+     * End of the chain; keeps the messages alive so they are not optimized away.
+     */
+    static final class CountingNode implements LogNode {
+        volatile long count;
+        volatile int length;
+
+        @Override
+        public void println(int priority, String tag, String msg, Throwable tr) {
+            count++;
+            length += msg.length();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        CountingNode sink = new CountingNode();
+        Log.setMinPriority(Log.VERBOSE);
+        switch (chain) {
+            case "none":
+                Log.setLogNode(null);
+                break;
+            case "filtered":
+                Log.setLogNode(sink);
+                Log.setMinPriority(Log.WARN);
+                break;
+            case "direct":
+                Log.setLogNode(sink);
+                break;
+            case "async":
+                asyncNode = new AsyncLogNode();
+                asyncNode.setNext(sink);
+                asyncNode.start();
+                Log.setLogNode(asyncNode);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown chain " + chain);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (asyncNode != null) {
+            asyncNode.shutdown();
+            asyncNode = null;
+        }
+        Log.setLogNode(null);
+        Log.setMinPriority(Log.VERBOSE);
+    }
+
+    @Benchmark
+    public void plain() {
+        Log.i(TAG, "Requesting remote AID");
+    }
+
+    /**
+     * The line {@code APDUExecutor} logs for every command.
+     */
+    @Benchmark
+    public void formatted() {
+        Log.i(TAG, "Sending: %s (%d)", command, command.length);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.cardreader.CommandApduBuilder;
+import com.example.android.metrics.ReaderMetrics;
+import com.example.android.metrics.StripedCounter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What {@link ReaderMetrics} adds to a tap, and {@link StripedCounter} against a plain
+ * {@link AtomicLong} when four threads bump the same counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+    private final ReaderMetrics metrics = new ReaderMetrics();
+    private final StripedCounter striped = new StripedCounter();
+    private final AtomicLong atomic = new AtomicLong();
+    private final byte[] select = CommandApduBuilder.select(CommandApduBuilder.STAFF_ID_AID);
+
+    @Benchmark
+    @Threads(4)
+    public void stripedCounter() {
+        striped.increment();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void atomicLong() {
+        atomic.incrementAndGet();
+    }
+
+    /**
+     * The bookkeeping of one command: look up the AID's counter, count a frame, check the
+     * status word, time the step.
+     */
+    @Benchmark
+    public void command() {
+        metrics.transceives(select).increment();
+        metrics.statusWord(0x9000);
+        metrics.step(ReaderMetrics.STEP_STAFF_ID, 12345);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void commandContended() {
+        command();
+    }
+
+    @Benchmark
+    public ReaderMetrics.Snapshot snapshot() {
+        return metrics.snapshot();
+    }
+}
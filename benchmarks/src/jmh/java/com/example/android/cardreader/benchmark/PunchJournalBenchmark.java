@@ -0,0 +1,75 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.journal.PunchJournal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained appends per second to a {@link PunchJournal}, with group commit as used by the app
+ * and with a commit after every record for comparison. Every iteration starts from an empty
+ * journal in a temporary directory; iterations are kept short because the journal grows by
+ * 32 bytes per record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(time = 1)
+@Measurement(time = 1)
+public class PunchJournalBenchmark {
+
+    @Param({"4096", "262144"})
+    public int segmentRecords;
+
+    private final byte[] staffId = "00012345".getBytes(StandardCharsets.UTF_8);
+    private File dir;
+    private PunchJournal journal;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        dir = File.createTempFile("journal", "");
+        if (!dir.delete()) {
+            throw new IOException("Cannot replace " + dir);
+        }
+        journal = new PunchJournal(dir, segmentRecords, PunchJournal.DEFAULT_COMMIT_EVERY,
+                PunchJournal.DEFAULT_COMMIT_INTERVAL_MILLIS);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        journal.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void groupCommit() throws IOException {
+        journal.append(System.currentTimeMillis(), 0, 0x9000, staffId, 0, staffId.length);
+    }
+
+    @Benchmark
+    public void commitEachRecord() throws IOException {
+        journal.append(System.currentTimeMillis(), 0, 0x9000, staffId, 0, staffId.length);
+        journal.commit();
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.journal.PunchJournal;
+import com.example.android.simulator.SimulatedPunchServer;
+import com.example.android.sync.PunchUploader;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Punches per second a {@link PunchUploader} gets from the journal to a
+ * {@link SimulatedPunchServer} on the loopback interface, by batch size: every operation
+ * journals {@link #EVENTS} punches, reporting each like the tap path does, and waits until all
+ * of them are acknowledged. The "events" counter is the number to compare; at batch size 1 it
+ * is bound by the HTTP round trips, at the larger sizes by encoding and gzip.
+ * <p>
+ * Every iteration starts from an empty journal and server, as both keep everything.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(time = 1)
+@Measurement(time = 1)
+public class PunchUploadBenchmark {
+    private static final int EVENTS = 1024;
+    // An operation that takes longer than this means the upload got stuck.
+    private static final long UPLOAD_TIMEOUT_SECONDS = 30;
+
+    @Param({"1", "16", "128", "1024"})
+    public int batchSize;
+
+    private final byte[] staffId = "00012345".getBytes(StandardCharsets.UTF_8);
+    private File dir;
+    private PunchJournal journal;
+    private SimulatedPunchServer server;
+    private PunchUploader uploader;
+
+    /**
+     * Punches uploaded per second, next to the operations per second of the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Events {
+        public long events;
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        dir = File.createTempFile("journal", "");
+        if (!dir.delete()) {
+            throw new IOException("Cannot replace " + dir);
+        }
+        journal = new PunchJournal(dir);
+        server = new SimulatedPunchServer();
+        // Only full batches go out on their own; the rest is sent when the operation asks.
+        uploader = new PunchUploader.Builder(journal, server.getUrl(), new File(dir, "upload.state"))
+                .batchSize(batchSize)
+                .batchDelayMillis(TimeUnit.MINUTES.toMillis(10))
+                .backoff(10, 100)
+                .build();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        uploader.close();
+        server.close();
+        journal.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void upload(Events counter) throws IOException, InterruptedException {
+        for (int i = 0; i < EVENTS; i++) {
+            journal.append(System.currentTimeMillis(), i & 1, 0x9000, staffId, 0, staffId.length);
+            uploader.onPunchJournaled();
+        }
+        uploader.requestUpload();
+        if (!uploader.awaitUploaded(journal.getEndSequence(), UPLOAD_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Upload stuck at " + uploader.getUploadedSequence());
+        }
+        counter.events += EVENTS;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.Utils.Utils;
+import com.example.android.cardreader.CommandApduBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the SELECT AID command the way {@code LoyaltyCardReader.BuildSelectApdu}
+ * used to (string concatenation, {@code String.format} and {@code Integer.parseInt}) with
+ * {@link CommandApduBuilder}. Run with {@code -prof gc} to see the allocation per tap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SelectApduBenchmark {
+    private static final String SELECT_APDU_HEADER = "00A40400";
+    private static final String TEST_APDU_HEADER = "00A40500";
+
+    @Param({CommandApduBuilder.PUNCH_STATUS_AID, CommandApduBuilder.STAFF_ID_AID})
+    public String aid;
+
+    private final CommandApduBuilder builder = new CommandApduBuilder();
+    private final ByteBuffer buffer = ByteBuffer.allocate(CommandApduBuilder.MAX_SHORT_APDU_LENGTH);
+
+    /**
+     * Copy of the string based builder this benchmark measures against.
+     */
+    static byte[] legacySelect(String aid) {
+        byte[] apdu = new byte[0];
+        if (aid.contains(CommandApduBuilder.PUNCH_STATUS_AID)) {
+            apdu = Utils.textToByteArray(SELECT_APDU_HEADER + String.format("%02X", aid.length() / 2) + aid);
+        } else if (aid.contains(CommandApduBuilder.STAFF_ID_AID)) {
+            apdu = Utils.textToByteArray(TEST_APDU_HEADER + String.format("%02X", aid.length() / 2) + aid);
+        }
+        return apdu;
+    }
+
+    @Benchmark
+    public byte[] legacyString() {
+        return legacySelect(aid);
+    }
+
+    @Benchmark
+    public byte[] cached() {
+        return CommandApduBuilder.cachedSelect(aid);
+    }
+
+    @Benchmark
+    public byte[] cachedCopy() {
+        return CommandApduBuilder.select(aid);
+    }
+
+    @Benchmark
+    public int reusedBuilder() {
+        builder.header(CommandApduBuilder.CLA_ISO, CommandApduBuilder.INS_SELECT,
+                CommandApduBuilder.P1_SELECT_BY_NAME, 0x00).hexData(aid);
+        return builder.length();
+    }
+
+    @Benchmark
+    public int reusedByteBuffer() {
+        byte[] select = CommandApduBuilder.cachedSelect(aid);
+        buffer.clear();
+        return CommandApduBuilder.write(buffer, select[0], select[1], select[2], select[3],
+                select, 5, select[4], CommandApduBuilder.NO_LE);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.cardreader.CommandApduBuilder;
+import com.example.android.cardreader.ReaderConfig;
+import com.example.android.cardreader.ReaderSettings;
+import com.example.android.cardreader.ResponseApdu;
+import com.example.android.cardreader.Tap;
+import com.example.android.cardreader.TapDispatcher;
+import com.example.android.desktop.SimulatedTerminals;
+import com.example.android.desktop.SmartCardReader;
+import com.example.android.journal.PunchJournal;
+import com.example.android.metrics.ReaderMetrics;
+import com.example.android.simulator.Latency;
+import com.example.android.simulator.SimulatedCard;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregate taps per second of {@link SmartCardReader} as readers are added: every operation puts
+ * one card on each of {@code readers} {@link SimulatedTerminals} and waits until all of them are
+ * journaled. The "taps" counter is the number to compare across reader counts; with perfect
+ * scaling it grows with the readers while ops/s stays flat.
+ * <p>
+ * All readers share one pipeline, dispatcher, journal and metrics, so what keeps them from
+ * scaling shows up here. With {@code latencyMicros} 0 that is the reader's own overhead; other
+ * values add a log-normal card delay (sigma 0.5) per command, as a phone on a USB reader has.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SmartCardReaderBenchmark {
+    // A round that takes longer than this means taps were lost.
+    private static final long ROUND_TIMEOUT_SECONDS = 10;
+
+    @Param({"1", "2", "4", "8"})
+    public int readers;
+
+    @Param({"0", "2000"})
+    public int latencyMicros;
+
+    private SimulatedTerminals terminals;
+    private SmartCardReader reader;
+    private File dir;
+    private PunchJournal journal;
+    private SimulatedCard.Builder cards;
+    private final Semaphore reported = new Semaphore(0);
+    private long next;
+
+    /**
+     * Taps per second, next to the rounds per second of the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Taps {
+        public long taps;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ReaderConfig config = ReaderConfig.DEFAULT.buildUpon().punchMode(0).build();
+        ReaderSettings settings = ReaderSettings.of(config);
+        dir = File.createTempFile("journal", "");
+        dir.delete();
+        journal = new PunchJournal(dir);
+        terminals = new SimulatedTerminals(readers);
+        reader = new SmartCardReader.Builder(terminals)
+                .settings(settings)
+                .journal(journal)
+                .metrics(new ReaderMetrics())
+                .dispatcher(2, 1 << 16)
+                .handler(new TapDispatcher.Handler() {
+                    @Override
+                    public void onTap(Tap tap) {
+                        reported.release();
+                    }
+                })
+                .build();
+        reader.start();
+        cards = SimulatedCard.punchCard("IN", "0").seed(42).latency(latencyMicros == 0
+                ? Latency.none() : Latency.logNormal(latencyMicros, 0.5, TimeUnit.MICROSECONDS));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        reader.stop();
+        journal.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void round(Taps counter) throws InterruptedException {
+        for (int i = 0; i < readers; i++) {
+            long id = next++;
+            byte[] staffId = new byte[8];
+            for (int b = staffId.length - 1; b >= 0; b--, id >>>= 8) {
+                staffId[b] = (byte) id;
+            }
+            // Copied into the card.
+            cards.respond(CommandApduBuilder.STAFF_ID_AID, staffId, ResponseApdu.SW_OK);
+            terminals.get(i).present(staffId, cards.build());
+        }
+        if (!reported.tryAcquire(readers, ROUND_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Taps lost, " + reader.getTapCount() + " read so far");
+        }
+        counter.taps += readers;
+    }
+}
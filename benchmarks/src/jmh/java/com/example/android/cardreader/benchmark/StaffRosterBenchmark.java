@@ -0,0 +1,105 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.roster.StaffIds;
+import com.example.android.roster.StaffRoster;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Staff ID lookups per second, from the raw response bytes as they come off the card, in
+ * {@link StaffRoster} and in a {@code HashMap<String, String>} for comparison. A quarter of the
+ * lookups are for unknown IDs.
+ * <p>
+ * The setup also prints the retained heap per 10k staff of both, measured from the heap in use
+ * before and after building them, so run with a single fork for a readable number.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StaffRosterBenchmark {
+    private static final int PROBES = 4096;
+
+    @Param({"10000", "50000"})
+    public int size;
+
+    private StaffRoster roster;
+    private Map<String, String> map;
+    private byte[][] responses;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = "staff " + i;
+        }
+        long before = usedHeap();
+        StaffRoster.Builder builder = new StaffRoster.Builder();
+        for (int i = 0; i < size; i++) {
+            builder.add(id(i), names[i]);
+        }
+        roster = builder.build();
+        long rosterBytes = usedHeap() - before;
+
+        before = usedHeap();
+        map = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(id(i), names[i]);
+        }
+        long mapBytes = usedHeap() - before;
+        System.out.printf(Locale.US, "%nheap per 10k staff: roster %d bytes (index %d), HashMap %d bytes%n",
+                rosterBytes * 10000 / size, roster.getIndexBytes() * 10000 / size,
+                mapBytes * 10000 / size);
+
+        Random random = new Random(42);
+        responses = new byte[PROBES][];
+        for (int i = 0; i < PROBES; i++) {
+            int staff = random.nextInt(size + size / 3);
+            responses[i] = (id(staff) + "\u0090\u0000").getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static String id(int i) {
+        return String.format(Locale.US, "%08d", i);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public int rosterFromBytes() {
+        byte[] response = responses[next++ & (PROBES - 1)];
+        return roster.indexOf(response, 0, response.length - 2);
+    }
+
+    @Benchmark
+    public String hashMapFromString() {
+        byte[] response = responses[next++ & (PROBES - 1)];
+        return map.get(new String(response, 0, response.length - 2, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public long encodeOnly() {
+        byte[] response = responses[next++ & (PROBES - 1)];
+        return StaffIds.encode(response, 0, response.length - 2);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.RAPDUApi.AsyncRapduInterface;
+import com.example.android.cardreader.AsyncRapduImplement;
+import com.example.android.cardreader.CommandApduBuilder;
+import com.example.android.cardreader.RapduImplement;
+import com.example.android.cardreader.ReaderConfig;
+import com.example.android.cardreader.ReaderSettings;
+import com.example.android.cardreader.ResponseApdu;
+import com.example.android.cardreader.Tap;
+import com.example.android.cardreader.TapDispatcher;
+import com.example.android.cardreader.TapPipeline;
+import com.example.android.simulator.Latency;
+import com.example.android.simulator.SimulatedCard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Taps per second through {@link TapPipeline} against {@link SimulatedCard}s: connect, both
+ * SELECTs through the async RAPDU layer, repeat check and dispatch. Every tap is by different
+ * staff, so none is dropped as a repeat; at these rates the repeat check fills up and lets the
+ * rest through unchecked, see {@code TapDebouncer.getOverflowCount()}.
+ * <p>
+ * With {@code latencyMicros} 0 this measures the reader's own overhead per tap. Other values add
+ * a log-normal card delay (sigma 0.5) per command, closer to a real phone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TapPipelineBenchmark {
+    private static final byte[] TAG_ID = {1, 2, 3, 4};
+
+    @Param({"0", "200"})
+    public int latencyMicros;
+
+    private ReaderConfig config;
+    private AsyncRapduInterface rapdu;
+    private TapPipeline pipeline;
+    private SimulatedCard.Builder cards;
+    private final byte[] staffId = new byte[8];
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        config = ReaderConfig.DEFAULT.buildUpon().punchMode(0).build();
+        ReaderSettings settings = ReaderSettings.of(config);
+        rapdu = new AsyncRapduImplement(new RapduImplement(settings));
+        pipeline = new TapPipeline(new TapDispatcher(new TapDispatcher.Handler() {
+            @Override
+            public void onTap(Tap tap) {
+            }
+        }, 2, 1 << 16));
+        cards = SimulatedCard.punchCard("IN", "0").seed(42).latency(latencyMicros == 0
+                ? Latency.none() : Latency.logNormal(latencyMicros, 0.5, TimeUnit.MICROSECONDS));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pipeline.getDispatcher().shutdown();
+    }
+
+    @Benchmark
+    public int tap() throws InterruptedException {
+        long id = next++;
+        for (int i = staffId.length - 1; i >= 0; i--, id >>>= 8) {
+            staffId[i] = (byte) id;
+        }
+        // Copied into the card.
+        cards.respond(CommandApduBuilder.STAFF_ID_AID, staffId, ResponseApdu.SW_OK);
+        return pipeline.process(rapdu, config, TAG_ID, cards.build());
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.Utils.TlvReader;
+import com.example.android.Utils.TlvWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse and encode throughput of {@link TlvReader} and {@link TlvWriter} on nested card
+ * payloads: a list of staff records, each a template holding a name, a staff ID and a nested
+ * photo hash. For comparison, {@link #treeParse()} builds the usual tree of nodes with copied
+ * values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TlvBenchmark {
+    private static final int TAG_LIST = 0xE1;
+    private static final int TAG_RECORD = 0x70;
+    private static final int TAG_NAME = 0x5F20;
+    private static final int TAG_STAFF_ID = 0x9F01;
+    private static final int TAG_PHOTO = 0xA5;
+    private static final int TAG_HASH = 0x82;
+
+    @Param({"1", "16", "128"})
+    public int records;
+
+    private byte[] payload;
+    private byte[] output;
+    private byte[] name;
+    private byte[] hash;
+    private final TlvReader top = new TlvReader();
+    private final TlvReader list = new TlvReader();
+    private final TlvReader record = new TlvReader();
+    private final TlvReader field = new TlvReader();
+    private final TlvReader photo = new TlvReader();
+    private final TlvWriter writer = new TlvWriter();
+
+    @Setup
+    public void setUp() {
+        name = "Staff member".getBytes();
+        hash = new byte[32];
+        Arrays.fill(hash, (byte) 0x5A);
+        output = new byte[64 + records * 80];
+        payload = Arrays.copyOf(output, encode());
+    }
+
+    /**
+     * Visits every node and sums the values, the way a caller pulling out all fields would.
+     */
+    @Benchmark
+    public long walk() {
+        long sum = 0;
+        top.reset(payload, 0, payload.length);
+        while (top.next()) {
+            top.enter(list);
+            while (list.next()) {
+                list.enter(record);
+                while (record.next()) {
+                    if (record.isConstructed()) {
+                        record.enter(photo);
+                        while (photo.next()) {
+                            sum += photo.valueLength();
+                        }
+                    } else {
+                        sum += record.valueLength();
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Looks up the staff ID of every record by tag.
+     */
+    @Benchmark
+    public long findStaffIds() {
+        long sum = 0;
+        list.reset(payload, 0, payload.length);
+        if (list.find(TAG_LIST)) {
+            list.enter(record);
+            while (record.find(TAG_RECORD)) {
+                if (record.enter(field).find(TAG_STAFF_ID)) {
+                    sum += field.valueAsLong();
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int encode() {
+        writer.reset(output, 0, output.length);
+        writer.begin(TAG_LIST);
+        for (int i = 0; i < records; i++) {
+            writer.begin(TAG_RECORD)
+                    .primitive(TAG_NAME, name, 0, name.length)
+                    .primitive(TAG_STAFF_ID, 10000000 + i)
+                    .begin(TAG_PHOTO).primitive(TAG_HASH, hash, 0, hash.length).end()
+                    .end();
+        }
+        writer.end();
+        return writer.length();
+    }
+
+    @Benchmark
+    public Node treeParse() {
+        return Node.parse(payload, 0, payload.length).get(0);
+    }
+
+    /**
+     * Allocating baseline: one object and one copied value per node.
+     */
+    static final class Node {
+        final int tag;
+        final byte[] value;
+        final List<Node> children;
+
+        Node(int tag, byte[] value, List<Node> children) {
+            this.tag = tag;
+            this.value = value;
+            this.children = children;
+        }
+
+        static List<Node> parse(byte[] data, int offset, int length) {
+            List<Node> nodes = new ArrayList<>();
+            TlvReader reader = new TlvReader(data, offset, length);
+            while (reader.next()) {
+                byte[] value = Arrays.copyOfRange(data, reader.valueOffset(),
+                        reader.valueOffset() + reader.valueLength());
+                List<Node> children = reader.isConstructed()
+                        ? parse(value, 0, value.length) : null;
+                nodes.add(new Node(reader.tag(), value, children));
+            }
+            return nodes;
+        }
+    }
+}
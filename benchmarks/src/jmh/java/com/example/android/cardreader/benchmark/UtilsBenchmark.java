@@ -0,0 +1,89 @@
+package com.example.android.cardreader.benchmark;
+
+import com.example.android.Utils.Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link Utils} hex and endian conversions as the tap path calls them, on a tag ID and a
+ * status word sized input. {@link HexBenchmark} covers larger payloads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UtilsBenchmark {
+
+    private byte[] tagId;
+    private String tagIdHex;
+    private int value;
+    private long longValue;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        tagId = new byte[7];
+        random.nextBytes(tagId);
+        tagIdHex = Utils.byte2hex(tagId);
+        value = random.nextInt();
+        longValue = random.nextLong();
+    }
+
+    @Benchmark
+    public String byte2hex() {
+        return Utils.byte2hex(tagId);
+    }
+
+    @Benchmark
+    public String byte2hexForLog() {
+        return Utils.byte2hexForLog(tagId);
+    }
+
+    @Benchmark
+    public byte[] textToByteArray() {
+        return Utils.textToByteArray(tagIdHex);
+    }
+
+    @Benchmark
+    public byte[] hexStringToByteArray() {
+        return Utils.HexStringToByteArray(tagIdHex);
+    }
+
+    @Benchmark
+    public byte[] intToBigEndian() {
+        return Utils.intToByteArrayBigEndian(value);
+    }
+
+    @Benchmark
+    public byte[] intToLittleEndian() {
+        return Utils.intToByteArrayLittleEndian(value);
+    }
+
+    @Benchmark
+    public byte[] longToBigEndian() {
+        return Utils.longToByteArrayBigEndian(longValue);
+    }
+
+    @Benchmark
+    public byte[] longToLittleEndian() {
+        return Utils.longToByteArrayLittleEndian(longValue);
+    }
+
+    @Benchmark
+    public int bigEndianToInt() {
+        return Utils.byteArrayToBigEndianInt(tagId);
+    }
+
+    @Benchmark
+    public int littleEndianToInt() {
+        return Utils.byteArrayToLittleEndianInt(tagId);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.android.desktop;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+
+import javax.smartcardio.CardTerminals;
+import javax.smartcardio.TerminalFactory;
+import javax.smartcardio.TerminalFactorySpi;
+
+/**
+ * Security provider whose {@link TerminalFactory} of type {@link #TYPE} hands out
+ * {@link SimulatedTerminals}, so code that looks its terminals up the way it would with PC/SC
+ * runs unchanged against simulated readers.
+ */
+public final class SimulatedTerminalProvider extends Provider {
+    private static final long serialVersionUID = 1L;
+
+    public static final String NAME = "SimulatedTerminals";
+    public static final String TYPE = "Simulated";
+
+    public SimulatedTerminalProvider() {
+        super(NAME, 1.0, "Simulated smart card terminals");
+        put("TerminalFactory." + TYPE, Factory.class.getName());
+    }
+
+    /**
+     * Factory for {@code terminals}, without registering the provider.
+     */
+    public static TerminalFactory getFactory(SimulatedTerminals terminals)
+            throws NoSuchAlgorithmException {
+        return TerminalFactory.getInstance(TYPE, terminals, new SimulatedTerminalProvider());
+    }
+
+    /**
+     * Created by {@link TerminalFactory} with the {@link SimulatedTerminals} passed as its
+     * parameters.
+     */
+    public static final class Factory extends TerminalFactorySpi {
+        private final SimulatedTerminals mTerminals;
+
+        public Factory(Object params) {
+            if (!(params instanceof SimulatedTerminals)) {
+                throw new IllegalArgumentException("Expected SimulatedTerminals, got " + params);
+            }
+            mTerminals = (SimulatedTerminals) params;
+        }
+
+        @Override
+        protected CardTerminals engineTerminals() {
+            return mTerminals;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.android.desktop;
+
+import com.example.android.cardreader.CommandApduBuilder;
+import com.example.android.cardreader.ResponseApdu;
+import com.example.android.simulator.SimulatedCard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.smartcardio.ATR;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardNotPresentException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CardTerminals;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+/**
+ * PC/SC readers without the hardware: each terminal holds {@link SimulatedCard}s that are put on
+ * it with {@link SimulatedTerminal#present(byte[], SimulatedCard)}, so {@link SmartCardReader}
+ * can be tested and benchmarked on any JVM. {@link SimulatedTerminalProvider} hands them out
+ * through {@link javax.smartcardio.TerminalFactory} like the real PC/SC provider.
+ * <p>
+ * A card is on the reader until the reader disconnects from it; then it is taken away, and the
+ * next presented card, if any, is put on as soon as the reader looks for one. Like a contactless
+ * reader, a terminal answers the PC/SC GET DATA command for the card's UID itself.
+ * <p>
+ * {@link #list(CardTerminals.State)} does not track insertions and removals, so it returns no
+ * terminals for {@link CardTerminals.State#CARD_INSERTION} and
+ * {@link CardTerminals.State#CARD_REMOVAL}.
+ */
+public class SimulatedTerminals extends CardTerminals {
+    private static final byte[] ATR_BYTES = {0x3B, (byte) 0x80, (byte) 0x80, 0x01, 0x01};
+
+    private final List<CardTerminal> mTerminals;
+    // Guarded by this; bumped on every card put on or taken off any terminal.
+    private long mChanges;
+
+    /**
+     * @param count Number of terminals, named "Simulated Reader 0" and on
+     */
+    public SimulatedTerminals(int count) {
+        List<CardTerminal> terminals = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            terminals.add(new SimulatedTerminal(this, i));
+        }
+        mTerminals = Collections.unmodifiableList(terminals);
+    }
+
+    public SimulatedTerminal get(int index) {
+        return (SimulatedTerminal) mTerminals.get(index);
+    }
+
+    @Override
+    public List<CardTerminal> list(State state) {
+        if (state == State.ALL) {
+            return mTerminals;
+        }
+        List<CardTerminal> terminals = new ArrayList<>();
+        if (state == State.CARD_PRESENT || state == State.CARD_ABSENT) {
+            for (CardTerminal terminal : mTerminals) {
+                if (((SimulatedTerminal) terminal).isCardPresent() == (state == State.CARD_PRESENT)) {
+                    terminals.add(terminal);
+                }
+            }
+        }
+        return terminals;
+    }
+
+    @Override
+    public synchronized boolean waitForChange(long timeout) throws CardException {
+        final long changes = mChanges;
+        return await(this, timeout, new Condition() {
+            @Override
+            public boolean isMet() {
+                return mChanges != changes;
+            }
+        });
+    }
+
+    private synchronized void changed() {
+        mChanges++;
+        notifyAll();
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    /**
+     * Waits on {@code lock}, which the caller holds, until {@code condition} is met.
+     *
+     * @param timeout In milliseconds, 0 to wait for ever
+     * @return Whether it was met before the timeout
+     */
+    private static boolean await(Object lock, long timeout, Condition condition)
+            throws CardException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout " + timeout + " < 0");
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            while (!condition.isMet()) {
+                if (timeout == 0) {
+                    lock.wait();
+                } else {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    lock.wait(remaining);
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CardException("Interrupted while waiting", e);
+        }
+    }
+
+    /**
+     * One reader. Thread safe.
+     */
+    public static final class SimulatedTerminal extends CardTerminal {
+        private final SimulatedTerminals mOwner;
+        private final int mIndex;
+        private final String mName;
+
+        // Guarded by this.
+        private final ArrayDeque<SimulatedSmartCard> mWaiting = new ArrayDeque<>();
+        private SimulatedSmartCard mCurrent;
+        private SimulatedCard.Builder mEndless;
+        private int mEndlessCount;
+
+        SimulatedTerminal(SimulatedTerminals owner, int index) {
+            mOwner = owner;
+            mIndex = index;
+            mName = "Simulated Reader " + index;
+        }
+
+        /**
+         * Lines {@code card} up for the reader. It is put on once the cards before it were taken
+         * away and the reader looks for a card.
+         *
+         * @param uid What the reader reports as the card's UID
+         */
+        public synchronized void present(byte[] uid, SimulatedCard card) {
+            mWaiting.add(new SimulatedSmartCard(this, uid, card));
+            notifyAll();
+        }
+
+        /**
+         * Keeps a card on the reader from now on: whenever one is taken away, the next one is
+         * built from {@code cards} with a staff ID of its own, so no tap is taken for a repeat.
+         * For throughput runs; {@code cards} must not be used elsewhere meanwhile.
+         */
+        public synchronized void presentEndlessly(SimulatedCard.Builder cards) {
+            mEndless = cards;
+            notifyAll();
+        }
+
+        /**
+         * Puts the next card on the reader if it is free, with the lock held. Done when the
+         * reader looks, not when the last card is taken away, so it can tell the two apart.
+         *
+         * @return Whether there is a card on the reader
+         */
+        private boolean placeCard() {
+            if (mCurrent != null) {
+                return true;
+            }
+            mCurrent = mWaiting.poll();
+            if (mCurrent == null && mEndless != null) {
+                int n = mEndlessCount++;
+                byte[] staffId = String.format(Locale.US, "%02d%06d", mIndex % 100, n % 1000000)
+                        .getBytes(StandardCharsets.US_ASCII);
+                SimulatedCard card = mEndless.respond(CommandApduBuilder.STAFF_ID_AID, staffId,
+                        ResponseApdu.SW_OK).build();
+                mCurrent = new SimulatedSmartCard(this, ByteBuffer.allocate(4).putInt(
+                        mIndex << 24 | (n & 0xFFFFFF)).array(), card);
+            }
+            if (mCurrent == null) {
+                return false;
+            }
+            mOwner.changed();
+            return true;
+        }
+
+        /**
+         * Takes {@code card} away once the reader let go of it.
+         */
+        synchronized void removed(SimulatedSmartCard card) {
+            if (mCurrent != card) {
+                return;
+            }
+            mCurrent = null;
+            notifyAll();
+            mOwner.changed();
+        }
+
+        /**
+         * Cards presented that are not on the reader yet.
+         */
+        public synchronized int getWaitingCount() {
+            return mWaiting.size();
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public synchronized Card connect(String protocol) throws CardException {
+            if (!"*".equals(protocol) && !"T=1".equals(protocol) && !"T=CL".equals(protocol)) {
+                throw new CardException("Protocol " + protocol + " not supported");
+            }
+            if (!placeCard()) {
+                throw new CardNotPresentException("No card present on " + mName);
+            }
+            mCurrent.connect();
+            return mCurrent;
+        }
+
+        @Override
+        public synchronized boolean isCardPresent() {
+            return placeCard();
+        }
+
+        @Override
+        public synchronized boolean waitForCardPresent(long timeout) throws CardException {
+            return await(this, timeout, new Condition() {
+                @Override
+                public boolean isMet() {
+                    return placeCard();
+                }
+            });
+        }
+
+        @Override
+        public synchronized boolean waitForCardAbsent(long timeout) throws CardException {
+            return await(this, timeout, new Condition() {
+                @Override
+                public boolean isMet() {
+                    return mCurrent == null;
+                }
+            });
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+
+    private static final class SimulatedSmartCard extends Card {
+        private final SimulatedTerminal mTerminal;
+        private final byte[] mUid;
+        private final SimulatedCard mCard;
+        private final CardChannel mChannel = new SimulatedChannel(this);
+        private volatile boolean mDisconnected;
+
+        SimulatedSmartCard(SimulatedTerminal terminal, byte[] uid, SimulatedCard card) {
+            mTerminal = terminal;
+            mUid = uid;
+            mCard = card;
+        }
+
+        void connect() {
+            mCard.connect();
+        }
+
+        byte[] transmit(byte[] command) throws CardException {
+            if (mDisconnected) {
+                throw new IllegalStateException("Card has been disconnected");
+            }
+            if (command.length >= 4 && command[0] == (byte) 0xFF && command[1] == (byte) 0xCA
+                    && command[2] == 0x00 && command[3] == 0x00) {
+                byte[] response = Arrays.copyOf(mUid, mUid.length + 2);
+                response[mUid.length] = (byte) 0x90;
+                return response;
+            }
+            try {
+                return mCard.transceive(command);
+            } catch (IOException e) {
+                throw new CardException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public ATR getATR() {
+            return new ATR(ATR_BYTES);
+        }
+
+        @Override
+        public String getProtocol() {
+            return "T=1";
+        }
+
+        @Override
+        public CardChannel getBasicChannel() {
+            return mChannel;
+        }
+
+        @Override
+        public CardChannel openLogicalChannel() throws CardException {
+            throw new CardException("Logical channels not supported");
+        }
+
+        @Override
+        public void beginExclusive() {
+        }
+
+        @Override
+        public void endExclusive() {
+        }
+
+        @Override
+        public byte[] transmitControlCommand(int controlCode, byte[] command) throws CardException {
+            throw new CardException("Control commands not supported");
+        }
+
+        @Override
+        public void disconnect(boolean reset) {
+            mDisconnected = true;
+            mCard.close();
+            mTerminal.removed(this);
+        }
+    }
+
+    private static final class SimulatedChannel extends CardChannel {
+        private final SimulatedSmartCard mCard;
+
+        SimulatedChannel(SimulatedSmartCard card) {
+            mCard = card;
+        }
+
+        @Override
+        public Card getCard() {
+            return mCard;
+        }
+
+        @Override
+        public int getChannelNumber() {
+            return 0;
+        }
+
+        @Override
+        public ResponseAPDU transmit(CommandAPDU command) throws CardException {
+            return new ResponseAPDU(mCard.transmit(command.getBytes()));
+        }
+
+        @Override
+        public int transmit(ByteBuffer command, ByteBuffer response) throws CardException {
+            if (response.remaining() < 258) {
+                throw new IllegalArgumentException("Response buffer too small");
+            }
+            byte[] bytes = new byte[command.remaining()];
+            command.get(bytes);
+            byte[] answer = mCard.transmit(bytes);
+            if (answer.length > response.remaining()) {
+                throw new IllegalStateException("Response buffer too small");
+            }
+            response.put(answer);
+            return answer.length;
+        }
+
+        @Override
+        public void close() {
+            throw new IllegalStateException("Cannot close the basic channel");
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.example.android.desktop;
+
+import com.example.android.RAPDUApi.AsyncRapduInterface;
+import com.example.android.cardreader.AsyncRapduImplement;
+import com.example.android.cardreader.PunchRecorder;
+import com.example.android.cardreader.RapduImplement;
+import com.example.android.cardreader.ReaderConfig;
+import com.example.android.cardreader.ReaderSettings;
+import com.example.android.cardreader.Tap;
+import com.example.android.cardreader.TapDispatcher;
+import com.example.android.cardreader.TapPipeline;
+import com.example.android.common.logger.Log;
+import com.example.android.common.logger.LogNode;
+import com.example.android.journal.PunchJournal;
+import com.example.android.metrics.ReaderMetrics;
+import com.example.android.roster.StaffRoster;
+import com.example.android.sync.PunchUploader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CardTerminals;
+import javax.smartcardio.TerminalFactory;
+
+/**
+ * Runs the tap path of the app against PC/SC readers, e.g. at a gatehouse PC: one worker thread
+ * per terminal waits for a card, reads it through the same {@link TapPipeline} and
+ * {@link com.example.android.RAPDUApi.RapduInterface} flows as a phone does, and waits for the
+ * card to be taken away again, so a card left on the reader punches once.
+ * <p>
+ * All terminals share one pipeline, so one dispatcher, one {@link PunchJournal} and one
+ * {@link ReaderMetrics}; repeat taps are caught across readers too.
+ */
+public class SmartCardReader {
+    private static final String TAG = "SmartCardReader";
+    // How long a worker waits for a card at a time, and so how long stop() may take.
+    private static final long POLL_MILLIS = 250;
+    // Pause after a terminal error, e.g. the reader was unplugged, before trying it again.
+    private static final long ERROR_BACKOFF_MILLIS = 1000;
+    // How long stop() waits for the taps read to be reported.
+    private static final long STOP_TIMEOUT_SECONDS = 10;
+
+    private final CardTerminals mTerminals;
+    private final ReaderSettings mSettings;
+    private final AsyncRapduInterface mRapdu;
+    private final PunchRecorder mRecorder = new PunchRecorder();
+    private final TapDispatcher.Handler mHandler;
+    private final PunchRecorder.Callback mRecorded = new PunchRecorder.Callback() {
+        @Override
+        public void onPunch(Tap tap, String staffName) {
+            if (mHandler != null) {
+                mHandler.onTap(tap);
+            }
+        }
+
+        @Override
+        public void onUnknownStaff(Tap tap) {
+            // Logged by the recorder, there is no one at the terminal to tell.
+        }
+    };
+    private final ReaderMetrics mMetrics;
+    private final TapPipeline mPipeline;
+    private final AtomicLongArray mResults = new AtomicLongArray(TapPipeline.RESULT_FAILED + 1);
+    // Guarded by this.
+    private final List<Worker> mWorkers = new ArrayList<>();
+    private boolean mStarted;
+
+    private SmartCardReader(Builder builder) {
+        mTerminals = builder.mTerminals;
+        mSettings = builder.mSettings;
+        mRapdu = new AsyncRapduImplement(new RapduImplement(mSettings));
+        mRecorder.setJournal(builder.mJournal);
+        mRecorder.setUploader(builder.mUploader);
+        mRecorder.setRoster(builder.mRoster);
+        mHandler = builder.mHandler;
+        mMetrics = builder.mMetrics;
+        mPipeline = new TapPipeline(new TapDispatcher(new TapDispatcher.Handler() {
+            @Override
+            public void onTap(Tap tap) {
+                report(tap);
+            }
+        }, builder.mDispatchThreads, builder.mQueueCapacity, mMetrics), mMetrics);
+    }
+
+    private void report(Tap tap) {
+        mRecorder.record(tap, mSettings.get(), mRecorded);
+    }
+
+    /**
+     * Starts a worker for every terminal attached now. Terminals attached later are not picked
+     * up.
+     *
+     * @return Number of terminals
+     * @throws CardException If the terminals cannot be listed, e.g. PC/SC is not running
+     */
+    public synchronized int start() throws CardException {
+        if (mStarted) {
+            throw new IllegalStateException("Already started");
+        }
+        mStarted = true;
+        for (CardTerminal terminal : mTerminals.list()) {
+            Worker worker = new Worker(terminal);
+            mWorkers.add(worker);
+            worker.start();
+        }
+        Log.i(TAG, "Reading %d terminals", mWorkers.size());
+        return mWorkers.size();
+    }
+
+    /**
+     * Stops the workers, waiting for taps in progress, and waits for the taps read to be
+     * reported. The journal is left open. A stopped reader cannot be started again.
+     */
+    public synchronized void stop() throws InterruptedException {
+        for (Worker worker : mWorkers) {
+            worker.mRunning = false;
+        }
+        for (Worker worker : mWorkers) {
+            worker.join();
+        }
+        mWorkers.clear();
+        TapDispatcher dispatcher = mPipeline.getDispatcher();
+        dispatcher.shutdown();
+        if (!dispatcher.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            Log.w(TAG, "Taps still being reported after %d s", STOP_TIMEOUT_SECONDS);
+        }
+    }
+
+    /**
+     * Number of taps, on all terminals, that ended with {@code result}, one of the
+     * {@link TapPipeline} RESULT_ constants.
+     */
+    public long getTapCount(int result) {
+        return mResults.get(result);
+    }
+
+    /**
+     * Number of taps read so far on all terminals, whatever they ended with.
+     */
+    public long getTapCount() {
+        long taps = 0;
+        for (int i = 0; i < mResults.length(); i++) {
+            taps += mResults.get(i);
+        }
+        return taps;
+    }
+
+    public ReaderMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public TapPipeline getPipeline() {
+        return mPipeline;
+    }
+
+    private final class Worker extends Thread {
+        private final CardTerminal mTerminal;
+        // One per terminal, reused for every card put on it.
+        private final SmartCardTransport mTransport;
+        private volatile boolean mRunning = true;
+
+        Worker(CardTerminal terminal) {
+            super("Terminal-" + terminal.getName());
+            setDaemon(true);
+            mTerminal = terminal;
+            mTransport = new SmartCardTransport(terminal);
+        }
+
+        @Override
+        public void run() {
+            while (mRunning) {
+                try {
+                    if (!mTerminal.waitForCardPresent(POLL_MILLIS)) {
+                        continue;
+                    }
+                    read();
+                    while (mRunning && !mTerminal.waitForCardAbsent(POLL_MILLIS)) {
+                        // Card still on the reader, it was read already.
+                    }
+                } catch (CardException e) {
+                    if (!mRunning) {
+                        break;
+                    }
+                    Log.w(TAG, "%s: %s", mTerminal.getName(), e);
+                    try {
+                        Thread.sleep(ERROR_BACKOFF_MILLIS);
+                    } catch (InterruptedException ie) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+
+        private void read() throws InterruptedException {
+            byte[] tagId;
+            // Connected here rather than in the pipeline, as the tag ID comes over the link.
+            mMetrics.connect();
+            try {
+                mTransport.connect();
+                tagId = mTransport.readTagId();
+            } catch (IOException e) {
+                Log.w(TAG, "%s: cannot read card: %s", mTerminal.getName(), e);
+                mMetrics.ioException();
+                mMetrics.tap(TapPipeline.RESULT_FAILED);
+                mResults.incrementAndGet(TapPipeline.RESULT_FAILED);
+                try {
+                    mTransport.close();
+                } catch (IOException ce) {
+                    // Gone already.
+                }
+                return;
+            }
+            int result = mPipeline.process(mRapdu, mSettings.get(), tagId, mTransport);
+            mResults.incrementAndGet(result);
+        }
+    }
+
+    public static class Builder {
+        private final CardTerminals mTerminals;
+        private ReaderSettings mSettings;
+        private PunchJournal mJournal;
+        private PunchUploader mUploader;
+        private StaffRoster mRoster;
+        private TapDispatcher.Handler mHandler;
+        private ReaderMetrics mMetrics = ReaderMetrics.getDefault();
+        private int mDispatchThreads = TapDispatcher.DEFAULT_THREADS;
+        private int mQueueCapacity = TapDispatcher.DEFAULT_QUEUE_CAPACITY;
+
+        /**
+         * @param terminals E.g. {@code TerminalFactory.getDefault().terminals()} for PC/SC
+         */
+        public Builder(CardTerminals terminals) {
+            mTerminals = terminals;
+        }
+
+        /**
+         * Where the config of every tap comes from. {@link ReaderConfig#DEFAULT} by default.
+         */
+        public Builder settings(ReaderSettings settings) {
+            mSettings = settings;
+            return this;
+        }
+
+        /**
+         * Gets every punch with an OK staff ID, if the config has the journal enabled. None by
+         * default.
+         */
+        public Builder journal(PunchJournal journal) {
+            mJournal = journal;
+            return this;
+        }
+
+        /**
+         * Told about every punch journaled, so it goes to the server. Must upload the journal
+         * given to {@link #journal(PunchJournal)}. None by default.
+         */
+        public Builder uploader(PunchUploader uploader) {
+            mUploader = uploader;
+            return this;
+        }
+
+        /**
+         * Staff IDs are checked against, if the config has the roster check enabled. Taps with
+         * an ID it does not know are neither journaled nor handled. None, accepting every staff
+         * ID, by default.
+         */
+        public Builder roster(StaffRoster roster) {
+            mRoster = roster;
+            return this;
+        }
+
+        /**
+         * Called on a dispatcher thread for every tap read that passed the roster check, after
+         * it was journaled.
+         */
+        public Builder handler(TapDispatcher.Handler handler) {
+            mHandler = handler;
+            return this;
+        }
+
+        /**
+         * {@link ReaderMetrics#getDefault()} by default.
+         */
+        public Builder metrics(ReaderMetrics metrics) {
+            mMetrics = metrics;
+            return this;
+        }
+
+        /**
+         * Threads and queue of the {@link TapDispatcher} all terminals share.
+         */
+        public Builder dispatcher(int threads, int queueCapacity) {
+            if (threads < 1 || queueCapacity < 1) {
+                throw new IllegalArgumentException("Threads " + threads + " or queue capacity "
+                        + queueCapacity + " < 1");
+            }
+            mDispatchThreads = threads;
+            mQueueCapacity = queueCapacity;
+            return this;
+        }
+
+        public SmartCardReader build() {
+            if (mSettings == null) {
+                mSettings = ReaderSettings.of(ReaderConfig.DEFAULT);
+            }
+            return new SmartCardReader(this);
+        }
+    }
+
+    /**
+     * Reads all PC/SC terminals and journals to the directory given as the first argument,
+     * until standard input is closed. Punches are uploaded to the URL given as the second
+     * argument, if any.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1 && args.length != 2) {
+            System.err.println("Usage: SmartCardReader <journal dir> [upload URL]");
+            System.exit(2);
+        }
+        Log.setLogNode(new LogNode() {
+            @Override
+            public void println(int priority, String tag, String msg, Throwable tr) {
+                System.err.println(tag + ": " + msg);
+                if (tr != null) {
+                    tr.printStackTrace();
+                }
+            }
+        });
+        Log.setMinPriority(Log.INFO);
+        PunchJournal journal = new PunchJournal(new File(args[0]));
+        PunchUploader uploader = args.length == 2 ? new PunchUploader.Builder(journal,
+                new URL(args[1]), new File(args[0], "upload.state")).build() : null;
+        SmartCardReader reader = new SmartCardReader.Builder(TerminalFactory.getDefault().terminals())
+                .journal(journal)
+                .uploader(uploader)
+                .build();
+        try {
+            if (reader.start() == 0) {
+                System.err.println("No terminals");
+                return;
+            }
+            while (System.in.read() != -1) {
+                // Runs until end of input.
+            }
+        } finally {
+            reader.stop();
+            if (uploader != null) {
+                uploader.close();
+            }
+            journal.close();
+            System.err.println(reader.getMetrics().snapshot());
+        }
+    }
+}
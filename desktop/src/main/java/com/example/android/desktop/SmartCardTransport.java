@@ -0,0 +1,126 @@
+package com.example.android.desktop;
+
+import com.example.android.cardreader.CardTransport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+
+/**
+ * {@link CardTransport} over a PC/SC reader, through {@code javax.smartcardio}.
+ * <p>
+ * It stays with its terminal rather than with one card: {@link #connect()} connects to whatever
+ * card is on the reader and {@link #close()} lets go of it without resetting it, so a worker
+ * keeps one transport, and its response buffer, for all the taps on its reader.
+ */
+public class SmartCardTransport implements CardTransport {
+    // Short APDUs, like IsoDep on most phones: header, Lc, 255 bytes of data and Le.
+    public static final int MAX_TRANSCEIVE_LENGTH = 261;
+    // The largest response the reader may hand back, after it fetched the rest of a "61xx"
+    // answer itself: 64K of data and the status word.
+    private static final int RESPONSE_BUFFER_SIZE = 65536 + 2;
+    // PC/SC GET DATA for the UID of a contactless card, answered by the reader itself.
+    private static final byte[] GET_UID = {(byte) 0xFF, (byte) 0xCA, 0x00, 0x00, 0x00};
+
+    private final CardTerminal mTerminal;
+    private final String mProtocol;
+    private final ByteBuffer mResponse = ByteBuffer.allocate(RESPONSE_BUFFER_SIZE);
+    // Transceives of one tap run on I/O threads, one after the other; see ApduSession.
+    private volatile Card mCard;
+    private volatile CardChannel mChannel;
+
+    public SmartCardTransport(CardTerminal terminal) {
+        this(terminal, "*");
+    }
+
+    /**
+     * @param protocol "T=0", "T=1", "T=CL" or "*" for whichever the card offers
+     */
+    public SmartCardTransport(CardTerminal terminal, String protocol) {
+        mTerminal = terminal;
+        mProtocol = protocol;
+    }
+
+    public CardTerminal getTerminal() {
+        return mTerminal;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        try {
+            mCard = mTerminal.connect(mProtocol);
+        } catch (CardException e) {
+            throw new IOException("Cannot connect to card on " + mTerminal.getName(), e);
+        }
+        mChannel = mCard.getBasicChannel();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mChannel != null;
+    }
+
+    @Override
+    public byte[] transceive(byte[] command) throws IOException {
+        CardChannel channel = mChannel;
+        if (channel == null) {
+            throw new IOException("Tag was lost.");
+        }
+        mResponse.clear();
+        try {
+            int length = channel.transmit(ByteBuffer.wrap(command), mResponse);
+            return Arrays.copyOf(mResponse.array(), length);
+        } catch (CardException e) {
+            throw new IOException(e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            // The card was disconnected underneath us, e.g. it was pulled away.
+            throw new IOException("Tag was lost.", e);
+        }
+    }
+
+    /**
+     * ID of the card on the reader: its UID if the reader can tell it, which contactless
+     * readers do, otherwise its ATR. The transport must be connected.
+     */
+    public byte[] readTagId() throws IOException {
+        byte[] response = transceive(GET_UID);
+        int length = response.length;
+        if (length >= 2 && response[length - 2] == (byte) 0x90 && response[length - 1] == 0x00) {
+            return Arrays.copyOf(response, length - 2);
+        }
+        Card card = mCard;
+        if (card == null) {
+            throw new IOException("Tag was lost.");
+        }
+        return card.getATR().getBytes();
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return MAX_TRANSCEIVE_LENGTH;
+    }
+
+    @Override
+    public boolean isExtendedLengthApduSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Card card = mCard;
+        mCard = null;
+        mChannel = null;
+        if (card != null) {
+            try {
+                card.disconnect(false);
+            } catch (CardException e) {
+                throw new IOException("Cannot disconnect from card on " + mTerminal.getName(), e);
+            }
+        }
+    }
+}
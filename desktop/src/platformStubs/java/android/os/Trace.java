@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * Compile-time stand-in for the framework class, which the android 4.1.1.4 jar predates.
+ */
+public final class Trace {
+    private Trace() {
+    }
+
+    public static void beginSection(String sectionName) {
+        throw new UnsupportedOperationException("Stub");
+    }
+
+    public static void endSection() {
+        throw new UnsupportedOperationException("Stub");
+    }
+}
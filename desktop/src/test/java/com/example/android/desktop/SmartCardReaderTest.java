@@ -0,0 +1,209 @@
+package com.example.android.desktop;
+
+import com.example.android.cardreader.CommandApduBuilder;
+import com.example.android.cardreader.Tap;
+import com.example.android.cardreader.TapDispatcher;
+import com.example.android.cardreader.TapPipeline;
+import com.example.android.journal.PunchJournal;
+import com.example.android.journal.PunchRecord;
+import com.example.android.metrics.ReaderMetrics;
+import com.example.android.roster.StaffRoster;
+import com.example.android.simulator.SimulatedCard;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.smartcardio.CardTerminals;
+import javax.smartcardio.TerminalFactory;
+
+/**
+ * Runs {@link SmartCardReader} against {@link SimulatedTerminals}, with a journal in a scratch
+ * directory.
+ */
+public class SmartCardReaderTest extends TestCase {
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private File mDir;
+    private PunchJournal mJournal;
+    private final ReaderMetrics mMetrics = new ReaderMetrics();
+
+    @Override
+    protected void setUp() throws IOException {
+        mDir = File.createTempFile("journal", "");
+        assertTrue(mDir.delete());
+        mJournal = new PunchJournal(mDir);
+    }
+
+    @Override
+    protected void tearDown() {
+        mJournal.close();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    private SmartCardReader reader(CardTerminals terminals) {
+        return new SmartCardReader.Builder(terminals).journal(mJournal).metrics(mMetrics).build();
+    }
+
+    private static void awaitTaps(SmartCardReader reader, long taps) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (reader.getTapCount() < taps && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(reader.getTapCount() + " taps", reader.getTapCount() >= taps);
+    }
+
+    private List<PunchRecord> journaled() throws IOException {
+        mJournal.commit();
+        final List<PunchRecord> records = new ArrayList<>();
+        mJournal.forEach(new PunchJournal.Visitor() {
+            @Override
+            public void onRecord(PunchRecord record) {
+                records.add(record);
+            }
+        });
+        return records;
+    }
+
+    public void testProviderHandsOutTerminals() throws Exception {
+        SimulatedTerminals terminals = new SimulatedTerminals(3);
+        TerminalFactory factory = SimulatedTerminalProvider.getFactory(terminals);
+        assertEquals(SimulatedTerminalProvider.TYPE, factory.getType());
+        assertSame(terminals, factory.terminals());
+        assertEquals(3, factory.terminals().list().size());
+        assertEquals("Simulated Reader 2", factory.terminals().list().get(2).getName());
+        assertTrue(factory.terminals().list(CardTerminals.State.CARD_PRESENT).isEmpty());
+    }
+
+    public void testTransportReadsUidThenLetsGo() throws Exception {
+        SimulatedTerminals terminals = new SimulatedTerminals(1);
+        byte[] uid = {4, 3, 2, 1};
+        terminals.get(0).present(uid, SimulatedCard.punchCard("IN", "00000042").build());
+        SmartCardTransport transport = new SmartCardTransport(terminals.get(0));
+        transport.connect();
+        assertTrue(Arrays.equals(uid, transport.readTagId()));
+        byte[] response = transport.transceive(CommandApduBuilder.select(CommandApduBuilder.STAFF_ID_AID));
+        assertEquals("00000042", new String(response, 0, response.length - 2, "US-ASCII"));
+        assertEquals((byte) 0x90, response[response.length - 2]);
+
+        transport.close();
+        assertFalse(transport.isConnected());
+        assertFalse(terminals.get(0).isCardPresent());
+        try {
+            transport.transceive(CommandApduBuilder.select(CommandApduBuilder.STAFF_ID_AID));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testReadsAllTerminalsIntoOneJournal() throws Exception {
+        SimulatedTerminals terminals = new SimulatedTerminals(4);
+        SmartCardReader reader = reader(terminals);
+        assertEquals(4, reader.start());
+        for (int i = 0; i < 20; i++) {
+            String staffId = String.format(Locale.US, "%08d", i);
+            terminals.get(i % 4).present(new byte[]{(byte) i},
+                    SimulatedCard.punchCard("IN", staffId).build());
+        }
+        awaitTaps(reader, 20);
+        reader.stop();
+
+        assertEquals(20, reader.getTapCount(TapPipeline.RESULT_DISPATCHED));
+        assertEquals(20, mMetrics.snapshot().getTaps(TapPipeline.RESULT_DISPATCHED));
+        assertEquals(20, mMetrics.snapshot().getConnects());
+        List<PunchRecord> records = journaled();
+        assertEquals(20, records.size());
+        boolean[] seen = new boolean[20];
+        for (PunchRecord record : records) {
+            seen[Integer.parseInt(record.getStaffIdString())] = true;
+        }
+        for (boolean s : seen) {
+            assertTrue(s);
+        }
+    }
+
+    public void testRepeatOnAnotherReaderIsDropped() throws Exception {
+        SimulatedTerminals terminals = new SimulatedTerminals(2);
+        SmartCardReader reader = reader(terminals);
+        reader.start();
+        terminals.get(0).present(new byte[]{1}, SimulatedCard.punchCard("IN", "00000007").build());
+        awaitTaps(reader, 1);
+        terminals.get(1).present(new byte[]{2}, SimulatedCard.punchCard("IN", "00000007").build());
+        awaitTaps(reader, 2);
+        reader.stop();
+
+        assertEquals(1, reader.getTapCount(TapPipeline.RESULT_DISPATCHED));
+        assertEquals(1, reader.getTapCount(TapPipeline.RESULT_REPEAT));
+        assertEquals(1, journaled().size());
+    }
+
+    public void testUnknownStaffIsNotJournaled() throws Exception {
+        SimulatedTerminals terminals = new SimulatedTerminals(1);
+        final AtomicInteger handled = new AtomicInteger();
+        SmartCardReader reader = new SmartCardReader.Builder(terminals)
+                .journal(mJournal)
+                .metrics(mMetrics)
+                .roster(new StaffRoster.Builder().add("00000001", "Ada").build())
+                .handler(new TapDispatcher.Handler() {
+                    @Override
+                    public void onTap(Tap tap) {
+                        handled.incrementAndGet();
+                    }
+                })
+                .build();
+        reader.start();
+        terminals.get(0).present(new byte[]{1}, SimulatedCard.punchCard("IN", "00000001").build());
+        terminals.get(0).present(new byte[]{2}, SimulatedCard.punchCard("IN", "00000002").build());
+        awaitTaps(reader, 2);
+        reader.stop();
+
+        assertEquals(2, reader.getTapCount(TapPipeline.RESULT_DISPATCHED));
+        assertEquals(1, handled.get());
+        List<PunchRecord> records = journaled();
+        assertEquals(1, records.size());
+        assertEquals("00000001", records.get(0).getStaffIdString());
+    }
+
+    public void testLostCardDoesNotStopTheTerminal() throws Exception {
+        SimulatedTerminals terminals = new SimulatedTerminals(1);
+        SmartCardReader reader = reader(terminals);
+        reader.start();
+        terminals.get(0).present(new byte[]{1},
+                SimulatedCard.punchCard("IN", "00000001").tagLossRate(1).build());
+        terminals.get(0).present(new byte[]{2}, SimulatedCard.punchCard("IN", "00000002").build());
+        awaitTaps(reader, 2);
+        reader.stop();
+
+        assertEquals(1, reader.getTapCount(TapPipeline.RESULT_FAILED));
+        assertEquals(1, reader.getTapCount(TapPipeline.RESULT_DISPATCHED));
+        assertEquals(0, terminals.get(0).getWaitingCount());
+        assertEquals("00000002", journaled().get(0).getStaffIdString());
+    }
+
+    public void testEndlessCardsKeepAllTerminalsBusy() throws Exception {
+        SimulatedTerminals terminals = new SimulatedTerminals(3);
+        SmartCardReader reader = reader(terminals);
+        reader.start();
+        for (int i = 0; i < 3; i++) {
+            terminals.get(i).presentEndlessly(SimulatedCard.punchCard("OUT", "0").seed(i));
+        }
+        awaitTaps(reader, 30);
+        reader.stop();
+
+        assertEquals(0, reader.getTapCount(TapPipeline.RESULT_REPEAT));
+        assertTrue(reader.getTapCount(TapPipeline.RESULT_DISPATCHED)
+                + reader.getTapCount(TapPipeline.RESULT_BUSY) >= 30);
+    }
+}